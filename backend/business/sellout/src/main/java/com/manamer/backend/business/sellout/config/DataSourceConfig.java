@@ -0,0 +1,107 @@
+package com.manamer.backend.business.sellout.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StringUtils;
+
+import jakarta.persistence.EntityManagerFactory;
+
+import javax.sql.DataSource;
+import java.util.Properties;
+
+/**
+ * Pools del primario ({@code spring.datasource.*}) y de la réplica de lectura ({@code sellout.datasource.replica.*},
+ * opcional), el DataSource de la aplicación que elige entre ambos ({@link RuteoDataSource}) y los dos gestores
+ * de transacciones. Sin {@code sellout.datasource.replica.jdbc-url} todo va al primario, como antes.
+ *
+ * <p>Regla: a la réplica va solo lo marcado {@link LecturaReplica} (gestor {@link #LECTURA_REPLICA}); todo lo
+ * demás, incluido {@code @Transactional(readOnly = true)} y el {@code TransactionTemplate} readOnly de la
+ * validación, usa el gestor del primario y su pool. Una lectura cuyo resultado decide una escritura (SAP,
+ * productos, clientes y existentes de una carga) no se marca: con el retraso de la réplica duplicaría
+ * productos o clasificaría mal las filas. Una escritura no debe llamarse nunca desde un método
+ * {@link LecturaReplica}.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    /** Nombre del gestor de transacciones de {@link LecturaReplica}. */
+    public static final String LECTURA_REPLICA = "lecturaReplicaTransactionManager";
+
+    /** El mismo pool que armaba Spring Boot; Flyway migra siempre aquí. */
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primarioDataSource(DataSourceProperties properties) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName(StringUtils.hasText(properties.getName()) ? properties.getName() : "sellout-primario");
+        return ds;
+    }
+
+    /**
+     * Parte de la configuración del primario (driver, usuario, auto-commit, propiedades del driver) y encima
+     * aplica {@code sellout.datasource.replica.*} (jdbc-url, maximum-pool-size, connection-timeout, ...).
+     */
+    @Bean
+    @ConditionalOnProperty("sellout.datasource.replica.jdbc-url")
+    @ConfigurationProperties("sellout.datasource.replica")
+    public HikariDataSource replicaDataSource(@Qualifier("primarioDataSource") HikariDataSource primario) {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName("sellout-replica");
+        ds.setDriverClassName(primario.getDriverClassName());
+        ds.setUsername(primario.getUsername());
+        ds.setPassword(primario.getPassword());
+        ds.setAutoCommit(primario.isAutoCommit());
+        Properties props = new Properties();
+        props.putAll(primario.getDataSourceProperties());
+        ds.setDataSourceProperties(props);
+        ds.setReadOnly(true);
+        return ds;
+    }
+
+    @Bean
+    public RuteoDataSource ruteoDataSource(@Qualifier("primarioDataSource") HikariDataSource primario,
+                                           @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replica,
+                                           @Value("${sellout.datasource.replica-fallback:true}") boolean fallbackPrimario) {
+        return new RuteoDataSource(primario, replica.getIfAvailable(), fallbackPrimario);
+    }
+
+    /** El que usan JPA, JdbcTemplate y los gestores de transacciones. */
+    @Bean
+    @Primary
+    public DataSource dataSource(RuteoDataSource ruteoDataSource) {
+        return RuteoDataSource.crear(ruteoDataSource);
+    }
+
+    /**
+     * Gestor del primario: el de {@code @Transactional} y de todo PlatformTransactionManager inyectado. Se declara
+     * aquí porque con {@link #lecturaReplicaTransactionManager} Spring Boot ya no crea el suyo.
+     */
+    @Bean
+    @Primary
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                    ObjectProvider<TransactionManagerCustomizers> customizers) {
+        JpaTransactionManager tm = new JpaTransactionManager(entityManagerFactory);
+        customizers.ifAvailable(c -> c.customize(tm));
+        return tm;
+    }
+
+    /** Gestor de {@link LecturaReplica}: el del primario con la marca que lleva la transacción a la réplica. */
+    @Bean(LECTURA_REPLICA)
+    public PlatformTransactionManager lecturaReplicaTransactionManager(
+            @Qualifier("transactionManager") PlatformTransactionManager primario) {
+        return new GestorLecturaReplica(primario);
+    }
+}
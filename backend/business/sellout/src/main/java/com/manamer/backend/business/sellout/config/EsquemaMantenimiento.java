@@ -0,0 +1,62 @@
+package com.manamer.backend.business.sellout.config;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Al arrancar, después de migrar y antes de JPA, verifica que la base tenga lo de db/mantenimiento que la
+ * aplicación usa para escribir: las secuencias de V5 y ux_venta_clave de V6. Esas migraciones no corren al
+ * arrancar (ver application.properties); sin ellas la aplicación levantaría y cada INSERT fallaría con
+ * "Invalid object name 'venta_seq'". Así no arranca y el error dice qué falta y cómo aplicarlo.
+ * Solo en SQL Server: las demás bases (H2 de los tests) no tienen sys.sequences ni la clave única.
+ */
+@Configuration
+public class EsquemaMantenimiento {
+
+    /** Secuencias de V5 (sequenceName de Cliente, Producto, TipoMueble y Venta). */
+    public static final List<String> SECUENCIAS = List.of("cliente_seq", "producto_seq", "tipo_mueble_seq", "venta_seq");
+
+    /** Clave única de V6 que usa el MERGE de VentaMergeWriter. */
+    public static final String INDICE_CLAVE = "ux_venta_clave";
+
+    @Bean
+    public FlywayMigrationStrategy migrarYVerificarMantenimiento() {
+        return flyway -> {
+            flyway.migrate();
+            verificar(new JdbcTemplate(flyway.getConfiguration().getDataSource()));
+        };
+    }
+
+    /** @throws IllegalStateException si falta alguna secuencia de V5 o el índice de V6 */
+    public static void verificar(JdbcTemplate jdbc) {
+        if (!Boolean.TRUE.equals(jdbc.execute((ConnectionCallback<Boolean>) c -> c.isWrapperFor(SQLServerConnection.class)))) {
+            return;
+        }
+        Set<String> secuencias = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        secuencias.addAll(jdbc.queryForList("SELECT name FROM sys.sequences WHERE schema_id = SCHEMA_ID(N'dbo')", String.class));
+        List<String> faltan = new ArrayList<>();
+        for (String s : SECUENCIAS) {
+            if (!secuencias.contains(s)) faltan.add("dbo." + s + " (V5__secuencias_ids)");
+        }
+        Integer indice = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM sys.indexes WHERE object_id = OBJECT_ID(N'dbo.venta') AND name = ?",
+                Integer.class, INDICE_CLAVE);
+        if (indice == null || indice == 0) faltan.add("dbo.venta." + INDICE_CLAVE + " (V6__indices_venta)");
+
+        if (!faltan.isEmpty()) {
+            throw new IllegalStateException("Faltan migraciones de db/mantenimiento en la base: " + String.join(", ", faltan)
+                    + ". Aplicarlas en una ventana de mantenimiento arrancando una vez con"
+                    + " --spring.profiles.active=mantenimiento (application-mantenimiento.properties).");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.manamer.backend.business.sellout.config;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * Gestor de transacciones de las lecturas que pueden ir a la réplica ({@link LecturaReplica}): delega todo en el
+ * gestor del primario y, mientras su transacción está abierta, marca el hilo para {@link RuteoDataSource}. Una
+ * transacción readOnly abierta con el gestor del primario (lookups de SAP/productos dentro de una carga, la
+ * validación {@code dryRun}) no lleva la marca y sigue en el primario.
+ */
+public class GestorLecturaReplica implements PlatformTransactionManager {
+
+    // transacciones de este gestor abiertas en el hilo (una lectura puede llamar a otra)
+    private static final ThreadLocal<int[]> ABIERTAS = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final PlatformTransactionManager primario;
+
+    public GestorLecturaReplica(PlatformTransactionManager primario) {
+        this.primario = primario;
+    }
+
+    /** true si el hilo está dentro de una transacción de este gestor. */
+    static boolean enCurso() {
+        return ABIERTAS.get()[0] > 0;
+    }
+
+    @Override
+    public TransactionStatus getTransaction(TransactionDefinition definition) throws TransactionException {
+        ABIERTAS.get()[0]++;
+        try {
+            return primario.getTransaction(definition);
+        } catch (RuntimeException | Error e) {
+            cerrar();
+            throw e;
+        }
+    }
+
+    @Override
+    public void commit(TransactionStatus status) throws TransactionException {
+        try {
+            primario.commit(status);
+        } finally {
+            cerrar();
+        }
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) throws TransactionException {
+        try {
+            primario.rollback(status);
+        } finally {
+            cerrar();
+        }
+    }
+
+    private static void cerrar() {
+        int[] abiertas = ABIERTAS.get();
+        if (--abiertas[0] <= 0) ABIERTAS.remove();
+    }
+}
@@ -0,0 +1,21 @@
+package com.manamer.backend.business.sellout.config;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Transacción de solo lectura que puede ir a la réplica (listados, catálogos, reportes): lo que lee puede venir
+ * con el retraso de la réplica. Lo que se lee para escribir después usa {@code @Transactional(readOnly = true)}
+ * y queda en el primario (ver {@link DataSourceConfig}).
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Transactional(readOnly = true, transactionManager = DataSourceConfig.LECTURA_REPLICA)
+public @interface LecturaReplica {
+}
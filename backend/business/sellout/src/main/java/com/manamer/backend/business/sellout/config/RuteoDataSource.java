@@ -0,0 +1,119 @@
+package com.manamer.backend.business.sellout.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Conexiones de las transacciones {@link LecturaReplica} (listados, catálogos, reportes) al pool de la réplica y
+ * el resto al del primario: cargas, eliminaciones, escrituras sin transacción y también las transacciones
+ * {@code readOnly} del gestor del primario (ver {@link DataSourceConfig}). Si la réplica no da conexión y
+ * {@code fallbackPrimario} está activo, la lectura va al primario; si no, falla.
+ *
+ * <p>Debe usarse detrás de {@link #crear}: {@link LazyConnectionDataSourceProxy} pide la conexión real en la
+ * primera sentencia, cuando la transacción ya está marcada readOnly (el gestor de transacciones la abre antes).
+ */
+public class RuteoDataSource extends AbstractDataSource {
+
+    private static final Logger log = Logger.getLogger(RuteoDataSource.class.getName());
+
+    public enum Destino { PRIMARIO, REPLICA }
+
+    private final HikariDataSource primario;
+    private final HikariDataSource replica; // null = sin réplica configurada
+    private final boolean fallbackPrimario;
+    private final Map<Destino, LongAdder> conexiones = new EnumMap<>(Destino.class);
+    private final LongAdder erroresReplica = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public RuteoDataSource(HikariDataSource primario, HikariDataSource replica, boolean fallbackPrimario) {
+        this.primario = primario;
+        this.replica = replica;
+        this.fallbackPrimario = fallbackPrimario;
+        for (Destino d : Destino.values()) conexiones.put(d, new LongAdder());
+    }
+
+    /** DataSource de la aplicación: el ruteo detrás del proxy perezoso. */
+    public static DataSource crear(RuteoDataSource ruteo) {
+        return new LazyConnectionDataSourceProxy(ruteo);
+    }
+
+    /** Réplica solo dentro de una transacción readOnly de {@link GestorLecturaReplica} y si hay réplica configurada. */
+    public Destino destino() {
+        return replica != null && GestorLecturaReplica.enCurso()
+                && TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                ? Destino.REPLICA : Destino.PRIMARIO;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return conectar(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return conectar(username, password);
+    }
+
+    private Connection conectar(String username, String password) throws SQLException {
+        if (destino() == Destino.REPLICA) {
+            try {
+                Connection c = username == null ? replica.getConnection() : replica.getConnection(username, password);
+                conexiones.get(Destino.REPLICA).increment();
+                return c;
+            } catch (SQLException | RuntimeException e) {
+                // RuntimeException: Hikari arranca el pool en la primera conexión (PoolInitializationException)
+                erroresReplica.increment();
+                if (!fallbackPrimario) throw e;
+                fallbacks.increment();
+                log.warning("Réplica sin conexión, la lectura va al primario: " + e.getMessage());
+            }
+        }
+        Connection c = username == null ? primario.getConnection() : primario.getConnection(username, password);
+        conexiones.get(Destino.PRIMARIO).increment();
+        return c;
+    }
+
+    /** Por pool: conexiones entregadas por el ruteo y estado de Hikari (activas, inactivas, esperando). */
+    public Map<String, Object> metricas() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("fallbackPrimario", fallbackPrimario);
+        m.put("fallbacks", fallbacks.sum());
+        m.put("primario", pool(primario, Destino.PRIMARIO));
+        if (replica == null) {
+            m.put("replica", null);
+        } else {
+            Map<String, Object> r = pool(replica, Destino.REPLICA);
+            r.put("errores", erroresReplica.sum());
+            m.put("replica", r);
+        }
+        return m;
+    }
+
+    private Map<String, Object> pool(HikariDataSource ds, Destino destino) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("pool", ds.getPoolName());
+        m.put("conexionesEntregadas", conexiones.get(destino).sum());
+        m.put("maximo", ds.getMaximumPoolSize());
+        HikariPoolMXBean mx = ds.getHikariPoolMXBean(); // null hasta que el pool arranca
+        if (mx != null) {
+            m.put("activas", mx.getActiveConnections());
+            m.put("inactivas", mx.getIdleConnections());
+            m.put("total", mx.getTotalConnections());
+            m.put("esperando", mx.getThreadsAwaitingConnection());
+        }
+        return m;
+    }
+}
@@ -0,0 +1,242 @@
+package com.manamer.backend.business.sellout.controller;
+
+import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.service.CargaJobService;
+import com.manamer.backend.business.sellout.service.ClienteService;
+import com.manamer.backend.business.sellout.service.DepratiVentaService;
+import com.manamer.backend.business.sellout.service.EstrategiaCarga;
+import com.manamer.backend.business.sellout.service.FybecaVentaService;
+import com.manamer.backend.business.sellout.service.HuellaCargaService;
+import com.manamer.backend.business.sellout.service.RMService;
+import com.manamer.backend.business.sellout.service.TemplateGeneralService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Cargas asíncronas: el archivo se acepta (202 + jobId) y se procesa en el pool de CargaJobService.
+ * El avance se consulta con GET /{id}; al terminar, /{id}/resultado y /{id}/incidencias.
+ */
+@RestController
+@CrossOrigin(origins = "*", allowedHeaders = "*", methods = {RequestMethod.GET, RequestMethod.POST})
+@RequestMapping("/api-sellout/cargas")
+public class CargaJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(CargaJobController.class);
+
+    private static final String COD_CLIENTE_FYBECA = "MZCL-000014";
+    private static final String COD_CLIENTE_RM = "MZCL-000008";
+
+    private final CargaJobService cargaJobService;
+    private final ClienteService clienteService;
+    private final FybecaVentaService fybecaService;
+    private final DepratiVentaService depratiService;
+    private final RMService rmService;
+    private final TemplateGeneralService templateGeneralService;
+    private final HuellaCargaService huellaCargaService;
+
+    public CargaJobController(CargaJobService cargaJobService,
+                              ClienteService clienteService,
+                              FybecaVentaService fybecaService,
+                              DepratiVentaService depratiService,
+                              RMService rmService,
+                              TemplateGeneralService templateGeneralService,
+                              HuellaCargaService huellaCargaService) {
+        this.cargaJobService = cargaJobService;
+        this.clienteService = clienteService;
+        this.fybecaService = fybecaService;
+        this.depratiService = depratiService;
+        this.rmService = rmService;
+        this.templateGeneralService = templateGeneralService;
+        this.huellaCargaService = huellaCargaService;
+    }
+
+    // ===================== Encolar =====================
+
+    @PostMapping("/fybeca")
+    public ResponseEntity<Map<String, Object>> encolarFybeca(@RequestParam("file") MultipartFile file,
+                                                            @RequestParam(required = false) String codCliente,
+                                                            @RequestParam(defaultValue = "false") boolean forzar,
+                                                            @RequestParam(defaultValue = "false") boolean dryRun,
+                                                            @RequestParam(required = false) String estrategia) {
+        Optional<EstrategiaCarga> e = estrategia(estrategia);
+        if (e.isEmpty()) return estrategiaInvalida(estrategia);
+        String cod = (codCliente == null || codCliente.isBlank()) ? COD_CLIENTE_FYBECA : codCliente.trim();
+        Optional<Cliente> cliente = clienteService.findByCodCliente(cod);
+        if (cliente.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("mensaje", "❌ No existe Cliente con codCliente=" + cod));
+        }
+        return encolar(e.get().endpointHuella("FYBECA"), cod, forzar, dryRun, file,
+                (archivo, nombre, progreso) -> fybecaService.cargarArchivoVentaFlexible(cliente.get(), archivo, nombre, progreso, dryRun, e.get()),
+                null);
+    }
+
+    @PostMapping("/deprati/motor-maping")
+    public ResponseEntity<Map<String, Object>> encolarDepratiFlexible(@RequestParam("file") MultipartFile file,
+                                                                     @RequestParam(defaultValue = "false") boolean forzar,
+                                                                     @RequestParam(defaultValue = "false") boolean dryRun,
+                                                                     @RequestParam(required = false) String estrategia) {
+        Optional<EstrategiaCarga> e = estrategia(estrategia);
+        if (e.isEmpty()) return estrategiaInvalida(estrategia);
+        return encolar(e.get().endpointHuella("DEPRATI_FLEXIBLE"), DepratiVentaService.COD_CLIENTE_DEPRATI, forzar, dryRun, file,
+                (archivo, nombre, progreso) -> cuerpo(depratiService.procesarArchivoExcelFlexible(archivo, nombre, progreso, dryRun, e.get())),
+                null);
+    }
+
+    @PostMapping("/deprati/venta")
+    public ResponseEntity<Map<String, Object>> encolarDeprati(@RequestParam("file") MultipartFile file,
+                                                              @RequestParam(defaultValue = "false") boolean forzar,
+                                                              @RequestParam(defaultValue = "false") boolean dryRun,
+                                                              @RequestParam(required = false) String estrategia) {
+        Optional<EstrategiaCarga> e = estrategia(estrategia);
+        if (e.isEmpty()) return estrategiaInvalida(estrategia);
+        return encolar(e.get().endpointHuella("DEPRATI"), DepratiVentaService.COD_CLIENTE_DEPRATI, forzar, dryRun, file,
+                (archivo, nombre, progreso) -> cuerpo(depratiService.procesarArchivoExcelDeprati(archivo, nombre, progreso, dryRun, e.get())),
+                null);
+    }
+
+    @PostMapping("/rm")
+    public ResponseEntity<Map<String, Object>> encolarRM(@RequestParam("file") MultipartFile file,
+                                                        @RequestParam(required = false) String codCliente,
+                                                        @RequestParam(defaultValue = "false") boolean paralelo,
+                                                        @RequestParam(defaultValue = "false") boolean forzar,
+                                                        @RequestParam(defaultValue = "false") boolean dryRun,
+                                                        @RequestParam(required = false) String estrategia) {
+        String cod = (codCliente == null || codCliente.isBlank()) ? COD_CLIENTE_RM : codCliente.trim();
+        Optional<EstrategiaCarga> e = estrategia(estrategia);
+        if (e.isEmpty()) return estrategiaInvalida(estrategia);
+        return encolar(e.get().endpointHuella("RM"), cod, forzar, dryRun, file,
+                (archivo, nombre, progreso) -> rmService.cargarExcelRM(archivo, cod, nombre, progreso, paralelo, dryRun, e.get()),
+                (res, nombre) -> rmService.construirIncidenciasTxt(nombre, res));
+    }
+
+    @PostMapping("/template-general")
+    public ResponseEntity<Map<String, Object>> encolarTemplateGeneral(@RequestParam("file") MultipartFile file,
+                                                                     @RequestParam(defaultValue = "false") boolean forzar,
+                                                                     @RequestParam(defaultValue = "false") boolean dryRun,
+                                                                     @RequestParam(required = false) String estrategia) {
+        Optional<EstrategiaCarga> e = estrategia(estrategia);
+        if (e.isEmpty()) return estrategiaInvalida(estrategia);
+        return encolar(e.get().endpointHuella("TEMPLATE_GENERAL"), HuellaCargaService.MULTICLIENTE, forzar, dryRun, file,
+                (archivo, nombre, progreso) -> templateGeneralService.cargarTemplateGeneral(archivo, nombre, progreso, dryRun, e.get()),
+                templateGeneralService::generarIncidenciasTxt);
+    }
+
+    // ===================== Consulta =====================
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> listar() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("capacidad", cargaJobService.capacidad());
+        body.put("jobs", cargaJobService.listar());
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> estado(@PathVariable String id) {
+        return cargaJobService.buscar(id)
+                .map(j -> ResponseEntity.ok(j.toMap()))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("mensaje", "Job no encontrado: " + id)));
+    }
+
+    @GetMapping("/{id}/resultado")
+    public ResponseEntity<Map<String, Object>> resultado(@PathVariable String id) {
+        Optional<CargaJobService.CargaJob> job = cargaJobService.buscar(id);
+        if (job.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("mensaje", "Job no encontrado: " + id));
+        }
+        CargaJobService.CargaJob j = job.get();
+        if (!j.terminado()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(j.toMap());
+        }
+        Map<String, Object> body = j.toMap();
+        body.put("resultado", j.getResultado());
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/{id}/incidencias")
+    public ResponseEntity<?> incidencias(@PathVariable String id) {
+        Optional<CargaJobService.CargaJob> job = cargaJobService.buscar(id);
+        if (job.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("mensaje", "Job no encontrado: " + id));
+        }
+        CargaJobService.CargaJob j = job.get();
+        if (j.getEstado() != CargaJobService.Estado.COMPLETADO) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(j.toMap());
+        }
+        byte[] bytes = cargaJobService.incidenciasTxt(j).getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=incidencias_" + id + ".txt")
+                .contentType(MediaType.TEXT_PLAIN)
+                .contentLength(bytes.length)
+                .body(bytes);
+    }
+
+    // ===================== internos =====================
+
+    /**
+     * Encola la carga con idempotencia por huella (el mismo archivo ya importado devuelve el resultado guardado).
+     * Una validación (dryRun) no escribe: no consulta ni registra la huella.
+     */
+    private ResponseEntity<Map<String, Object>> encolar(String tipo, String codCliente, boolean forzar, boolean dryRun,
+                                                       MultipartFile file,
+                                                       CargaJobService.TareaCarga tarea,
+                                                       CargaJobService.GeneradorTxt txt) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("mensaje", "❌ El archivo está vacío."));
+        }
+        CargaJobService.TareaCarga conHuella = dryRun ? tarea : (archivo, nombre, progreso) ->
+                huellaCargaService.ejecutar(tipo, codCliente, archivo, nombre, forzar,
+                        () -> tarea.ejecutar(archivo, nombre, progreso));
+        try {
+            CargaJobService.CargaJob job = cargaJobService.encolar(dryRun ? tipo + "_VALIDACION" : tipo, file, conHuella, txt);
+            Map<String, Object> body = job.toMap();
+            body.put("estadoUrl", "/api-sellout/cargas/" + job.getId());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Cola de cargas llena, se rechaza {} ({})", file.getOriginalFilename(), tipo);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "60")
+                    .body(Map.of("mensaje", "Cola de cargas llena, reintente más tarde.",
+                                 "capacidad", cargaJobService.capacidad()));
+        } catch (Exception e) {
+            logger.error("❌ No se pudo encolar {} ({}): {}", file.getOriginalFilename(), tipo, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("mensaje", "❌ No se pudo recibir el archivo: " + e.getMessage()));
+        }
+    }
+
+    /** Estrategia de escritura del parámetro; vacía si el valor no es válido. */
+    private static Optional<EstrategiaCarga> estrategia(String valor) {
+        try {
+            return Optional.of(EstrategiaCarga.de(valor));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static ResponseEntity<Map<String, Object>> estrategiaInvalida(String valor) {
+        return ResponseEntity.badRequest().body(Map.of("mensaje",
+                "❌ Estrategia de carga desconocida: " + valor + " (UPSERT, APPEND_ONLY o REPLACE_PERIOD)"));
+    }
+
+    /** Las cargas Deprati devuelven ResponseEntity: un estado de error pasa a ser el error del job. */
+    private static Map<String, Object> cuerpo(ResponseEntity<Map<String, Object>> r) {
+        Map<String, Object> body = r.getBody() != null ? r.getBody() : new LinkedHashMap<>();
+        if (r.getStatusCode().isError()) {
+            throw new IllegalStateException(String.valueOf(body.getOrDefault("mensaje", r.getStatusCode())));
+        }
+        return body;
+    }
+}
@@ -0,0 +1,25 @@
+package com.manamer.backend.business.sellout.controller;
+
+import com.manamer.backend.business.sellout.config.RuteoDataSource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/** Estado de los pools del primario y la réplica de lectura (RuteoDataSource). */
+@RestController
+@CrossOrigin(origins = "*", allowedHeaders = "*", methods = {RequestMethod.GET})
+@RequestMapping("/api-sellout/datasource")
+public class DataSourceController {
+
+    private final RuteoDataSource ruteoDataSource;
+
+    public DataSourceController(RuteoDataSource ruteoDataSource) {
+        this.ruteoDataSource = ruteoDataSource;
+    }
+
+    @GetMapping("/pools")
+    public ResponseEntity<Map<String, Object>> pools() {
+        return ResponseEntity.ok(ruteoDataSource.metricas());
+    }
+}
@@ -7,6 +7,8 @@ import com.manamer.backend.business.sellout.models.TipoMueble;
 import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.service.ClienteService;
 import com.manamer.backend.business.sellout.service.DepratiVentaService;
+import com.manamer.backend.business.sellout.service.EstrategiaCarga;
+import com.manamer.backend.business.sellout.service.PlanExtraccion;
 import com.manamer.backend.business.sellout.service.ProductoService;
 import com.manamer.backend.business.sellout.service.TipoMuebleService;
 import com.manamer.backend.business.sellout.service.VentaService;
@@ -28,7 +30,6 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.dao.DataIntegrityViolationException;
 
 import java.io.IOException;
-import java.text.Normalizer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -59,11 +60,7 @@ public class DepratiController {
     }
 
     public static String normalizarTexto(String input) {
-        if (input == null) return null;
-        return Normalizer.normalize(input.toLowerCase().trim(), Normalizer.Form.NFD)
-                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
-                .replaceAll("[^\\p{ASCII}]", "")
-                .replaceAll("[\\.,\"']", "");
+        return PlanExtraccion.normalizar(input);
     }
 
     private Workbook obtenerWorkbookCorrecto(MultipartFile file) throws IOException {
@@ -182,16 +179,30 @@ public class DepratiController {
     // ===================== CARGAS EXCEL (SIN CAMBIOS) =====================
     @PostMapping("/subir-archivos-motor-maping")
     public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "forzar", required = false, defaultValue = "false") boolean forzar,
+            @RequestParam(value = "dryRun", required = false, defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "estrategia", required = false) String estrategia) {
 
-        return depratiVentaService.procesarArchivoExcelFlexible(file);
+        try {
+            return depratiVentaService.procesarArchivoExcelFlexible(file, forzar, dryRun, EstrategiaCarga.de(estrategia));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("mensaje", "❌ " + e.getMessage()));
+        }
     }
 
     @PostMapping("/subir-archivo-venta")
     public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(
-            @RequestParam("file") MultipartFile file) {
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "forzar", required = false, defaultValue = "false") boolean forzar,
+            @RequestParam(value = "dryRun", required = false, defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "estrategia", required = false) String estrategia) {
 
-        return depratiVentaService.procesarArchivoExcelDeprati(file);
+        try {
+            return depratiVentaService.procesarArchivoExcelDeprati(file, forzar, dryRun, EstrategiaCarga.de(estrategia));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("mensaje", "❌ " + e.getMessage()));
+        }
     }
 
 
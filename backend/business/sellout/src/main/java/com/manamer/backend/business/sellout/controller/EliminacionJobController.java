@@ -0,0 +1,92 @@
+package com.manamer.backend.business.sellout.controller;
+
+import com.manamer.backend.business.sellout.service.EliminacionJobService;
+import com.manamer.backend.business.sellout.service.TemplateGeneralService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Eliminaciones de ventas en segundo plano: la selección o el filtro se acepta (202 + jobId) y se borra por lotes
+ * en EliminacionJobService. El avance se consulta con GET /{id}; un job en ERROR se reanuda con POST /{id}/reanudar.
+ */
+@RestController
+@CrossOrigin(origins = "*", allowedHeaders = "*", methods = {RequestMethod.GET, RequestMethod.POST})
+@RequestMapping("/api-sellout/eliminaciones")
+public class EliminacionJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(EliminacionJobController.class);
+
+    private final EliminacionJobService eliminacionJobService;
+
+    public EliminacionJobController(EliminacionJobService eliminacionJobService) {
+        this.eliminacionJobService = eliminacionJobService;
+    }
+
+    /** Body: [{anio, mes, codBarra, codPdv}, ...] sin tope de claves. */
+    @PostMapping("/seleccion")
+    public ResponseEntity<Map<String, Object>> encolarSeleccion(@RequestBody List<TemplateGeneralService.KeyVenta> seleccion) {
+        if (seleccion == null || seleccion.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("mensaje", "❌ No hay registros seleccionados."));
+        }
+        try {
+            return aceptado(eliminacionJobService.encolarSeleccion(seleccion));
+        } catch (Exception e) {
+            logger.error("❌ No se pudo encolar la eliminación de {} claves: {}", seleccion.size(), e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("mensaje", "❌ No se pudo encolar la eliminación: " + e.getMessage()));
+        }
+    }
+
+    /** Al menos un filtro: sin ninguno se borraría la tabla completa. */
+    @PostMapping("/filtro")
+    public ResponseEntity<Map<String, Object>> encolarFiltro(@RequestParam(required = false) Integer anio,
+                                                             @RequestParam(required = false) Integer mes,
+                                                             @RequestParam(required = false) String marca,
+                                                             @RequestParam(required = false) String codPdv,
+                                                             @RequestParam(required = false) Long maxTotal) {
+        if (anio == null && mes == null && (marca == null || marca.isBlank()) && (codPdv == null || codPdv.isBlank())) {
+            return ResponseEntity.badRequest().body(Map.of("mensaje", "❌ Indique al menos un filtro (anio, mes, marca o codPdv)."));
+        }
+        try {
+            return aceptado(eliminacionJobService.encolarFiltro(anio, mes, marca, codPdv, maxTotal));
+        } catch (Exception e) {
+            logger.error("❌ No se pudo encolar la eliminación por filtros: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("mensaje", "❌ No se pudo encolar la eliminación: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Map<String, Object>>> listar() {
+        return ResponseEntity.ok(eliminacionJobService.listar());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> estado(@PathVariable String id) {
+        return eliminacionJobService.estado(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> noEncontrado(id));
+    }
+
+    @PostMapping("/{id}/reanudar")
+    public ResponseEntity<Map<String, Object>> reanudar(@PathVariable String id) {
+        return eliminacionJobService.reanudar(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> noEncontrado(id));
+    }
+
+    private static ResponseEntity<Map<String, Object>> aceptado(Map<String, Object> job) {
+        job.put("estadoUrl", "/api-sellout/eliminaciones/" + job.get("jobId"));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    private static ResponseEntity<Map<String, Object>> noEncontrado(String id) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("mensaje", "Job no encontrado: " + id));
+    }
+}
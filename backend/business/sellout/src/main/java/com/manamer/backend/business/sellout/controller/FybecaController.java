@@ -11,7 +11,6 @@ import com.manamer.backend.business.sellout.service.ProductoService;
 import com.manamer.backend.business.sellout.service.TipoMuebleService;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
@@ -26,8 +25,8 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.text.Normalizer;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 @RestController
@@ -45,16 +44,22 @@ public class FybecaController {
     private final TipoMuebleService tipoMuebleService;
     private final ClienteService clienteService;
     private final ProductoService productoService;
+    private final SpoolSubidas spoolSubidas;
+    private final HuellaCargaService huellaCargaService;
 
     @Autowired
     public FybecaController(FybecaVentaService fybecaService,
                             TipoMuebleService tipoMuebleService,
                             ClienteService clienteService,
-                            ProductoService productoService) {
+                            ProductoService productoService,
+                            SpoolSubidas spoolSubidas,
+                            HuellaCargaService huellaCargaService) {
         this.fybecaService = fybecaService;
         this.tipoMuebleService = tipoMuebleService;
         this.clienteService = clienteService;
         this.productoService = productoService;
+        this.spoolSubidas = spoolSubidas;
+        this.huellaCargaService = huellaCargaService;
     }
 
     // ---------- Helpers ----------
@@ -72,59 +77,7 @@ public class FybecaController {
     }
 
     public static String normalizarTexto(String input) {
-        if (input == null) return null;
-        return Normalizer.normalize(input.toLowerCase().trim(), Normalizer.Form.NFD)
-                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
-                .replaceAll("[^\\p{ASCII}]", "")
-                .replaceAll("[\\.,\"']", "");
-    }
-
-    private Workbook obtenerWorkbookCorrecto(MultipartFile file) throws IOException {
-        String nombreArchivo = file.getOriginalFilename();
-        if (nombreArchivo != null && nombreArchivo.toLowerCase().endsWith(".xls")) {
-            return new HSSFWorkbook(file.getInputStream());
-        } else {
-            return new XSSFWorkbook(file.getInputStream());
-        }
-    }
-
-    private <T> T obtenerValorCelda(Cell cell, Class<T> clazz) {
-        if (cell == null) {
-            if (clazz == Integer.class) return clazz.cast(0);
-            if (clazz == Double.class) return clazz.cast(0.0);
-            return null;
-        }
-        try {
-            switch (cell.getCellType()) {
-                case NUMERIC:
-                    if (clazz == Integer.class) return clazz.cast((int) cell.getNumericCellValue());
-                    if (clazz == Double.class) return clazz.cast(cell.getNumericCellValue());
-                    if (clazz == String.class) return clazz.cast(String.valueOf((int) cell.getNumericCellValue()));
-                    break;
-                case STRING:
-                    String value = cell.getStringCellValue().trim();
-                    if (clazz == Integer.class) {
-                        try { return clazz.cast(Integer.parseInt(value)); } catch (NumberFormatException e) { return clazz.cast(0); }
-                    } else if (clazz == Double.class) {
-                        try { return clazz.cast(Double.parseDouble(value)); } catch (NumberFormatException e) { return clazz.cast(0.0); }
-                    } else {
-                        return clazz.cast(value);
-                    }
-                case BLANK:
-                    if (clazz == Integer.class) return clazz.cast(0);
-                    if (clazz == Double.class) return clazz.cast(0.0);
-                    return null;
-                default:
-                    if (clazz == Integer.class) return clazz.cast(0);
-                    if (clazz == Double.class) return clazz.cast(0.0);
-                    return null;
-            }
-        } catch (Exception e) {
-            logger.error("Error al convertir celda: {}", cell, e);
-            if (clazz == Integer.class) return clazz.cast(0);
-            if (clazz == Double.class) return clazz.cast(0.0);
-        }
-        return null;
+        return FybecaVentaService.normalizarTexto(input);
     }
 
     // ---------- Ventas ----------
@@ -203,142 +156,52 @@ public class FybecaController {
      * Subida flexible de ventas:
      * - Detecta columnas por encabezado.
      * - Resuelve Cliente (ID real) y lo asigna a cada venta.
-     * - Enriquecimiento con cargarDatosDeProducto(Cliente,...).
-     * - Upsert con guardarOActualizarVenta(Cliente,...).
-     * - Devuelve TXT con códigos no encontrados.
+     * - Carga por bloques en FybecaVentaService (productos, existentes y escritura por bloque).
+     * - Devuelve detalle de códigos no encontrados, conteos y tiempos por fase.
+     * - dryRun=true: valida y cuenta sin guardar (no usa la huella de idempotencia).
+     * - estrategia: UPSERT (por defecto), APPEND_ONLY o REPLACE_PERIOD (ver EscritorVentas); otro valor es 400.
      */
     @PostMapping("/subir-archivo-venta")
     public ResponseEntity<Map<String, Object>> subirArchivoVentaFlexible(@RequestParam("file") MultipartFile file,
-                                                                         @RequestParam(required = false) String codCliente) {
+                                                                         @RequestParam(required = false) String codCliente,
+                                                                         @RequestParam(defaultValue = "false") boolean forzar,
+                                                                         @RequestParam(defaultValue = "false") boolean dryRun,
+                                                                         @RequestParam(required = false) String estrategia) {
         String cod = resolveCodCliente(codCliente);
-        logger.info("Inicio de carga de archivo de ventas: {} para codCliente={}", file.getOriginalFilename(), cod);
+        logger.info("Inicio de carga de archivo de ventas: {} para codCliente={} dryRun={} estrategia={}",
+                file.getOriginalFilename(), cod, dryRun, estrategia);
+
+        EstrategiaCarga estrategiaCarga;
+        try {
+            estrategiaCarga = EstrategiaCarga.de(estrategia);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        }
 
-        Set<String> codigosNoEncontrados = new HashSet<>();
-        List<Map<String, Object>> detalleNoEncontrados = new ArrayList<>();
         if (file.isEmpty()) {
             logger.warn("El archivo recibido está vacío.");
             return ResponseEntity.badRequest().build();
         }
 
-        try (Workbook workbook = obtenerWorkbookCorrecto(file)) {
-            var clienteOpt = clienteService.findByCodCliente(cod);
-            if (clienteOpt.isEmpty()) {
-                logger.error("Cliente con codCliente {} no existe", cod);
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
-            }
-            final Cliente clienteCarga = clienteOpt.get(); // ID real
-
-            Sheet sheet = workbook.getSheetAt(0);
-            Row encabezado = sheet.getRow(0);
-            if (encabezado == null) throw new IllegalArgumentException("La primera fila (encabezados) está vacía.");
-
-            Map<String, List<String>> camposEsperados = new HashMap<>();
-            camposEsperados.put("anio", List.of("año", "anio", "Año"));
-            camposEsperados.put("mes", List.of("mes", "Mes"));
-            camposEsperados.put("codBarra", List.of("codigo barra", "cod_barra", "codigobarra", "COD ITEM", "cod barra", "codbarra"));
-            camposEsperados.put("codPdv", List.of("codigo pdv", "cod_pdv", "COD LOCAL", "cod pdv"));
-            camposEsperados.put("pdv", List.of("pdv", "NOMBRE LOCAL", "nombre pdv"));
-            camposEsperados.put("ventaDolares", List.of("venta_dolares", "venta $", "venta dolares", "Venta Dolares", "venta usd"));
-            camposEsperados.put("ventaUnidad", List.of("venta_unidades", "venta unidades", "Venta Unidades"));
-            camposEsperados.put("stockDolares", List.of("stock_dolares", "stock usd", "Stock Dolares", "stock dolares"));
-            camposEsperados.put("stockUnidades", List.of("stock_unidades", "stock unidades", "Stock en Unidades"));
-            camposEsperados.put("marca", List.of("marca", "Marca"));
-            camposEsperados.put("nombreProducto", List.of("producto", "nombre producto", "Nombre Producto"));
-            camposEsperados.put("descripcion", List.of("descripcion", "Descripción"));
-            Map<String, Integer> columnaPorCampo = new HashMap<>();
-            for (Cell celda : encabezado) {
-                String valor = obtenerValorCelda(celda, String.class);
-                if (valor == null) continue;
-                String valorNormalizado = normalizarTexto(valor);
-                for (Map.Entry<String, List<String>> entry : camposEsperados.entrySet()) {
-                    boolean match = entry.getValue().stream()
-                            .map(FybecaController::normalizarTexto)
-                            .anyMatch(v -> v.equals(valorNormalizado));
-                    if (match) {
-                        columnaPorCampo.put(entry.getKey(), celda.getColumnIndex());
-                        logger.info("✔ Columna '{}' mapeada a campo '{}'", valor, entry.getKey());
-                    }
-                }
-            }
-
-            for (String campo : camposEsperados.keySet()) {
-                if (!columnaPorCampo.containsKey(campo)) {
-                    logger.warn("❌ No se detectó ninguna columna para el campo obligatorio: {}", campo);
-                }
-            }
-
-            for (int i = 1; i <= sheet.getLastRowNum(); i++) {
-                Row row = sheet.getRow(i);
-                if (row == null) continue;
-
-                try {
-                    Venta venta = new Venta();
-                    venta.setDia(1);
-                    // Asigna SIEMPRE el cliente con ID real
-                    venta.setCliente(clienteCarga);
-
-                    if (columnaPorCampo.containsKey("anio"))
-                        venta.setAnio(obtenerValorCelda(row.getCell(columnaPorCampo.get("anio")), Integer.class));
-                    if (columnaPorCampo.containsKey("mes"))
-                        venta.setMes(obtenerValorCelda(row.getCell(columnaPorCampo.get("mes")), Integer.class));
-                    if (columnaPorCampo.containsKey("ventaDolares"))
-                        venta.setVentaDolares(obtenerValorCelda(row.getCell(columnaPorCampo.get("ventaDolares")), Double.class));
-                    if (columnaPorCampo.containsKey("ventaUnidad"))
-                        venta.setVentaUnidad(obtenerValorCelda(row.getCell(columnaPorCampo.get("ventaUnidad")), Double.class));
-                    if (columnaPorCampo.containsKey("codBarra"))
-                        venta.setCodBarra(obtenerValorCelda(row.getCell(columnaPorCampo.get("codBarra")), String.class));
-                    if (columnaPorCampo.containsKey("codPdv"))
-                        venta.setCodPdv(obtenerValorCelda(row.getCell(columnaPorCampo.get("codPdv")), String.class));
-                    if (columnaPorCampo.containsKey("pdv"))
-                        venta.setPdv(obtenerValorCelda(row.getCell(columnaPorCampo.get("pdv")), String.class));
-                    if (columnaPorCampo.containsKey("stockDolares"))
-                        venta.setStockDolares(obtenerValorCelda(row.getCell(columnaPorCampo.get("stockDolares")), Double.class));
-                    if (columnaPorCampo.containsKey("stockUnidades"))
-                        venta.setStockUnidades(obtenerValorCelda(row.getCell(columnaPorCampo.get("stockUnidades")), Double.class));
-                    if (columnaPorCampo.containsKey("marca"))
-                        venta.setMarca(obtenerValorCelda(row.getCell(columnaPorCampo.get("marca")), String.class));
-                    if (columnaPorCampo.containsKey("nombreProducto"))
-                        venta.setNombreProducto(obtenerValorCelda(row.getCell(columnaPorCampo.get("nombreProducto")), String.class));
-                    if (columnaPorCampo.containsKey("descripcion"))
-                        venta.setDescripcion(obtenerValorCelda(row.getCell(columnaPorCampo.get("descripcion")), String.class));
-                    if (venta.getCodBarra() == null || venta.getCodBarra().trim().isEmpty()) {
-                        logger.warn("⚠️ Fila {}: Código de barra vacío", i + 1);
-                        detalleNoEncontrados.add(Map.of(
-                                "codigo", "CODBARRA_VACIO",
-                                "motivo", "Fila " + (i + 1) + ": Código de barra vacío"
-                        ));
-                        continue;
-                    }
-
-                    boolean datosCargados = fybecaService.cargarDatosDeProducto(clienteCarga, venta, codigosNoEncontrados);
-                    if (!datosCargados) {
-                        logger.warn("⚠️ Fila {}: No se encontraron datos para el código {}", i + 1, venta.getCodBarra());
-                        detalleNoEncontrados.add(Map.of(
-                                "codigo", Objects.toString(venta.getCodBarra(), "N/D"),
-                                "motivo", "Fila " + (i + 1) + ": No se encontraron datos para el código " + Objects.toString(venta.getCodBarra(), "N/D")
-                        ));
-                        continue;
-                    }
-
-                    fybecaService.guardarOActualizarVenta(clienteCarga, venta);
-
-                } catch (Exception exFila) {
-                    logger.error("❌ Error procesando fila {}: {}", i + 1, exFila.getMessage(), exFila);
-                }
-            }
+        var clienteOpt = clienteService.findByCodCliente(cod);
+        if (clienteOpt.isEmpty()) {
+            logger.error("Cliente con codCliente {} no existe", cod);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
 
-            Map<String, Object> body = new HashMap<>();
-            body.put("codigosNoEncontrados", detalleNoEncontrados);
-            body.put("filasLeidas", sheet.getLastRowNum());
-            body.put("filasProcesadas", sheet.getLastRowNum());
+        try (SpoolSubidas.ArchivoSubido archivo = spoolSubidas.guardar(file)) {
+            Callable<Map<String, Object>> carga = () -> fybecaService.cargarArchivoVentaFlexible(
+                    clienteOpt.get(), archivo.getRuta(), file.getOriginalFilename(), ProgresoCarga.NINGUNO, dryRun, estrategiaCarga);
+            Map<String, Object> body = dryRun
+                    ? carga.call()
+                    : huellaCargaService.ejecutar(estrategiaCarga.endpointHuella("FYBECA"), cod, archivo.getRuta(), file.getOriginalFilename(), forzar, carga);
             return ResponseEntity.ok(body);
-
         } catch (IOException e) {
             logger.error("❌ Error leyendo archivo Excel: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", e.getMessage()));
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", String.valueOf(e.getMessage())));
         } catch (Exception e) {
             logger.error("❌ Error inesperado al procesar archivo: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", e.getMessage()));
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", String.valueOf(e.getMessage())));
         }
     }
 
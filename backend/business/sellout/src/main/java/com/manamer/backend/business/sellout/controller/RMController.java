@@ -1,7 +1,11 @@
 package com.manamer.backend.business.sellout.controller;
 
 import com.manamer.backend.business.sellout.models.Venta;
+import com.manamer.backend.business.sellout.service.EstrategiaCarga;
+import com.manamer.backend.business.sellout.service.HuellaCargaService;
+import com.manamer.backend.business.sellout.service.ProgresoCarga;
 import com.manamer.backend.business.sellout.service.RMService;
+import com.manamer.backend.business.sellout.service.SpoolSubidas;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,6 +17,7 @@ import org.springframework.web.multipart.MultipartFile;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
 
 @RestController
 @CrossOrigin(origins = "*", allowedHeaders = "*")
@@ -22,12 +27,16 @@ public class RMController {
     private static final Logger log = LoggerFactory.getLogger(RMController.class);
 
     private final RMService rmService;
+    private final SpoolSubidas spoolSubidas;
+    private final HuellaCargaService huellaCargaService;
 
     private static final String DEFAULT_COD_CLIENTE = "MZCL-000008";
 
     @Autowired
-    public RMController(RMService rmService) {
+    public RMController(RMService rmService, SpoolSubidas spoolSubidas, HuellaCargaService huellaCargaService) {
         this.rmService = rmService;
+        this.spoolSubidas = spoolSubidas;
+        this.huellaCargaService = huellaCargaService;
     }
 
     // ==========================================================
@@ -38,14 +47,18 @@ public class RMController {
     public ResponseEntity<?> subirArchivoVentaRM(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "codCliente", required = false) String codCliente,
-            @RequestParam(value = "txt", required = false, defaultValue = "false") boolean txt
+            @RequestParam(value = "txt", required = false, defaultValue = "false") boolean txt,
+            @RequestParam(value = "paralelo", required = false, defaultValue = "false") boolean paralelo,
+            @RequestParam(value = "forzar", required = false, defaultValue = "false") boolean forzar,
+            @RequestParam(value = "dryRun", required = false, defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "estrategia", required = false) String estrategia
     ) {
         String nombre = (file != null && file.getOriginalFilename() != null) ? file.getOriginalFilename() : "archivo.xlsx";
 
         log.info("==================================================");
         log.info("[RM] INICIO CARGA EXCEL");
-        log.info("[RM] Archivo='{}' size={} bytes codClienteParam='{}' txt={}",
-                nombre, (file != null ? file.getSize() : -1), codCliente, txt);
+        log.info("[RM] Archivo='{}' size={} bytes codClienteParam='{}' txt={} paralelo={} dryRun={} estrategia={}",
+                nombre, (file != null ? file.getSize() : -1), codCliente, txt, paralelo, dryRun, estrategia);
 
         if (file == null || file.isEmpty()) {
             log.warn("[RM] Archivo nulo o vacío.");
@@ -55,10 +68,14 @@ public class RMController {
             ));
         }
 
-        try {
-            Map<String, Object> res = (codCliente == null || codCliente.isBlank())
-                    ? rmService.cargarExcelRM(file.getInputStream(), nombre)
-                    : rmService.cargarExcelRM(file.getInputStream(), codCliente.trim(), nombre);
+        try (SpoolSubidas.ArchivoSubido archivo = spoolSubidas.guardar(file)) {
+            String cod = (codCliente == null || codCliente.isBlank()) ? DEFAULT_COD_CLIENTE : codCliente.trim();
+            EstrategiaCarga estrategiaCarga = EstrategiaCarga.de(estrategia);
+            Callable<Map<String, Object>> carga = () -> rmService.cargarExcelRM(
+                    archivo.getRuta(), cod, nombre, ProgresoCarga.NINGUNO, paralelo, dryRun, estrategiaCarga);
+            Map<String, Object> res = dryRun
+                    ? carga.call()
+                    : huellaCargaService.ejecutar(estrategiaCarga.endpointHuella("RM"), cod, archivo.getRuta(), nombre, forzar, carga);
 
             Object ok = res.getOrDefault("ok", false);
             int leidasV = asInt(res.getOrDefault("filasLeidasVentas", 0));
@@ -2,6 +2,10 @@ package com.manamer.backend.business.sellout.controller;
 
 import com.manamer.backend.business.sellout.models.ExcelUtils;
 import com.manamer.backend.business.sellout.models.Venta;
+import com.manamer.backend.business.sellout.service.EstrategiaCarga;
+import com.manamer.backend.business.sellout.service.HuellaCargaService;
+import com.manamer.backend.business.sellout.service.ProgresoCarga;
+import com.manamer.backend.business.sellout.service.SpoolSubidas;
 import com.manamer.backend.business.sellout.service.TemplateGeneralService;
 import com.manamer.backend.business.sellout.service.VentaService;
 import jakarta.servlet.http.HttpServletRequest;
@@ -21,6 +25,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 @RestController
 @CrossOrigin(origins = "*", allowedHeaders = "*", methods = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE})
@@ -33,16 +38,25 @@ public class TemplateGeneralController {
     private static final Set<String> CONTENT_TYPES_XLS = Set.of(
             "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
             "application/vnd.ms-excel",
-            "application/octet-stream" // algunos navegadores envían esto
+            "application/octet-stream", // algunos navegadores envían esto
+            "text/csv",
+            "text/tab-separated-values",
+            "text/plain"
     );
 
     private final VentaService ventaService;
     private final TemplateGeneralService templateGeneralService;
+    private final SpoolSubidas spoolSubidas;
+    private final HuellaCargaService huellaCargaService;
 
     public TemplateGeneralController(VentaService ventaService,
-                                     TemplateGeneralService templateGeneralService) {
+                                     TemplateGeneralService templateGeneralService,
+                                     SpoolSubidas spoolSubidas,
+                                     HuellaCargaService huellaCargaService) {
         this.ventaService = ventaService;
         this.templateGeneralService = templateGeneralService;
+        this.spoolSubidas = spoolSubidas;
+        this.huellaCargaService = huellaCargaService;
     }
 
     // ===================== Ventas (CRUD básico) =====================
@@ -160,10 +174,15 @@ public class TemplateGeneralController {
      * Sube el archivo del Template General (encabezados en Base!B4:N4; datos desde fila 5)
      * y devuelve un .txt con incidencias (si existen) o un resumen OK.
      * Día/Mes/Año se derivan de la columna "MES" (formato dd/MM/yyyy, p.ej. 01/03/2025).
+     * Con dryRun=true valida y devuelve las mismas incidencias sin guardar nada.
+     * estrategia=UPSERT (defecto) | APPEND_ONLY | REPLACE_PERIOD elige cómo se escriben las ventas (EstrategiaCarga).
      */
     @PostMapping("/subir-archivo-template-general")
     public ResponseEntity<?> subirArchivoTemplateGeneral(
             @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "forzar", required = false, defaultValue = "false") boolean forzar,
+            @RequestParam(value = "dryRun", required = false, defaultValue = "false") boolean dryRun,
+            @RequestParam(value = "estrategia", required = false) String estrategia,
             HttpServletRequest req) {
         String cid = corrId();
         logger.info("[{}] Inicio de carga CU4: {}", cid, file != null ? file.getOriginalFilename() : "(null)");
@@ -181,29 +200,37 @@ public class TemplateGeneralController {
         }
 
         String filename = Optional.ofNullable(file.getOriginalFilename()).orElse("").toLowerCase(Locale.ROOT);
-        if (!(filename.endsWith(".xlsx") || filename.endsWith(".xls"))) {
+        if (!esExtensionSoportada(filename)) {
             logger.warn("[{}] Extensión no soportada: {}", cid, filename);
             return error(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Tipo de archivo no soportado.",
-                    "Se espera un Excel (.xlsx o .xls).", req.getRequestURI(), cid);
+                    "Se espera un Excel (.xlsx o .xls) o un CSV/TSV (.csv, .tsv, .txt).", req.getRequestURI(), cid);
         }
         String ct = Optional.ofNullable(file.getContentType()).orElse("");
         if (!ct.isBlank() && !CONTENT_TYPES_XLS.contains(ct)) {
-            logger.warn("[{}] Content-Type no estándar para Excel: {}", cid, ct);
+            logger.warn("[{}] Content-Type no estándar para Excel/CSV: {}", cid, ct);
             // Permitimos continuar; si prefieres bloquear, cambia el return a 415.
         }
 
-        try {
+        try (SpoolSubidas.ArchivoSubido archivo = spoolSubidas.guardar(file)) {
+            EstrategiaCarga estrategiaCarga = EstrategiaCarga.de(estrategia);
             // Procesar con el service
-            Map<String, Object> res = templateGeneralService.cargarTemplateGeneral(
-                    file.getInputStream(),
-                    file.getOriginalFilename()
+            Callable<Map<String, Object>> carga = () -> templateGeneralService.cargarTemplateGeneral(
+                    archivo.getRuta(),
+                    file.getOriginalFilename(),
+                    ProgresoCarga.NINGUNO,
+                    dryRun,
+                    estrategiaCarga
             );
+            Map<String, Object> res = dryRun
+                    ? carga.call()
+                    : huellaCargaService.ejecutar(estrategiaCarga.endpointHuella("TEMPLATE_GENERAL"), HuellaCargaService.MULTICLIENTE,
+                            archivo.getRuta(), file.getOriginalFilename(), forzar, carga);
 
             // Armar TXT de incidencias
-            String txt = buildIncidenciasTxt(res, file.getOriginalFilename());
+            String txt = templateGeneralService.generarIncidenciasTxt(res, file.getOriginalFilename());
             byte[] bytes = txt.getBytes(StandardCharsets.UTF_8);
 
-            String outName = "incidencias_template_general_" +
+            String outName = (dryRun ? "validacion_" : "") + "incidencias_template_general_" +
                     LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
 
             InputStreamResource resource = new InputStreamResource(new ByteArrayInputStream(bytes));
@@ -229,6 +256,9 @@ public class TemplateGeneralController {
     @PostMapping("/subir-archivo-template-general/json")
     public ResponseEntity<?> subirArchivoTemplateGeneralJson(
         @RequestParam("file") MultipartFile file,
+        @RequestParam(value = "forzar", required = false, defaultValue = "false") boolean forzar,
+        @RequestParam(value = "dryRun", required = false, defaultValue = "false") boolean dryRun,
+        @RequestParam(value = "estrategia", required = false) String estrategia,
         HttpServletRequest req
     ) {
         String cid = corrId();
@@ -245,17 +275,25 @@ public class TemplateGeneralController {
                     "Tamaño máximo permitido: " + MAX_UPLOAD_BYTES + " bytes.", req.getRequestURI(), cid);
         }
         String filename = Optional.ofNullable(file.getOriginalFilename()).orElse("").toLowerCase(Locale.ROOT);
-        if (!(filename.endsWith(".xlsx") || filename.endsWith(".xls"))) {
+        if (!esExtensionSoportada(filename)) {
             logger.warn("[{}] Extensión no soportada (JSON): {}", cid, filename);
             return error(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Tipo de archivo no soportado.",
-                    "Se espera un Excel (.xlsx o .xls).", req.getRequestURI(), cid);
+                    "Se espera un Excel (.xlsx o .xls) o un CSV/TSV (.csv, .tsv, .txt).", req.getRequestURI(), cid);
         }
 
-        try {
-            Map<String, Object> res = templateGeneralService.cargarTemplateGeneral(
-                    file.getInputStream(),
-                    file.getOriginalFilename()
+        try (SpoolSubidas.ArchivoSubido archivo = spoolSubidas.guardar(file)) {
+            EstrategiaCarga estrategiaCarga = EstrategiaCarga.de(estrategia);
+            Callable<Map<String, Object>> carga = () -> templateGeneralService.cargarTemplateGeneral(
+                    archivo.getRuta(),
+                    file.getOriginalFilename(),
+                    ProgresoCarga.NINGUNO,
+                    dryRun,
+                    estrategiaCarga
             );
+            Map<String, Object> res = dryRun
+                    ? carga.call()
+                    : huellaCargaService.ejecutar(estrategiaCarga.endpointHuella("TEMPLATE_GENERAL"), HuellaCargaService.MULTICLIENTE,
+                            archivo.getRuta(), file.getOriginalFilename(), forzar, carga);
             return ResponseEntity.ok()
                     .header("X-Correlation-Id", cid)
                     .body(res);
@@ -407,110 +445,6 @@ public class TemplateGeneralController {
 
     // ===================== Helpers =====================
 
-    private String buildIncidenciasTxt(Map<String, Object> res, String nombreArchivo) {
-        String nl = System.lineSeparator();
-        StringBuilder sb = new StringBuilder();
-
-        // Portada
-        sb.append("INCIDENCIAS DETECTADAS - TEMPLATE GENERAL (CU4)").append(nl);
-        sb.append("Archivo: ").append(nombreArchivo).append(nl);
-        sb.append("Generado: ")
-        .append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
-        .append(nl);
-        sb.append("----").append(nl);
-
-        // Resumen
-        sb.append("[RESUMEN]").append(nl);
-        sb.append("ok=").append(res.getOrDefault("ok", false)).append(nl);
-        sb.append("filasLeidas=").append(res.getOrDefault("filasLeidas", 0)).append(nl);
-        sb.append("filasConCodCliente=").append(res.getOrDefault("filasConCodCliente", 0)).append(nl);
-        sb.append("insertados=").append(res.getOrDefault("insertados", 0)).append(nl);
-        sb.append("actualizados=").append(res.getOrDefault("actualizados", 0)).append(nl);
-        sb.append("omitidos=").append(res.getOrDefault("omitidos", 0)).append(nl);
-        sb.append("errores=").append(res.getOrDefault("errores", 0)).append(nl);
-        sb.append("----").append(nl).append(nl);
-
-        // Errores/advertencias generales
-        sb.append("[INCIDENCIAS GENERALES]").append(nl);
-        Object inc = res.get("incidencias");
-        if (inc instanceof List<?> lst && !lst.isEmpty()) {
-            for (Object it : lst) sb.append("- ").append(String.valueOf(it)).append(nl);
-        } else {
-            sb.append("Sin incidencias.").append(nl);
-        }
-        sb.append(nl);
-
-        // Detalle: Omitidos
-        sb.append("[DETALLE DE FILAS OMITIDAS]").append(nl);
-        List<?> omitidos = (List<?>) res.getOrDefault("detalleOmitidos", List.of());
-        if (omitidos.isEmpty()) {
-            sb.append("Sin filas omitidas.").append(nl);
-        } else {
-            sb.append("Fila\tCODBARRA\tCOD_PDV\tMotivo").append(nl);
-            for (Object o : omitidos) {
-                if (o instanceof Map<?, ?> m) {
-                    sb.append(Objects.toString(m.get("fila"), ""))
-                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
-                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
-                    .append('\t').append(Objects.toString(m.get("motivo"), ""))
-                    .append(nl);
-                }
-            }
-        }
-        sb.append(nl);
-
-        // Detalle: Insertados
-        sb.append("[DETALLE DE FILAS INSERTADAS]").append(nl);
-        List<?> insertados = (List<?>) res.getOrDefault("detalleInsertados", List.of());
-        if (insertados.isEmpty()) {
-            sb.append("Sin filas insertadas.").append(nl);
-        } else {
-            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
-            for (Object o : insertados) {
-                if (o instanceof Map<?, ?> m) {
-                    sb.append(Objects.toString(m.get("fila"), ""))
-                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
-                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
-                    .append(nl);
-                }
-            }
-        }
-        sb.append(nl);
-
-        // Detalle: Actualizados
-        sb.append("[DETALLE DE FILAS ACTUALIZADAS]").append(nl);
-        List<?> actualizados = (List<?>) res.getOrDefault("detalleActualizados", List.of());
-        if (actualizados.isEmpty()) {
-            sb.append("Sin filas actualizadas.").append(nl);
-        } else {
-            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
-            for (Object o : actualizados) {
-                if (o instanceof Map<?, ?> m) {
-                    sb.append(Objects.toString(m.get("fila"), ""))
-                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
-                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
-                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
-                    .append(nl);
-                }
-            }
-        }
-        sb.append(nl);
-
-        // Listado de códigos afectados
-        sb.append("[CÓDIGOS AFECTADOS EN ESTA CARGA (CODBARRA)]").append(nl);
-        List<?> codigos = (List<?>) res.getOrDefault("codigosAfectados", List.of());
-        if (codigos.isEmpty()) {
-            sb.append("Ninguno.").append(nl);
-        } else {
-            for (Object c : codigos) sb.append("- ").append(String.valueOf(c)).append(nl);
-        }
-
-        return sb.toString();
-    }
-
     private ResponseEntity<Map<String, Object>> error(HttpStatus status, String message, String details,
                                                       String path, String correlationId) {
         Map<String, Object> body = new LinkedHashMap<>();
@@ -532,4 +466,10 @@ public class TemplateGeneralController {
     private String corrId() {
         return UUID.randomUUID().toString();
     }
+
+    /** Excel o texto delimitado (la hoja 'Base' exportada a CSV/TSV). */
+    private static boolean esExtensionSoportada(String filename) {
+        return filename.endsWith(".xlsx") || filename.endsWith(".xls")
+                || filename.endsWith(".csv") || filename.endsWith(".tsv") || filename.endsWith(".txt");
+    }
 }
@@ -0,0 +1,48 @@
+package com.manamer.backend.business.sellout.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Huella (SHA-256) de un archivo ya importado, por endpoint y cliente, con el resultado devuelto.
+ * Un archivo idéntico dentro de la vigencia devuelve este resultado sin volver a procesarse.
+ */
+@Data
+@Entity
+@Table(name = "carga_huella",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"endpoint", "cod_cliente", "sha256"}))
+public class CargaHuella {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 40)
+    private String endpoint;
+
+    @Column(name = "cod_cliente", nullable = false, length = 40)
+    private String codCliente;
+
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    private String nombreArchivo;
+
+    private Long bytes;
+
+    @Column(nullable = false)
+    private LocalDateTime fechaCarga;
+
+    // resultado de la carga en JSON
+    @Lob
+    private String resultado;
+}
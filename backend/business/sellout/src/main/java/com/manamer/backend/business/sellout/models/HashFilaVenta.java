@@ -0,0 +1,171 @@
+package com.manamer.backend.business.sellout.models;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Hash de contenido de una venta (columna {@code hash_fila}): XXH64 de todas las columnas salvo el id.
+ *
+ * Las cargas comparan el hash de la fila entrante con el guardado y solo escriben las que cambiaron;
+ * en un reenvío del archivo acumulado del mes casi todas las filas salen como {@code sinCambios}.
+ * Un UPDATE nativo que toque columnas de venta sin recalcularlo debe dejar {@code hash_fila = NULL}.
+ */
+public final class HashFilaVenta {
+
+    private HashFilaVenta() {}
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    // buffer de serialización por hilo (las cargas hashean cientos de miles de filas)
+    private static final ThreadLocal<Serializador> BUFFER = ThreadLocal.withInitial(Serializador::new);
+
+    /** Hash de la venta tal como quedaría guardada. */
+    public static long de(Venta v) {
+        return de(v, v.getProducto() != null ? v.getProducto().getId() : null);
+    }
+
+    /** Igual que {@link #de(Venta)} con otro producto (p.ej. el de la venta existente, que la carga conserva). */
+    public static long de(Venta v, Long productoId) {
+        Serializador s = BUFFER.get();
+        s.reiniciar();
+        s.entero(v.getAnio());
+        s.entero(v.getMes());
+        s.entero(v.getDia());
+        s.texto(v.getCodBarra());
+        s.texto(v.getCodPdv());
+        s.largo(v.getCliente() != null ? v.getCliente().getId() : null);
+        s.largo(productoId);
+        s.decimal(v.getVentaDolares());
+        s.decimal(v.getVentaUnidad());
+        s.decimal(v.getStockDolares());
+        s.decimal(v.getStockUnidades());
+        s.texto(v.getCiudad());
+        s.texto(v.getMarca());
+        s.texto(v.getNombreProducto());
+        s.texto(v.getCodigoSap());
+        s.texto(v.getDescripcion());
+        s.texto(v.getPdv());
+        s.texto(v.getUnidadesDiarias());
+        return xxh64(s.bytes, 0, s.pos, 0L);
+    }
+
+    /** XXH64 estándar de {@code len} bytes desde {@code off}. */
+    public static long xxh64(byte[] b, int off, int len, long seed) {
+        int fin = off + len;
+        int i = off;
+        long h;
+        if (len >= 32) {
+            long v1 = seed + P1 + P2, v2 = seed + P2, v3 = seed, v4 = seed - P1;
+            for (int limite = fin - 32; i <= limite; i += 32) {
+                v1 = ronda(v1, (long) LONG_LE.get(b, i));
+                v2 = ronda(v2, (long) LONG_LE.get(b, i + 8));
+                v3 = ronda(v3, (long) LONG_LE.get(b, i + 16));
+                v4 = ronda(v4, (long) LONG_LE.get(b, i + 24));
+            }
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = fusionar(h, v1);
+            h = fusionar(h, v2);
+            h = fusionar(h, v3);
+            h = fusionar(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += len;
+        for (; i + 8 <= fin; i += 8) {
+            h ^= ronda(0, (long) LONG_LE.get(b, i));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (i + 4 <= fin) {
+            h ^= ((int) INT_LE.get(b, i) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < fin; i++) {
+            h ^= (b[i] & 0xFFL) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long ronda(long acc, long dato) {
+        acc += dato * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long fusionar(long h, long v) {
+        h ^= ronda(0, v);
+        return h * P1 + P4;
+    }
+
+    /** Serialización con largo/ausencia explícitos para que campos vecinos no se confundan ("ab"+"c" vs "a"+"bc"). */
+    private static final class Serializador {
+        byte[] bytes = new byte[512];
+        int pos;
+
+        void reiniciar() { pos = 0; }
+
+        void entero(Integer v) {
+            if (v == null) { marca(0); return; }
+            marca(1);
+            espacio(4);
+            INT_LE.set(bytes, pos, (int) v);
+            pos += 4;
+        }
+
+        void largo(Long v) {
+            if (v == null) { marca(0); return; }
+            marca(1);
+            crudo(v);
+        }
+
+        void decimal(double v) {
+            // -0.0 y 0.0 se guardan igual en la columna
+            crudo(v == 0 ? 0L : Double.doubleToLongBits(v));
+        }
+
+        /** UTF-16 de los chars (sin codificar a UTF-8: basta con que sea determinista). */
+        void texto(String s) {
+            if (s == null) { marca(0); return; }
+            marca(1);
+            int n = s.length();
+            espacio(4 + 2 * n);
+            INT_LE.set(bytes, pos, n);
+            pos += 4;
+            for (int k = 0; k < n; k++) {
+                char c = s.charAt(k);
+                bytes[pos++] = (byte) c;
+                bytes[pos++] = (byte) (c >>> 8);
+            }
+        }
+
+        private void crudo(long v) {
+            espacio(8);
+            LONG_LE.set(bytes, pos, v);
+            pos += 8;
+        }
+
+        private void marca(int m) {
+            espacio(1);
+            bytes[pos++] = (byte) m;
+        }
+
+        private void espacio(int n) {
+            if (pos + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(pos + n, bytes.length * 2));
+        }
+    }
+}
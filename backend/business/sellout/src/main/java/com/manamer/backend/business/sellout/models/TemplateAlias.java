@@ -0,0 +1,32 @@
+package com.manamer.backend.business.sellout.models;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * Encabezado aceptado para un campo de una plantilla (p.ej. FYBECA / codBarra / "COD ITEM").
+ * Un campo puede tener varios alias; se comparan normalizados (ver PlanExtraccion#normalizar).
+ */
+@Data
+@Entity
+@Table(name = "template_alias")
+public class TemplateAlias {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 60)
+    private String templateName;
+
+    @Column(nullable = false, length = 40)
+    private String campo;
+
+    @Column(nullable = false, length = 120)
+    private String alias;
+}
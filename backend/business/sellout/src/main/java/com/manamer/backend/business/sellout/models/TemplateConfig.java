@@ -24,6 +24,12 @@ public class TemplateConfig {
     private int colFecha;
     private int colStartPdv;
     private int colStepPdv;
+
+    // Opcionales (null = no aplica a la plantilla); ver PlantillaService
+    private Integer rowEncabezado;
+    private Integer colEndPdv;
+    private Integer colInicio;
+    private Integer colFin;
     
     // Getters y setters
 }
\ No newline at end of file
@@ -9,8 +9,11 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import lombok.Data;
 import jakarta.persistence.Transient;
 /**
@@ -20,10 +23,14 @@ import jakarta.persistence.Transient;
 @Data
 @Entity
 public class Venta {
-    
-    
+
+    /** allocationSize de id = INCREMENT BY de venta_seq. */
+    public static final int IDS_POR_BLOQUE = 500;
+
+    // SEQUENCE pooled (V5__secuencias_ids.sql): Hibernate agrupa los INSERT; los de JDBC reservan rangos (VentaBatchWriter)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "venta_seq")
+    @SequenceGenerator(name = "venta_seq", sequenceName = "venta_seq", allocationSize = IDS_POR_BLOQUE)
     private Long id;
     
     private Integer anio;
@@ -52,4 +59,14 @@ public class Venta {
      private Producto producto;
 
     private String unidadesDiarias;
+
+    // XXH64 del contenido (ver HashFilaVenta): las cargas no reescriben filas que no cambiaron
+    @Column(name = "hash_fila")
+    private Long hashFila;
+
+    @PrePersist
+    @PreUpdate
+    void calcularHashFila() {
+        hashFila = HashFilaVenta.de(this);
+    }
  }
@@ -0,0 +1,14 @@
+package com.manamer.backend.business.sellout.repositories;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.manamer.backend.business.sellout.models.CargaHuella;
+
+@Repository
+public interface CargaHuellaRepository extends JpaRepository<CargaHuella, Long> {
+
+    Optional<CargaHuella> findByEndpointAndCodClienteAndSha256(String endpoint, String codCliente, String sha256);
+}
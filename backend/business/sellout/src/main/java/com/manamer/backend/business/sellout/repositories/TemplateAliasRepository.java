@@ -0,0 +1,14 @@
+package com.manamer.backend.business.sellout.repositories;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.manamer.backend.business.sellout.models.TemplateAlias;
+
+@Repository
+public interface TemplateAliasRepository extends JpaRepository<TemplateAlias, Long> {
+
+    List<TemplateAlias> findByTemplateNameOrderByIdAsc(String templateName);
+}
@@ -0,0 +1,14 @@
+package com.manamer.backend.business.sellout.repositories;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.manamer.backend.business.sellout.models.TemplateConfig;
+
+@Repository
+public interface TemplateConfigRepository extends JpaRepository<TemplateConfig, Long> {
+
+    Optional<TemplateConfig> findFirstByTemplateName(String templateName);
+}
@@ -3,6 +3,7 @@ package com.manamer.backend.business.sellout.repositories;
 import com.manamer.backend.business.sellout.models.Cliente;
 import com.manamer.backend.business.sellout.models.Producto;
 import com.manamer.backend.business.sellout.models.Venta;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -62,4 +63,8 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
        Integer r = existsSapByCodBarra(codBarra.trim());
        return r != null;
    }
+
+   // Variante en lote: devuelve los cod_barra de la lista que existen en SAP (máx. ~2000 por llamada)
+   @Query(value = "SELECT DISTINCT cod_barra FROM SELLOUT.dbo.SAP_Prod_cache WHERE cod_barra IN (:codigos)", nativeQuery = true)
+   List<String> findSapCodBarrasIn(@Param("codigos") Collection<String> codigos);
 }
@@ -0,0 +1,259 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cargas de archivos en segundo plano: el upload se mueve a disco local (SpoolSubidas), recibe un id de job
+ * y lo procesa un pool fijo de workers con cola acotada. Así se aceptan muchos archivos rápido
+ * sin tener más de {@code sellout.cargas.workers} importaciones pesadas a la vez.
+ * Los jobs terminados se conservan en memoria {@code sellout.cargas.retencion-minutos}.
+ */
+@Service
+public class CargaJobService {
+
+    private static final Logger log = Logger.getLogger(CargaJobService.class.getName());
+
+    public enum Estado { EN_COLA, PROCESANDO, COMPLETADO, ERROR }
+
+    /** Proceso de carga sobre el archivo ya guardado en disco. */
+    @FunctionalInterface
+    public interface TareaCarga {
+        Map<String, Object> ejecutar(Path archivo, String nombreArchivo, ProgresoCarga progreso) throws Exception;
+    }
+
+    /** TXT de incidencias a partir del resultado; si es null se usa {@link #incidenciasGenericas}. */
+    @FunctionalInterface
+    public interface GeneradorTxt {
+        String generar(Map<String, Object> resultado, String nombreArchivo);
+    }
+
+    /** Estado de un job; recibe el avance de la carga (ProgresoCarga) desde el worker. */
+    public static final class CargaJob implements ProgresoCarga {
+        private final String id;
+        private final String tipo;
+        private final String archivo;
+        private final long bytes;
+        private final Instant creado = Instant.now();
+        private final GeneradorTxt generadorTxt;
+
+        private volatile Estado estado = Estado.EN_COLA;
+        private volatile String fase;
+        private volatile int filasTotales = -1;
+        private volatile int filasProcesadas;
+        private volatile long inicioTramoMs;
+        private volatile Instant iniciado;
+        private volatile Instant terminado;
+        private volatile Map<String, Object> resultado;
+        private volatile String error;
+
+        CargaJob(String id, String tipo, String archivo, long bytes, GeneradorTxt generadorTxt) {
+            this.id = id;
+            this.tipo = tipo;
+            this.archivo = archivo;
+            this.bytes = bytes;
+            this.generadorTxt = generadorTxt;
+        }
+
+        @Override public void fase(String fase) { this.fase = fase; }
+
+        /** Un nuevo total reinicia el tramo sobre el que se mide la velocidad (p.ej. RM: lectura y luego guardado). */
+        @Override public void filasTotales(int total) {
+            this.filasTotales = total;
+            this.filasProcesadas = 0;
+            this.inicioTramoMs = System.currentTimeMillis();
+        }
+
+        @Override public void filasProcesadas(int filas) { this.filasProcesadas = filas; }
+
+        public String getId() { return id; }
+        public Estado getEstado() { return estado; }
+        public Map<String, Object> getResultado() { return resultado; }
+        public String getArchivo() { return archivo; }
+
+        public boolean terminado() { return estado == Estado.COMPLETADO || estado == Estado.ERROR; }
+
+        /** Segundos restantes estimados con la velocidad del tramo actual (null si no se puede estimar). */
+        Long etaSegundos() {
+            int total = filasTotales, hechas = filasProcesadas;
+            long ms = System.currentTimeMillis() - inicioTramoMs;
+            if (estado != Estado.PROCESANDO || total <= 0 || hechas <= 0 || ms <= 0) return null;
+            double filasPorMs = (double) hechas / ms;
+            return Math.max(0L, Math.round(Math.max(0, total - hechas) / filasPorMs / 1000.0));
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("jobId", id);
+            m.put("tipo", tipo);
+            m.put("archivo", archivo);
+            m.put("bytes", bytes);
+            m.put("estado", estado);
+            m.put("fase", fase);
+            m.put("filasProcesadas", filasProcesadas);
+            m.put("filasTotales", filasTotales >= 0 ? filasTotales : null);
+            m.put("etaSegundos", etaSegundos());
+            m.put("creado", creado.toString());
+            m.put("iniciado", iniciado != null ? iniciado.toString() : null);
+            m.put("terminado", terminado != null ? terminado.toString() : null);
+            if (iniciado != null) {
+                Instant fin = terminado != null ? terminado : Instant.now();
+                m.put("duracionMs", Duration.between(iniciado, fin).toMillis());
+            }
+            if (error != null) m.put("error", error);
+            return m;
+        }
+    }
+
+    private final int workers;
+    private final SpoolSubidas spoolSubidas;
+    private final Duration retencion;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, CargaJob> jobs = new ConcurrentHashMap<>();
+
+    public CargaJobService(@Value("${sellout.cargas.workers:2}") int workers,
+                           @Value("${sellout.cargas.cola:50}") int cola,
+                           SpoolSubidas spoolSubidas,
+                           @Value("${sellout.cargas.retencion-minutos:120}") long retencionMinutos) {
+        this.workers = Math.max(1, workers);
+        this.spoolSubidas = spoolSubidas;
+        this.retencion = Duration.ofMinutes(Math.max(1, retencionMinutos));
+
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, cola)),
+                r -> {
+                    Thread t = new Thread(r, "carga-job-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Mueve el archivo a la carpeta de cargas y encola la carga.
+     * @throws RejectedExecutionException si la cola está llena (el controller responde 503).
+     */
+    public CargaJob encolar(String tipo, MultipartFile file, TareaCarga tarea, GeneradorTxt generadorTxt) throws Exception {
+        purgarTerminados();
+
+        String id = UUID.randomUUID().toString();
+        SpoolSubidas.ArchivoSubido spool = spoolSubidas.guardar(file);
+
+        CargaJob job = new CargaJob(id, tipo, file.getOriginalFilename(), file.getSize(), generadorTxt);
+        jobs.put(id, job);
+        try {
+            executor.execute(() -> ejecutar(job, spool, tarea));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            spool.close();
+            throw e;
+        }
+        log.info("CargaJob encolado: id=" + id + " tipo=" + tipo + " archivo=" + job.archivo
+                + " bytes=" + job.bytes + " enCola=" + executor.getQueue().size());
+        return job;
+    }
+
+    private void ejecutar(CargaJob job, SpoolSubidas.ArchivoSubido spool, TareaCarga tarea) {
+        job.iniciado = Instant.now();
+        job.inicioTramoMs = System.currentTimeMillis();
+        job.estado = Estado.PROCESANDO;
+        try (spool) {
+            job.resultado = tarea.ejecutar(spool.getRuta(), job.archivo, job);
+            job.estado = Estado.COMPLETADO;
+        } catch (Throwable e) {
+            log.log(Level.SEVERE, "CargaJob " + job.id + " falló: " + e.getMessage(), e);
+            job.error = String.valueOf(e.getMessage());
+            job.estado = Estado.ERROR;
+        } finally {
+            job.terminado = Instant.now();
+            job.fase = null;
+            log.info("CargaJob terminado: id=" + job.id + " estado=" + job.estado
+                    + " ms=" + Duration.between(job.iniciado, job.terminado).toMillis());
+        }
+    }
+
+    public Optional<CargaJob> buscar(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<Map<String, Object>> listar() {
+        purgarTerminados();
+        List<CargaJob> lista = new ArrayList<>(jobs.values());
+        lista.sort(Comparator.comparing((CargaJob j) -> j.creado).reversed());
+        List<Map<String, Object>> out = new ArrayList<>(lista.size());
+        for (CargaJob j : lista) out.add(j.toMap());
+        return out;
+    }
+
+    /** Ocupación del pool (workers, activos y en cola). */
+    public Map<String, Object> capacidad() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("workers", workers);
+        m.put("activos", executor.getActiveCount());
+        m.put("enCola", executor.getQueue().size());
+        m.put("colaDisponible", executor.getQueue().remainingCapacity());
+        return m;
+    }
+
+    /** TXT de incidencias de un job completado. */
+    public String incidenciasTxt(CargaJob job) {
+        Map<String, Object> res = job.resultado != null ? job.resultado : Map.of();
+        return job.generadorTxt != null
+                ? job.generadorTxt.generar(res, job.archivo)
+                : incidenciasGenericas(res, job.archivo);
+    }
+
+    /** Para cargas sin TXT propio: lista "codigosNoEncontrados" (textos o mapas con motivo). */
+    public static String incidenciasGenericas(Map<String, Object> resultado, String nombreArchivo) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+        sb.append("INCIDENCIAS DE CARGA").append(nl)
+          .append("Archivo: ").append(Objects.toString(nombreArchivo, "")).append(nl)
+          .append("Fecha/Hora: ").append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append(nl);
+        for (String k : List.of("mensaje", "filasLeidas", "filasProcesadas", "insertados", "actualizados")) {
+            if (resultado.containsKey(k)) sb.append(k).append(": ").append(resultado.get(k)).append(nl);
+        }
+        sb.append(nl).append("CODIGOS_NO_ENCONTRADOS").append(nl);
+
+        Object cods = resultado.get("codigosNoEncontrados");
+        if (!(cods instanceof Collection<?> c) || c.isEmpty()) {
+            sb.append("Sin códigos no encontrados.").append(nl);
+        } else {
+            for (Object o : c) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append(Objects.toString(m.get("codigo"), "")).append('\t')
+                      .append(Objects.toString(m.get("motivo"), "")).append(nl);
+                } else {
+                    sb.append(Objects.toString(o, "")).append(nl);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void purgarTerminados() {
+        Instant limite = Instant.now().minus(retencion);
+        jobs.values().removeIf(j -> j.terminado() && j.terminado != null && j.terminado.isBefore(limite));
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,403 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Lector de archivos CSV/TSV con la misma representación de fila que {@link ExcelStreamingReader},
+ * para que las cargas usen un solo código por fila sea cual sea el formato.
+ *
+ * El archivo se mapea en memoria (FileChannel) y se recorre byte a byte: los campos se delimitan por
+ * offsets y solo se crea un String para los campos de texto dentro de {@code maxColumnas};
+ * números y fechas se decodifican directamente de los bytes.
+ *
+ * Equivalencias con una celda de Excel:
+ * <ul>
+ *   <li>campo vacío: celda en blanco (null); línea vacía: fila ausente</li>
+ *   <li>número ({@code 12}, {@code -3.5}, {@code 3,5} si el separador no es coma): Double</li>
+ *   <li>fecha ({@code yyyy-MM-dd}, {@code dd/MM/yyyy}, con hora opcional): Double con formato de fecha,
+ *       así {@link ExcelStreamingReader.Fila#valorCelda(int)} devuelve un {@link java.util.Date}</li>
+ *   <li>TRUE/FALSE: Boolean</li>
+ *   <li>entre comillas, con ceros a la izquierda o más de 15 dígitos (códigos de barra): String</li>
+ * </ul>
+ * El separador (coma, punto y coma, tabulador o barra) se detecta con las primeras líneas;
+ * la codificación es UTF-8 (con o sin BOM) o, si no es UTF-8 válido, Windows-1252.
+ */
+public final class CsvStreamingReader {
+
+    private CsvStreamingReader() {}
+
+    private static final int MUESTRA = 64 * 1024;
+    private static final int LINEAS_MUESTRA = 30;
+    private static final byte[] SEPARADORES = {',', ';', '\t', '|'};
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+    private static final int MAX_DIGITOS = 15;
+
+    /** true si el nombre es .csv/.tsv/.txt y el contenido no es un libro de Excel. */
+    public static boolean esTextoDelimitado(File archivo, String nombreArchivo) throws IOException {
+        String n = nombreArchivo == null ? "" : nombreArchivo.toLowerCase(Locale.ROOT);
+        if (!(n.endsWith(".csv") || n.endsWith(".tsv") || n.endsWith(".txt"))) return false;
+        FileMagic magia = FileMagic.valueOf(archivo);
+        return magia != FileMagic.OOXML && magia != FileMagic.OLE2;
+    }
+
+    /** Filas estimadas con la muestra inicial (exacto si el archivo cabe en la muestra); sirve para avance/ETA. */
+    public static int filasEstimadas(File archivo) throws IOException {
+        try (FileChannel ch = FileChannel.open(archivo.toPath(), StandardOpenOption.READ)) {
+            long tam = ch.size();
+            if (tam == 0) return 0;
+            int muestra = (int) Math.min(tam, MUESTRA);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, muestra);
+            int lineas = 0;
+            for (int i = 0; i < muestra; i++) if (buf.get(i) == '\n') lineas++;
+            if (muestra == tam) return (buf.get(muestra - 1) == '\n') ? lineas : lineas + 1;
+            return lineas == 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, tam * lineas / muestra);
+        }
+    }
+
+    /**
+     * Recorre el archivo entregando cada línea con datos al handler (índice de fila = número de línea, 0-based).
+     * Solo se decodifican las columnas {@code < maxColumnas}.
+     */
+    public static void leer(File archivo, int maxColumnas, ExcelStreamingReader.FilaHandler handler) throws IOException {
+        try (FileChannel ch = FileChannel.open(archivo.toPath(), StandardOpenOption.READ)) {
+            long tam = ch.size();
+            if (tam > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Archivo CSV demasiado grande: " + tam + " bytes");
+            }
+            if (tam == 0) return;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, tam);
+            new Lector(buf, (int) tam, maxColumnas, archivo.getName()).recorrer(handler);
+        }
+    }
+
+    // =========================
+    //   Lector
+    // =========================
+
+    private static final class Lector {
+        private final MappedByteBuffer buf;
+        private final int lim;
+        private final int maxColumnas;
+        private final byte sep;
+        private final Charset charset;
+        private final int inicio;
+
+        // offsets del registro actual (solo columnas < maxColumnas)
+        private final int[] ini;
+        private final int[] fin;
+        private final byte[] tipo; // 0 sin comillas, 1 entre comillas, 2 entre comillas con "" escapadas
+        private byte[] tmp = new byte[256];
+
+        Lector(MappedByteBuffer buf, int lim, int maxColumnas, String nombre) {
+            this.buf = buf;
+            this.lim = lim;
+            this.maxColumnas = maxColumnas;
+            this.inicio = saltarBom(buf, lim);
+            int finMuestra = (int) Math.min(lim, (long) inicio + MUESTRA);
+            this.sep = detectarSeparador(buf, inicio, finMuestra, nombre);
+            this.charset = esUtf8(buf, inicio, finMuestra) ? StandardCharsets.UTF_8 : WINDOWS_1252;
+            this.ini = new int[maxColumnas];
+            this.fin = new int[maxColumnas];
+            this.tipo = new byte[maxColumnas];
+        }
+
+        void recorrer(ExcelStreamingReader.FilaHandler handler) {
+            ExcelStreamingReader.Fila fila = new ExcelStreamingReader.Fila(maxColumnas, false);
+            int pos = inicio;
+            int indice = 0;
+            while (pos < lim) {
+                int columnas = 0;
+                while (true) {
+                    int a, b;
+                    byte t = 0;
+                    // con el separador como último byte del archivo queda un campo vacío al final
+                    if (pos < lim && buf.get(pos) == '"') {
+                        t = 1;
+                        a = ++pos;
+                        b = lim;
+                        while (pos < lim) {
+                            byte c = buf.get(pos);
+                            if (c == '"') {
+                                if (pos + 1 < lim && buf.get(pos + 1) == '"') { t = 2; pos += 2; continue; }
+                                b = pos++;
+                                break;
+                            }
+                            pos++;
+                        }
+                        // lo que siga a la comilla de cierre hasta el separador se descarta
+                        while (pos < lim && !finDeCampo(buf.get(pos))) pos++;
+                    } else {
+                        a = pos;
+                        while (pos < lim && !finDeCampo(buf.get(pos))) pos++;
+                        b = pos;
+                    }
+                    if (columnas < maxColumnas) {
+                        ini[columnas] = a;
+                        fin[columnas] = b;
+                        tipo[columnas] = t;
+                    }
+                    columnas++;
+                    if (pos < lim && buf.get(pos) == sep) { pos++; continue; }
+                    // fin de registro: \n, \r\n, \r o fin de archivo
+                    if (pos < lim && buf.get(pos) == '\r') pos++;
+                    if (pos < lim && buf.get(pos) == '\n') pos++;
+                    break;
+                }
+
+                fila.reiniciar(indice++);
+                int n = Math.min(columnas, maxColumnas);
+                for (int c = 0; c < n; c++) decodificar(fila, c);
+                if (fila.getUltimaColumna() >= 0 && !handler.procesar(fila)) return;
+            }
+        }
+
+        private boolean finDeCampo(byte c) {
+            return c == sep || c == '\n' || c == '\r';
+        }
+
+        private void decodificar(ExcelStreamingReader.Fila fila, int col) {
+            int a = ini[col], b = fin[col];
+            if (tipo[col] != 0) {
+                if (b > a) fila.poner(col, texto(a, b, tipo[col] == 2), false);
+                return;
+            }
+            // sin comillas: se ignoran espacios alrededor, como al abrir el CSV en Excel
+            while (a < b && esEspacio(buf.get(a))) a++;
+            while (b > a && esEspacio(buf.get(b - 1))) b--;
+            if (a == b) return;
+
+            double fecha = fecha(a, b);
+            if (!Double.isNaN(fecha)) { fila.poner(col, fecha, true); return; }
+            double num = numero(a, b);
+            if (!Double.isNaN(num)) { fila.poner(col, num, false); return; }
+            Boolean bool = booleano(a, b);
+            if (bool != null) { fila.poner(col, bool, false); return; }
+            fila.poner(col, texto(a, b, false), false);
+        }
+
+        private boolean esEspacio(byte c) {
+            return c == ' ' || (c == '\t' && sep != '\t');
+        }
+
+        private String texto(int a, int b, boolean comillasDobles) {
+            byte[] bytes = tmp(a, b);
+            int len = b - a;
+            if (comillasDobles) {
+                int w = 0;
+                for (int r = 0; r < len; r++) {
+                    bytes[w++] = bytes[r];
+                    if (bytes[r] == '"' && r + 1 < len && bytes[r + 1] == '"') r++;
+                }
+                len = w;
+            }
+            return new String(bytes, 0, len, charset);
+        }
+
+        /**
+         * Entero o decimal simple con signo opcional; separador decimal punto (o coma si el separador
+         * de campos no es coma). NaN si no es un número o debe quedar como texto.
+         */
+        private double numero(int a, int b) {
+            int i = a;
+            boolean negativo = false;
+            byte c = buf.get(i);
+            if (c == '-' || c == '+') {
+                negativo = c == '-';
+                if (++i == b) return Double.NaN;
+            }
+            long mantisa = 0;
+            int digitos = 0, decimales = 0, enteros = 0;
+            boolean separador = false;
+            boolean ceroInicial = buf.get(i) == '0';
+            for (; i < b; i++) {
+                c = buf.get(i);
+                if (c >= '0' && c <= '9') {
+                    if (digitos > 0 || c != '0') digitos++;
+                    if (digitos > MAX_DIGITOS) return Double.NaN;
+                    mantisa = mantisa * 10 + (c - '0');
+                    if (separador) decimales++; else enteros++;
+                } else if ((c == '.' || (c == ',' && sep != ',')) && !separador) {
+                    separador = true;
+                } else if ((c == 'E' || c == 'e') && enteros + decimales > 0) {
+                    return exponencial(a, b);
+                } else {
+                    return Double.NaN;
+                }
+            }
+            if (enteros + decimales == 0) return Double.NaN;
+            // "0012" es un código, no el número 12
+            if (ceroInicial && enteros > 1) return Double.NaN;
+            double v = decimales == 0 ? mantisa : mantisa / Math.pow(10, decimales);
+            return negativo ? -v : v;
+        }
+
+        /** 1.5E+12 (así exporta Excel los códigos largos). */
+        private double exponencial(int a, int b) {
+            String s = new String(tmp(a, b), 0, b - a, StandardCharsets.US_ASCII);
+            if (sep != ',') s = s.replace(',', '.');
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        /** Copia los bytes [a, b) al buffer reutilizable. */
+        private byte[] tmp(int a, int b) {
+            int len = b - a;
+            if (tmp.length < len) tmp = new byte[Math.max(len, tmp.length * 2)];
+            buf.get(a, tmp, 0, len);
+            return tmp;
+        }
+
+        /**
+         * yyyy-MM-dd, yyyy/MM/dd, dd/MM/yyyy o dd-MM-yyyy, con hora HH:mm[:ss] opcional tras espacio o 'T'.
+         * Devuelve el serial de Excel (días desde 1899-12-30) o NaN.
+         */
+        private double fecha(int a, int b) {
+            int[] partes = new int[3];
+            int[] largos = new int[3];
+            int p = 0, i = a;
+            byte sepFecha = 0;
+            for (; i < b && p < 3; i++) {
+                byte c = buf.get(i);
+                if (c >= '0' && c <= '9') {
+                    if (++largos[p] > 4) return Double.NaN;
+                    partes[p] = partes[p] * 10 + (c - '0');
+                } else if ((c == '-' || c == '/') && p < 2 && largos[p] > 0 && (sepFecha == 0 || c == sepFecha)) {
+                    sepFecha = c;
+                    p++;
+                } else if ((c == ' ' || c == 'T') && p == 2) {
+                    break;
+                } else {
+                    return Double.NaN;
+                }
+            }
+            if (p != 2 || largos[2] == 0) return Double.NaN;
+
+            int anio, mes, dia;
+            if (largos[0] == 4 && largos[1] <= 2 && largos[2] <= 2) {
+                anio = partes[0]; mes = partes[1]; dia = partes[2];
+            } else if (largos[2] == 4 && largos[0] <= 2 && largos[1] <= 2) {
+                dia = partes[0]; mes = partes[1]; anio = partes[2];
+            } else {
+                return Double.NaN;
+            }
+            double dias = DecodificadorCeldas.serialExcel(DecodificadorCeldas.fecha(anio, mes, dia));
+            if (Double.isNaN(dias) || i >= b) return dias;
+            double hora = hora(i + 1, b);
+            return Double.isNaN(hora) ? Double.NaN : dias + hora;
+        }
+
+        /** HH:mm[:ss[.fff]] como fracción de día; NaN si no es una hora. */
+        private double hora(int a, int b) {
+            int[] partes = new int[3];
+            int p = 0, largo = 0, i = a;
+            for (; i < b; i++) {
+                byte c = buf.get(i);
+                if (c >= '0' && c <= '9') {
+                    if (++largo > 2) return Double.NaN;
+                    partes[p] = partes[p] * 10 + (c - '0');
+                } else if (c == ':' && p < 2 && largo > 0) {
+                    p++;
+                    largo = 0;
+                } else if (p == 2 && (c == '.' || c == 'Z')) {
+                    break; // fracción de segundo / zona: se ignoran
+                } else {
+                    return Double.NaN;
+                }
+            }
+            if (p < 1 || largo == 0 || partes[0] > 23 || partes[1] > 59 || partes[2] > 59) return Double.NaN;
+            return (partes[0] * 3600 + partes[1] * 60 + partes[2]) / 86400.0;
+        }
+
+        private Boolean booleano(int a, int b) {
+            int len = b - a;
+            if (len != 4 && len != 5 && len != 9) return null;
+            String s = new String(tmp(a, b), 0, len, StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+            return switch (s) {
+                case "TRUE", "VERDADERO" -> Boolean.TRUE;
+                case "FALSE", "FALSO" -> Boolean.FALSE;
+                default -> null;
+            };
+        }
+    }
+
+    // =========================
+    //   Detección
+    // =========================
+
+    private static int saltarBom(MappedByteBuffer buf, int lim) {
+        return (lim >= 3 && buf.get(0) == (byte) 0xEF && buf.get(1) == (byte) 0xBB && buf.get(2) == (byte) 0xBF) ? 3 : 0;
+    }
+
+    /**
+     * Separador con más líneas que repiten su conteo más frecuente (fuera de comillas) en las primeras líneas;
+     * a igualdad, el de más columnas. Sin candidatos: tabulador para .tsv, coma en otro caso.
+     */
+    static byte detectarSeparador(MappedByteBuffer buf, int desde, int hasta, String nombre) {
+        int[][] conteos = new int[SEPARADORES.length][LINEAS_MUESTRA];
+        int lineas = 0;
+        boolean enComillas = false;
+        for (int i = desde; i < hasta && lineas < LINEAS_MUESTRA; i++) {
+            byte c = buf.get(i);
+            if (c == '"') { enComillas = !enComillas; continue; }
+            if (enComillas) continue;
+            if (c == '\n') { lineas++; continue; }
+            for (int s = 0; s < SEPARADORES.length; s++) {
+                if (c == SEPARADORES[s]) conteos[s][lineas]++;
+            }
+        }
+        if (lineas < LINEAS_MUESTRA && hasta > desde && buf.get(hasta - 1) != '\n') lineas++;
+
+        byte mejor = 0;
+        int mejorLineas = 0, mejorColumnas = 0;
+        for (int s = 0; s < SEPARADORES.length; s++) {
+            // moda del conteo por línea (sin contar líneas sin separador)
+            int moda = 0, frecuencia = 0;
+            for (int l = 0; l < lineas; l++) {
+                int k = conteos[s][l];
+                if (k == 0 || k == moda) continue;
+                int f = 0;
+                for (int m = 0; m < lineas; m++) if (conteos[s][m] == k) f++;
+                if (f > frecuencia || (f == frecuencia && k > moda)) { moda = k; frecuencia = f; }
+            }
+            if (frecuencia > mejorLineas || (frecuencia == mejorLineas && frecuencia > 0 && moda > mejorColumnas)) {
+                mejor = SEPARADORES[s];
+                mejorLineas = frecuencia;
+                mejorColumnas = moda;
+            }
+        }
+        if (mejor != 0) return mejor;
+        return (nombre != null && nombre.toLowerCase(Locale.ROOT).endsWith(".tsv")) ? (byte) '\t' : (byte) ',';
+    }
+
+    /** true si la muestra es UTF-8 válido (una secuencia cortada al final de la muestra se acepta). */
+    static boolean esUtf8(MappedByteBuffer buf, int desde, int hasta) {
+        int i = desde;
+        while (i < hasta) {
+            int c = buf.get(i) & 0xFF;
+            int extra;
+            if (c < 0x80) { i++; continue; }
+            else if (c >= 0xC2 && c <= 0xDF) extra = 1;
+            else if (c >= 0xE0 && c <= 0xEF) extra = 2;
+            else if (c >= 0xF0 && c <= 0xF4) extra = 3;
+            else return false;
+            if (i + extra >= hasta) return true;
+            for (int k = 1; k <= extra; k++) {
+                if ((buf.get(i + k) & 0xC0) != 0x80) return false;
+            }
+            i += extra + 1;
+        }
+        return true;
+    }
+}
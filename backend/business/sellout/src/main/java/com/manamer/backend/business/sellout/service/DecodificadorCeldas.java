@@ -0,0 +1,406 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Date1904Support;
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Decodificación de celdas compartida por las cargas (genérica, RM, Template General, Deprati y Fybeca).
+ *
+ * Fechas: se reconocen a mano, sin DateTimeFormatter ni excepciones, y se devuelven como un int
+ * {@code yyyyMMdd} ({@link #SIN_FECHA} si no es una fecha); {@link #anio}, {@link #mes} y {@link #dia}
+ * lo descomponen sin pasar por Date/Instant/ZonedDateTime. Formatos de texto (se ignora lo que sigue
+ * a un espacio o a una 'T' de hora):
+ * <ul>
+ *   <li>día primero: dd/MM/yyyy, d/M/yyyy, dd-MM-yyyy, d-M-yyyy, dd.MM.yyyy, d-MMM-yyyy (Jan..Dec)</li>
+ *   <li>año primero: yyyy-MM-dd (ISO), yyyy/MM/dd</li>
+ *   <li>mes primero: MM/dd/yyyy, solo con barra y si día primero no da una fecha válida</li>
+ *   <li>serial de Excel escrito como texto: 5 dígitos con decimales opcionales (45306, 45306.5)</li>
+ * </ul>
+ * Una fecha inexistente (31/02/2024) no es fecha.
+ *
+ * Números: signo, dígitos, un separador decimal (punto o coma) y exponente opcional, leídos sobre el
+ * texto de la celda sin replace/parseDouble; NaN si no es un número.
+ */
+public final class DecodificadorCeldas {
+
+    private DecodificadorCeldas() {}
+
+    /** Valor de {@link #fecha} cuando la celda no es una fecha. */
+    public static final int SIN_FECHA = 0;
+
+    // días entre 1899-12-30 (día 0 de Excel) y 1970-01-01, y entre 1904-01-01 (sistema 1904) y 1970-01-01
+    private static final int DIAS_EPOCH_EXCEL = 25569;
+    private static final int DIAS_EPOCH_EXCEL_1904 = 24107;
+    // 9999-12-31
+    private static final int MAX_SERIAL_EXCEL = 2958465;
+
+    private static final String MESES = "JANFEBMARAPRMAYJUNJULAUGSEPOCTNOVDEC";
+
+    // 10^0..10^22 son exactos en double
+    private static final double[] POTENCIAS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_SIGNIFICATIVOS = 18;
+
+    // ===== Fecha empaquetada yyyyMMdd =====
+
+    public static int anio(int fecha) { return fecha / 10000; }
+
+    public static int mes(int fecha) { return fecha / 100 % 100; }
+
+    public static int dia(int fecha) { return fecha % 100; }
+
+    /** yyyyMMdd si año/mes/día forman una fecha válida; {@link #SIN_FECHA} si no. */
+    public static int fecha(int anio, int mes, int dia) {
+        if (anio < 1 || anio > 9999 || mes < 1 || mes > 12 || dia < 1 || dia > diasDelMes(anio, mes)) return SIN_FECHA;
+        return anio * 10000 + mes * 100 + dia;
+    }
+
+    public static LocalDate aLocalDate(int fecha) {
+        return fecha == SIN_FECHA ? null : LocalDate.of(anio(fecha), mes(fecha), dia(fecha));
+    }
+
+    /** yyyy-MM-dd (lo mismo que LocalDate.toString para años de 4 dígitos). */
+    public static String iso(int fecha) {
+        if (fecha == SIN_FECHA) return null;
+        char[] c = new char[10];
+        int a = anio(fecha), m = mes(fecha), d = dia(fecha);
+        c[0] = (char) ('0' + a / 1000);
+        c[1] = (char) ('0' + a / 100 % 10);
+        c[2] = (char) ('0' + a / 10 % 10);
+        c[3] = (char) ('0' + a % 10);
+        c[4] = '-';
+        c[5] = (char) ('0' + m / 10);
+        c[6] = (char) ('0' + m % 10);
+        c[7] = '-';
+        c[8] = (char) ('0' + d / 10);
+        c[9] = (char) ('0' + d % 10);
+        return new String(c);
+    }
+
+    /** Serial de Excel (sistema 1900; la parte decimal es la hora y se descarta). */
+    public static int fechaSerial(double serial, boolean fecha1904) {
+        if (!(serial >= 0) || serial > MAX_SERIAL_EXCEL) return SIN_FECHA;
+        int dias = (int) serial;
+        long epoch;
+        if (fecha1904) {
+            epoch = dias - DIAS_EPOCH_EXCEL_1904;
+        } else if (dias < 61) {
+            // Excel cuenta el 29/02/1900 inexistente (serial 60); POI lo resuelve como 01/03/1900
+            epoch = dias - DIAS_EPOCH_EXCEL + 1;
+        } else {
+            epoch = dias - DIAS_EPOCH_EXCEL;
+        }
+        return deDiaEpoch(epoch);
+    }
+
+    /** Serial de Excel (sistema 1900) del día, o NaN si no es una fecha. */
+    public static double serialExcel(int fecha) {
+        if (fecha == SIN_FECHA) return Double.NaN;
+        return diaEpoch(anio(fecha), mes(fecha), dia(fecha)) + DIAS_EPOCH_EXCEL;
+    }
+
+    // ===== Fecha desde texto =====
+
+    public static int fecha(CharSequence s) {
+        if (s == null) return SIN_FECHA;
+        int n = s.length();
+        int i = 0;
+        while (i < n && s.charAt(i) <= ' ') i++;
+        // fin de la fecha: espacio, o 'T' pegada a un dígito (2024-01-15T10:30)
+        int fin = i;
+        for (; fin < n; fin++) {
+            char c = s.charAt(fin);
+            if (c <= ' ' || (c == 'T' && fin > i && esDigito(s.charAt(fin - 1)))) break;
+        }
+        if (fin == i) return SIN_FECHA;
+
+        int serial = serialComoTexto(s, i, fin);
+        if (serial >= 0) return fechaSerial(serial, false);
+
+        int v0 = 0, v1 = 0, v2 = 0;     // valor de cada parte
+        int l0 = 0, l1 = 0, l2 = 0;     // dígitos de cada parte
+        int mesNombre = 0;              // parte central en letras (d-MMM-yyyy)
+        char sep = 0;
+        int parte = 0;
+        for (int k = i; k < fin; k++) {
+            char c = s.charAt(k);
+            if (esDigito(c)) {
+                int d = c - '0';
+                if (parte == 0) {
+                    if (++l0 > 4) return SIN_FECHA;
+                    v0 = v0 * 10 + d;
+                } else if (parte == 1) {
+                    if (mesNombre != 0 || ++l1 > 2) return SIN_FECHA;
+                    v1 = v1 * 10 + d;
+                } else {
+                    if (++l2 > 4) return SIN_FECHA;
+                    v2 = v2 * 10 + d;
+                }
+            } else if (c == '/' || c == '-' || c == '.') {
+                if (parte == 2 || (sep != 0 && c != sep)) return SIN_FECHA;
+                if (parte == 0 ? l0 == 0 : (l1 == 0 && mesNombre == 0)) return SIN_FECHA;
+                sep = c;
+                parte++;
+            } else if (parte == 1 && l1 == 0 && mesNombre == 0 && k + 3 <= fin) {
+                mesNombre = mesEnIngles(s, k);
+                if (mesNombre == 0) return SIN_FECHA;
+                k += 2;
+            } else {
+                return SIN_FECHA;
+            }
+        }
+        if (parte != 2 || l2 == 0) return SIN_FECHA;
+
+        if (l0 == 4 && mesNombre == 0 && l2 <= 2) {
+            return fecha(v0, v1, v2);
+        }
+        if (l0 <= 2 && l2 == 4) {
+            int f = fecha(v2, mesNombre != 0 ? mesNombre : v1, v0);
+            if (f != SIN_FECHA || sep != '/' || mesNombre != 0) return f;
+            return fecha(v2, v0, v1);
+        }
+        return SIN_FECHA;
+    }
+
+    /**
+     * Valor de celda ya leído (String, Double, LocalDate o Date): texto con {@link #fecha(CharSequence)},
+     * números como serial de Excel.
+     */
+    public static int fecha(Object valor) {
+        if (valor instanceof CharSequence s) return fecha(s);
+        if (valor instanceof Number n) return fechaSerial(n.doubleValue(), false);
+        if (valor instanceof LocalDate d) return fecha(d.getYear(), d.getMonthValue(), d.getDayOfMonth());
+        if (valor instanceof Date d) {
+            LocalDate ld = d.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            return fecha(ld.getYear(), ld.getMonthValue(), ld.getDayOfMonth());
+        }
+        return SIN_FECHA;
+    }
+
+    // ===== Números =====
+
+    public static double numero(CharSequence s) {
+        return numero(s, false);
+    }
+
+    /**
+     * Número del texto, o NaN. Con {@code ignorarSimbolos} se descarta todo lo que no sea dígito,
+     * separador o signo ("$ 1 234,50" = 1234.5); sin él, cualquier otro carácter invalida el número.
+     */
+    public static double numero(CharSequence s, boolean ignorarSimbolos) {
+        if (s == null) return Double.NaN;
+        int n = s.length();
+        int i = 0;
+        while (i < n && s.charAt(i) <= ' ') i++;
+        while (n > i && s.charAt(n - 1) <= ' ') n--;
+        int inicio = i;
+
+        boolean negativo = false, signo = false, separador = false, truncado = false;
+        long mantisa = 0;
+        int digitos = 0, significativos = 0, escala = 0;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (esDigito(c)) {
+                digitos++;
+                if (significativos > 0 || c != '0') {
+                    if (significativos < MAX_SIGNIFICATIVOS) {
+                        mantisa = mantisa * 10 + (c - '0');
+                        significativos++;
+                        if (separador) escala--;
+                    } else {
+                        if (c != '0') truncado = true;
+                        if (!separador) escala++;
+                    }
+                } else if (separador) {
+                    escala--;
+                }
+            } else if (c == '.' || c == ',') {
+                if (separador) return Double.NaN;
+                separador = true;
+            } else if ((c == '-' || c == '+') && digitos == 0 && !separador && !signo) {
+                signo = true;
+                negativo = c == '-';
+            } else if ((c == 'e' || c == 'E') && digitos > 0 && !ignorarSimbolos) {
+                int exp = exponente(s, i + 1, n);
+                if (exp == Integer.MIN_VALUE) return Double.NaN;
+                escala += exp;
+                break;
+            } else if (!ignorarSimbolos || c == '-' || c == '+') {
+                return Double.NaN;
+            }
+        }
+        if (digitos == 0) return Double.NaN;
+
+        double v;
+        if (mantisa == 0) {
+            v = 0;
+        } else if (!truncado && mantisa < (1L << 53) && escala >= -22 && escala <= 22) {
+            // ambos operandos exactos: una sola operación, redondeo correcto
+            v = escala < 0 ? mantisa / POTENCIAS[-escala] : mantisa * POTENCIAS[escala];
+        } else {
+            // fuera del caso exacto (más de 15 dígitos o exponentes grandes): el redondeo lo hace el JDK
+            return Double.parseDouble(textoNumerico(s, inicio, n, ignorarSimbolos));
+        }
+        return negativo ? -v : v;
+    }
+
+    // ===== Celdas de POI y filas del lector en streaming =====
+
+    /**
+     * Fecha de una celda del libro: texto reconocido, número con formato de fecha y, si
+     * {@code numeroComoSerial}, cualquier número como serial de Excel.
+     */
+    public static int fecha(Cell cell, boolean numeroComoSerial) {
+        if (cell == null) return SIN_FECHA;
+        CellType tipo = cell.getCellType();
+        if (tipo == CellType.FORMULA) tipo = cell.getCachedFormulaResultType();
+        if (tipo == CellType.STRING) return fecha(cell.getStringCellValue());
+        if (tipo == CellType.NUMERIC && (numeroComoSerial || DateUtil.isCellDateFormatted(cell))) {
+            return fechaSerial(cell.getNumericCellValue(), esFecha1904(cell));
+        }
+        return SIN_FECHA;
+    }
+
+    /** Número de una celda del libro (numérica o texto), NaN si no tiene. */
+    public static double numero(Cell cell) {
+        if (cell == null) return Double.NaN;
+        CellType tipo = cell.getCellType();
+        if (tipo == CellType.FORMULA) tipo = cell.getCachedFormulaResultType();
+        if (tipo == CellType.NUMERIC) return cell.getNumericCellValue();
+        if (tipo == CellType.STRING) return numero(cell.getStringCellValue());
+        return Double.NaN;
+    }
+
+    /** Fecha de una fila del lector: números (con o sin formato de fecha) como serial, texto reconocido. */
+    public static int fecha(ExcelStreamingReader.Fila fila, int col) {
+        Object v = fila.valor(col);
+        if (v instanceof Double d) return fechaSerial(d, fila.esFecha1904());
+        if (v instanceof String s) return fecha(s);
+        return SIN_FECHA;
+    }
+
+    public static double numero(ExcelStreamingReader.Fila fila, int col) {
+        Object v = fila.valor(col);
+        if (v instanceof Double d) return d;
+        if (v instanceof String s) return numero(s);
+        return Double.NaN;
+    }
+
+    /** Texto de una celda: recortado, fechas como yyyy-MM-dd y números sin decimales ("7501234567890"). */
+    public static String texto(ExcelStreamingReader.Fila fila, int col) {
+        Object v = fila.valor(col);
+        if (v instanceof String s) return s.trim();
+        if (v instanceof Double d) {
+            return fila.esFecha(col) ? iso(fechaSerial(d, fila.esFecha1904())) : String.valueOf(d.longValue());
+        }
+        return v == null ? null : String.valueOf(v);
+    }
+
+    // ===== internos =====
+
+    private static boolean esDigito(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean esBisiesto(int anio) {
+        return (anio & 3) == 0 && (anio % 100 != 0 || anio % 400 == 0);
+    }
+
+    private static int diasDelMes(int anio, int mes) {
+        return switch (mes) {
+            case 2 -> esBisiesto(anio) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /** Días desde 1970-01-01 (calendario gregoriano proléptico, igual que LocalDate.toEpochDay). */
+    static long diaEpoch(int anio, int mes, int dia) {
+        long y = mes <= 2 ? anio - 1 : anio;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153L * (mes > 2 ? mes - 3 : mes + 9) + 2) / 5 + dia - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /** Inversa de {@link #diaEpoch}: yyyyMMdd del día, o {@link #SIN_FECHA} fuera de los años 1..9999. */
+    static int deDiaEpoch(long epoch) {
+        long z = epoch + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int dia = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int mes = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long anio = yoe + era * 400 + (mes <= 2 ? 1 : 0);
+        return anio < 1 || anio > 9999 ? SIN_FECHA : (int) anio * 10000 + mes * 100 + dia;
+    }
+
+    /** Serial entero si el texto es un serial de Excel (5 dígitos y decimales opcionales); -1 si no. */
+    private static int serialComoTexto(CharSequence s, int i, int fin) {
+        int valor = 0, enteros = 0, k = i;
+        for (; k < fin && esDigito(s.charAt(k)); k++) {
+            valor = valor * 10 + (s.charAt(k) - '0');
+            enteros++;
+        }
+        if (enteros != 5) return -1;
+        if (k < fin) {
+            if (s.charAt(k) != '.' || k + 1 == fin) return -1;
+            for (k++; k < fin; k++) if (!esDigito(s.charAt(k))) return -1;
+        }
+        return valor;
+    }
+
+    /** 1..12 si en {@code k} hay una abreviatura de mes en inglés (Jan..Dec, sin distinguir mayúsculas); 0 si no. */
+    private static int mesEnIngles(CharSequence s, int k) {
+        char a = Character.toUpperCase(s.charAt(k));
+        char b = Character.toUpperCase(s.charAt(k + 1));
+        char c = Character.toUpperCase(s.charAt(k + 2));
+        for (int m = 0; m < 12; m++) {
+            int p = m * 3;
+            if (MESES.charAt(p) == a && MESES.charAt(p + 1) == b && MESES.charAt(p + 2) == c) return m + 1;
+        }
+        return 0;
+    }
+
+    /** Exponente decimal [+-]dígitos hasta el final; Integer.MIN_VALUE si no es válido. */
+    private static int exponente(CharSequence s, int i, int fin) {
+        boolean negativo = false;
+        if (i < fin && (s.charAt(i) == '+' || s.charAt(i) == '-')) negativo = s.charAt(i++) == '-';
+        if (i == fin) return Integer.MIN_VALUE;
+        int exp = 0;
+        for (; i < fin; i++) {
+            char c = s.charAt(i);
+            if (!esDigito(c)) return Integer.MIN_VALUE;
+            if (exp < 100_000) exp = exp * 10 + (c - '0');
+        }
+        return negativo ? -exp : exp;
+    }
+
+    /** Texto ya validado por {@link #numero} con solo los caracteres que lee Double.parseDouble (coma como punto). */
+    private static String textoNumerico(CharSequence s, int i, int fin, boolean ignorarSimbolos) {
+        StringBuilder sb = new StringBuilder(fin - i);
+        boolean exponente = false;
+        for (; i < fin; i++) {
+            char c = s.charAt(i);
+            if ((c == 'e' || c == 'E') && !ignorarSimbolos) exponente = true;
+            if (esDigito(c) || c == '-' || c == '.' || exponente) sb.append(c);
+            else if (c == ',') sb.append('.');
+        }
+        return sb.toString();
+    }
+
+    private static boolean esFecha1904(Cell cell) {
+        return cell.getSheet().getWorkbook() instanceof Date1904Support w && w.isDate1904();
+    }
+}
@@ -1,12 +1,9 @@
 package com.manamer.backend.business.sellout.service;
 
 import com.manamer.backend.business.sellout.models.Cliente;
-import com.manamer.backend.business.sellout.models.Producto;
 import com.manamer.backend.business.sellout.models.Venta;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -15,11 +12,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.text.Normalizer;
-import java.time.LocalDate;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 @Service
@@ -27,19 +22,33 @@ public class DepratiVentaService {
 
     public static final String COD_CLIENTE_DEPRATI = "MZCL-000009";
     private static final Logger logger = Logger.getLogger(DepratiVentaService.class.getName());
-    private static final int DELETE_BATCH_SIZE = 5000;
 
     // ✅ MISMA REGLA: placeholder para evitar mezclar tiendas vacías/null
     private static final String PDV_PLACEHOLDER = "SIN_TIENDA";
 
     private final VentaService ventaService;
     private final ClienteService clienteService; // <- NUEVO
+    private final ProductoSapService productoSapService;
+    private final SpoolSubidas spoolSubidas;
+    private final HuellaCargaService huellaCargaService;
+    private final PlantillaService plantillaService;
+    private final EliminacionVentaService eliminacionVentaService;
 
     @Autowired
     public DepratiVentaService(VentaService ventaService,
-                              ClienteService clienteService) { // <- NUEVO
+                              ClienteService clienteService, // <- NUEVO
+                              ProductoSapService productoSapService,
+                              SpoolSubidas spoolSubidas,
+                              HuellaCargaService huellaCargaService,
+                              PlantillaService plantillaService,
+                              EliminacionVentaService eliminacionVentaService) {
         this.ventaService = ventaService;
         this.clienteService = clienteService; // <- NUEVO
+        this.productoSapService = productoSapService;
+        this.spoolSubidas = spoolSubidas;
+        this.huellaCargaService = huellaCargaService;
+        this.plantillaService = plantillaService;
+        this.eliminacionVentaService = eliminacionVentaService;
     }
 
     /**
@@ -77,22 +86,16 @@ public class DepratiVentaService {
     // ----------------------------- Helpers comunes -----------------------------
 
     public static String normalizarTexto(String input) {
-        if (input == null) return null;
-        return Normalizer.normalize(input.toLowerCase().trim(), Normalizer.Form.NFD)
-                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "")
-                .replaceAll("[^\\p{ASCII}]", "")
-                .replaceAll("[\\.,\\\"\\']", "");
-    }
-
-    private Workbook obtenerWorkbookCorrecto(MultipartFile file) throws IOException {
-        String nombreArchivo = file.getOriginalFilename();
-        if (nombreArchivo != null && nombreArchivo.toLowerCase().endsWith(".xls")) {
-            return new HSSFWorkbook(file.getInputStream());
-        } else if (nombreArchivo != null && nombreArchivo.toLowerCase().endsWith(".xlsx")) {
-            return new XSSFWorkbook(file.getInputStream());
-        } else {
+        return PlanExtraccion.normalizar(input);
+    }
+
+    /** Abre el libro por ruta en solo lectura (.xls: POIFS sobre el archivo mapeado; .xlsx: ZipFile), sin copiarlo al heap. */
+    private Workbook obtenerWorkbookCorrecto(Path archivo, String nombreArchivo) throws IOException {
+        String nombre = nombreArchivo != null ? nombreArchivo.toLowerCase() : "";
+        if (!nombre.endsWith(".xls") && !nombre.endsWith(".xlsx")) {
             throw new IllegalArgumentException("Formato de archivo no soportado: " + nombreArchivo);
         }
+        return WorkbookFactory.create(archivo.toFile(), null, true);
     }
 
     private <T> T obtenerValorCelda(Cell cell, Class<T> clazz) {
@@ -143,29 +146,22 @@ public class DepratiVentaService {
     private Double convertirADoubleSeguro(Cell cell, int fila, int columna) {
         try {
             if (cell == null) return 0.0;
-            switch (cell.getCellType()) {
-                case NUMERIC:  return cell.getNumericCellValue();
+            CellType tipo = cell.getCellType();
+            if (tipo == CellType.FORMULA) tipo = cell.getCachedFormulaResultType();
+            switch (tipo) {
+                case NUMERIC: return cell.getNumericCellValue();
                 case STRING: {
-                    String valor = cell.getStringCellValue().trim()
-                            .replace(",", ".")
-                            .replaceAll("[^\\d.\\-]", "");
-                    if (valor.isEmpty() || valor.equals("-") || valor.equals(".")) return 0.0;
-                    return Double.parseDouble(valor);
-                }
-                case FORMULA:
-                    try {
-                        return cell.getNumericCellValue();
-                    } catch (IllegalStateException e) {
-                        String s = cell.getStringCellValue().trim()
-                                .replace(",", ".").replaceAll("[^\\d.\\-]", "");
-                        return Double.parseDouble(s);
+                    // se ignoran símbolos de moneda y espacios ("$ 1 234,50")
+                    String texto = cell.getStringCellValue();
+                    double valor = DecodificadorCeldas.numero(texto, true);
+                    if (!Double.isNaN(valor)) return valor;
+                    if (texto.chars().anyMatch(Character::isDigit)) {
+                        logger.warning("❌ Formato numérico en fila " + fila + ", col " + columna + " val='" + texto + "'");
                     }
+                    return 0.0;
+                }
                 default: return 0.0;
             }
-        } catch (NumberFormatException e) {
-            logger.warning("❌ Formato numérico en fila " + fila + ", col " + columna + " val='"
-                    + obtenerTextoCrudoCelda(cell) + "': " + e.getMessage());
-            return 0.0;
         } catch (Exception e) {
             logger.warning("⚠️ Error al convertir celda (fila " + fila + ", col " + columna + "): "
                     + e.getMessage() + " | raw='" + obtenerTextoCrudoCelda(cell) + "'");
@@ -173,15 +169,6 @@ public class DepratiVentaService {
         }
     }
 
-    private static <T> List<List<T>> partition(List<T> list, int size) {
-        List<List<T>> parts = new ArrayList<>();
-        if (list == null || list.isEmpty() || size <= 0) return parts;
-        for (int i = 0; i < list.size(); i += size) {
-            parts.add(list.subList(i, Math.min(i + size, list.size())));
-        }
-        return parts;
-    }
-
     // ----------------------------- Ventas: CRUD filtrado por Deprati -----------------------------
 
     public List<Venta> obtenerTodasLasVentasDeprati() {
@@ -209,74 +196,221 @@ public class DepratiVentaService {
         return ventaService.actualizarVenta(id, nuevaVenta);
     }
 
+    /** false si no existe o no es de Deprati. */
     public boolean eliminarVentaDeprati(Long id) {
-        Optional<Venta> venta = ventaService.obtenerVentaPorId(id);
-        if (venta.isEmpty()) return false;
-        Cliente c = venta.get().getCliente();
-        if (c == null || c.getCodCliente() == null || !COD_CLIENTE_DEPRATI.equals(c.getCodCliente())) {
-            return false;
-        }
-        return ventaService.eliminarVenta(id);
+        Optional<Cliente> deprati = clienteService.findByCodCliente(COD_CLIENTE_DEPRATI);
+        if (id == null || deprati.isEmpty()) return false;
+        return eliminacionVentaService.eliminarPorIds(List.of(id), deprati.get().getId()).eliminados() == 1;
     }
 
+    /** Borra las de Deprati en un DELETE por tramo (filtro de cliente en la sentencia); las demás se ignoran. */
     public boolean eliminarVentasDeprati(List<Long> ids) {
         if (ids == null || ids.isEmpty()) return true;
-        List<Long> idsFiltrados = new ArrayList<>();
-        for (Long id : ids) {
-            Optional<Venta> v = ventaService.obtenerVentaPorId(id);
-            if (v.isPresent()) {
-                Cliente c = v.get().getCliente();
-                if (c != null && COD_CLIENTE_DEPRATI.equals(c.getCodCliente())) {
-                    idsFiltrados.add(id);
-                }
-            }
-        }
-        int fallidos = 0;
-        for (List<Long> batch : partition(idsFiltrados, DELETE_BATCH_SIZE)) {
-            try {
-                boolean ok = ventaService.eliminarVentas(batch);
-                if (!ok) fallidos++;
-            } catch (Exception e) {
-                logger.severe("Error eliminando lote de " + batch.size() + " ventas: " + e.getMessage());
-                fallidos++;
-            }
+        Optional<Cliente> deprati = clienteService.findByCodCliente(COD_CLIENTE_DEPRATI);
+        if (deprati.isEmpty()) return true;
+        try {
+            EliminacionVentaService.Resultado r = eliminacionVentaService.eliminarPorIds(ids, deprati.get().getId());
+            logger.info("Deprati: " + r.eliminados() + " ventas eliminadas, " + r.omitidos() + " omitidas");
+            return true;
+        } catch (Exception e) {
+            logger.severe("Error eliminando " + ids.size() + " ventas: " + e.getMessage());
+            return false;
         }
-        return fallidos == 0;
     }
 
     // ----------------------------- Cargas Excel específicas Deprati -----------------------------
 
+    /**
+     * Fila de datos ya leída del Excel, antes de resolver producto.
+     * Unidades/dólares van en el mismo orden que las columnas PDV detectadas.
+     */
+    private static final class FilaDeprati {
+        final int fecha; // yyyyMMdd
+        final String codBarra;
+        final double[] unidades;
+        final double[] dolares;
+
+        FilaDeprati(int fecha, String codBarra, int pdvs) {
+            this.fecha = fecha;
+            this.codBarra = codBarra.trim();
+            this.unidades = new double[pdvs];
+            this.dolares = new double[pdvs];
+        }
+    }
+
+    /** Lee unidades/dólares de cada par de columnas PDV de la fila. */
+    private FilaDeprati leerFilaDeprati(Row row, int i, int fecha, String codBarra, List<Integer> columnasPdv) {
+        FilaDeprati f = new FilaDeprati(fecha, codBarra, columnasPdv.size());
+        for (int j = 0; j < columnasPdv.size(); j++) {
+            int col = columnasPdv.get(j);
+            f.unidades[j] = convertirADoubleSeguro(row.getCell(col), i + 1, col);
+            f.dolares[j]  = convertirADoubleSeguro(row.getCell(col + 1), i + 1, col + 1);
+        }
+        return f;
+    }
+
+    /**
+     * Parte común de ambas cargas: cliente una sola vez, todos los códigos distintos resueltos
+     * en lote (ProductoSapService) y un único upsert de las ventas resultantes.
+     * Con {@code simulacion} el upsert solo cuenta (VentaService#simularUpsertMasivo) y la estrategia no aplica.
+     */
+    private ResponseEntity<Map<String, Object>> guardarFilasDeprati(String etiqueta,
+                                                                   List<FilaDeprati> filas,
+                                                                   int filasLeidas,
+                                                                   Map<Integer, String> codPdvMap,
+                                                                   Map<Integer, String> pdvMap,
+                                                                   Map<String, Object> respuesta,
+                                                                   boolean simulacion,
+                                                                   EstrategiaCarga estrategia) {
+        if (simulacion) SimulacionCarga.marcar(respuesta);
+        Cliente cliente = clienteService.findByCodCliente(COD_CLIENTE_DEPRATI).orElse(null);
+        if (cliente == null) {
+            respuesta.put("mensaje", "❌ No existe Cliente con codCliente=" + COD_CLIENTE_DEPRATI);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
+        }
+
+        long t0 = System.currentTimeMillis();
+        Set<String> codigos = new LinkedHashSet<>();
+        for (FilaDeprati f : filas) codigos.add(f.codBarra);
+        Map<String, ProductoSapService.ProductoSap> productos = productoSapService.resolverPorCodBarraOCodItem(codigos);
+        long tResolver = System.currentTimeMillis() - t0;
+
+        List<String> codPdvs = new ArrayList<>(codPdvMap.values());
+        List<String> pdvs = new ArrayList<>(pdvMap.values());
+
+        Set<String> codigosNoEncontrados = new HashSet<>();
+        List<Venta> ventas = new ArrayList<>(filas.size() * Math.max(1, codPdvs.size()));
+        for (FilaDeprati f : filas) {
+            ProductoSapService.ProductoSap producto = productos.get(f.codBarra);
+            if (producto == null) {
+                codigosNoEncontrados.add(f.codBarra);
+                continue;
+            }
+            for (int j = 0; j < codPdvs.size(); j++) {
+                Venta venta = new Venta();
+                venta.setAnio(DecodificadorCeldas.anio(f.fecha));
+                venta.setMes(DecodificadorCeldas.mes(f.fecha));
+                venta.setDia(DecodificadorCeldas.dia(f.fecha));
+                // ✅ APLICAR REGLA: placeholder para tienda vacía/null
+                venta.setCodPdv(normalizarCodPdv(codPdvs.get(j)));
+                venta.setPdv(pdvs.get(j));
+                venta.setVentaUnidad(f.unidades[j]);
+                venta.setVentaDolares(f.dolares[j]);
+                venta.setStockDolares(0);
+                venta.setStockUnidades(0);
+                venta.setUnidadesDiarias("0");
+                venta.setCliente(cliente);
+                // marca / nombre / descripción / codBarra salen de SAP (como en cargarDatosDeProductoDeprati)
+                producto.aplicar(venta);
+                ventas.add(venta);
+            }
+        }
+
+        if (ventas.isEmpty()) {
+            respuesta.put("mensaje", "⚠️ Se leyó el archivo, pero no se encontraron ventas válidas.");
+            respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).body(respuesta);
+        }
+
+        long t1 = System.currentTimeMillis();
+        logger.info(etiqueta + ": " + (simulacion ? "validando" : "guardando") + " ventas size=" + ventas.size());
+        VentaService.ResultadoUpsert r = simulacion
+                ? ventaService.simularUpsertMasivo(ventas)
+                : ventaService.upsertVentasMasivo(ventas, estrategia);
+        long tGuardar = System.currentTimeMillis() - t1;
+
+        int filasProcesadas = ventas.size();
+        logger.info(etiqueta + ": fin procesamiento filasLeidas=" + filasLeidas + " procesadas=" + filasProcesadas
+                + " noEncontrados=" + codigosNoEncontrados.size() + " codigosDistintos=" + codigos.size()
+                + " insertados=" + r.insertados + " actualizados=" + r.actualizados + " sinCambios=" + r.sinCambios
+                + " msResolver=" + tResolver + " msGuardar=" + tGuardar);
+        respuesta.put("mensaje", simulacion
+                ? "✅ Validación: se procesarían " + filasProcesadas + " registros de " + filasLeidas + " filas leídas (no se guardó nada)."
+                : "✅ Se procesaron " + filasProcesadas + " registros de " + filasLeidas + " filas leídas.");
+        respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
+        respuesta.put("insertados", r.insertados);
+        respuesta.put("actualizados", r.actualizados);
+        respuesta.put("sinCambios", r.sinCambios);
+        if (!simulacion) respuesta.put(EstrategiaCarga.CAMPO, estrategia.name());
+        return ResponseEntity.ok(respuesta);
+    }
+
     /**
      * Replica la lógica de /subir-archivos-motor-maping del controller.
      * Devuelve el mismo mapa de respuesta para que el controller solo delegue.
      */
     public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(MultipartFile file) {
-        Map<String, Object> respuesta = new HashMap<>();
+        return procesarArchivoExcelFlexible(file, false);
+    }
+
+    /** @param forzar procesa aunque el mismo archivo ya se haya importado (ver HuellaCargaService) */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(MultipartFile file, boolean forzar) {
+        return procesarArchivoExcelFlexible(file, forzar, false);
+    }
+
+    /** @param simulacion valida sin guardar (ver SimulacionCarga); no usa ni registra la huella */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(MultipartFile file, boolean forzar, boolean simulacion) {
+        return procesarArchivoExcelFlexible(file, forzar, simulacion, EstrategiaCarga.UPSERT);
+    }
+
+    /** @param estrategia cómo se escriben las ventas (ver EscritorVentas); la huella es propia de cada estrategia */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(MultipartFile file, boolean forzar, boolean simulacion,
+                                                                          EstrategiaCarga estrategia) {
         logger.info("DepratiFlexible: inicio procesamiento archivo=" + file.getOriginalFilename() + " bytes=" + file.getSize());
         if (file.isEmpty()) {
+            Map<String, Object> respuesta = new HashMap<>();
             respuesta.put("mensaje", "❌ El archivo está vacío.");
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
         }
+        try (SpoolSubidas.ArchivoSubido archivo = spoolSubidas.guardar(file)) {
+            if (simulacion) {
+                return procesarArchivoExcelFlexible(archivo.getRuta(), file.getOriginalFilename(), ProgresoCarga.NINGUNO, true);
+            }
+            return conHuella(estrategia.endpointHuella("DEPRATI_FLEXIBLE"), archivo, forzar,
+                    () -> procesarArchivoExcelFlexible(archivo.getRuta(), file.getOriginalFilename(), ProgresoCarga.NINGUNO, false, estrategia));
+        } catch (IOException e) {
+            Map<String, Object> respuesta = new HashMap<>();
+            respuesta.put("mensaje", "❌ Error al procesar el archivo Excel.");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(respuesta);
+        }
+    }
 
+    /** Núcleo de la carga flexible sobre el archivo en disco (lo usa también el job asíncrono). */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(Path archivo, String nombreArchivo,
+                                                                          ProgresoCarga progreso) {
+        return procesarArchivoExcelFlexible(archivo, nombreArchivo, progreso, false);
+    }
+
+    /** @param simulacion valida sin guardar (ver SimulacionCarga) */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(Path archivo, String nombreArchivo,
+                                                                          ProgresoCarga progreso, boolean simulacion) {
+        return procesarArchivoExcelFlexible(archivo, nombreArchivo, progreso, simulacion, EstrategiaCarga.UPSERT);
+    }
+
+    /** @param estrategia cómo se escriben las ventas (ver EscritorVentas; en simulación no aplica) */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelFlexible(Path archivo, String nombreArchivo,
+                                                                          ProgresoCarga progreso, boolean simulacion,
+                                                                          EstrategiaCarga estrategia) {
+        Map<String, Object> respuesta = new HashMap<>();
         int filasLeidas = 0;
-        int filasProcesadas = 0;
-        Set<String> codigosNoEncontrados = new HashSet<>();
 
-        try (Workbook workbook = obtenerWorkbookCorrecto(file)) {
+        progreso.fase("LEYENDO");
+        PlanExtraccion plan = plantillaService.plan(PlantillaService.DEPRATI_FLEXIBLE);
+        try (Workbook workbook = obtenerWorkbookCorrecto(archivo, nombreArchivo)) {
             Sheet sheet = workbook.getSheetAt(0);
-            List<Venta> ventas = new ArrayList<>();
+            List<FilaDeprati> filas = new ArrayList<>();
 
             Map<Integer, String> codPdvMap = new LinkedHashMap<>();
             Map<Integer, String> pdvMap = new LinkedHashMap<>();
 
-            Row rowCodPdv = sheet.getRow(25);
-            Row rowPdv = sheet.getRow(26);
+            Row rowCodPdv = sheet.getRow(plan.getFilaCodPdv());
+            Row rowPdv = sheet.getRow(plan.getFilaPdv());
             if (rowCodPdv == null || rowPdv == null) {
                 respuesta.put("mensaje", "❌ El archivo no tiene las filas necesarias (cod_Pdv/pdv).");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
             }
 
-            for (int col = 12; col <= 44; col += 2) {
+            for (int col : plan.columnasPdv()) {
                 String codPdvRaw = obtenerValorCelda(rowCodPdv.getCell(col), String.class);
                 String pdv = obtenerValorCelda(rowPdv.getCell(col), String.class);
 
@@ -289,145 +423,51 @@ public class DepratiVentaService {
                 }
             }
             logger.info("DepratiFlexible: PDV detectados=" + codPdvMap.size());
+            List<Integer> columnasPdv = new ArrayList<>(codPdvMap.keySet());
 
-            Row encabezado = sheet.getRow(27);
+            Row encabezado = sheet.getRow(plan.getFilaEncabezado());
             if (encabezado == null) {
-                respuesta.put("mensaje", "❌ No se encontró fila de encabezados (fila 28 esperada).");
+                respuesta.put("mensaje", "❌ No se encontró fila de encabezados (fila " + (plan.getFilaEncabezado() + 1) + " esperada).");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
             }
 
-            Map<String, List<String>> camposEsperados = new HashMap<>();
-            camposEsperados.put("marca", List.of(normalizarTexto("Marca"), normalizarTexto("brand"), normalizarTexto("Marcas")));
-            camposEsperados.put("nombreProducto", List.of(normalizarTexto("nombre producto"), normalizarTexto("producto"), normalizarTexto("Descripcion"), normalizarTexto("descripciones")));
-            camposEsperados.put("codBarra", List.of(normalizarTexto("codigo de barras"), normalizarTexto("cod_barra"), normalizarTexto("No. Mat. Proveedor")));
-            camposEsperados.put("fecha", List.of(normalizarTexto("Día natural"), normalizarTexto("fecha"), normalizarTexto("fecha venta"), normalizarTexto("date")));
-
             Map<String, Integer> columnaPorCampo = new HashMap<>();
             for (Cell celda : encabezado) {
-                String valor = obtenerValorCelda(celda, String.class);
-                if (valor == null) continue;
-                String valorNormalizado = normalizarTexto(valor);
-                for (Map.Entry<String, List<String>> entry : camposEsperados.entrySet()) {
-                    if (entry.getValue().contains(valorNormalizado)) {
-                        columnaPorCampo.put(entry.getKey(), celda.getColumnIndex());
-                    }
-                }
+                String campo = plan.campo(obtenerValorCelda(celda, String.class));
+                if (campo != null) columnaPorCampo.put(campo, celda.getColumnIndex());
             }
             logger.info("DepratiFlexible: columnas mapeadas=" + columnaPorCampo);
 
-            for (String campo : camposEsperados.keySet()) {
+            for (String campo : plan.camposConAlias()) {
                 if (!columnaPorCampo.containsKey(campo)) {
                     respuesta.put("mensaje", "❌ No se encontró la columna para: " + campo);
                     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
                 }
             }
 
-            for (int i = 29; i <= sheet.getLastRowNum(); i++) {
+            progreso.filasTotales(Math.max(0, sheet.getLastRowNum() + 1 - plan.getFilaDatos()));
+            for (int i = plan.getFilaDatos(); i <= sheet.getLastRowNum(); i++) {
                 Row row = sheet.getRow(i);
                 if (row == null) continue;
-                filasLeidas++;
-
-                LocalDate fecha = null;
-                try {
-                    Cell celdaFecha = row.getCell(columnaPorCampo.get("fecha"));
-                    String fechaTexto = obtenerValorCelda(celdaFecha, String.class);
-                    if (fechaTexto != null && !fechaTexto.isBlank()) {
-                        String[] formatos = { "dd.MM.yyyy", "dd/MM/yyyy", "dd-MM-yyyy", "yyyy-MM-dd", "yyyy/MM/dd", "d-MMM-yyyy" };
-                        for (String f : formatos) {
-                            try {
-                                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(f).withLocale(Locale.US);
-                                fecha = LocalDate.parse(fechaTexto, formatter);
-                                break;
-                            } catch (Exception ignored) {}
-                        }
-                    }
-                    if (fecha == null && celdaFecha != null && celdaFecha.getCellType() == CellType.NUMERIC) {
-                        if (DateUtil.isCellDateFormatted(celdaFecha)) {
-                            Date fechaExcel = celdaFecha.getDateCellValue();
-                            fecha = fechaExcel.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                        }
-                    }
-                    if (fecha == null) continue;
-                } catch (Exception e) {
-                    continue;
-                }
+                progreso.filasProcesadas(++filasLeidas);
 
-                String marca          = obtenerValorCelda(row.getCell(columnaPorCampo.get("marca")), String.class);
-                String nombreProducto = obtenerValorCelda(row.getCell(columnaPorCampo.get("nombreProducto")), String.class);
-                String codBarra       = obtenerValorCelda(row.getCell(columnaPorCampo.get("codBarra")), String.class);
-                String descripcion    = nombreProducto;
+                int fecha = DecodificadorCeldas.fecha(row.getCell(columnaPorCampo.get("fecha")), false);
+                if (fecha == DecodificadorCeldas.SIN_FECHA) continue;
 
+                String codBarra = obtenerValorCelda(row.getCell(columnaPorCampo.get("codBarra")), String.class);
                 if (codBarra == null || codBarra.isBlank() || codBarra.trim().equalsIgnoreCase("Resultado")) continue;
 
-                for (Map.Entry<Integer, String> entry : codPdvMap.entrySet()) {
-                    int col = entry.getKey();
-
-                    // ✅ APLICAR REGLA: placeholder para tienda vacía/null
-                    String codPdv = normalizarCodPdv(entry.getValue());
-
-                    String pdv = pdvMap.get(col);
-                    Double ventaUnidades = convertirADoubleSeguro(row.getCell(col), i + 1, col);
-                    Double ventaUSD      = convertirADoubleSeguro(row.getCell(col + 1), i + 1, col + 1);
-
-                    if (ventaUnidades != null || ventaUSD != null) {
-                        Venta venta = new Venta();
-                        venta.setAnio(fecha.getYear());
-                        venta.setMes(fecha.getMonthValue());
-                        venta.setDia(fecha.getDayOfMonth());
-                        venta.setMarca(marca);
-                        venta.setNombreProducto(nombreProducto);
-                        venta.setCodBarra(codBarra);
-                        venta.setDescripcion(descripcion);
-                        venta.setCodPdv(codPdv);
-                        venta.setPdv(pdv);
-                        venta.setVentaUnidad(ventaUnidades != null ? ventaUnidades : 0);
-                        venta.setVentaDolares(ventaUSD != null ? ventaUSD : 0);
-                        venta.setStockDolares(0);
-                        venta.setStockUnidades(0);
-                        venta.setUnidadesDiarias("0");
-
-                        ensureClienteAttached(venta, COD_CLIENTE_DEPRATI);
-
-                        Producto producto = new Producto();
-                        producto.setCodBarraSap(codBarra);
-                        venta.setProducto(producto);
-
-                        boolean datosCargados = ventaService.cargarDatosDeProductoDeprati(venta, codigosNoEncontrados);
-                        if (!datosCargados) continue;
-
-                        ventas.add(venta);
-                        filasProcesadas++;
-                        if (ventas.size() >= 1000) {
-                            logger.info("DepratiFlexible: guardando lote ventas size=" + ventas.size());
-                            ventaService.guardarVentas(ventas);
-                            ventas.clear();
-                        }
-                    }
-                }
+                filas.add(leerFilaDeprati(row, i, fecha, codBarra, columnasPdv));
             }
 
-            if (ventas.isEmpty()) {
-                respuesta.put("mensaje", "⚠️ Se leyó el archivo, pero no se encontraron ventas válidas.");
-                respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
-                return ResponseEntity.status(HttpStatus.NO_CONTENT).body(respuesta);
-            }
-
-            logger.info("DepratiFlexible: guardando remanente ventas size=" + ventas.size());
-            ventaService.guardarVentas(ventas);
-            for (Venta v : ventas) {
-                ensureClienteAttached(v, COD_CLIENTE_DEPRATI);
-            }
-            ventaService.guardarVentas(ventas);
-
-            logger.info("DepratiFlexible: fin procesamiento filasLeidas=" + filasLeidas + " procesadas=" + filasProcesadas + " noEncontrados=" + codigosNoEncontrados.size());
-            respuesta.put("mensaje", "✅ Se procesaron " + filasProcesadas + " registros de " + filasLeidas + " filas leídas.");
-            respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
-            return ResponseEntity.ok(respuesta);
+            progreso.fase("GUARDANDO");
+            return guardarFilasDeprati("DepratiFlexible", filas, filasLeidas, codPdvMap, pdvMap, respuesta, simulacion, estrategia);
 
         } catch (IOException e) {
             respuesta.put("mensaje", "❌ Error al procesar el archivo Excel.");
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(respuesta);
         } catch (Exception e) {
+            logger.severe("DepratiFlexible: error inesperado: " + e.getMessage());
             respuesta.put("mensaje", "❌ Error inesperado al procesar.");
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(respuesta);
         }
@@ -437,24 +477,69 @@ public class DepratiVentaService {
      * Replica la lógica de /subir-archivo-venta del controller (búsqueda dinámica de fila “Tienda”).
      */
     public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(MultipartFile file) {
-        Map<String, Object> respuesta = new HashMap<>();
+        return procesarArchivoExcelDeprati(file, false);
+    }
+
+    /** @param forzar procesa aunque el mismo archivo ya se haya importado (ver HuellaCargaService) */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(MultipartFile file, boolean forzar) {
+        return procesarArchivoExcelDeprati(file, forzar, false);
+    }
+
+    /** @param simulacion valida sin guardar (ver SimulacionCarga); no usa ni registra la huella */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(MultipartFile file, boolean forzar, boolean simulacion) {
+        return procesarArchivoExcelDeprati(file, forzar, simulacion, EstrategiaCarga.UPSERT);
+    }
+
+    /** @param estrategia cómo se escriben las ventas (ver EscritorVentas); la huella es propia de cada estrategia */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(MultipartFile file, boolean forzar, boolean simulacion,
+                                                                         EstrategiaCarga estrategia) {
         logger.info("Deprati: inicio procesamiento archivo=" + file.getOriginalFilename() + " bytes=" + file.getSize());
         if (file.isEmpty()) {
+            Map<String, Object> respuesta = new HashMap<>();
             respuesta.put("mensaje", "❌ El archivo está vacío.");
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
         }
+        try (SpoolSubidas.ArchivoSubido archivo = spoolSubidas.guardar(file)) {
+            if (simulacion) {
+                return procesarArchivoExcelDeprati(archivo.getRuta(), file.getOriginalFilename(), ProgresoCarga.NINGUNO, true);
+            }
+            return conHuella(estrategia.endpointHuella("DEPRATI"), archivo, forzar,
+                    () -> procesarArchivoExcelDeprati(archivo.getRuta(), file.getOriginalFilename(), ProgresoCarga.NINGUNO, false, estrategia));
+        } catch (IOException e) {
+            Map<String, Object> respuesta = new HashMap<>();
+            respuesta.put("mensaje", "❌ Error al procesar el archivo Excel.");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(respuesta);
+        }
+    }
+
+    /** Núcleo de la carga Deprati sobre el archivo en disco (lo usa también el job asíncrono). */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(Path archivo, String nombreArchivo,
+                                                                         ProgresoCarga progreso) {
+        return procesarArchivoExcelDeprati(archivo, nombreArchivo, progreso, false);
+    }
+
+    /** @param simulacion valida sin guardar (ver SimulacionCarga) */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(Path archivo, String nombreArchivo,
+                                                                         ProgresoCarga progreso, boolean simulacion) {
+        return procesarArchivoExcelDeprati(archivo, nombreArchivo, progreso, simulacion, EstrategiaCarga.UPSERT);
+    }
 
+    /** @param estrategia cómo se escriben las ventas (ver EscritorVentas; en simulación no aplica) */
+    public ResponseEntity<Map<String, Object>> procesarArchivoExcelDeprati(Path archivo, String nombreArchivo,
+                                                                         ProgresoCarga progreso, boolean simulacion,
+                                                                         EstrategiaCarga estrategia) {
+        Map<String, Object> respuesta = new HashMap<>();
         int filasLeidas = 0;
-        int filasProcesadas = 0;
-        Set<String> codigosNoEncontrados = new HashSet<>();
 
-        try (Workbook workbook = obtenerWorkbookCorrecto(file)) {
+        progreso.fase("LEYENDO");
+        PlanExtraccion plan = plantillaService.plan(PlantillaService.DEPRATI);
+        try (Workbook workbook = obtenerWorkbookCorrecto(archivo, nombreArchivo)) {
             Sheet sheet = workbook.getSheetAt(0);
-            List<Venta> ventas = new ArrayList<>();
+            List<FilaDeprati> filas = new ArrayList<>();
 
-            // localizar fila con “Tienda”
-            int filaCodPdv = -1;
-            for (int i = 0; i <= sheet.getLastRowNum(); i++) {
+            // localizar fila con “Tienda” (salvo que la plantilla la fije)
+            int filaCodPdv = plan.getFilaCodPdv();
+            for (int i = 0; filaCodPdv < 0 && i <= sheet.getLastRowNum(); i++) {
                 Row row = sheet.getRow(i);
                 if (row == null) continue;
                 for (Cell cell : row) {
@@ -472,7 +557,7 @@ public class DepratiVentaService {
             }
 
             Row rowCodPdv = sheet.getRow(filaCodPdv);
-            Row rowPdv = sheet.getRow(filaCodPdv + 1);
+            Row rowPdv = sheet.getRow(plan.getFilaPdv() >= 0 ? plan.getFilaPdv() : filaCodPdv + 1);
             if (rowPdv == null) {
                 respuesta.put("mensaje", "❌ No se encontró la fila siguiente con los nombres de PDV.");
                 return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(respuesta);
@@ -495,110 +580,60 @@ public class DepratiVentaService {
                 }
             }
             logger.info("Deprati: PDV detectados=" + codPdvMap.size());
+            List<Integer> columnasPdv = new ArrayList<>(codPdvMap.keySet());
 
-            for (int i = 29; i <= sheet.getLastRowNum(); i++) {
+            progreso.filasTotales(Math.max(0, sheet.getLastRowNum() + 1 - plan.getFilaDatos()));
+            for (int i = plan.getFilaDatos(); i <= sheet.getLastRowNum(); i++) {
                 Row row = sheet.getRow(i);
                 if (row == null) continue;
-                filasLeidas++;
-
-                // fecha en col 11 según tu código original
-                LocalDate fecha = null;
-                try {
-                    Cell celdaFecha = row.getCell(11);
-                    String[] formatos = {"dd.MM.yyyy","dd/MM/yyyy","dd-MM-yyyy","yyyy-MM-dd","yyyy/MM/dd","d-MMM-yyyy"};
-                    if (celdaFecha != null) {
-                        if (celdaFecha.getCellType() == CellType.STRING) {
-                            String s = obtenerValorCelda(celdaFecha, String.class);
-                            if (s != null && !s.isBlank()) {
-                                for (String f : formatos) {
-                                    try {
-                                        DateTimeFormatter df = DateTimeFormatter.ofPattern(f).withLocale(Locale.US);
-                                        fecha = LocalDate.parse(s, df);
-                                        break;
-                                    } catch (Exception ignored) {}
-                                }
-                            }
-                        } else if (celdaFecha.getCellType() == CellType.NUMERIC && DateUtil.isCellDateFormatted(celdaFecha)) {
-                            Date d = celdaFecha.getDateCellValue();
-                            fecha = d.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                        }
-                    }
-                    if (fecha == null) continue;
-                } catch (Exception ignored) { continue; }
+                progreso.filasProcesadas(++filasLeidas);
 
-                String marca          = obtenerValorCelda(row.getCell(6), String.class);
-                String nombreProducto = obtenerValorCelda(row.getCell(9), String.class);
-                String codBarra       = obtenerValorCelda(row.getCell(10), String.class);
-                String descripcion    = nombreProducto;
+                int fecha = DecodificadorCeldas.fecha(row.getCell(plan.columna("fecha")), false);
+                if (fecha == DecodificadorCeldas.SIN_FECHA) continue;
 
+                String codBarra = obtenerValorCelda(row.getCell(plan.columna("codBarra")), String.class);
                 if (codBarra == null || codBarra.isBlank() || codBarra.trim().equalsIgnoreCase("Resultado")) continue;
 
-                for (Map.Entry<Integer, String> entry : codPdvMap.entrySet()) {
-                    int col = entry.getKey();
-
-                    // ✅ APLICAR REGLA: placeholder para tienda vacía/null
-                    String codPdv = normalizarCodPdv(entry.getValue());
-
-                    String pdv = pdvMap.get(col);
-                    Double ventaUnidades = convertirADoubleSeguro(row.getCell(col), i + 1, col);
-                    Double ventaUSD      = convertirADoubleSeguro(row.getCell(col + 1), i + 1, col + 1);
-
-                    if (ventaUnidades != null || ventaUSD != null) {
-                        Venta venta = new Venta();
-                        venta.setAnio(fecha.getYear());
-                        venta.setMes(fecha.getMonthValue());
-                        venta.setDia(fecha.getDayOfMonth());
-                        venta.setMarca(marca);
-                        venta.setNombreProducto(nombreProducto);
-                        venta.setCodBarra(codBarra);
-                        venta.setDescripcion(descripcion);
-                        venta.setCodPdv(codPdv);
-                        venta.setPdv(pdv);
-                        venta.setVentaUnidad(ventaUnidades != null ? ventaUnidades : 0);
-                        venta.setVentaDolares(ventaUSD != null ? ventaUSD : 0);
-                        venta.setStockDolares(0);
-                        venta.setStockUnidades(0);
-                        venta.setUnidadesDiarias("0");
-
-                        Cliente cliente = new Cliente();
-                        cliente.setCodCliente(COD_CLIENTE_DEPRATI);
-                        venta.setCliente(cliente);
-
-                        Producto producto = new Producto();
-                        producto.setCodBarraSap(codBarra);
-                        venta.setProducto(producto);
-
-                        boolean datosCargados = ventaService.cargarDatosDeProductoDeprati(venta, codigosNoEncontrados);
-                        if (!datosCargados) continue;
-
-                        ventas.add(venta);
-                        filasProcesadas++;
-                    }
-                }
-            }
-
-            if (ventas.isEmpty()) {
-                respuesta.put("mensaje", "⚠️ Se leyó el archivo, pero no se encontraron ventas válidas.");
-                respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
-                return ResponseEntity.status(HttpStatus.NO_CONTENT).body(respuesta);
+                filas.add(leerFilaDeprati(row, i, fecha, codBarra, columnasPdv));
             }
 
-            logger.info("Deprati: guardando remanente ventas size=" + ventas.size());
-            ventaService.guardarVentas(ventas);
-            for (Venta v : ventas) {
-                ensureClienteAttached(v, COD_CLIENTE_DEPRATI);
-            }
-            ventaService.guardarVentas(ventas);
-
-            logger.info("Deprati: fin procesamiento filasLeidas=" + filasLeidas + " procesadas=" + filasProcesadas + " noEncontrados=" + codigosNoEncontrados.size());
-            respuesta.put("mensaje", "✅ Se procesaron " + filasProcesadas + " registros de " + filasLeidas + " filas leídas.");
-            respuesta.put("codigosNoEncontrados", codigosNoEncontrados);
-            return ResponseEntity.ok(respuesta);
+            progreso.fase("GUARDANDO");
+            return guardarFilasDeprati("Deprati", filas, filasLeidas, codPdvMap, pdvMap, respuesta, simulacion, estrategia);
 
         } catch (IOException e) {
             respuesta.put("mensaje", "❌ Error al procesar el archivo Excel.");
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(respuesta);
         } catch (Exception e) {
+            logger.severe("Deprati: error inesperado: " + e.getMessage());
+            respuesta.put("mensaje", "❌ Error inesperado al procesar.");
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(respuesta);
+        }
+    }
+
+    /** Respuesta distinta de 200: no se guarda como resultado reutilizable y se devuelve tal cual. */
+    private static final class RespuestaNoReutilizable extends RuntimeException {
+        final ResponseEntity<Map<String, Object>> respuesta;
+        RespuestaNoReutilizable(ResponseEntity<Map<String, Object>> respuesta) {
+            super(String.valueOf(respuesta.getStatusCode()));
+            this.respuesta = respuesta;
+        }
+    }
+
+    /** Idempotencia por huella SHA-256 del archivo (mismo archivo ya importado => resultado guardado). */
+    private ResponseEntity<Map<String, Object>> conHuella(String endpoint, SpoolSubidas.ArchivoSubido archivo, boolean forzar,
+                                                          Callable<ResponseEntity<Map<String, Object>>> carga) {
+        try {
+            return ResponseEntity.ok(huellaCargaService.ejecutar(endpoint, COD_CLIENTE_DEPRATI, archivo.getRuta(),
+                    archivo.getNombreOriginal(), forzar, () -> {
+                        ResponseEntity<Map<String, Object>> r = carga.call();
+                        if (r.getStatusCode() != HttpStatus.OK) throw new RespuestaNoReutilizable(r);
+                        return r.getBody() != null ? r.getBody() : new HashMap<>();
+                    }));
+        } catch (RespuestaNoReutilizable e) {
+            return e.respuesta;
+        } catch (Exception e) {
+            logger.severe(endpoint + ": error inesperado: " + e.getMessage());
+            Map<String, Object> respuesta = new HashMap<>();
             respuesta.put("mensaje", "❌ Error inesperado al procesar.");
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(respuesta);
         }
@@ -607,8 +642,9 @@ public class DepratiVentaService {
     // ----------------------------- Carga Excel genérica (parametrizable) -----------------------------
 
     public ResponseEntity<String> cargarVentasDesdeExcel(MultipartFile archivo, Map<String,Integer> mapeoColumnas, int filaInicio) {
-        try {
-            boolean ok = ventaService.cargarVentasDesdeExcel(archivo.getInputStream(), mapeoColumnas, filaInicio);
+        try (SpoolSubidas.ArchivoSubido subido = spoolSubidas.guardar(archivo)) {
+            Map<String, Object> res = ventaService.cargarVentasDesdeExcel(subido.getRuta(), mapeoColumnas, filaInicio, archivo.getOriginalFilename());
+            boolean ok = Boolean.TRUE.equals(res.get("ok"));
             return ok ? ResponseEntity.ok("Archivo procesado correctamente")
                     : ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error al procesar el archivo");
         } catch (IOException e) {
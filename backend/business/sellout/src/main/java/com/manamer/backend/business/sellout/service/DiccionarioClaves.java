@@ -0,0 +1,84 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * codBarra / codPdv → id entero para {@link VentaKey}, uno por carga (o por bloque si los bloques corren en
+ * paralelo). Los textos se comparan con trim + mayúsculas; null y vacío son el id 0.
+ *
+ * El texto tal como llega también se recuerda, así que solo se normaliza (y se asigna un String nuevo) la
+ * primera vez que aparece. No es thread-safe para {@link #id}; una vez cargado, {@link #buscar} y
+ * {@link #claveSiExiste} solo leen y pueden llamarse desde varios hilos.
+ */
+public final class DiccionarioClaves {
+
+    /** Id de un texto que el diccionario no conoce ({@link #buscar}). */
+    public static final int DESCONOCIDO = -1;
+
+    private final HashMap<String, Integer> normalizados = new HashMap<>();
+    private final HashMap<String, Integer> crudos = new HashMap<>();
+
+    /** Id del texto; lo agrega si no estaba. */
+    public int id(String texto) {
+        if (texto == null) return 0;
+        Integer id = crudos.get(texto);
+        if (id != null) return id;
+        String n = normalizar(texto);
+        if (n.isEmpty()) {
+            id = 0;
+        } else {
+            id = normalizados.get(n);
+            if (id == null) {
+                id = normalizados.size() + 1;
+                normalizados.put(n, id);
+            }
+        }
+        crudos.put(texto, id);
+        return id;
+    }
+
+    /** Id del texto sin agregarlo: {@link #DESCONOCIDO} si nunca se vio. */
+    public int buscar(String texto) {
+        if (texto == null) return 0;
+        Integer id = crudos.get(texto);
+        if (id != null) return id;
+        String n = normalizar(texto);
+        if (n.isEmpty()) return 0;
+        id = normalizados.get(n);
+        return id == null ? DESCONOCIDO : id;
+    }
+
+    /** Textos distintos (ya normalizados) vistos. */
+    public int size() {
+        return normalizados.size();
+    }
+
+    public VentaKey clave(Long clienteId, Integer anio, Integer mes, int dia, String codBarra, String codPdv) {
+        return new VentaKey(VentaKey.fechaCliente(clienteId, anio, mes, dia), VentaKey.textos(id(codBarra), id(codPdv)));
+    }
+
+    public VentaKey clave(Venta v) {
+        return clave(v.getCliente() != null ? v.getCliente().getId() : null,
+                v.getAnio(), v.getMes(), v.getDia(), v.getCodBarra(), v.getCodPdv());
+    }
+
+    /** Clave sin agregar textos al diccionario; null si alguno no se vio (la clave no puede estar en un mapa suyo). */
+    public VentaKey claveSiExiste(Long clienteId, Integer anio, Integer mes, int dia, String codBarra, String codPdv) {
+        int barra = buscar(codBarra);
+        int pdv = buscar(codPdv);
+        if (barra == DESCONOCIDO || pdv == DESCONOCIDO) return null;
+        return new VentaKey(VentaKey.fechaCliente(clienteId, anio, mes, dia), VentaKey.textos(barra, pdv));
+    }
+
+    /** Texto de la clave tal como se compara (trim + mayúsculas); "" para null, como el id 0. */
+    public static String textoClave(String s) {
+        return s == null ? "" : normalizar(s);
+    }
+
+    private static String normalizar(String s) {
+        return s.trim().toUpperCase(Locale.ROOT);
+    }
+}
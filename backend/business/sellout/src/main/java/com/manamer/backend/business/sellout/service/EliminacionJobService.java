@@ -0,0 +1,380 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Eliminaciones de ventas en segundo plano, sin tope de claves (V8__eliminacion_venta.sql):
+ *
+ * <ul>
+ *   <li>SELECCION: las claves (anio, mes, codBarra, codPdv) se guardan en venta_eliminacion_clave al encolar.
+ *       Cada lote toma las siguientes {@code sellout.eliminaciones.claves-por-lote} claves y, en una transacción,
+ *       borra sus ventas, borra esas claves y suma el avance del job.</li>
+ *   <li>FILTRO: DELETE TOP ({@code sellout.eliminaciones.filas-por-lote}) por año/mes/marca/pdv, una transacción
+ *       por lote, hasta que no quede nada o se llegue a {@code maxTotal}. Un mes completo con la tabla
+ *       particionada se vacía de una vez ({@link ParticionVentaService#purgarPeriodo}).</li>
+ * </ul>
+ * Los lotes chicos mantienen los bloqueos por debajo de la escalada a tabla, así que las cargas siguen
+ * escribiendo entre lote y lote. El avance vive en la base: al levantar la aplicación los jobs EN_COLA o
+ * PROCESANDO siguen desde el último lote confirmado, y uno en ERROR se reanuda con {@link #reanudar}.
+ */
+@Service
+public class EliminacionJobService {
+
+    private static final Logger log = Logger.getLogger(EliminacionJobService.class.getName());
+
+    public enum Tipo { SELECCION, FILTRO }
+
+    public enum Estado { EN_COLA, PROCESANDO, COMPLETADO, ERROR }
+
+    private static final String JOBS = "SELLOUT.dbo.venta_eliminacion";
+    private static final String CLAVES = "SELLOUT.dbo.venta_eliminacion_clave";
+    private static final int CLAVES_POR_INSERT = 1_000;
+    private static final int LISTADO = 50;
+
+    private static final String SQL_BORRAR_VENTAS_CLAVES = """
+        DELETE FROM SELLOUT.dbo.venta
+        WHERE EXISTS (
+            SELECT 1 FROM SELLOUT.dbo.venta_eliminacion_clave k
+            WHERE k.job_id = ? AND k.id <= ?
+              AND k.anio = venta.anio AND k.mes = venta.mes AND k.cod_barra = venta.cod_barra
+              AND (k.cod_pdv = venta.cod_pdv OR (k.cod_pdv IS NULL AND venta.cod_pdv IS NULL))
+        )
+    """;
+
+    private record Filtro(Integer anio, Integer mes, String marca, String codPdv, Long maxTotal) {
+        boolean mesCompleto() {
+            return anio != null && mes != null && maxTotal == null && marca == null && codPdv == null;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate txTemplate;
+    private final ParticionVentaService particionVentaService;
+    private final int clavesPorLote;
+    private final int filasPorLote;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> lanzados = ConcurrentHashMap.newKeySet();
+
+    public EliminacionJobService(JdbcTemplate jdbcTemplate, PlatformTransactionManager ptm,
+                                 ParticionVentaService particionVentaService,
+                                 @Value("${sellout.eliminaciones.workers:1}") int workers,
+                                 @Value("${sellout.eliminaciones.claves-por-lote:500}") int clavesPorLote,
+                                 @Value("${sellout.eliminaciones.filas-por-lote:2000}") int filasPorLote) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.txTemplate = new TransactionTemplate(ptm);
+        this.particionVentaService = particionVentaService;
+        this.clavesPorLote = Math.max(1, clavesPorLote);
+        this.filasPorLote = Math.max(1, filasPorLote);
+
+        // los jobs están en la base: la cola en memoria no necesita tope
+        AtomicInteger n = new AtomicInteger();
+        int hilos = Math.max(1, workers);
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "eliminacion-job-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    // ===================== Encolar =====================
+
+    /** Guarda la selección completa (sin repetidas ni claves sin codBarra) y encola su eliminación. */
+    public Map<String, Object> encolarSeleccion(Collection<TemplateGeneralService.KeyVenta> seleccion) {
+        String id = registrarSeleccion(seleccion);
+        lanzar(id);
+        return estado(id).orElseThrow();
+    }
+
+    /** Encola la eliminación por filtros; marca y codPdv vacíos no filtran. */
+    public Map<String, Object> encolarFiltro(Integer anio, Integer mes, String marca, String codPdv, Long maxTotal) {
+        String id = registrarFiltro(anio, mes, marca, codPdv, maxTotal);
+        lanzar(id);
+        return estado(id).orElseThrow();
+    }
+
+    String registrarSeleccion(Collection<TemplateGeneralService.KeyVenta> seleccion) {
+        Set<TemplateGeneralService.KeyVenta> claves = new LinkedHashSet<>();
+        if (seleccion != null) {
+            for (TemplateGeneralService.KeyVenta k : seleccion) {
+                if (k == null || k.codBarra() == null) continue;
+                String pdv = k.codPdv() == null || k.codPdv().trim().isEmpty() ? null : k.codPdv();
+                claves.add(new TemplateGeneralService.KeyVenta(k.anio(), k.mes(), k.codBarra(), pdv));
+            }
+        }
+        String id = UUID.randomUUID().toString();
+        LocalDateTime ahora = LocalDateTime.now();
+        // job y claves en la misma transacción: un job visible siempre tiene su selección completa
+        txTemplate.executeWithoutResult(st -> {
+            jdbcTemplate.update("INSERT INTO " + JOBS + " (id, tipo, estado, claves_totales, creado, actualizado) "
+                    + "VALUES (?, ?, ?, ?, ?, ?)", id, Tipo.SELECCION.name(), Estado.EN_COLA.name(), claves.size(), ahora, ahora);
+            jdbcTemplate.batchUpdate("INSERT INTO " + CLAVES + " (job_id, anio, mes, cod_barra, cod_pdv) VALUES (?, ?, ?, ?, ?)",
+                    claves, CLAVES_POR_INSERT, (ps, k) -> {
+                        ps.setString(1, id);
+                        ps.setInt(2, k.anio());
+                        ps.setInt(3, k.mes());
+                        ps.setString(4, k.codBarra());
+                        ps.setString(5, k.codPdv());
+                    });
+        });
+        log.info("Eliminación encolada: id=" + id + " claves=" + claves.size());
+        return id;
+    }
+
+    String registrarFiltro(Integer anio, Integer mes, String marca, String codPdv, Long maxTotal) {
+        String id = UUID.randomUUID().toString();
+        LocalDateTime ahora = LocalDateTime.now();
+        actualizar("INSERT INTO " + JOBS + " (id, tipo, estado, anio, mes, marca, cod_pdv, max_total, creado, actualizado) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", id, Tipo.FILTRO.name(), Estado.EN_COLA.name(),
+                anio, mes, limpio(marca), limpio(codPdv), maxTotal, ahora, ahora);
+        log.info("Eliminación encolada: id=" + id + " filtro anio=" + anio + " mes=" + mes + " marca=" + marca
+                + " codPdv=" + codPdv + " maxTotal=" + maxTotal);
+        return id;
+    }
+
+    // ===================== Consulta / reanudación =====================
+
+    public Optional<Map<String, Object>> estado(String id) {
+        return fila(id).map(EliminacionJobService::toMap);
+    }
+
+    /** Los últimos {@value #LISTADO} jobs, el más reciente primero. */
+    public List<Map<String, Object>> listar() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Map<String, Object> f : jdbcTemplate.queryForList("SELECT TOP (" + LISTADO + ") * FROM " + JOBS + " ORDER BY creado DESC")) {
+            out.add(toMap(f));
+        }
+        return out;
+    }
+
+    /** Vuelve a encolar un job en ERROR (o uno pendiente que no esté corriendo); sigue desde su último lote. */
+    public Optional<Map<String, Object>> reanudar(String id) {
+        Optional<Map<String, Object>> f = fila(id);
+        if (f.isEmpty()) return Optional.empty();
+        if (Estado.ERROR.name().equals(f.get().get("estado"))) {
+            actualizar("UPDATE " + JOBS + " SET estado = ?, error = NULL, terminado = NULL, actualizado = ? WHERE id = ?",
+                    Estado.EN_COLA.name(), LocalDateTime.now(), id);
+            // se decide con el estado ya actualizado (la fila leída todavía dice ERROR)
+            f = fila(id);
+        }
+        if (f.isPresent() && !terminado(f.get())) lanzar(id);
+        return estado(id);
+    }
+
+    /** Jobs que quedaron EN_COLA o PROCESANDO al bajar la aplicación. */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reanudarPendientes() {
+        try {
+            List<String> ids = jdbcTemplate.queryForList("SELECT id FROM " + JOBS + " WHERE estado IN (?, ?) ORDER BY creado",
+                    String.class, Estado.EN_COLA.name(), Estado.PROCESANDO.name());
+            ids.forEach(this::lanzar);
+            if (!ids.isEmpty()) log.info("Eliminaciones pendientes reanudadas: " + ids.size());
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "No se pudieron reanudar las eliminaciones pendientes: " + e.getMessage(), e);
+        }
+    }
+
+    // ===================== Proceso =====================
+
+    private void lanzar(String id) {
+        if (!lanzados.add(id)) return;
+        executor.execute(() -> {
+            try {
+                procesar(id);
+            } finally {
+                lanzados.remove(id);
+            }
+        });
+    }
+
+    /** Procesa el job hasta terminar; si el hilo se interrumpe queda PROCESANDO y sigue al reanudar. */
+    void procesar(String id) {
+        Optional<Map<String, Object>> f = fila(id);
+        if (f.isEmpty() || terminado(f.get())) return;
+        Map<String, Object> job = f.get();
+        LocalDateTime ahora = LocalDateTime.now();
+        actualizar("UPDATE " + JOBS + " SET estado = ?, iniciado = COALESCE(iniciado, ?), actualizado = ? WHERE id = ?",
+                Estado.PROCESANDO.name(), ahora, ahora, id);
+        long t0 = System.currentTimeMillis();
+        try {
+            boolean completo = Tipo.SELECCION.name().equals(job.get("tipo"))
+                    ? procesarSeleccion(id)
+                    : procesarFiltro(id, filtro(job));
+            if (!completo) {
+                log.info("Eliminación " + id + " interrumpida; sigue al reanudar");
+                return;
+            }
+            ahora = LocalDateTime.now();
+            actualizar("UPDATE " + JOBS + " SET estado = ?, terminado = ?, actualizado = ? WHERE id = ?",
+                    Estado.COMPLETADO.name(), ahora, ahora, id);
+            log.info("Eliminación " + id + " completada en " + (System.currentTimeMillis() - t0) + " ms");
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // apagado a mitad de un lote: ese lote no se confirmó y el job sigue al reanudar
+                log.info("Eliminación " + id + " interrumpida: " + e.getMessage());
+                return;
+            }
+            log.log(Level.SEVERE, "Eliminación " + id + " falló: " + e.getMessage(), e);
+            String msg = String.valueOf(e.getMessage());
+            ahora = LocalDateTime.now();
+            actualizar("UPDATE " + JOBS + " SET estado = ?, error = ?, terminado = ?, actualizado = ? WHERE id = ?",
+                    Estado.ERROR.name(), msg.length() > 1000 ? msg.substring(0, 1000) : msg, ahora, ahora, id);
+        }
+    }
+
+    private boolean procesarSeleccion(String id) {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!loteSeleccion(id)) return true;
+        }
+        return false;
+    }
+
+    /** Un lote: ventas de las siguientes claves, las claves y el avance, en una transacción. false si no quedan claves. */
+    boolean loteSeleccion(String id) {
+        return Boolean.TRUE.equals(txTemplate.execute(st -> {
+            Long hasta = jdbcTemplate.queryForObject("SELECT MAX(id) FROM (SELECT TOP (" + clavesPorLote + ") id FROM "
+                    + CLAVES + " WHERE job_id = ? ORDER BY id) t", Long.class, id);
+            if (hasta == null) return false;
+            int eliminados = jdbcTemplate.update(SQL_BORRAR_VENTAS_CLAVES, id, hasta);
+            int claves = jdbcTemplate.update("DELETE FROM " + CLAVES + " WHERE job_id = ? AND id <= ?", id, hasta);
+            avance(id, eliminados, claves);
+            return true;
+        }));
+    }
+
+    private boolean procesarFiltro(String id, Filtro filtro) {
+        if (filtro.mesCompleto() && particionVentaService.particionada()) {
+            txTemplate.executeWithoutResult(st -> {
+                ParticionVentaService.Resultado r = particionVentaService.purgarPeriodo(filtro.anio(), filtro.mes());
+                avance(id, r.borradas(), 0);
+            });
+            return true;
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!loteFiltro(id, filtro)) return true;
+        }
+        return false;
+    }
+
+    /** Un lote DELETE TOP con el avance en la misma transacción. false si ya no queda nada (o se llegó al tope). */
+    private boolean loteFiltro(String id, Filtro filtro) {
+        return Boolean.TRUE.equals(txTemplate.execute(st -> {
+            int tope = filasPorLote;
+            if (filtro.maxTotal() != null) {
+                Long hechos = jdbcTemplate.queryForObject("SELECT eliminados FROM " + JOBS + " WHERE id = ?", Long.class, id);
+                tope = (int) Math.min(tope, filtro.maxTotal() - (hechos == null ? 0 : hechos));
+                if (tope <= 0) return false;
+            }
+            StringBuilder where = new StringBuilder(" WHERE 1=1 ");
+            List<Object> params = new ArrayList<>();
+            if (filtro.anio() != null) { where.append(" AND venta.anio = ? "); params.add(filtro.anio()); }
+            if (filtro.mes() != null)  { where.append(" AND venta.mes = ? ");  params.add(filtro.mes()); }
+            if (filtro.marca() != null)  { where.append(" AND venta.marca = ? ");   params.add(filtro.marca()); }
+            if (filtro.codPdv() != null) { where.append(" AND venta.cod_pdv = ? "); params.add(filtro.codPdv()); }
+            if (particionVentaService.particionada()) {
+                where.append(ParticionVentaService.filtroPeriodo("venta", filtro.anio(), filtro.mes()));
+            }
+            int eliminados = jdbcTemplate.update("DELETE TOP (" + tope + ") FROM SELLOUT.dbo.venta" + where, params.toArray());
+            avance(id, eliminados, 0);
+            return eliminados == tope;
+        }));
+    }
+
+    private void avance(String id, long eliminados, int claves) {
+        jdbcTemplate.update("UPDATE " + JOBS + " SET eliminados = eliminados + ?, claves_procesadas = claves_procesadas + ?, "
+                + "lotes = lotes + 1, actualizado = ? WHERE id = ?", eliminados, claves, LocalDateTime.now(), id);
+    }
+
+    // ===================== internos =====================
+
+    /** Escritura suelta en su propia transacción (el pool no confirma solo: auto-commit=false). */
+    private void actualizar(String sql, Object... args) {
+        txTemplate.executeWithoutResult(st -> jdbcTemplate.update(sql, args));
+    }
+
+    private Optional<Map<String, Object>> fila(String id) {
+        List<Map<String, Object>> filas = jdbcTemplate.queryForList("SELECT * FROM " + JOBS + " WHERE id = ?", id);
+        return filas.isEmpty() ? Optional.empty() : Optional.of(filas.get(0));
+    }
+
+    private static boolean terminado(Map<String, Object> f) {
+        Object estado = f.get("estado");
+        return Estado.COMPLETADO.name().equals(estado) || Estado.ERROR.name().equals(estado);
+    }
+
+    private static Filtro filtro(Map<String, Object> f) {
+        return new Filtro(entero(f.get("anio")), entero(f.get("mes")), (String) f.get("marca"), (String) f.get("cod_pdv"),
+                f.get("max_total") == null ? null : ((Number) f.get("max_total")).longValue());
+    }
+
+    private static Integer entero(Object o) {
+        return o == null ? null : ((Number) o).intValue();
+    }
+
+    private static long numero(Object o) {
+        return o == null ? 0L : ((Number) o).longValue();
+    }
+
+    private static String limpio(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+
+    private static LocalDateTime fecha(Object o) {
+        return o instanceof Timestamp t ? t.toLocalDateTime() : (LocalDateTime) o;
+    }
+
+    private static Map<String, Object> toMap(Map<String, Object> f) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", f.get("id"));
+        m.put("tipo", f.get("tipo"));
+        m.put("estado", f.get("estado"));
+        if (Tipo.FILTRO.name().equals(f.get("tipo"))) {
+            Map<String, Object> filtro = new LinkedHashMap<>();
+            filtro.put("anio", f.get("anio"));
+            filtro.put("mes", f.get("mes"));
+            filtro.put("marca", f.get("marca"));
+            filtro.put("codPdv", f.get("cod_pdv"));
+            filtro.put("maxTotal", f.get("max_total"));
+            m.put("filtro", filtro);
+        } else {
+            long totales = numero(f.get("claves_totales")), procesadas = numero(f.get("claves_procesadas"));
+            m.put("clavesTotales", totales);
+            m.put("clavesProcesadas", procesadas);
+            m.put("porcentaje", totales == 0 ? 100 : procesadas * 100 / totales);
+        }
+        m.put("eliminados", numero(f.get("eliminados")));
+        m.put("lotes", numero(f.get("lotes")));
+        LocalDateTime creado = fecha(f.get("creado")), iniciado = fecha(f.get("iniciado")), terminado = fecha(f.get("terminado"));
+        m.put("creado", creado != null ? creado.toString() : null);
+        m.put("iniciado", iniciado != null ? iniciado.toString() : null);
+        m.put("terminado", terminado != null ? terminado.toString() : null);
+        if (iniciado != null) {
+            LocalDateTime fin = terminado != null ? terminado : LocalDateTime.now();
+            m.put("duracionMs", Duration.between(iniciado, fin).toMillis());
+        }
+        if (f.get("error") != null) m.put("error", f.get("error"));
+        return m;
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,62 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Borrado de ventas por lista de ids sin pasar por JPA: un DELETE por tramo de {@value #IDS_POR_DELETE} ids,
+ * con el filtro de cliente en la misma sentencia ({@code WHERE id IN (...) AND cliente_id = ?}). No carga
+ * entidades ni consulta antes de borrar: los ids que no existen o son de otro cliente solo cuentan como omitidos.
+ * Con venta particionada (V7) cada id se busca en ix_venta_id de todas las particiones, una por mes con datos.
+ */
+@Service
+public class EliminacionVentaService {
+
+    private static final Logger log = Logger.getLogger(EliminacionVentaService.class.getName());
+
+    // + cliente_id queda bajo los 2100 parámetros de SQL Server
+    static final int IDS_POR_DELETE = 2000;
+
+    /** Ids distintos recibidos, borrados y omitidos (inexistentes o de otro cliente). */
+    public record Resultado(int solicitados, int eliminados, int omitidos, long ms) {}
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EliminacionVentaService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Borra las ventas de {@code ids} (null y repetidos se ignoran) en una transacción.
+     * @param clienteId solo borra las de ese cliente; null = sin filtro de cliente
+     */
+    @Transactional
+    public Resultado eliminarPorIds(Collection<Long> ids, Long clienteId) {
+        long t0 = System.currentTimeMillis();
+        List<Long> distintos = ids == null ? List.of()
+                : new ArrayList<>(ids.stream().filter(Objects::nonNull).collect(Collectors.toCollection(LinkedHashSet::new)));
+
+        int eliminados = 0;
+        for (int i = 0; i < distintos.size(); i += IDS_POR_DELETE) {
+            List<Long> tramo = distintos.subList(i, Math.min(i + IDS_POR_DELETE, distintos.size()));
+            String marcas = String.join(", ", Collections.nCopies(tramo.size(), "?"));
+            List<Object> args = new ArrayList<>(tramo);
+            String sql = "DELETE FROM SELLOUT.dbo.venta WHERE id IN (" + marcas + ")";
+            if (clienteId != null) {
+                sql += " AND cliente_id = ?";
+                args.add(clienteId);
+            }
+            eliminados += jdbcTemplate.update(sql, args.toArray());
+        }
+
+        Resultado r = new Resultado(distintos.size(), eliminados, distintos.size() - eliminados,
+                System.currentTimeMillis() - t0);
+        log.info("Eliminación por ids: cliente=" + clienteId + " " + r);
+        return r;
+    }
+}
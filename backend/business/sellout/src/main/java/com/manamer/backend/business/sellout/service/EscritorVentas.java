@@ -0,0 +1,224 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Venta;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Escritura de las ventas de una carga según su {@link EstrategiaCarga}. Cada carga abre una {@link Escritura}:
+ * los escritores del pipeline le pasan sus bloques (dentro de la transacción del bloque) y al final
+ * {@link Escritura#terminar()} aplica lo que la estrategia haya retenido. Cada escritura mide su tiempo en
+ * bloques y al terminar, para el rendimiento del resultado de la carga.
+ *
+ * <ul>
+ *   <li>UPSERT: cada bloque va a {@link VentaMergeWriter#upsert} con el modo de la carga.</li>
+ *   <li>APPEND_ONLY: cada bloque va a {@link VentaMergeWriter#insertar}, sin buscar existentes. Los bloques
+ *       {@link VentaMergeWriter.Modo#SOLO_STOCK} (hoja STOCK de RM, que completa filas de VENTAS) siguen por upsert.</li>
+ *   <li>REPLACE_PERIOD: cada bloque se copia tal como llega a dbo.venta_reemplazo ({@link VentaMergeWriter#retener})
+ *       y al terminar, en una sola transacción, cada (cliente, anio, mes) se reemplaza desde ahí con
+ *       {@link ParticionVentaService#reemplazarPeriodo(String, long, int, int)}; en memoria no queda nada del
+ *       archivo. Si la carga falla antes de terminar, venta no cambia; lo retenido se borra al fallar
+ *       {@link Escritura#terminar()} o, si nunca se llamó, al abrir otra REPLACE_PERIOD pasado un día.</li>
+ * </ul>
+ */
+@Component
+public class EscritorVentas {
+
+    private static final Logger log = Logger.getLogger(EscritorVentas.class.getName());
+
+    /** Lo retenido en dbo.venta_reemplazo con más de esto es de una carga que cayó sin terminar. */
+    private static final int HORAS_RETENIDAS = 24;
+
+    /** Escritura de una carga; {@link #escribir} puede llamarse desde varios hilos escritores a la vez. */
+    public interface Escritura {
+        EstrategiaCarga estrategia();
+
+        /** Escribe (o retiene) un bloque; devuelve lo que ya quedó escrito. */
+        VentaMergeWriter.Resultado escribir(List<Venta> bloque, VentaMergeWriter.Modo modo);
+
+        /** Aplica lo retenido (una vez, después del último bloque); devuelve lo escrito en este paso. */
+        VentaMergeWriter.Resultado terminar();
+
+        /** Estrategia, bloques, filas y ms en bloques / al terminar, más lo propio de la estrategia. */
+        Map<String, Object> rendimiento();
+    }
+
+    private final VentaMergeWriter ventaMergeWriter;
+    private final ParticionVentaService particionVentaService;
+    private final TransactionTemplate txTemplate;
+
+    public EscritorVentas(VentaMergeWriter ventaMergeWriter, ParticionVentaService particionVentaService,
+                          PlatformTransactionManager ptm) {
+        this.ventaMergeWriter = ventaMergeWriter;
+        this.particionVentaService = particionVentaService;
+        this.txTemplate = new TransactionTemplate(ptm);
+    }
+
+    public Escritura abrir(EstrategiaCarga estrategia) {
+        return switch (estrategia) {
+            case UPSERT -> new Upsert();
+            case APPEND_ONLY -> new SoloInsercion();
+            case REPLACE_PERIOD -> {
+                int antiguas = txTemplate.execute(st ->
+                        ventaMergeWriter.descartarRetenidasAntiguas(LocalDateTime.now().minusHours(HORAS_RETENIDAS)));
+                if (antiguas > 0) log.warning("REPLACE_PERIOD: " + antiguas + " ventas retenidas de cargas sin terminar descartadas");
+                yield new ReemplazoPeriodo();
+            }
+        };
+    }
+
+    /** Contadores y tiempos comunes. */
+    private abstract static class Medida implements Escritura {
+        private final EstrategiaCarga estrategia;
+        private final AtomicLong bloques = new AtomicLong();
+        private final AtomicLong filas = new AtomicLong();
+        private final AtomicLong nanosBloques = new AtomicLong();
+        private volatile long msTerminar;
+
+        Medida(EstrategiaCarga estrategia) {
+            this.estrategia = estrategia;
+        }
+
+        abstract VentaMergeWriter.Resultado escribirBloque(List<Venta> bloque, VentaMergeWriter.Modo modo);
+
+        VentaMergeWriter.Resultado aplicar() {
+            return VentaMergeWriter.Resultado.VACIO;
+        }
+
+        void agregarRendimiento(Map<String, Object> m) {}
+
+        @Override
+        public EstrategiaCarga estrategia() {
+            return estrategia;
+        }
+
+        @Override
+        public final VentaMergeWriter.Resultado escribir(List<Venta> bloque, VentaMergeWriter.Modo modo) {
+            if (bloque == null || bloque.isEmpty()) return VentaMergeWriter.Resultado.VACIO;
+            long t0 = System.nanoTime();
+            VentaMergeWriter.Resultado r = escribirBloque(bloque, modo);
+            nanosBloques.addAndGet(System.nanoTime() - t0);
+            bloques.incrementAndGet();
+            filas.addAndGet(bloque.size());
+            return r;
+        }
+
+        @Override
+        public final VentaMergeWriter.Resultado terminar() {
+            long t0 = System.currentTimeMillis();
+            VentaMergeWriter.Resultado r = aplicar();
+            msTerminar = System.currentTimeMillis() - t0;
+            return r;
+        }
+
+        @Override
+        public Map<String, Object> rendimiento() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put(EstrategiaCarga.CAMPO, estrategia.name());
+            m.put("bloques", bloques.get());
+            m.put("filas", filas.get());
+            m.put("msBloques", nanosBloques.get() / 1_000_000);
+            m.put("msTerminar", msTerminar);
+            agregarRendimiento(m);
+            return m;
+        }
+    }
+
+    private final class Upsert extends Medida {
+        Upsert() {
+            super(EstrategiaCarga.UPSERT);
+        }
+
+        @Override
+        VentaMergeWriter.Resultado escribirBloque(List<Venta> bloque, VentaMergeWriter.Modo modo) {
+            return ventaMergeWriter.upsert(bloque, modo);
+        }
+    }
+
+    private final class SoloInsercion extends Medida {
+        SoloInsercion() {
+            super(EstrategiaCarga.APPEND_ONLY);
+        }
+
+        @Override
+        VentaMergeWriter.Resultado escribirBloque(List<Venta> bloque, VentaMergeWriter.Modo modo) {
+            if (modo == VentaMergeWriter.Modo.SOLO_STOCK) return ventaMergeWriter.upsert(bloque, modo);
+            return new VentaMergeWriter.Resultado(ventaMergeWriter.insertar(bloque), 0, 0);
+        }
+    }
+
+    private final class ReemplazoPeriodo extends Medida {
+        private final String cargaId = UUID.randomUUID().toString();
+        private final List<String> periodos = new ArrayList<>();
+        private long borradas;
+        private boolean porParticion = true;
+
+        ReemplazoPeriodo() {
+            super(EstrategiaCarga.REPLACE_PERIOD);
+        }
+
+        /**
+         * Valida y copia el bloque a dbo.venta_reemplazo. Las claves repetidas se resuelven al terminar: queda la
+         * última aparición y la de un bloque SOLO_STOCK solo pasa su stock a la retenida (como el upsert de la
+         * hoja STOCK sobre la fila de VENTAS).
+         */
+        @Override
+        VentaMergeWriter.Resultado escribirBloque(List<Venta> bloque, VentaMergeWriter.Modo modo) {
+            for (Venta v : bloque) {
+                if (v.getCliente() == null || v.getCliente().getId() == null || v.getAnio() == null || v.getMes() == null) {
+                    throw new IllegalArgumentException("REPLACE_PERIOD requiere cliente, año y mes en cada venta ("
+                            + v.getCodBarra() + ", " + v.getAnio() + "/" + v.getMes() + ")");
+                }
+            }
+            ventaMergeWriter.retener(cargaId, bloque, modo);
+            return VentaMergeWriter.Resultado.VACIO;
+        }
+
+        @Override
+        synchronized VentaMergeWriter.Resultado aplicar() {
+            List<ParticionVentaService.Resultado> resultados = new ArrayList<>();
+            List<String> reemplazados = new ArrayList<>();
+            try {
+                txTemplate.executeWithoutResult(st -> {
+                    for (VentaMergeWriter.PeriodoRetenido p : ventaMergeWriter.periodosRetenidos(cargaId)) {
+                        resultados.add(particionVentaService.reemplazarPeriodo(cargaId, p.clienteId(), p.anio(), p.mes()));
+                        reemplazados.add(p.clienteId() + ":" + p.anio() + "/" + p.mes());
+                    }
+                    ventaMergeWriter.descartarRetenidas(cargaId);
+                });
+            } catch (RuntimeException e) {
+                try {
+                    txTemplate.execute(st -> ventaMergeWriter.descartarRetenidas(cargaId));
+                } catch (RuntimeException limpieza) {
+                    e.addSuppressed(limpieza);
+                }
+                throw e;
+            }
+            if (resultados.isEmpty()) return VentaMergeWriter.Resultado.VACIO;
+            int insertadas = 0;
+            for (ParticionVentaService.Resultado r : resultados) {
+                borradas += r.borradas();
+                porParticion &= r.porParticion();
+                insertadas += r.insertadas();
+            }
+            periodos.addAll(reemplazados);
+            log.info("REPLACE_PERIOD: " + periodos.size() + " periodos, " + borradas + " ventas reemplazadas por "
+                    + insertadas);
+            return new VentaMergeWriter.Resultado(insertadas, 0, 0);
+        }
+
+        @Override
+        void agregarRendimiento(Map<String, Object> m) {
+            m.put("periodos", new ArrayList<>(periodos));
+            m.put("borradas", borradas);
+            m.put("porParticion", porParticion && !periodos.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.util.Locale;
+
+/**
+ * Cómo escribe sus ventas una carga ({@code ?estrategia=}, por defecto UPSERT). La escritura de cada
+ * estrategia está en {@link EscritorVentas}.
+ */
+public enum EstrategiaCarga {
+    /** Upsert por la clave natural (VentaMergeWriter): inserta las nuevas y actualiza las existentes. */
+    UPSERT,
+    /**
+     * Solo INSERT, sin buscar existentes: para archivos con ventas que todavía no están guardadas. Una clave
+     * ya guardada hace fallar la carga (índice único ux_venta_clave).
+     */
+    APPEND_ONLY,
+    /**
+     * Las ventas de cada cliente en cada (anio, mes) del archivo se reemplazan por las del archivo, todo en una
+     * transacción al final de la carga (ParticionVentaService). Para archivos mensuales acumulados.
+     */
+    REPLACE_PERIOD;
+
+    /** Parámetro del endpoint y campo del resultado. */
+    public static final String CAMPO = "estrategia";
+
+    /** Valor del parámetro; vacío o null es UPSERT. */
+    public static EstrategiaCarga de(String valor) {
+        if (valor == null || valor.isBlank()) return UPSERT;
+        try {
+            return valueOf(valor.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Estrategia de carga desconocida: " + valor
+                    + " (UPSERT, APPEND_ONLY o REPLACE_PERIOD)");
+        }
+    }
+
+    /**
+     * Endpoint de la huella de idempotencia: el mismo archivo cargado con otra estrategia no reutiliza el
+     * resultado de la anterior.
+     */
+    public String endpointHuella(String endpoint) {
+        return this == UPSERT ? endpoint : endpoint + "_" + name();
+    }
+}
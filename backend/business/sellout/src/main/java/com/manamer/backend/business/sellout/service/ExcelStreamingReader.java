@@ -0,0 +1,399 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Lector de hojas .xlsx en modo streaming (SAX sobre el XML de la hoja).
+ *
+ * No construye el árbol de celdas de POI: solo mantiene en memoria la tabla de
+ * strings compartidos y la fila actual, que se entrega al callback y se reutiliza.
+ * El archivo se abre en solo lectura desde disco (ZipFile), sin copiarlo al heap.
+ */
+public final class ExcelStreamingReader {
+
+    private ExcelStreamingReader() {}
+
+    /** Callback por fila física presente en el XML. Devolver {@code false} detiene la lectura. */
+    @FunctionalInterface
+    public interface FilaHandler {
+        boolean procesar(Fila fila);
+    }
+
+    /** true si el archivo es un contenedor OOXML (.xlsx/.xlsm); false para .xls u otros. */
+    public static boolean esOoxml(File archivo) throws IOException {
+        return FileMagic.valueOf(archivo) == FileMagic.OOXML;
+    }
+
+    /** Nombres de hoja en el orden del libro. */
+    public static List<String> nombresHojas(File archivo) throws Exception {
+        OPCPackage pkg = OPCPackage.open(archivo, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            List<String> nombres = new ArrayList<>();
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (it.hasNext()) {
+                try (InputStream ignored = it.next()) {
+                    nombres.add(it.getSheetName());
+                }
+            }
+            return nombres;
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Recorre la hoja {@code indiceHoja} (0-based) entregando cada fila al handler.
+     * Solo se decodifican las columnas {@code < maxColumnas}.
+     *
+     * @return false si la hoja no existe.
+     */
+    public static boolean leerHoja(File archivo, int indiceHoja, int maxColumnas, FilaHandler handler) throws Exception {
+        OPCPackage pkg = OPCPackage.open(archivo, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            boolean fecha1904 = esFecha1904(reader);
+            ReadOnlySharedStringsTable sst = new ReadOnlySharedStringsTable(pkg, false);
+            StylesTable estilos = reader.getStylesTable();
+
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            int i = 0;
+            while (it.hasNext()) {
+                try (InputStream hoja = it.next()) {
+                    if (i++ != indiceHoja) continue;
+                    ManejadorHoja manejador = new ManejadorHoja(sst, estilos, new Fila(maxColumnas, fecha1904), handler);
+                    try {
+                        parsear(hoja, manejador);
+                    } catch (LecturaDetenida ignored) {
+                        // el handler pidió cortar
+                    } catch (ErrorEnHandler e) {
+                        throw e.causa;
+                    }
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /**
+     * Filas declaradas por la hoja en {@code <dimension ref="A1:N20000"/>} (última fila, 1-based).
+     * Solo lee el inicio del XML de la hoja; sirve para estimar avance/ETA.
+     *
+     * @return -1 si la hoja no existe o no declara dimensión.
+     */
+    public static int filasDeclaradas(File archivo, int indiceHoja) throws Exception {
+        OPCPackage pkg = OPCPackage.open(archivo, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator it = (XSSFReader.SheetIterator) reader.getSheetsData();
+            int i = 0;
+            while (it.hasNext()) {
+                try (InputStream hoja = it.next()) {
+                    if (i++ != indiceHoja) continue;
+                    int[] filas = {-1};
+                    try {
+                        parsear(hoja, new DefaultHandler() {
+                            @Override
+                            public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+                                if ("dimension".equals(localName)) {
+                                    filas[0] = filaDeReferencia(atts.getValue("ref"));
+                                    throw new LecturaDetenida();
+                                }
+                                // <dimension> va antes de <sheetData>; si no vino, no está declarada
+                                if ("sheetData".equals(localName)) throw new LecturaDetenida();
+                            }
+                        });
+                    } catch (LecturaDetenida ignored) {
+                        // corte intencional
+                    }
+                    return filas[0];
+                }
+            }
+            return -1;
+        } finally {
+            pkg.revert();
+        }
+    }
+
+    /** Fila (1-based) del extremo final de un rango "A1:N20000" o de una celda "B7"; -1 si no se puede leer. */
+    static int filaDeReferencia(String ref) {
+        if (ref == null || ref.isBlank()) return -1;
+        String fin = ref.substring(ref.indexOf(':') + 1);
+        int n = 0;
+        boolean hayDigitos = false;
+        for (int i = 0; i < fin.length(); i++) {
+            char ch = fin.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                n = n * 10 + (ch - '0');
+                hayDigitos = true;
+            }
+        }
+        return hayDigitos ? n : -1;
+    }
+
+    /**
+     * Recorre una hoja ya cargada en DOM (p.ej. .xls) entregando las filas con la misma
+     * representación que la lectura SAX, para que el código de carga sea uno solo.
+     */
+    public static void recorrerHoja(Sheet sheet, int maxColumnas, FilaHandler handler) {
+        Workbook wb = sheet.getWorkbook();
+        boolean fecha1904 = (wb instanceof XSSFWorkbook x && x.isDate1904())
+                || (wb instanceof HSSFWorkbook h && h.getInternalWorkbook().isUsing1904DateWindowing());
+        Fila fila = new Fila(maxColumnas, fecha1904);
+
+        for (Row row : sheet) {
+            fila.reiniciar(row.getRowNum());
+            for (Cell cell : row) {
+                int c = cell.getColumnIndex();
+                if (c >= maxColumnas) continue;
+                CellType tipo = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+                switch (tipo) {
+                    case STRING -> fila.poner(c, cell.getStringCellValue(), false);
+                    case NUMERIC -> fila.poner(c, cell.getNumericCellValue(), DateUtil.isCellDateFormatted(cell));
+                    case BOOLEAN -> fila.poner(c, cell.getBooleanCellValue(), false);
+                    case ERROR -> { if (cell.getCellType() == CellType.FORMULA) fila.poner(c, cell.getCellFormula(), false); }
+                    default -> { }
+                }
+            }
+            if (!handler.procesar(fila)) return;
+        }
+    }
+
+    private static void parsear(InputStream xml, DefaultHandler handler) throws Exception {
+        XMLReader parser = XMLHelper.newXMLReader();
+        parser.setContentHandler(handler);
+        parser.parse(new InputSource(xml));
+    }
+
+    /** Lee {@code <workbookPr date1904="1"/>} de workbook.xml. */
+    private static boolean esFecha1904(XSSFReader reader) throws Exception {
+        boolean[] fecha1904 = {false};
+        try (InputStream wb = reader.getWorkbookData()) {
+            parsear(wb, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes atts) {
+                    if ("workbookPr".equals(localName)) {
+                        String v = atts.getValue("date1904");
+                        fecha1904[0] = "1".equals(v) || "true".equalsIgnoreCase(v);
+                    }
+                }
+            });
+        }
+        return fecha1904[0];
+    }
+
+    /** Índice 0-based de columna a partir de una referencia tipo "AB12". */
+    static int columnaDeReferencia(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch < 'A' || ch > 'Z') break;
+            col = col * 26 + (ch - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    // =========================
+    //   Fila reutilizable
+    // =========================
+
+    /**
+     * Valores crudos de una fila: String, Double o Boolean (null si la celda no existe o está en blanco).
+     * Los numéricos con formato de fecha se marcan con {@link #esFecha(int)}.
+     * La instancia se reutiliza entre filas: copiar lo necesario dentro del callback.
+     */
+    public static final class Fila {
+        private final Object[] valores;
+        private final boolean[] fechas;
+        private final boolean fecha1904;
+        private int indice = -1;
+        private int ultimaColumna = -1;
+
+        Fila(int maxColumnas, boolean fecha1904) {
+            this.valores = new Object[maxColumnas];
+            this.fechas = new boolean[maxColumnas];
+            this.fecha1904 = fecha1904;
+        }
+
+        void reiniciar(int indice) {
+            if (ultimaColumna >= 0) {
+                Arrays.fill(valores, 0, ultimaColumna + 1, null);
+                Arrays.fill(fechas, 0, ultimaColumna + 1, false);
+            }
+            this.indice = indice;
+            this.ultimaColumna = -1;
+        }
+
+        void poner(int col, Object valor, boolean esFecha) {
+            if (col < 0 || col >= valores.length) return;
+            valores[col] = valor;
+            fechas[col] = esFecha;
+            if (col > ultimaColumna) ultimaColumna = col;
+        }
+
+        /** Índice 0-based de la fila en la hoja. */
+        public int getIndice() { return indice; }
+
+        /** Última columna con valor (-1 si la fila no tiene celdas). */
+        public int getUltimaColumna() { return ultimaColumna; }
+
+        public int getMaxColumnas() { return valores.length; }
+
+        public Object valor(int col) {
+            return (col < 0 || col >= valores.length) ? null : valores[col];
+        }
+
+        public boolean esFecha(int col) {
+            return col >= 0 && col < fechas.length && fechas[col];
+        }
+
+        /** Libro con fechas en el sistema 1904 (seriales contados desde 1904-01-01). */
+        public boolean esFecha1904() { return fecha1904; }
+
+        /** Equivalente al valor de celda DOM: fechas como {@link Date}, resto igual que {@link #valor(int)}. */
+        public Object valorCelda(int col) {
+            Object v = valor(col);
+            if (v instanceof Double && esFecha(col)) return DateUtil.getJavaDate((Double) v, fecha1904);
+            return v;
+        }
+    }
+
+    // =========================
+    //   SAX
+    // =========================
+
+    private static final class LecturaDetenida extends SAXException {
+        LecturaDetenida() { super("lectura detenida"); }
+    }
+
+    private static final class ErrorEnHandler extends SAXException {
+        final RuntimeException causa;
+        ErrorEnHandler(RuntimeException causa) { super(causa); this.causa = causa; }
+    }
+
+    private static final class ManejadorHoja extends DefaultHandler {
+        private final ReadOnlySharedStringsTable sst;
+        private final StylesTable estilos;
+        private final Fila fila;
+        private final FilaHandler handler;
+        private final Map<Integer, Boolean> estiloEsFecha = new HashMap<>();
+
+        private final StringBuilder valor = new StringBuilder(64);
+        private final StringBuilder formula = new StringBuilder(64);
+        private boolean enValor, enInline, enFormula;
+
+        private int filaActual = -1;
+        private int colActual = -1;
+        private String tipo;
+        private int estilo;
+
+        ManejadorHoja(ReadOnlySharedStringsTable sst, StylesTable estilos, Fila fila, FilaHandler handler) {
+            this.sst = sst;
+            this.estilos = estilos;
+            this.fila = fila;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            switch (localName) {
+                case "row" -> {
+                    String r = atts.getValue("r");
+                    filaActual = (r != null) ? Integer.parseInt(r) - 1 : filaActual + 1;
+                    colActual = -1;
+                    fila.reiniciar(filaActual);
+                }
+                case "c" -> {
+                    String r = atts.getValue("r");
+                    colActual = (r != null) ? columnaDeReferencia(r) : colActual + 1;
+                    tipo = atts.getValue("t");
+                    String s = atts.getValue("s");
+                    estilo = (s != null) ? Integer.parseInt(s) : 0;
+                    valor.setLength(0);
+                    formula.setLength(0);
+                }
+                case "v" -> enValor = true;
+                case "t" -> enInline = "inlineStr".equals(tipo);
+                case "f" -> enFormula = true;
+                default -> { }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (enValor || enInline) valor.append(ch, start, length);
+            else if (enFormula) formula.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v" -> enValor = false;
+                case "t" -> enInline = false;
+                case "f" -> enFormula = false;
+                case "c" -> cerrarCelda();
+                case "row" -> {
+                    boolean seguir;
+                    try {
+                        seguir = handler.procesar(fila);
+                    } catch (RuntimeException e) {
+                        throw new ErrorEnHandler(e);
+                    }
+                    if (!seguir) throw new LecturaDetenida();
+                }
+                default -> { }
+            }
+        }
+
+        private void cerrarCelda() {
+            String txt = valor.toString();
+            if (tipo == null || "n".equals(tipo)) {
+                if (txt.isEmpty()) return; // celda en blanco (solo estilo)
+                double d = Double.parseDouble(txt);
+                fila.poner(colActual, d, esFormatoFecha(estilo) && DateUtil.isValidExcelDate(d));
+                return;
+            }
+            switch (tipo) {
+                case "s" -> {
+                    if (!txt.isEmpty()) fila.poner(colActual, sst.getItemAt(Integer.parseInt(txt)).getString(), false);
+                }
+                case "inlineStr", "str" -> fila.poner(colActual, txt, false);
+                case "b" -> fila.poner(colActual, "1".equals(txt) || "true".equalsIgnoreCase(txt), false);
+                // Error en fórmula: el DOM devolvía el texto de la fórmula (cell.toString())
+                case "e" -> { if (formula.length() > 0) fila.poner(colActual, formula.toString(), false); }
+                default -> { }
+            }
+        }
+
+        private boolean esFormatoFecha(int idx) {
+            if (idx < 0 || estilos == null) return false;
+            return estiloEsFecha.computeIfAbsent(idx, k -> {
+                if (k >= estilos.getNumCellStyles()) return false;
+                CellStyle cs = estilos.getStyleAt(k);
+                return cs != null && DateUtil.isADateFormat(cs.getDataFormat(), cs.getDataFormatString());
+            });
+        }
+    }
+}
@@ -1,29 +1,37 @@
 package com.manamer.backend.business.sellout.service;
 
 import com.google.common.net.HttpHeaders;
+import com.manamer.backend.business.sellout.config.LecturaReplica;
 import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.models.HashFilaVenta;
 import com.manamer.backend.business.sellout.models.Producto;
 import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.repositories.VentaRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @Service
@@ -38,15 +46,34 @@ public class FybecaVentaService {
     // ✅ MISMA REGLA: placeholder para evitar mezclar tiendas vacías/null
     private static final String PDV_PLACEHOLDER = "SIN_TIENDA";
 
+    private static final Logger log = Logger.getLogger(FybecaVentaService.class.getName());
+
     private final VentaRepository ventaRepository;
     private final EntityManager entityManager;
     private final ClienteService clienteService;
+    private final ProductoSapService productoSapService;
+    private final VentaBatchWriter ventaBatchWriter;
+    private final EliminacionVentaService eliminacionVentaService;
+    private final PlantillaService plantillaService;
+    private final EscritorVentas escritorVentas;
+    private final TransactionTemplate txTemplate;
+    private final TransactionTemplate txSimulacion;
 
     @Autowired
-    public FybecaVentaService(VentaRepository ventaRepository, EntityManager entityManager, ClienteService clienteService) {
+    public FybecaVentaService(VentaRepository ventaRepository, EntityManager entityManager, ClienteService clienteService,
+                              ProductoSapService productoSapService, VentaBatchWriter ventaBatchWriter,
+                              PlantillaService plantillaService, PlatformTransactionManager ptm,
+                              EliminacionVentaService eliminacionVentaService, EscritorVentas escritorVentas) {
         this.ventaRepository = ventaRepository;
         this.entityManager = entityManager;
         this.clienteService = clienteService;
+        this.productoSapService = productoSapService;
+        this.ventaBatchWriter = ventaBatchWriter;
+        this.plantillaService = plantillaService;
+        this.escritorVentas = escritorVentas;
+        this.txTemplate = new TransactionTemplate(ptm);
+        this.txSimulacion = SimulacionCarga.transaccion(ptm);
+        this.eliminacionVentaService = eliminacionVentaService;
     }
 
     // ====== Helpers ======
@@ -80,6 +107,7 @@ public class FybecaVentaService {
         return obtenerTodasLasVentasPorCodCliente(DEFAULT_COD_CLIENTE);
     }
 
+    @LecturaReplica
     public List<Map<String, Object>> obtenerVentasResumen(
             String codCliente,
             Integer anio,
@@ -97,6 +125,7 @@ public class FybecaVentaService {
            .append("WHERE c.cod_Cliente = :cod ");
         if (anio != null) sql.append("AND v.anio = :anio ");
         if (mes != null) sql.append("AND v.mes = :mes ");
+        sql.append(ParticionVentaService.filtroPeriodo("v", anio, mes));
         if (marca != null && !marca.isBlank()) sql.append("AND v.marca = :marca ");
         sql.append("ORDER BY v.anio DESC, v.mes DESC, v.id DESC ")
            .append("OFFSET :offset ROWS FETCH NEXT :limit ROWS ONLY");
@@ -163,8 +192,7 @@ public class FybecaVentaService {
     /** Eliminar ventas masivo por IDs (sin depender del cliente) */
     public boolean eliminarVentas(List<Long> ids) {
         try {
-            List<Venta> ventas = ventaRepository.findAllById(ids);
-            ventaRepository.deleteAll(ventas);
+            eliminacionVentaService.eliminarPorIds(ids, null);
             return true;
         } catch (Exception e) {
             return false;
@@ -323,6 +351,378 @@ public class FybecaVentaService {
         return cargarDatosDeProducto(cliente, venta, codigosNoEncontrados);
     }
 
+    // ====== Carga masiva (subir-archivo-venta) ======
+
+    private static final int CHUNK_FILAS = 1000;
+    private static final int MAX_COLUMNAS_FYBECA = 256;
+
+    public static String normalizarTexto(String input) {
+        return PlanExtraccion.normalizar(input);
+    }
+
+    /**
+     * Carga flexible de ventas por bloques de {@value #CHUNK_FILAS} filas:
+     * decodifica el bloque, resuelve productos de todo el bloque en una pasada, busca las ventas
+     * existentes por clave y escribe el bloque en una transacción con JDBC batch.
+     * .xlsx se lee en streaming; .xls por DOM con la misma representación de fila.
+     */
+    public Map<String, Object> cargarArchivoVentaFlexible(Cliente cliente, InputStream in, String nombreArchivo) throws Exception {
+        return cargarArchivoVentaFlexible(cliente, in, nombreArchivo, ProgresoCarga.NINGUNO);
+    }
+
+    /** Igual que {@link #cargarArchivoVentaFlexible(Cliente, InputStream, String)} informando avance (jobs asíncronos). */
+    public Map<String, Object> cargarArchivoVentaFlexible(Cliente cliente, InputStream in, String nombreArchivo,
+                                                          ProgresoCarga progreso) throws Exception {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile("fybeca-", ".upload");
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            return cargarArchivoVentaFlexible(cliente, tmp, nombreArchivo, progreso);
+        } finally {
+            if (tmp != null) {
+                try { Files.deleteIfExists(tmp); } catch (Exception ignore) {}
+            }
+        }
+    }
+
+    /** Carga desde un archivo ya en disco (SpoolSubidas): se lee por ruta, sin copiarlo al heap. */
+    public Map<String, Object> cargarArchivoVentaFlexible(Cliente cliente, Path archivo, String nombreArchivo,
+                                                          ProgresoCarga progreso) throws Exception {
+        return cargarArchivoVentaFlexible(cliente, archivo, nombreArchivo, progreso, false);
+    }
+
+    /**
+     * @param simulacion valida sin guardar (ver SimulacionCarga): mismos conteos e incidencias,
+     *                   con los bloques clasificados en paralelo
+     */
+    public Map<String, Object> cargarArchivoVentaFlexible(Cliente cliente, Path archivo, String nombreArchivo,
+                                                          ProgresoCarga progreso, boolean simulacion) throws Exception {
+        return cargarArchivoVentaFlexible(cliente, archivo, nombreArchivo, progreso, simulacion, EstrategiaCarga.UPSERT);
+    }
+
+    /**
+     * @param estrategia cómo se escriben las ventas (ver EscritorVentas; en simulación no aplica). Con UPSERT los
+     *                   bloques siguen por VentaBatchWriter; con las demás, por la escritura de la carga.
+     */
+    public Map<String, Object> cargarArchivoVentaFlexible(Cliente cliente, Path archivo, String nombreArchivo,
+                                                          ProgresoCarga progreso, boolean simulacion,
+                                                          EstrategiaCarga estrategia) throws Exception {
+        EscritorVentas.Escritura escritura = escritorVentas.abrir(simulacion ? EstrategiaCarga.UPSERT : estrategia);
+        CargaFybeca carga = new CargaFybeca(cliente, plantillaService.plan(PlantillaService.FYBECA), progreso, simulacion,
+                escritura);
+        long t0 = System.currentTimeMillis();
+
+        try {
+            ExcelStreamingReader.FilaHandler handler = fila -> { carga.procesarFila(fila); return true; };
+            progreso.fase("LEYENDO");
+            if (ExcelStreamingReader.esOoxml(archivo.toFile())) {
+                progreso.filasTotales(ExcelStreamingReader.filasDeclaradas(archivo.toFile(), 0) - carga.plan.getFilaDatos());
+                ExcelStreamingReader.leerHoja(archivo.toFile(), 0, MAX_COLUMNAS_FYBECA, handler);
+            } else {
+                try (Workbook wb = WorkbookFactory.create(archivo.toFile(), null, true)) {
+                    progreso.filasTotales(wb.getSheetAt(0).getLastRowNum() + 1 - carga.plan.getFilaDatos());
+                    ExcelStreamingReader.recorrerHoja(wb.getSheetAt(0), MAX_COLUMNAS_FYBECA, handler);
+                }
+            }
+            if (carga.columnaPorCampo == null) carga.sinEncabezados();
+            carga.vaciarBloque();
+            carga.terminar();
+            if (!simulacion && escritura.estrategia() != EstrategiaCarga.UPSERT) {
+                progreso.fase("APLICANDO_" + escritura.estrategia().name());
+                long ta = System.currentTimeMillis();
+                carga.sumar(aConteo(escritura.terminar()));
+                carga.msEscritura += System.currentTimeMillis() - ta;
+            }
+        } finally {
+            carga.cerrar();
+        }
+
+        long total = System.currentTimeMillis() - t0;
+        long msLectura = total - carga.msProductos - carga.msPrefetch - carga.msEscritura;
+
+        Map<String, Object> tiempos = new LinkedHashMap<>();
+        tiempos.put("lecturaMs", msLectura);
+        tiempos.put("productosMs", carga.msProductos);
+        tiempos.put("prefetchMs", carga.msPrefetch);
+        tiempos.put("escrituraMs", carga.msEscritura);
+        tiempos.put("totalMs", total);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("archivo", nombreArchivo);
+        body.put("codigosNoEncontrados", new ArrayList<>(carga.detalleNoEncontrados.values()));
+        body.put("filasLeidas", carga.filasLeidas);
+        body.put("filasProcesadas", carga.filasProcesadas);
+        body.put("insertados", carga.insertados);
+        body.put("actualizados", carga.actualizados);
+        body.put("sinCambios", carga.sinCambios);
+        body.put("duplicadosEnArchivo", carga.duplicados);
+        body.put("tiempos", tiempos);
+        if (simulacion) {
+            body.put("validacion", carga.estadisticasValidacion);
+            SimulacionCarga.marcar(body);
+        } else {
+            body.put(EstrategiaCarga.CAMPO, escritura.estrategia().name());
+            body.put("escritura", escritura.rendimiento());
+        }
+
+        log.info("Fybeca " + (simulacion ? "validación" : "carga") + ": archivo=" + nombreArchivo + " filasLeidas=" + carga.filasLeidas
+                + " procesadas=" + carga.filasProcesadas + " insertados=" + carga.insertados
+                + " actualizados=" + carga.actualizados + " sinCambios=" + carga.sinCambios + " noEncontrados=" + carga.detalleNoEncontrados.size()
+                + " tiempos=" + tiempos);
+        return body;
+    }
+
+    /**
+     * Estado de una carga: bloque en curso, caché de productos del archivo y contadores.
+     * En simulación los bloques ya resueltos van a un {@link PipelineCarga} con un validador por núcleo
+     * en lugar de escribirse en el hilo lector.
+     */
+    private final class CargaFybeca {
+        final Cliente cliente;
+        final PlanExtraccion plan;
+        final ProgresoCarga progreso;
+        final boolean simulacion;
+        final EscritorVentas.Escritura escritura;
+        final PipelineCarga<List<Venta>, int[]> validacion;
+        Map<String, Object> estadisticasValidacion;
+        Map<String, Integer> columnaPorCampo;
+
+        final List<Venta> bloque = new ArrayList<>(CHUNK_FILAS);
+        final List<Integer> filasBloque = new ArrayList<>(CHUNK_FILAS);
+
+        // productos ya consultados en bloques anteriores (incluye los no encontrados)
+        final Map<String, ProductoSapService.ProductoSap> productos = new HashMap<>();
+        final Set<String> sinProducto = new HashSet<>();
+        // codBarra/codPdv → id para la clave de venta, compartido por todos los bloques de la carga
+        final DiccionarioClaves claves = new DiccionarioClaves();
+
+        // por fila: las de código vacío se detectan al leer y las sin producto al vaciar el bloque
+        final SortedMap<Integer, Map<String, Object>> detalleNoEncontrados = new TreeMap<>();
+        int filasLeidas, filasProcesadas, insertados, actualizados, sinCambios, duplicados;
+        long msProductos, msPrefetch, msEscritura;
+
+        CargaFybeca(Cliente cliente, PlanExtraccion plan, ProgresoCarga progreso, boolean simulacion,
+                    EscritorVentas.Escritura escritura) {
+            this.cliente = cliente;
+            this.plan = plan;
+            this.progreso = progreso;
+            this.simulacion = simulacion;
+            this.escritura = escritura;
+            // un bloque deduplicado por elemento: cada validador clasifica un bloque completo
+            this.validacion = !simulacion ? null : new PipelineCarga<>("fybeca-validacion", 1,
+                    SimulacionCarga.hilos(), SimulacionCarga.hilos(), txSimulacion,
+                    (bloques, nro) -> escribirBloque(bloques.get(0)),
+                    (nro, res) -> sumar(res));
+        }
+
+        /** Espera a los validadores (simulación); relanza el primer error. */
+        void terminar() {
+            if (validacion != null) estadisticasValidacion = validacion.terminar();
+        }
+
+        /** Corta los validadores si la lectura falló antes de {@link #terminar()}. */
+        void cerrar() {
+            if (validacion != null) validacion.close();
+        }
+
+        void sinEncabezados() {
+            throw new IllegalArgumentException("La fila de encabezados (fila " + (plan.getFilaEncabezado() + 1) + ") está vacía.");
+        }
+
+        void procesarFila(ExcelStreamingReader.Fila fila) {
+            if (fila.getIndice() < plan.getFilaEncabezado()) return;
+            if (columnaPorCampo == null) {
+                if (fila.getIndice() != plan.getFilaEncabezado()) sinEncabezados();
+                mapearEncabezados(fila);
+                return;
+            }
+            if (fila.getIndice() < plan.getFilaDatos()) return;
+            progreso.filasProcesadas(++filasLeidas);
+            int i = fila.getIndice();
+
+            Venta venta = new Venta();
+            venta.setDia(1);
+            venta.setCliente(cliente);
+            Integer c;
+            if ((c = columnaPorCampo.get("anio")) != null)           venta.setAnio(aEntero(fila.valor(c)));
+            if ((c = columnaPorCampo.get("mes")) != null)            venta.setMes(aEntero(fila.valor(c)));
+            if ((c = columnaPorCampo.get("ventaDolares")) != null)   venta.setVentaDolares(aDouble(fila.valor(c)));
+            if ((c = columnaPorCampo.get("ventaUnidad")) != null)    venta.setVentaUnidad(aDouble(fila.valor(c)));
+            if ((c = columnaPorCampo.get("codBarra")) != null)       venta.setCodBarra(aTexto(fila.valor(c)));
+            if ((c = columnaPorCampo.get("codPdv")) != null)         venta.setCodPdv(aTexto(fila.valor(c)));
+            if ((c = columnaPorCampo.get("pdv")) != null)            venta.setPdv(aTexto(fila.valor(c)));
+            if ((c = columnaPorCampo.get("stockDolares")) != null)   venta.setStockDolares(aDouble(fila.valor(c)));
+            if ((c = columnaPorCampo.get("stockUnidades")) != null)  venta.setStockUnidades(aDouble(fila.valor(c)));
+            if ((c = columnaPorCampo.get("marca")) != null)          venta.setMarca(aTexto(fila.valor(c)));
+            if ((c = columnaPorCampo.get("nombreProducto")) != null) venta.setNombreProducto(aTexto(fila.valor(c)));
+            if ((c = columnaPorCampo.get("descripcion")) != null)    venta.setDescripcion(aTexto(fila.valor(c)));
+
+            if (venta.getCodBarra() == null || venta.getCodBarra().trim().isEmpty()) {
+                detalleNoEncontrados.put(i, Map.of(
+                        "codigo", "CODBARRA_VACIO",
+                        "motivo", "Fila " + (i + 1) + ": Código de barra vacío"
+                ));
+                return;
+            }
+            venta.setCodBarra(venta.getCodBarra().trim());
+
+            bloque.add(venta);
+            filasBloque.add(i);
+            if (bloque.size() >= CHUNK_FILAS) {
+                vaciarBloque();
+                progreso.fase("LEYENDO");
+            }
+        }
+
+        private void mapearEncabezados(ExcelStreamingReader.Fila encabezado) {
+            columnaPorCampo = new HashMap<>();
+            for (int col = 0; col <= encabezado.getUltimaColumna(); col++) {
+                String campo = plan.campo(aTexto(encabezado.valor(col)));
+                if (campo != null) columnaPorCampo.put(campo, col);
+            }
+            for (String campo : plan.camposConAlias()) {
+                if (!columnaPorCampo.containsKey(campo)) {
+                    log.warning("Fybeca carga: no se detectó columna para el campo " + campo);
+                }
+            }
+        }
+
+        /** Resuelve productos del bloque, deduplica por clave y escribe en una transacción (o lo envía a validar). */
+        void vaciarBloque() {
+            if (bloque.isEmpty()) return;
+
+            progreso.fase("GUARDANDO");
+            long t = System.currentTimeMillis();
+            Set<String> nuevos = new LinkedHashSet<>();
+            for (Venta v : bloque) {
+                String cod = v.getCodBarra();
+                if (!productos.containsKey(cod) && !sinProducto.contains(cod)) nuevos.add(cod);
+            }
+            if (!nuevos.isEmpty()) {
+                Map<String, ProductoSapService.ProductoSap> res = productoSapService.resolverPorCodItemOCodBarra(nuevos);
+                productos.putAll(res);
+                for (String cod : nuevos) if (!res.containsKey(cod)) sinProducto.add(cod);
+            }
+            msProductos += System.currentTimeMillis() - t;
+
+            // última fila gana ante claves repetidas (igual que el upsert fila a fila)
+            MapaVentaKey posicion = new MapaVentaKey(bloque.size());
+            List<Venta> unicas = new ArrayList<>(bloque.size());
+            int validas = 0;
+            for (int k = 0; k < bloque.size(); k++) {
+                Venta v = bloque.get(k);
+                ProductoSapService.ProductoSap p = productos.get(v.getCodBarra());
+                if (p == null) {
+                    String cod = Objects.toString(v.getCodBarra(), "N/D");
+                    detalleNoEncontrados.put(filasBloque.get(k), Map.of(
+                            "codigo", cod,
+                            "motivo", "Fila " + (filasBloque.get(k) + 1) + ": No se encontraron datos para el código " + cod
+                    ));
+                    continue;
+                }
+                p.aplicar(v);
+                // ✅ MISMA REGLA: codPdv null/"" => "SIN_TIENDA"
+                v.setCodPdv(normalizarCodPdv(v.getCodPdv()));
+                validas++;
+                int previa = posicion.putIfAbsent(claves.clave(v), unicas.size());
+                if (previa == MapaVentaKey.AUSENTE) unicas.add(v); else unicas.set(previa, v);
+            }
+            duplicados += validas - unicas.size();
+            bloque.clear();
+            filasBloque.clear();
+            filasProcesadas += validas;
+            if (unicas.isEmpty()) return;
+
+            if (simulacion) {
+                validacion.agregar(unicas);
+            } else {
+                sumar(txTemplate.execute(st -> escribirBloque(unicas)));
+            }
+        }
+
+        /**
+         * Separa el bloque en inserciones/actualizaciones contra las ventas existentes y, salvo en simulación,
+         * las escribe con JDBC batch. Con otra estrategia que UPSERT el bloque va entero a la escritura de la
+         * carga, sin buscar existentes. Corre dentro de la transacción del bloque.
+         * @return {insertados, actualizados, sinCambios}
+         */
+        int[] escribirBloque(List<Venta> unicas) {
+            if (!simulacion && escritura.estrategia() != EstrategiaCarga.UPSERT) {
+                long tw = System.currentTimeMillis();
+                int[] res = aConteo(escritura.escribir(unicas, VentaMergeWriter.Modo.COMPLETO));
+                msEscritura += System.currentTimeMillis() - tw;
+                return res;
+            }
+            long tp = System.currentTimeMillis();
+            VentaBatchWriter.Existentes existentes = ventaBatchWriter.existentes(cliente.getId(), unicas);
+            long msExistentes = System.currentTimeMillis() - tp;
+
+            long tw = System.currentTimeMillis();
+            List<Venta> inserts = new ArrayList<>();
+            List<Venta> updates = new ArrayList<>();
+            int igual = 0;
+            for (Venta v : unicas) {
+                int ex = existentes.buscar(v);
+                if (ex == MapaVentaKey.AUSENTE) {
+                    inserts.add(v);
+                } else if (existentes.sinCambios(ex, HashFilaVenta.de(v))) {
+                    igual++;
+                } else {
+                    v.setId(existentes.id(ex));
+                    updates.add(v);
+                }
+            }
+            if (simulacion) return new int[]{inserts.size(), updates.size(), igual};
+
+            int ins = ventaBatchWriter.insertar(inserts);
+            int upd = ventaBatchWriter.actualizar(updates);
+            msPrefetch += msExistentes;
+            msEscritura += System.currentTimeMillis() - tw;
+            return new int[]{ins, upd, igual};
+        }
+
+        /** Suma el resultado de un bloque (en simulación, llamado en orden de bloque por el pipeline). */
+        void sumar(int[] res) {
+            insertados += res[0];
+            actualizados += res[1];
+            sinCambios += res[2];
+        }
+    }
+
+    private static int[] aConteo(VentaMergeWriter.Resultado r) {
+        return new int[]{r.insertados(), r.actualizados(), r.sinCambios()};
+    }
+
+    // ===== conversión de valores crudos (misma regla que obtenerValorCelda del controller) =====
+
+    private static Integer aEntero(Object v) {
+        if (v instanceof Double d) return (int) d.doubleValue();
+        if (v instanceof String s) {
+            try { return Integer.parseInt(s.trim()); } catch (NumberFormatException e) { return 0; }
+        }
+        return 0;
+    }
+
+    private static Double aDouble(Object v) {
+        if (v instanceof Double d) return d;
+        if (v instanceof String s) {
+            double n = DecodificadorCeldas.numero(s);
+            return Double.isNaN(n) ? 0.0 : n;
+        }
+        return 0.0;
+    }
+
+    /** Numéricos enteros sin ".0" (códigos de barra de 13 dígitos no caben en int). */
+    private static String aTexto(Object v) {
+        if (v instanceof String s) return s.trim();
+        if (v instanceof Double d) {
+            double x = d;
+            if (x == Math.rint(x) && Math.abs(x) < 1e15) return String.valueOf((long) x);
+            return String.valueOf(x);
+        }
+        return null;
+    }
+
     // ====== Archivo de incidencias (códigos no encontrados) ======
 
     private void guardarCodigoNoEncontradoLocal(String cod) {
@@ -367,6 +767,7 @@ public class FybecaVentaService {
     // ====== Catálogos ======
 
     /** Genérico: marcas por codCliente */
+    @LecturaReplica
     public List<String> obtenerMarcasDisponibles(String codCliente) {
         String jpql = "SELECT DISTINCT v.marca FROM Venta v WHERE v.marca IS NOT NULL AND v.cliente.codCliente = :cod";
         return entityManager.createQuery(jpql, String.class)
@@ -375,11 +776,13 @@ public class FybecaVentaService {
     }
 
     /** Wrapper: default (MZCL-000014) */
+    @LecturaReplica
     public List<String> obtenerMarcasDisponiblesFybeca() {
         return obtenerMarcasDisponibles(DEFAULT_COD_CLIENTE);
     }
 
     /** Genérico: años por codCliente */
+    @LecturaReplica
     public List<Integer> obtenerAniosDisponibles(String codCliente) {
         String jpql = "SELECT DISTINCT v.anio FROM Venta v WHERE v.cliente.codCliente = :cod ORDER BY v.anio DESC";
         return entityManager.createQuery(jpql, Integer.class)
@@ -388,11 +791,13 @@ public class FybecaVentaService {
     }
 
     /** Wrapper: default (MZCL-000014) */
+    @LecturaReplica
     public List<Integer> obtenerAniosDisponiblesFybeca() {
         return obtenerAniosDisponibles(DEFAULT_COD_CLIENTE);
     }
 
     /** Genérico: meses por codCliente (y opcional año) */
+    @LecturaReplica
     public List<Integer> obtenerMesesDisponibles(String codCliente, Integer anio) {
         if (anio == null) {
             String jpql = "SELECT DISTINCT v.mes FROM Venta v WHERE v.cliente.codCliente = :cod ORDER BY v.mes";
@@ -408,6 +813,7 @@ public class FybecaVentaService {
     }
 
     /** Wrapper: default (MZCL-000014) */
+    @LecturaReplica
     public List<Integer> obtenerMesesDisponiblesFybeca(Integer anio) {
         return obtenerMesesDisponibles(DEFAULT_COD_CLIENTE, anio);
     }
@@ -415,6 +821,7 @@ public class FybecaVentaService {
     // ====== Reporte (opcional) ======
 
     /** Genérico: reporte crudo por codCliente */
+    @LecturaReplica
     public List<Object[]> obtenerReporteVentasCrudo(String codCliente) {
         String sql = """
             WITH VentasMensuales AS (
@@ -452,6 +859,7 @@ public class FybecaVentaService {
     }
 
     /** Wrapper: default (MZCL-000014) */
+    @LecturaReplica
     public List<Object[]> obtenerReporteVentasFybecaCrudo() {
         return obtenerReporteVentasCrudo(DEFAULT_COD_CLIENTE);
     }
@@ -0,0 +1,178 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manamer.backend.business.sellout.models.CargaHuella;
+import com.manamer.backend.business.sellout.repositories.CargaHuellaRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Idempotencia de cargas: cada archivo se identifica con el SHA-256 de sus bytes, por endpoint y cliente.
+ *
+ * <ul>
+ *   <li>Si el mismo archivo ya se importó con éxito (dentro de {@code sellout.cargas.huella.vigencia-horas})
+ *       se devuelve el resultado guardado sin volver a leerlo ni escribir ventas.</li>
+ *   <li>Si llegan cargas idénticas a la vez, solo una se ejecuta y las demás esperan y reciben su resultado.</li>
+ *   <li>{@code forzar} ignora el resultado guardado (p.ej. se borraron las ventas y se quiere recargar).</li>
+ * </ul>
+ * Solo se guardan cargas exitosas ({@code ok} distinto de false): un error se reintenta completo.
+ */
+@Service
+public class HuellaCargaService {
+
+    private static final Logger log = Logger.getLogger(HuellaCargaService.class.getName());
+
+    /** Cliente de la huella para archivos con varios clientes (Template General). */
+    public static final String MULTICLIENTE = "*";
+
+    private static final int BUFFER_HASH = 256 * 1024;
+
+    private final CargaHuellaRepository repository;
+    private final ObjectMapper objectMapper;
+    private final Duration vigencia;
+    private final ConcurrentHashMap<String, CompletableFuture<Map<String, Object>>> enCurso = new ConcurrentHashMap<>();
+
+    public HuellaCargaService(CargaHuellaRepository repository,
+                              ObjectMapper objectMapper,
+                              @Value("${sellout.cargas.huella.vigencia-horas:24}") long vigenciaHoras) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.vigencia = Duration.ofHours(Math.max(1, vigenciaHoras));
+    }
+
+    /**
+     * Ejecuta la carga salvo que el mismo archivo ya se haya importado o se esté importando.
+     * El resultado reutilizado lleva {@code duplicado=true} (de una carga anterior) o
+     * {@code compartido=true} (de una carga idéntica simultánea), más la {@code huella}.
+     */
+    public Map<String, Object> ejecutar(String endpoint, String codCliente, Path archivo, String nombreArchivo,
+                                        boolean forzar, Callable<Map<String, Object>> carga) throws Exception {
+        String huella = sha256(archivo);
+        String cliente = Objects.toString(codCliente, "");
+        String clave = endpoint + '|' + cliente + '|' + huella;
+
+        if (!forzar) {
+            Optional<Map<String, Object>> previo = resultadoGuardado(endpoint, cliente, huella);
+            if (previo.isPresent()) return previo.get();
+        }
+
+        CompletableFuture<Map<String, Object>> propia = new CompletableFuture<>();
+        CompletableFuture<Map<String, Object>> otra = enCurso.putIfAbsent(clave, propia);
+        if (otra != null) {
+            log.info("Carga idéntica en curso, se espera su resultado: endpoint=" + endpoint + " cliente=" + cliente
+                    + " archivo=" + nombreArchivo + " huella=" + huella);
+            try {
+                return marcar(otra.get(), "compartido", huella, null);
+            } catch (ExecutionException e) {
+                throw (e.getCause() instanceof Exception ex) ? ex : e;
+            }
+        }
+
+        try {
+            // otra carga idéntica pudo terminar entre la consulta y el registro en curso
+            if (!forzar) {
+                Optional<Map<String, Object>> previo = resultadoGuardado(endpoint, cliente, huella);
+                if (previo.isPresent()) {
+                    propia.complete(previo.get());
+                    return previo.get();
+                }
+            }
+            Map<String, Object> resultado = carga.call();
+            if (!Boolean.FALSE.equals(resultado.get("ok"))) {
+                guardar(endpoint, cliente, huella, archivo, nombreArchivo, resultado);
+            }
+            propia.complete(resultado);
+            return resultado;
+        } catch (Throwable e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propia);
+        }
+    }
+
+    /** SHA-256 hexadecimal leyendo el archivo por bloques (no se carga completo en memoria). */
+    public static String sha256(Path archivo) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_HASH);
+        try (FileChannel ch = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    // ===== internos =====
+
+    private Optional<Map<String, Object>> resultadoGuardado(String endpoint, String cliente, String huella) {
+        Optional<CargaHuella> h = repository.findByEndpointAndCodClienteAndSha256(endpoint, cliente, huella);
+        if (h.isEmpty() || h.get().getResultado() == null) return Optional.empty();
+        CargaHuella previa = h.get();
+        if (previa.getFechaCarga().isBefore(LocalDateTime.now().minus(vigencia))) return Optional.empty();
+        try {
+            Map<String, Object> res = objectMapper.readValue(previa.getResultado(), new TypeReference<LinkedHashMap<String, Object>>() {});
+            log.info("Archivo ya importado, se devuelve el resultado guardado: endpoint=" + endpoint + " cliente=" + cliente
+                    + " huella=" + huella + " cargadoEn=" + previa.getFechaCarga());
+            return Optional.of(marcar(res, "duplicado", huella, previa.getFechaCarga()));
+        } catch (IOException e) {
+            log.warning("Resultado guardado ilegible para huella " + huella + ", se recarga: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void guardar(String endpoint, String cliente, String huella, Path archivo, String nombreArchivo,
+                         Map<String, Object> resultado) {
+        try {
+            CargaHuella h = repository.findByEndpointAndCodClienteAndSha256(endpoint, cliente, huella)
+                    .orElseGet(CargaHuella::new);
+            h.setEndpoint(endpoint);
+            h.setCodCliente(cliente);
+            h.setSha256(huella);
+            h.setNombreArchivo(nombreArchivo);
+            h.setBytes(archivo.toFile().length());
+            h.setFechaCarga(LocalDateTime.now());
+            h.setResultado(objectMapper.writeValueAsString(resultado));
+            repository.save(h);
+        } catch (DataIntegrityViolationException e) {
+            // otra instancia guardó la misma huella a la vez: la suya vale igual
+            log.info("Huella ya registrada por otra carga: " + huella);
+        } catch (Exception e) {
+            // no guardar la huella no invalida la carga ya hecha
+            log.log(Level.WARNING, "No se pudo guardar la huella " + huella + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Map<String, Object> marcar(Map<String, Object> resultado, String marca, String huella,
+                                              LocalDateTime cargadoEn) {
+        Map<String, Object> out = new LinkedHashMap<>(resultado);
+        out.put(marca, true);
+        out.put("huella", huella);
+        if (cargadoEn != null) out.put("cargadoEn", cargadoEn.toString());
+        return out;
+    }
+}
@@ -0,0 +1,111 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.util.Arrays;
+
+/**
+ * {@link VentaKey} → int (índice de fila / posición en una lista) con direccionamiento abierto y sondeo
+ * lineal sobre arreglos primitivos: no crea objetos por entrada ni por búsqueda. Los valores deben ser >= 0.
+ * No es thread-safe; las lecturas concurrentes sobre un mapa que ya no cambia sí son seguras.
+ */
+public final class MapaVentaKey {
+
+    /** Valor de {@link #get} / {@link #put} cuando la clave no estaba. */
+    public static final int AUSENTE = -1;
+
+    private long[] altos;
+    private long[] bajos;
+    private int[] valores;
+    private int mascara;
+    private int tamano;
+    private int limite;
+
+    public MapaVentaKey(int capacidadEsperada) {
+        int cap = Integer.highestOneBit(Math.max(8, capacidadEsperada * 2 - 1)) << 1;
+        reservar(cap);
+    }
+
+    public int size() {
+        return tamano;
+    }
+
+    public boolean isEmpty() {
+        return tamano == 0;
+    }
+
+    public int get(VentaKey k) {
+        return get(k.fechaCliente(), k.textos());
+    }
+
+    public boolean containsKey(VentaKey k) {
+        return get(k) != AUSENTE;
+    }
+
+    public int get(long alto, long bajo) {
+        for (int i = posicion(alto, bajo); ; i = (i + 1) & mascara) {
+            int v = valores[i];
+            if (v == AUSENTE) return AUSENTE;
+            if (altos[i] == alto && bajos[i] == bajo) return v;
+        }
+    }
+
+    /** Asocia el valor a la clave; devuelve el anterior o {@link #AUSENTE}. */
+    public int put(VentaKey k, int valor) {
+        return put(k.fechaCliente(), k.textos(), valor);
+    }
+
+    public int put(long alto, long bajo, int valor) {
+        if (valor < 0) throw new IllegalArgumentException("valor negativo: " + valor);
+        for (int i = posicion(alto, bajo); ; i = (i + 1) & mascara) {
+            int v = valores[i];
+            if (v == AUSENTE) {
+                altos[i] = alto;
+                bajos[i] = bajo;
+                valores[i] = valor;
+                if (++tamano > limite) crecer();
+                return AUSENTE;
+            }
+            if (altos[i] == alto && bajos[i] == bajo) {
+                valores[i] = valor;
+                return v;
+            }
+        }
+    }
+
+    /** Agrega la clave solo si no estaba; devuelve el valor que ya tenía o {@link #AUSENTE}. */
+    public int putIfAbsent(VentaKey k, int valor) {
+        int actual = get(k);
+        if (actual != AUSENTE) return actual;
+        put(k, valor);
+        return AUSENTE;
+    }
+
+    private int posicion(long alto, long bajo) {
+        // fmix64 de MurmurHash3 sobre la combinación de las dos mitades
+        long h = alto * 0x9E3779B97F4A7C15L ^ bajo;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h & mascara;
+    }
+
+    private void reservar(int cap) {
+        altos = new long[cap];
+        bajos = new long[cap];
+        valores = new int[cap];
+        Arrays.fill(valores, AUSENTE);
+        mascara = cap - 1;
+        limite = cap / 2;
+    }
+
+    private void crecer() {
+        long[] a = altos, b = bajos;
+        int[] v = valores;
+        reservar(a.length * 2);
+        tamano = 0;
+        for (int i = 0; i < v.length; i++) {
+            if (v[i] != AUSENTE) put(a[i], b[i], v[i]);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.HashFilaVenta;
+import com.manamer.backend.business.sellout.models.Venta;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+/**
+ * Reemplazo y vaciado de un mes completo de dbo.venta sobre la tabla particionada por periodo
+ * (anio * 100 + mes, V7__particion_venta.sql):
+ *
+ * <ul>
+ *   <li>{@link #purgarPeriodo}: la partición del mes sale a venta_salida con SWITCH y se trunca; solo
+ *       metadatos, sin importar cuántas filas tenga.</li>
+ *   <li>{@link #reemplazarPeriodo}: venta_carga recibe las ventas del mes de los demás clientes (INSERT con
+ *       TABLOCK) y las nuevas del cliente (bulk copy); luego la partición actual sale y venta_carga entra en
+ *       su lugar. No es solo metadatos: cada reemplazo copia el mes entero de todos los demás clientes, y
+ *       hasta el commit las escrituras de otros sobre ese mes esperan (la copia lee con HOLDLOCK; lo que
+ *       escribieran en medio se perdería con la partición que sale).</li>
+ * </ul>
+ * Las ventas nuevas llegan en una lista o, en las cargas REPLACE_PERIOD, desde dbo.venta_reemplazo
+ * ({@link #reemplazarPeriodo(String, long, int, int)}). Sin la tabla particionada (otra base, H2 en los tests,
+ * o V7 sin aplicar) hace lo mismo con DELETE + INSERT.
+ * Debe llamarse dentro de una transacción: los procedimientos toman el applock de la transacción.
+ */
+@Service
+public class ParticionVentaService {
+
+    private static final Logger log = Logger.getLogger(ParticionVentaService.class.getName());
+
+    private static final String TABLA_CARGA = "SELLOUT.dbo.venta_carga";
+
+    private static final String SQL_PARTICIONADA = """
+        SELECT COUNT(*)
+        FROM SELLOUT.sys.indexes i
+        JOIN SELLOUT.sys.partition_schemes ps ON ps.data_space_id = i.data_space_id
+        WHERE i.object_id = OBJECT_ID(N'SELLOUT.dbo.venta') AND i.index_id IN (0, 1) AND ps.name = N'ps_venta_periodo'
+    """;
+
+    /**
+     * Una fila por clave (dia, clave_barra, clave_pdv) de lo retenido por una carga en el mes de un cliente,
+     * igual que si los bloques se aplicaran en orden: la base es la última fila de venta (o la primera si solo
+     * llegó stock) y el stock el de la última fila SOLO_STOCK posterior a ella. Si el stock vino de otra fila
+     * hash_fila queda en NULL (la próxima carga la reescribe). Tablas derivadas y no CTE: es el SELECT de un
+     * INSERT, también en H2. Parámetros: carga, cliente, anio, mes (dos veces).
+     */
+    private static final String SQL_RETENIDAS = """
+        SELECT %s
+        FROM (
+            SELECT r.*,
+                   MAX(CASE WHEN r.modo <> 'SOLO_STOCK' THEN r.orden END)
+                       OVER (PARTITION BY r.dia, r.clave_barra, r.clave_pdv) AS ultima_venta,
+                   MIN(r.orden) OVER (PARTITION BY r.dia, r.clave_barra, r.clave_pdv) AS primera
+            FROM SELLOUT.dbo.venta_reemplazo r
+            WHERE r.carga_id = ? AND r.cliente_id = ? AND r.anio = ? AND r.mes = ?
+        ) b
+        LEFT JOIN (
+            SELECT x.dia, x.clave_barra, x.clave_pdv, x.orden, x.stock_dolares, x.stock_unidades
+            FROM (
+                SELECT r.dia, r.clave_barra, r.clave_pdv, r.orden, r.modo, r.stock_dolares, r.stock_unidades,
+                       MAX(CASE WHEN r.modo <> 'SOLO_STOCK' THEN r.orden END)
+                           OVER (PARTITION BY r.dia, r.clave_barra, r.clave_pdv) AS ultima_venta,
+                       ROW_NUMBER() OVER (PARTITION BY r.dia, r.clave_barra, r.clave_pdv, r.modo ORDER BY r.orden DESC) AS n
+                FROM SELLOUT.dbo.venta_reemplazo r
+                WHERE r.carga_id = ? AND r.cliente_id = ? AND r.anio = ? AND r.mes = ?
+            ) x
+            WHERE x.modo = 'SOLO_STOCK' AND x.n = 1 AND x.orden > COALESCE(x.ultima_venta, 0)
+        ) s ON s.dia = b.dia AND s.clave_barra = b.clave_barra AND s.clave_pdv = b.clave_pdv
+        WHERE b.orden = COALESCE(b.ultima_venta, b.primera)
+    """;
+
+    /** Escribe las ventas nuevas del periodo en {@code tabla} (venta sin partición, si no venta_carga); devuelve cuántas. */
+    @FunctionalInterface
+    private interface Filas {
+        int escribir(Connection con, String tabla) throws SQLException;
+    }
+
+    /** Filas del periodo que salieron (todas al purgar; las del cliente al reemplazar) y las que entraron. */
+    public record Resultado(long borradas, int insertadas, boolean porParticion, long ms) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VentaBatchWriter ventaBatchWriter;
+
+    // se consulta una vez: la partición la crea una migración, no cambia con la aplicación levantada
+    private volatile Boolean particionada;
+
+    public ParticionVentaService(JdbcTemplate jdbcTemplate, VentaBatchWriter ventaBatchWriter) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ventaBatchWriter = ventaBatchWriter;
+    }
+
+    /** Valor de la columna venta.periodo (y de los límites de la partición). */
+    public static int periodo(int anio, int mes) {
+        return anio * 100 + mes;
+    }
+
+    /**
+     * Condición sobre {@code alias}.periodo equivalente al filtro por año/mes, para que SQL Server lea solo esas
+     * particiones (no las deduce de anio/mes). Vacía sin año; sin mes cubre los doce del año. Va junto a
+     * los filtros por anio/mes, no en su lugar.
+     */
+    public static String filtroPeriodo(String alias, Integer anio, Integer mes) {
+        if (anio == null) return "";
+        if (mes != null) return "AND " + alias + ".periodo = " + periodo(anio, mes) + " ";
+        return "AND " + alias + ".periodo BETWEEN " + periodo(anio, 1) + " AND " + periodo(anio, 12) + " ";
+    }
+
+    /** true si dbo.venta está sobre ps_venta_periodo (SQL Server con V7 aplicada). */
+    public boolean particionada() {
+        Boolean p = particionada;
+        if (p == null) {
+            p = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+                if (!con.isWrapperFor(SQLServerConnection.class)) return false;
+                try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(SQL_PARTICIONADA)) {
+                    return rs.next() && rs.getInt(1) > 0;
+                }
+            }));
+            particionada = p;
+        }
+        return p;
+    }
+
+    /** Elimina todas las ventas (de todos los clientes) del mes. */
+    @Transactional
+    public Resultado purgarPeriodo(int anio, int mes) {
+        long t0 = System.currentTimeMillis();
+        int p = periodo(anio, mes);
+        if (!particionada()) {
+            int borradas = jdbcTemplate.update("DELETE FROM SELLOUT.dbo.venta WHERE anio = ? AND mes = ?", anio, mes);
+            return new Resultado(borradas, 0, false, System.currentTimeMillis() - t0);
+        }
+        long borradas = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try (CallableStatement cs = con.prepareCall("{call SELLOUT.dbo.venta_vaciar_periodo(?, ?)}")) {
+                cs.setInt(1, p);
+                cs.registerOutParameter(2, Types.BIGINT);
+                cs.execute();
+                return cs.getLong(2);
+            }
+        });
+        Resultado r = new Resultado(borradas, 0, true, System.currentTimeMillis() - t0);
+        log.info("Periodo " + p + " vaciado por SWITCH: " + borradas + " ventas en " + r.ms() + " ms");
+        return r;
+    }
+
+    /**
+     * Deja como ventas del cliente en el mes exactamente {@code ventas}: las que tenía se descartan enteras
+     * (no se comparan ni se actualizan). Todas deben ser de ese cliente, año y mes; una clave repetida se
+     * escribe una vez, con la última aparición.
+     */
+    @Transactional
+    public Resultado reemplazarPeriodo(long clienteId, int anio, int mes, List<Venta> ventas) {
+        List<Venta> unicas = unicas(clienteId, anio, mes, ventas);
+        return reemplazar(clienteId, anio, mes, (con, tabla) -> {
+            if (unicas.isEmpty()) return 0;
+            if (TABLA_CARGA.equals(tabla)) {
+                VentaMergeWriter.copiar(con.unwrap(SQLServerConnection.class), TABLA_CARGA, unicas, true, true);
+                return unicas.size();
+            }
+            return ventaBatchWriter.insertar(unicas);
+        });
+    }
+
+    /**
+     * Como {@link #reemplazarPeriodo(long, int, int, List)} con lo que la carga {@code cargaId} retuvo del cliente
+     * y mes en dbo.venta_reemplazo ({@link VentaMergeWriter#retener}): las ventas no pasan por memoria, se
+     * deduplican en el INSERT ... SELECT ({@link #SQL_RETENIDAS}). En SQL Server cada fila entra con el id que
+     * se le reservó al retenerla. No borra lo retenido.
+     */
+    @Transactional
+    public Resultado reemplazarPeriodo(String cargaId, long clienteId, int anio, int mes) {
+        return reemplazar(clienteId, anio, mes, (con, tabla) -> {
+            boolean conId = con.isWrapperFor(SQLServerConnection.class);
+            String columnas = (conId ? "id, " : "") + VentaMergeWriter.LISTA_COLUMNAS;
+            String sql = "INSERT INTO " + tabla + (TABLA_CARGA.equals(tabla) ? " WITH (TABLOCK)" : "")
+                    + " (" + columnas + ") " + SQL_RETENIDAS.formatted(seleccionRetenidas(conId));
+            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                for (int i = 0; i < 2; i++) {
+                    ps.setString(i * 4 + 1, cargaId);
+                    ps.setLong(i * 4 + 2, clienteId);
+                    ps.setInt(i * 4 + 3, anio);
+                    ps.setInt(i * 4 + 4, mes);
+                }
+                return ps.executeUpdate();
+            }
+        });
+    }
+
+    // columnas de venta desde la fila base (b) y el stock de la fila SOLO_STOCK (s) si la hay
+    private static String seleccionRetenidas(boolean conId) {
+        List<String> sel = new ArrayList<>();
+        if (conId) sel.add("b.id");
+        for (String c : VentaMergeWriter.NOMBRES_COLUMNAS) {
+            sel.add(switch (c) {
+                case "stock_dolares", "stock_unidades" -> "CASE WHEN s.orden IS NULL THEN b." + c + " ELSE s." + c + " END";
+                case "hash_fila" -> "CASE WHEN s.orden IS NULL OR s.orden = b.orden THEN b.hash_fila END";
+                default -> "b." + c;
+            });
+        }
+        return String.join(", ", sel);
+    }
+
+    private Resultado reemplazar(long clienteId, int anio, int mes, Filas filas) {
+        long t0 = System.currentTimeMillis();
+        int p = periodo(anio, mes);
+
+        if (!particionada()) {
+            int borradas = jdbcTemplate.update(
+                    "DELETE FROM SELLOUT.dbo.venta WHERE cliente_id = ? AND anio = ? AND mes = ?", clienteId, anio, mes);
+            int insertadas = jdbcTemplate.execute(
+                    (ConnectionCallback<Integer>) con -> filas.escribir(con, "SELLOUT.dbo.venta"));
+            return new Resultado(borradas, insertadas, false, System.currentTimeMillis() - t0);
+        }
+
+        int[] insertadas = new int[1];
+        long borradas = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try (CallableStatement cs = con.prepareCall("{call SELLOUT.dbo.venta_preparar_carga(?, ?)}")) {
+                cs.setInt(1, p);
+                cs.setLong(2, clienteId);
+                cs.execute();
+            }
+            insertadas[0] = filas.escribir(con, TABLA_CARGA);
+            try (CallableStatement cs = con.prepareCall("{call SELLOUT.dbo.venta_aplicar_carga(?, ?, ?)}")) {
+                cs.setInt(1, p);
+                cs.setLong(2, clienteId);
+                cs.registerOutParameter(3, Types.BIGINT);
+                cs.execute();
+                return cs.getLong(3);
+            }
+        });
+        Resultado r = new Resultado(borradas, insertadas[0], true, System.currentTimeMillis() - t0);
+        log.info("Periodo " + p + " del cliente " + clienteId + " reemplazado por SWITCH: " + borradas
+                + " ventas salen, " + insertadas[0] + " entran en " + r.ms() + " ms");
+        return r;
+    }
+
+    // valida cliente/periodo, deduplica por clave natural (última gana) y calcula hash_fila
+    private static List<Venta> unicas(long clienteId, int anio, int mes, List<Venta> ventas) {
+        if (ventas == null || ventas.isEmpty()) return List.of();
+        DiccionarioClaves claves = new DiccionarioClaves();
+        MapaVentaKey posicion = new MapaVentaKey(ventas.size());
+        List<Venta> unicas = new ArrayList<>(ventas.size());
+        for (Venta v : ventas) {
+            Long cliente = v.getCliente() != null ? v.getCliente().getId() : null;
+            if (!Objects.equals(cliente, clienteId) || !Objects.equals(v.getAnio(), anio) || !Objects.equals(v.getMes(), mes)) {
+                throw new IllegalArgumentException("La venta " + v.getCodBarra() + " (" + cliente + ", " + v.getAnio()
+                        + "/" + v.getMes() + ") no es del cliente " + clienteId + " en " + anio + "/" + mes);
+            }
+            if (v.getHashFila() == null) v.setHashFila(HashFilaVenta.de(v));
+            int previa = posicion.putIfAbsent(claves.clave(v), unicas.size());
+            if (previa == MapaVentaKey.AUSENTE) unicas.add(v); else unicas.set(previa, v);
+        }
+        return unicas;
+    }
+}
@@ -0,0 +1,247 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Etapa de ingesta lectura/escritura en paralelo: el hilo que decodifica el archivo llama a
+ * {@link #agregar} y los registros se agrupan en bloques que van a una cola acotada; uno o más
+ * hilos escritores toman bloques y los guardan, cada bloque en su propia transacción.
+ *
+ * <ul>
+ *   <li>Backpressure: con la cola llena {@link #agregar} espera (la lectura no se adelanta sin límite).</li>
+ *   <li>Errores: el primer fallo de un escritor detiene a los demás y se relanza en el hilo lector
+ *       (en el siguiente {@link #agregar} o en {@link #terminar}).</li>
+ *   <li>Orden: los resultados se entregan al {@link Consolidador} en el orden de los bloques,
+ *       aunque terminen desordenados; así contadores e incidencias quedan como en la carga secuencial.</li>
+ * </ul>
+ *
+ * Con más de un escritor los bloques deben ser independientes entre sí (sin claves repetidas entre bloques).
+ */
+public final class PipelineCarga<T, R> implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(PipelineCarga.class.getName());
+
+    /** Guarda un bloque; se ejecuta en un hilo escritor dentro de la transacción del bloque. */
+    @FunctionalInterface
+    public interface Escritor<T, R> {
+        R escribir(List<T> bloque, int nroBloque) throws Exception;
+    }
+
+    /** Recibe los resultados en orden de bloque (llamadas serializadas, no necesita ser thread-safe). */
+    @FunctionalInterface
+    public interface Consolidador<R> {
+        void aceptar(int nroBloque, R resultado);
+    }
+
+    /** Fallo de un escritor, relanzado en el hilo lector. */
+    public static final class ErrorPipeline extends RuntimeException {
+        public ErrorPipeline(String mensaje, Throwable causa) { super(mensaje, causa); }
+    }
+
+    private record Bloque<T>(int nro, List<T> items) {}
+
+    private static final Bloque<?> FIN = new Bloque<>(-1, List.of());
+
+    private final String nombre;
+    private final int tamanoBloque;
+    private final TransactionTemplate tx;
+    private final Escritor<T, R> escritor;
+    private final Consolidador<R> consolidador;
+    private final BlockingQueue<Bloque<T>> cola;
+    private final List<Thread> hilos = new ArrayList<>();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    // resultados terminados fuera de orden, esperando a los bloques anteriores
+    private final SortedMap<Integer, R> pendientes = new TreeMap<>();
+    private int siguienteAConsolidar = 0;
+
+    private List<T> actual;
+    private int bloquesEnviados = 0;
+    private long items = 0;
+    private long msEsperaLector = 0;
+    private long msEscritura = 0;
+    private boolean terminado = false;
+
+    /**
+     * @param tx transacción por bloque; null si el escritor maneja la suya
+     */
+    public PipelineCarga(String nombre, int tamanoBloque, int capacidadCola, int escritores,
+                         TransactionTemplate tx, Escritor<T, R> escritor, Consolidador<R> consolidador) {
+        this.nombre = nombre;
+        this.tamanoBloque = Math.max(1, tamanoBloque);
+        this.tx = tx;
+        this.escritor = escritor;
+        this.consolidador = consolidador;
+        this.cola = new ArrayBlockingQueue<>(Math.max(1, capacidadCola));
+        this.actual = new ArrayList<>(this.tamanoBloque);
+
+        for (int i = 0; i < Math.max(1, escritores); i++) {
+            Thread t = new Thread(this::bucleEscritor, nombre + "-escritor-" + (i + 1));
+            t.setDaemon(true);
+            hilos.add(t);
+            t.start();
+        }
+    }
+
+    /** Agrega un registro; al completar un bloque lo encola (espera si la cola está llena). */
+    public void agregar(T item) {
+        verificarError();
+        actual.add(item);
+        items++;
+        if (actual.size() >= tamanoBloque) enviarBloque();
+    }
+
+    /**
+     * Envía el bloque incompleto, espera a que los escritores terminen y consolida.
+     * Relanza el primer error de escritura.
+     */
+    public Map<String, Object> terminar() {
+        if (terminado) return estadisticas();
+        terminado = true;
+        try {
+            if (!actual.isEmpty() && error.get() == null) encolar(siguienteBloque());
+            for (int i = 0; i < hilos.size() && error.get() == null; i++) encolar(fin());
+            // con error los escritores pueden quedar esperando en la cola: se despiertan
+            if (error.get() != null) hilos.forEach(Thread::interrupt);
+            for (Thread t : hilos) t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error.compareAndSet(null, e);
+            hilos.forEach(Thread::interrupt);
+        }
+        verificarError();
+        synchronized (pendientes) {
+            if (siguienteAConsolidar != bloquesEnviados) {
+                throw new IllegalStateException(nombre + ": bloques consolidados " + siguienteAConsolidar + " de " + bloquesEnviados);
+            }
+        }
+        return estadisticas();
+    }
+
+    /**
+     * Corta el pipeline si no se llamó a {@link #terminar} (p.ej. la lectura falló): descarta los bloques
+     * en cola, interrumpe a los escritores y espera a que terminen (el bloque en curso puede quedar en rollback).
+     */
+    @Override
+    public void close() {
+        if (terminado) return;
+        terminado = true;
+        error.compareAndSet(null, new IllegalStateException(nombre + ": carga abortada"));
+        cola.clear();
+        boolean interrumpido = false;
+        for (Thread t : hilos) {
+            t.interrupt();
+            while (t.isAlive()) {
+                try { t.join(); } catch (InterruptedException e) { interrumpido = true; }
+            }
+        }
+        if (interrumpido) Thread.currentThread().interrupt();
+    }
+
+    /** Número del bloque que se está llenando (el que recibirá el próximo {@link #agregar}). */
+    public int bloqueActual() {
+        return bloquesEnviados;
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("escritores", hilos.size());
+        m.put("bloques", bloquesEnviados);
+        m.put("registros", items);
+        m.put("msEsperaLectura", msEsperaLector);
+        synchronized (this) { m.put("msEscritura", msEscritura); }
+        return m;
+    }
+
+    // ===== internos =====
+
+    @SuppressWarnings("unchecked")
+    private Bloque<T> fin() { return (Bloque<T>) FIN; }
+
+    private Bloque<T> siguienteBloque() {
+        Bloque<T> b = new Bloque<>(bloquesEnviados++, actual);
+        actual = new ArrayList<>(tamanoBloque);
+        return b;
+    }
+
+    private void enviarBloque() {
+        try {
+            encolar(siguienteBloque());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ErrorPipeline(nombre + ": lectura interrumpida", e);
+        }
+        verificarError();
+    }
+
+    /** put con espera acotada para no quedar bloqueado si todos los escritores murieron. */
+    private void encolar(Bloque<T> b) throws InterruptedException {
+        long t0 = System.currentTimeMillis();
+        while (!cola.offer(b, 200, TimeUnit.MILLISECONDS)) {
+            if (error.get() != null) break;
+        }
+        msEsperaLector += System.currentTimeMillis() - t0;
+    }
+
+    private void verificarError() {
+        Throwable e = error.get();
+        if (e != null) {
+            if (e instanceof ErrorPipeline ep) throw ep;
+            throw new ErrorPipeline(nombre + ": error al guardar bloque: " + e.getMessage(), e);
+        }
+    }
+
+    private void bucleEscritor() {
+        try {
+            while (true) {
+                Bloque<T> b = cola.take();
+                if (b == FIN) return;
+                if (error.get() != null) continue; // se vacía la cola sin escribir
+
+                long t0 = System.currentTimeMillis();
+                R r = (tx != null)
+                        ? tx.execute(st -> escribirSinChecked(b))
+                        : escribirSinChecked(b);
+                sumarEscritura(System.currentTimeMillis() - t0);
+                consolidar(b.nro, r);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            if (error.compareAndSet(null, e)) {
+                log.severe(nombre + ": falló un bloque, se detiene la carga: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void sumarEscritura(long ms) { msEscritura += ms; }
+
+    private R escribirSinChecked(Bloque<T> b) {
+        try {
+            return escritor.escribir(b.items, b.nro);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ErrorPipeline(nombre + ": bloque " + b.nro + ": " + e.getMessage(), e);
+        }
+    }
+
+    /** Entrega en orden: el bloque n solo se consolida cuando ya se consolidaron 0..n-1. */
+    private void consolidar(int nro, R resultado) {
+        synchronized (pendientes) {
+            pendientes.put(nro, resultado);
+            while (!pendientes.isEmpty() && pendientes.firstKey() == siguienteAConsolidar) {
+                R r = pendientes.remove(siguienteAConsolidar);
+                if (consolidador != null) consolidador.aceptar(siguienteAConsolidar, r);
+                siguienteAConsolidar++;
+            }
+        }
+    }
+}
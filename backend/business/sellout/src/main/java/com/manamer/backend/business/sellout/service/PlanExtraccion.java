@@ -0,0 +1,147 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.TemplateConfig;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Plantilla de archivo compilada (ver {@link PlantillaService}): filas y columnas fijas ya resueltas
+ * y los alias de encabezado normalizados en un solo mapa alias → campo.
+ * Inmutable; se comparte entre cargas.
+ *
+ * Filas y columnas 0-based; -1 = no aplica (o, en filaCodPdv, buscar la fila que contiene "Tienda").
+ * Una configuración incoherente (filas o columnas fuera de rango, paso de PDV no positivo, datos antes
+ * del encabezado) se rechaza al compilar con {@link IllegalArgumentException}.
+ */
+public final class PlanExtraccion {
+
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+    private static final Pattern NO_ASCII = Pattern.compile("[^\\p{ASCII}]");
+    private static final Pattern PUNTUACION = Pattern.compile("[\\.,\"']");
+
+    /** Columnas de una hoja .xlsx. */
+    static final int MAX_COLUMNAS = 16_384;
+
+    private final String nombre;
+    private final int filaCodPdv;
+    private final int filaPdv;
+    private final int filaEncabezado;
+    private final int filaDatos;
+    private final int colInicio;
+    private final int colFin;
+    private final int[] columnasPdv;
+    private final Map<String, Integer> columnasFijas;
+    private final Map<String, String> campoPorAlias;
+    private final Set<String> camposConAlias;
+
+    PlanExtraccion(TemplateConfig c, Map<String, List<String>> aliasPorCampo) {
+        validar(c);
+        this.nombre = c.getTemplateName();
+        this.filaCodPdv = c.getRowCodPdv();
+        this.filaPdv = c.getRowPdv();
+        this.filaEncabezado = valor(c.getRowEncabezado());
+        this.filaDatos = c.getRowDataStart();
+        this.colInicio = valor(c.getColInicio());
+        this.colFin = valor(c.getColFin());
+
+        int fin = valor(c.getColEndPdv());
+        if (c.getColStartPdv() >= 0 && c.getColStepPdv() > 0 && fin >= c.getColStartPdv()) {
+            int n = (fin - c.getColStartPdv()) / c.getColStepPdv() + 1;
+            columnasPdv = new int[n];
+            for (int k = 0; k < n; k++) columnasPdv[k] = c.getColStartPdv() + k * c.getColStepPdv();
+        } else {
+            columnasPdv = new int[0];
+        }
+
+        Map<String, Integer> fijas = new LinkedHashMap<>();
+        if (c.getColMarca() >= 0) fijas.put("marca", c.getColMarca());
+        if (c.getColNombreProducto() >= 0) fijas.put("nombreProducto", c.getColNombreProducto());
+        if (c.getColCodBarra() >= 0) fijas.put("codBarra", c.getColCodBarra());
+        if (c.getColFecha() >= 0) fijas.put("fecha", c.getColFecha());
+        this.columnasFijas = Collections.unmodifiableMap(fijas);
+
+        Map<String, String> porAlias = new HashMap<>();
+        for (Map.Entry<String, List<String>> e : aliasPorCampo.entrySet()) {
+            for (String alias : e.getValue()) {
+                String n = normalizar(alias);
+                if (n != null && !n.isEmpty()) porAlias.putIfAbsent(n, e.getKey());
+            }
+        }
+        this.campoPorAlias = Collections.unmodifiableMap(porAlias);
+        this.camposConAlias = Collections.unmodifiableSet(new LinkedHashSet<>(aliasPorCampo.keySet()));
+    }
+
+    private static int valor(Integer v) {
+        return v == null ? -1 : v;
+    }
+
+    private static void validar(TemplateConfig c) {
+        String p = "Plantilla " + c.getTemplateName() + ": ";
+        if (c.getRowDataStart() < 0) throw new IllegalArgumentException(p + "row_data_start negativo");
+        if (c.getRowCodPdv() < -1 || c.getRowPdv() < -1 || valor(c.getRowEncabezado()) < -1) {
+            throw new IllegalArgumentException(p + "filas menores que -1");
+        }
+        if (valor(c.getRowEncabezado()) >= c.getRowDataStart()) {
+            throw new IllegalArgumentException(p + "row_data_start debe ser posterior a row_encabezado");
+        }
+        int[] columnas = {c.getColMarca(), c.getColNombreProducto(), c.getColCodBarra(), c.getColFecha(),
+                c.getColStartPdv(), valor(c.getColEndPdv()), valor(c.getColInicio()), valor(c.getColFin())};
+        for (int col : columnas) {
+            if (col < -1 || col >= MAX_COLUMNAS) throw new IllegalArgumentException(p + "columna fuera de rango: " + col);
+        }
+        if (c.getColStartPdv() >= 0) {
+            if (c.getColStepPdv() <= 0) throw new IllegalArgumentException(p + "col_step_pdv debe ser positivo");
+            if (c.getColEndPdv() != null && c.getColEndPdv() < c.getColStartPdv()) {
+                throw new IllegalArgumentException(p + "col_end_pdv anterior a col_start_pdv");
+            }
+        }
+        if (valor(c.getColInicio()) >= 0 && valor(c.getColFin()) >= 0 && c.getColFin() < c.getColInicio()) {
+            throw new IllegalArgumentException(p + "col_fin anterior a col_inicio");
+        }
+    }
+
+    /** Minúsculas, sin tildes, sin caracteres no ASCII ni . , " ' (la misma regla que usaban las cargas). */
+    public static String normalizar(String texto) {
+        if (texto == null) return null;
+        String s = Normalizer.normalize(texto.toLowerCase().trim(), Normalizer.Form.NFD);
+        s = DIACRITICOS.matcher(s).replaceAll("");
+        s = NO_ASCII.matcher(s).replaceAll("");
+        return PUNTUACION.matcher(s).replaceAll("");
+    }
+
+    /** Campo al que corresponde un encabezado, o null: una normalización y una búsqueda por celda. */
+    public String campo(String encabezado) {
+        return encabezado == null ? null : campoPorAlias.get(normalizar(encabezado));
+    }
+
+    /** Columna fija de un campo (colMarca, colCodBarra, ...) o -1. */
+    public int columna(String campo) {
+        return columnasFijas.getOrDefault(campo, -1);
+    }
+
+    /** Campos que se ubican por encabezado, en el orden en que se declararon. */
+    public Set<String> camposConAlias() {
+        return camposConAlias;
+    }
+
+    /** Columnas de unidades de cada PDV (dólares en la columna siguiente). */
+    public int[] columnasPdv() {
+        return columnasPdv.clone();
+    }
+
+    public String getNombre() { return nombre; }
+    public int getFilaCodPdv() { return filaCodPdv; }
+    public int getFilaPdv() { return filaPdv; }
+    public int getFilaEncabezado() { return filaEncabezado; }
+    public int getFilaDatos() { return filaDatos; }
+    public int getColInicio() { return colInicio; }
+    public int getColFin() { return colFin; }
+
+    @Override
+    public String toString() {
+        return "PlanExtraccion{" + nombre + ", filaEncabezado=" + filaEncabezado + ", filaDatos=" + filaDatos
+                + ", pdv=" + columnasPdv.length + ", fijas=" + columnasFijas + ", alias=" + campoPorAlias.size() + "}";
+    }
+}
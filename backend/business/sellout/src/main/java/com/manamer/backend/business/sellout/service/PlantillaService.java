@@ -0,0 +1,163 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.TemplateAlias;
+import com.manamer.backend.business.sellout.models.TemplateConfig;
+import com.manamer.backend.business.sellout.repositories.TemplateAliasRepository;
+import com.manamer.backend.business.sellout.repositories.TemplateConfigRepository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Plantillas de archivo por cliente: lee {@code template_config} y {@code template_alias} una vez,
+ * las compila en un {@link PlanExtraccion} y lo reutiliza entre cargas.
+ *
+ * Un formato nuevo se agrega como datos (una fila de configuración y sus alias). Si la plantilla no
+ * está en la base (o las tablas aún no existen, o la fila es incoherente) se usa la definición por defecto
+ * de esta clase, que es la disposición con la que se escribieron las cargas. El plan se recompila pasado
+ * {@code sellout.plantillas.recarga-minutos} o con {@link #invalidar()}.
+ */
+@Service
+public class PlantillaService {
+
+    private static final Logger log = Logger.getLogger(PlantillaService.class.getName());
+
+    public static final String FYBECA = "FYBECA";
+    public static final String DEPRATI_FLEXIBLE = "DEPRATI_FLEXIBLE";
+    public static final String DEPRATI = "DEPRATI";
+    public static final String TEMPLATE_GENERAL = "TEMPLATE_GENERAL";
+
+    private record Compilado(PlanExtraccion plan, Instant creado) {}
+
+    private final TemplateConfigRepository configRepository;
+    private final TemplateAliasRepository aliasRepository;
+    private final Duration recarga;
+    private final ConcurrentHashMap<String, Compilado> cache = new ConcurrentHashMap<>();
+
+    public PlantillaService(TemplateConfigRepository configRepository,
+                            TemplateAliasRepository aliasRepository,
+                            @Value("${sellout.plantillas.recarga-minutos:10}") long recargaMinutos) {
+        this.configRepository = configRepository;
+        this.aliasRepository = aliasRepository;
+        this.recarga = Duration.ofMinutes(Math.max(1, recargaMinutos));
+    }
+
+    /** Plan compilado de la plantilla (desde caché si está vigente). */
+    public PlanExtraccion plan(String templateName) {
+        Compilado c = cache.get(templateName);
+        if (c == null || c.creado().plus(recarga).isBefore(Instant.now())) {
+            c = new Compilado(compilar(templateName), Instant.now());
+            cache.put(templateName, c);
+        }
+        return c.plan();
+    }
+
+    /** Descarta los planes compilados (la próxima carga relee la configuración). */
+    public void invalidar() {
+        cache.clear();
+    }
+
+    // ===== internos =====
+
+    private PlanExtraccion compilar(String templateName) {
+        TemplateConfig config = null;
+        Map<String, List<String>> alias = new LinkedHashMap<>();
+        try {
+            config = configRepository.findFirstByTemplateName(templateName).orElse(null);
+            for (TemplateAlias a : aliasRepository.findByTemplateNameOrderByIdAsc(templateName)) {
+                alias.computeIfAbsent(a.getCampo(), k -> new ArrayList<>()).add(a.getAlias());
+            }
+        } catch (RuntimeException e) {
+            // sin las tablas de plantillas (migración pendiente) se sigue con la definición por defecto
+            log.warning("PlantillaService: no se pudo leer la plantilla " + templateName + ": " + e.getMessage());
+        }
+        if (config == null) config = configPorDefecto(templateName);
+        if (alias.isEmpty()) alias = aliasPorDefecto(templateName);
+
+        PlanExtraccion plan;
+        try {
+            plan = new PlanExtraccion(config, alias);
+        } catch (IllegalArgumentException e) {
+            // una fila mal editada no debe romper todas las cargas del formato
+            log.warning("PlantillaService: plantilla inválida, se usa la definición por defecto: " + e.getMessage());
+            plan = new PlanExtraccion(configPorDefecto(templateName), aliasPorDefecto(templateName));
+        }
+        log.info("PlantillaService: plantilla compilada " + plan);
+        return plan;
+    }
+
+    private static TemplateConfig configPorDefecto(String templateName) {
+        TemplateConfig c = new TemplateConfig();
+        c.setTemplateName(templateName);
+        c.setRowCodPdv(-1);
+        c.setRowPdv(-1);
+        c.setColMarca(-1);
+        c.setColNombreProducto(-1);
+        c.setColCodBarra(-1);
+        c.setColFecha(-1);
+        c.setColStartPdv(-1);
+        switch (templateName) {
+            case FYBECA -> {
+                c.setRowEncabezado(0);
+                c.setRowDataStart(1);
+            }
+            case DEPRATI_FLEXIBLE -> {
+                c.setRowCodPdv(25);
+                c.setRowPdv(26);
+                c.setRowEncabezado(27);
+                c.setRowDataStart(29);
+                c.setColStartPdv(12);
+                c.setColStepPdv(2);
+                c.setColEndPdv(44);
+            }
+            case DEPRATI -> {
+                // fila de PDV: la que contiene "Tienda"; nombres en la siguiente
+                c.setRowDataStart(29);
+                c.setColCodBarra(10);
+                c.setColFecha(11);
+            }
+            case TEMPLATE_GENERAL -> {
+                c.setRowEncabezado(3);
+                c.setRowDataStart(4);
+                c.setColInicio(1);
+                c.setColFin(13);
+            }
+            default -> throw new IllegalArgumentException("Plantilla no configurada: " + templateName);
+        }
+        return c;
+    }
+
+    private static Map<String, List<String>> aliasPorDefecto(String templateName) {
+        Map<String, List<String>> m = new LinkedHashMap<>();
+        switch (templateName) {
+            case FYBECA -> {
+                m.put("anio", List.of("año", "anio", "Año"));
+                m.put("mes", List.of("mes", "Mes"));
+                m.put("codBarra", List.of("codigo barra", "cod_barra", "codigobarra", "COD ITEM", "cod barra", "codbarra"));
+                m.put("codPdv", List.of("codigo pdv", "cod_pdv", "COD LOCAL", "cod pdv"));
+                m.put("pdv", List.of("pdv", "NOMBRE LOCAL", "nombre pdv"));
+                m.put("ventaDolares", List.of("venta_dolares", "venta $", "venta dolares", "Venta Dolares", "venta usd"));
+                m.put("ventaUnidad", List.of("venta_unidades", "venta unidades", "Venta Unidades"));
+                m.put("stockDolares", List.of("stock_dolares", "stock usd", "Stock Dolares", "stock dolares"));
+                m.put("stockUnidades", List.of("stock_unidades", "stock unidades", "Stock en Unidades"));
+                m.put("marca", List.of("marca", "Marca"));
+                m.put("nombreProducto", List.of("producto", "nombre producto", "Nombre Producto"));
+                m.put("descripcion", List.of("descripcion", "Descripción"));
+            }
+            case DEPRATI_FLEXIBLE -> {
+                m.put("marca", List.of("Marca", "brand", "Marcas"));
+                m.put("nombreProducto", List.of("nombre producto", "producto", "Descripcion", "descripciones"));
+                m.put("codBarra", List.of("codigo de barras", "cod_barra", "No. Mat. Proveedor"));
+                m.put("fecha", List.of("Día natural", "fecha", "fecha venta", "date"));
+            }
+            default -> { /* DEPRATI y TEMPLATE_GENERAL usan columnas fijas */ }
+        }
+        return m;
+    }
+}
@@ -0,0 +1,173 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Producto;
+import com.manamer.backend.business.sellout.models.Venta;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Resolución en lote de producto + datos SAP (SAP_Prod_cache) a partir de los códigos del archivo.
+ * Reemplaza las consultas fila por fila: se juntan los códigos distintos y se resuelven con
+ * pocas consultas IN (por bloques, SQL Server admite máx. 2100 parámetros).
+ */
+@Service
+public class ProductoSapService {
+
+    private static final Logger log = Logger.getLogger(ProductoSapService.class.getName());
+    private static final int IN_CHUNK = 900;
+
+    private final EntityManager entityManager;
+
+    /** Datos de producto ya resueltos para enriquecer una Venta. */
+    public static final class ProductoSap {
+        public final Long productoId;
+        public final String codItem;
+        public final String codBarraSap;
+        public final String codigoSap;
+        public final String codBarra;
+        public final String descripcion;
+        public final String marca;
+
+        public ProductoSap(Long productoId, String codItem, String codBarraSap,
+                           String codigoSap, String codBarra, String descripcion, String marca) {
+            this.productoId = productoId;
+            this.codItem = codItem;
+            this.codBarraSap = codBarraSap;
+            this.codigoSap = codigoSap;
+            this.codBarra = codBarra;
+            this.descripcion = descripcion;
+            this.marca = marca;
+        }
+
+        /** Copia los datos de producto/SAP en la venta (mismos campos que cargarDatosDeProducto*). */
+        public void aplicar(Venta venta) {
+            Producto producto = new Producto();
+            producto.setId(productoId);
+            producto.setCodItem(codItem);
+            producto.setCodBarraSap(codBarraSap);
+            venta.setProducto(producto);
+
+            venta.setCodigoSap(codigoSap);
+            venta.setCodBarra(codBarra);
+            venta.setDescripcion(descripcion);
+            venta.setNombreProducto(descripcion);
+            venta.setMarca(marca);
+        }
+    }
+
+    @Autowired
+    public ProductoSapService(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Resuelve por cod_Barra_Sap y, para los que falten, por cod_Item (misma regla que
+     * cargarDatosDeProductoDeprati). Solo se devuelven códigos con fila en SAP_Prod_cache.
+     * La clave del mapa es el código tal como llegó (trim).
+     */
+    @Transactional(readOnly = true)
+    public Map<String, ProductoSap> resolverPorCodBarraOCodItem(Collection<String> codigos) {
+        Map<String, String> pendientes = normalizar(codigos);
+        Map<String, ProductoSap> out = new HashMap<>();
+        if (pendientes.isEmpty()) return out;
+
+        long t0 = System.currentTimeMillis();
+        resolver("p.cod_Barra_Sap", pendientes, out);
+        resolver("p.cod_Item", pendientes, out);
+        log.info("ProductoSap: códigos=" + (out.size() + pendientes.size()) + " resueltos=" + out.size()
+                + " ms=" + (System.currentTimeMillis() - t0));
+        return out;
+    }
+
+    /**
+     * Resuelve por cod_Item y, para los que falten, por cod_Barra_Sap
+     * (misma regla que FybecaVentaService.cargarDatosDeProducto).
+     */
+    @Transactional(readOnly = true)
+    public Map<String, ProductoSap> resolverPorCodItemOCodBarra(Collection<String> codigos) {
+        Map<String, String> pendientes = normalizar(codigos);
+        Map<String, ProductoSap> out = new HashMap<>();
+        if (pendientes.isEmpty()) return out;
+        resolver("p.cod_Item", pendientes, out);
+        resolver("p.cod_Barra_Sap", pendientes, out);
+        return out;
+    }
+
+    /** Resuelve solo por cod_Item (misma regla que cargarDatosDeProducto). */
+    @Transactional(readOnly = true)
+    public Map<String, ProductoSap> resolverPorCodItem(Collection<String> codigos) {
+        Map<String, String> pendientes = normalizar(codigos);
+        Map<String, ProductoSap> out = new HashMap<>();
+        if (pendientes.isEmpty()) return out;
+        resolver("p.cod_Item", pendientes, out);
+        return out;
+    }
+
+    // ===== internos =====
+
+    /** clave normalizada (trim + mayúsculas, como compara la collation CI de SQL Server) -> código original. */
+    private static Map<String, String> normalizar(Collection<String> codigos) {
+        Map<String, String> m = new LinkedHashMap<>();
+        if (codigos == null) return m;
+        for (String c : codigos) {
+            if (c == null) continue;
+            String t = c.trim();
+            if (t.isEmpty()) continue;
+            m.putIfAbsent(clave(t), t);
+        }
+        return m;
+    }
+
+    private static String clave(String s) {
+        return s.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Consulta los pendientes contra la columna indicada (constante interna, no viene del usuario),
+     * mueve los encontrados a {@code out} y los quita de {@code pendientes}.
+     */
+    private void resolver(String columna, Map<String, String> pendientes, Map<String, ProductoSap> out) {
+        if (pendientes.isEmpty()) return;
+        String sql = """
+            SELECT p.id, p.cod_Item, p.cod_Barra_Sap,
+                   sp.codigo_sap, sp.cod_barra, sp.descripcion, sp.marca,
+                   %s AS codigo
+            FROM SELLOUT.dbo.producto p
+            JOIN SELLOUT.dbo.SAP_Prod_cache sp ON sp.cod_barra = p.cod_Barra_Sap
+            WHERE %s IN (:codigos)
+            ORDER BY p.id
+        """.formatted(columna, columna);
+
+        List<String> lista = new ArrayList<>(pendientes.values());
+        for (int i = 0; i < lista.size(); i += IN_CHUNK) {
+            List<String> sub = lista.subList(i, Math.min(i + IN_CHUNK, lista.size()));
+            Query q = entityManager.createNativeQuery(sql);
+            q.setParameter("codigos", sub);
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = q.getResultList();
+            for (Object[] r : rows) {
+                if (r[7] == null || r[4] == null) continue;
+                String k = clave((String) r[7]);
+                String original = pendientes.remove(k);
+                if (original == null) continue; // ya resuelto por una fila anterior (ORDER BY p.id)
+                out.put(original, new ProductoSap(
+                        ((Number) r[0]).longValue(),
+                        (String) r[1],
+                        (String) r[2],
+                        (String) r[3],
+                        ((String) r[4]).trim(),
+                        (String) r[5],
+                        (String) r[6]
+                ));
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.manamer.backend.business.sellout.service;
+
+/**
+ * Avance de una carga de archivo (lo consume el job asíncrono para estado/ETA).
+ * Las cargas síncronas usan {@link #NINGUNO}.
+ */
+public interface ProgresoCarga {
+
+    ProgresoCarga NINGUNO = new ProgresoCarga() {
+        @Override public void fase(String fase) {}
+        @Override public void filasTotales(int total) {}
+        @Override public void filasProcesadas(int filas) {}
+    };
+
+    /** Fase actual, p.ej. "LEYENDO", "RESOLVIENDO_PRODUCTOS", "GUARDANDO". */
+    void fase(String fase);
+
+    /** Total estimado de filas del archivo (-1 si no se conoce). */
+    void filasTotales(int total);
+
+    /** Filas del archivo recorridas hasta ahora. */
+    void filasProcesadas(int filas);
+}
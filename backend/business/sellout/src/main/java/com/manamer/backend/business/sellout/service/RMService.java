@@ -1,44 +1,70 @@
 package com.manamer.backend.business.sellout.service;
 
 import com.google.common.net.HttpHeaders;
+import com.manamer.backend.business.sellout.config.LecturaReplica;
 import com.manamer.backend.business.sellout.models.Cliente;
 import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.repositories.VentaRepository;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import org.apache.poi.ss.usermodel.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import com.manamer.backend.business.sellout.repositories.ProductoRepository;
 import com.manamer.backend.business.sellout.models.*;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @Service
 public class RMService {
 
+    private static final Logger log = Logger.getLogger(RMService.class.getName());
+
+    // Pipeline replay/guardado: 1 escritor (una misma clave puede repetirse en bloques distintos)
+    // y hasta 2 bloques listos en cola mientras se guarda el actual
+    private static final int ESCRITORES = 1;
+    private static final int COLA_BLOQUES = 2;
+
     @Autowired
     private ProductoRepository productoRepository;
     private static final String DEFAULT_COD_CLIENTE = "MZCL-000008";
-    private static final ZoneId ZONE = ZoneId.systemDefault();
 
     private final VentaRepository ventaRepository;
     private final EntityManager entityManager;
     private final ClienteService clienteService;
+    private final TransactionTemplate txTemplate;
+    private final TransactionTemplate txSimulacion;
+    private final VentaBatchWriter ventaBatchWriter;
+    private final VentaMergeWriter ventaMergeWriter;
+    private final EscritorVentas escritorVentas;
+    private final EliminacionVentaService eliminacionVentaService;
+    // hoja STOCK de las cargas con hojas en paralelo (VENTAS sigue en el hilo de la carga)
+    private final ThreadPoolExecutor ejecutorHojas;
 
     
     public static final class Incidencia {
@@ -69,10 +95,37 @@ public class RMService {
     };
 
     @Autowired
-    public RMService(VentaRepository ventaRepository, EntityManager entityManager, ClienteService clienteService) {
+    public RMService(VentaRepository ventaRepository, EntityManager entityManager, ClienteService clienteService,
+                     PlatformTransactionManager ptm, VentaBatchWriter ventaBatchWriter,
+                     VentaMergeWriter ventaMergeWriter, EscritorVentas escritorVentas,
+                     EliminacionVentaService eliminacionVentaService,
+                     @Value("${sellout.cargas.workers:2}") int hilosHojas) {
         this.ventaRepository = ventaRepository;
         this.entityManager = entityManager;
         this.clienteService = clienteService;
+        // los upserts por bloque se llaman desde la misma clase: la tx se abre explícitamente
+        this.txTemplate = new TransactionTemplate(ptm);
+        this.txSimulacion = SimulacionCarga.transaccion(ptm);
+        this.ventaBatchWriter = ventaBatchWriter;
+        this.ventaMergeWriter = ventaMergeWriter;
+        this.escritorVentas = escritorVentas;
+        this.eliminacionVentaService = eliminacionVentaService;
+
+        // un hilo por carga concurrente; si hay más cargas paralelas que hilos, su STOCK espera en la cola
+        AtomicInteger n = new AtomicInteger();
+        int hilos = Math.max(1, hilosHojas);
+        this.ejecutorHojas = new ThreadPoolExecutor(hilos, hilos, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "rm-hoja-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.ejecutorHojas.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void cerrar() {
+        ejecutorHojas.shutdownNow();
     }
 
     // ========================= Cliente =========================
@@ -99,35 +152,23 @@ public class RMService {
         return x;
     }
 
-    private static Integer findHeaderRow(Sheet sheet, Set<String> requiredHeadersNorm, int maxScanRows) {
-        int last = Math.min(sheet.getLastRowNum(), maxScanRows);
-        for (int r = 0; r <= last; r++) {
-            Row row = sheet.getRow(r);
-            if (row == null) continue;
-
-            Set<String> headers = new HashSet<>();
-            for (int c = 0; c < Math.min(row.getLastCellNum(), 120); c++) {
-                Cell cell = row.getCell(c);
-                if (cell == null) continue;
-                if (cell.getCellType() == CellType.STRING) {
-                    String h = norm(cell.getStringCellValue());
-                    if (!h.isBlank()) headers.add(h);
-                }
+    /** true si la fila contiene (como texto, en las primeras 120 columnas) todos los encabezados requeridos. */
+    private static boolean esFilaEncabezado(ExcelStreamingReader.Fila fila, Set<String> requiredHeadersNorm) {
+        Set<String> headers = new HashSet<>();
+        int last = Math.min(fila.getUltimaColumna(), 119);
+        for (int c = 0; c <= last; c++) {
+            if (fila.valor(c) instanceof String txt) {
+                String h = norm(txt);
+                if (!h.isBlank()) headers.add(h);
             }
-            boolean ok = requiredHeadersNorm.stream().allMatch(headers::contains);
-            if (ok) return r;
         }
-        return null;
+        return requiredHeadersNorm.stream().allMatch(headers::contains);
     }
 
-    private static Map<String, Integer> buildHeaderIndex(Sheet sheet, int headerRow) {
-        Row row = sheet.getRow(headerRow);
+    private static Map<String, Integer> buildHeaderIndex(ExcelStreamingReader.Fila fila) {
         Map<String, Integer> map = new HashMap<>();
-        if (row == null) return map;
-        for (int c = 0; c < row.getLastCellNum(); c++) {
-            Cell cell = row.getCell(c);
-            if (cell == null) continue;
-            String raw = (cell.getCellType() == CellType.STRING) ? cell.getStringCellValue() : null;
+        for (int c = 0; c <= fila.getUltimaColumna(); c++) {
+            String raw = (fila.valor(c) instanceof String txt) ? txt : null;
             String key = norm(raw);
             if (!key.isBlank()) map.put(key, c);
         }
@@ -143,89 +184,19 @@ public class RMService {
     }
 
     // ========================= Lectura de celdas =========================
-    private String getString(Row row, Integer col) {
-        if (col == null) return null;
-        Cell cell = row.getCell(col);
-        if (cell == null) return null;
-
-        return switch (cell.getCellType()) {
-            case STRING -> {
-                String s = cell.getStringCellValue();
-                yield (s == null ? null : s.trim());
-            }
-            case NUMERIC -> {
-                if (DateUtil.isCellDateFormatted(cell)) {
-                    LocalDate d = cell.getDateCellValue().toInstant().atZone(ZONE).toLocalDate();
-                    yield d.toString();
-                }
-                yield String.valueOf((long) cell.getNumericCellValue());
-            }
-            case BOOLEAN -> String.valueOf(cell.getBooleanCellValue());
-            case FORMULA -> {
-                try { yield cell.getStringCellValue().trim(); }
-                catch (Exception ex) { yield cell.getCellFormula(); }
-            }
-            default -> null;
-        };
+    private String getString(ExcelStreamingReader.Fila fila, Integer col) {
+        return col == null ? null : DecodificadorCeldas.texto(fila, col);
     }
 
-    private Double getDouble(Row row, Integer col) {
+    private Double getDouble(ExcelStreamingReader.Fila fila, Integer col) {
         if (col == null) return null;
-        Cell cell = row.getCell(col);
-        if (cell == null) return null;
-
-        if (cell.getCellType() == CellType.NUMERIC) return cell.getNumericCellValue();
-        if (cell.getCellType() == CellType.STRING) {
-            String s = cell.getStringCellValue();
-            if (s == null) return null;
-            s = s.trim().replace(",", ".");
-            if (s.isBlank()) return null;
-            try { return Double.parseDouble(s); } catch (Exception ignore) { return null; }
-        }
-        return null;
+        double v = DecodificadorCeldas.numero(fila, col);
+        return Double.isNaN(v) ? null : v;
     }
 
-    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
-            DateTimeFormatter.ofPattern("dd/MM/uuuu"),
-            DateTimeFormatter.ofPattern("d/M/uuuu"),
-            DateTimeFormatter.ofPattern("dd-MM-uuuu"),
-            DateTimeFormatter.ofPattern("d-M-uuuu"),
-            DateTimeFormatter.ISO_LOCAL_DATE,
-            DateTimeFormatter.ofPattern("MM/dd/uuuu"),
-            DateTimeFormatter.ofPattern("M/d/uuuu")
-    );
-
-    private LocalDate tryParseLocalDate(String s) {
-        if (s == null) return null;
-        String x = s.trim();
-        if (x.isBlank()) return null;
-        int sp = x.indexOf(' '); if (sp > 0) x = x.substring(0, sp);
-        int t  = x.indexOf('T'); if (t > 0) x = x.substring(0, t);
-
-        for (DateTimeFormatter f : DATE_FORMATS) {
-            try { return LocalDate.parse(x, f); } catch (Exception ignore) {}
-        }
-        return null;
-    }
-
-    private Date getDate(Row row, Integer col) {
-        if (col == null) return null;
-        Cell cell = row.getCell(col);
-        if (cell == null) return null;
-
-        try {
-            if (cell.getCellType() == CellType.NUMERIC && DateUtil.isCellDateFormatted(cell)) {
-                return cell.getDateCellValue();
-            }
-            if (cell.getCellType() == CellType.NUMERIC) {
-                return DateUtil.getJavaDate(cell.getNumericCellValue());
-            }
-            if (cell.getCellType() == CellType.STRING) {
-                LocalDate ld = tryParseLocalDate(cell.getStringCellValue());
-                if (ld != null) return Date.from(ld.atStartOfDay(ZONE).toInstant());
-            }
-        } catch (Exception ignore) {}
-        return null;
+    /** Fecha yyyyMMdd (DecodificadorCeldas.SIN_FECHA si la celda no tiene una). */
+    private int getDate(ExcelStreamingReader.Fila fila, Integer col) {
+        return col == null ? DecodificadorCeldas.SIN_FECHA : DecodificadorCeldas.fecha(fila, col);
     }
 
     // ========================= SAP_Prod_cache (validación directa) =========================
@@ -275,53 +246,56 @@ public class RMService {
     // ========================= Upsert VENTAS =========================
     // Clave: cliente + fecha(anio/mes/dia) + cod_barra + tienda(cod_pdv)
     // => si cambia fecha o tienda, INSERTA (no actualiza)
+    // Las existentes solo reciben los campos de venta (NO tocar stock aquí): un MERGE por bloque (VentaMergeWriter)
+    /** @return {insertados, actualizados} */
     @Transactional
-    protected void upsertVentasEnBloque(List<Venta> lote) {
-        if (lote == null || lote.isEmpty()) return;
-
-        final int BATCH = 2000;
+    protected int[] upsertVentasEnBloque(List<Venta> lote) {
+        return upsertVentasEnBloque(lote, null);
+    }
 
-        for (int i = 0; i < lote.size(); i++) {
-            Venta v = lote.get(i);
+    /** Igual, con la estrategia de la carga ({@code escritura} null = upsert). */
+    @Transactional
+    protected int[] upsertVentasEnBloque(List<Venta> lote, EscritorVentas.Escritura escritura) {
+        if (lote == null || lote.isEmpty()) return new int[]{0, 0};
 
+        for (Venta v : lote) {
             String codBarra = v.getCodBarra() == null ? null : v.getCodBarra().trim();
             v.setCodBarra(codBarra);
 
             String codPdv = tiendaKey(v.getCodPdv());
             v.setCodPdv(codPdv);
             v.setPdv(codPdv); // opcional: mantener pdv consistente
+        }
 
-            Long clienteId = v.getCliente() != null ? v.getCliente().getId() : null;
-
-            Optional<Venta> existente = ventaRepository
-                    .findByClienteIdAndAnioAndMesAndDiaAndCodBarraAndCodPdv(
-                            clienteId, v.getAnio(), v.getMes(), v.getDia(), v.getCodBarra(), v.getCodPdv()
-                    );
-
-            if (existente.isPresent()) {
-                Venta e = existente.get();
-                e.setVentaDolares(v.getVentaDolares());
-                e.setVentaUnidad(v.getVentaUnidad());
-                e.setMarca(v.getMarca());
-                e.setNombreProducto(v.getNombreProducto());
-                e.setDescripcion(v.getDescripcion());
-                e.setCodigoSap(v.getCodigoSap());
-                e.setPdv(v.getPdv());
-                e.setCiudad(v.getCiudad());
-                // NO tocar stock aquí
-                ventaRepository.save(e);
-            } else {
-                ventaRepository.save(v);
-            }
+        VentaMergeWriter.Resultado r = escritura != null
+                ? escritura.escribir(lote, VentaMergeWriter.Modo.SOLO_VENTA)
+                : ventaMergeWriter.upsert(lote, VentaMergeWriter.Modo.SOLO_VENTA);
+        return new int[]{r.insertados(), r.actualizados()};
+    }
 
-            if ((i + 1) % BATCH == 0) {
-                ventaRepository.flush();
-                entityManager.clear();
-            }
+    /**
+     * Simulación del upsert de un bloque (VENTAS o STOCK): misma clave que los upserts de arriba, resuelta con
+     * una sola consulta de existentes (VentaBatchWriter). Una clave repetida dentro del bloque actualiza; las de
+     * {@code clavesVentas} (STOCK tras VENTAS) cuentan como existentes.
+     * @return {insertados, actualizados}
+     */
+    private int[] simularBloque(Long clienteId, List<Venta> lote, ClavesRM clavesVentas) {
+        for (Venta v : lote) {
+            if (v.getCodBarra() != null) v.setCodBarra(v.getCodBarra().trim());
+            v.setCodPdv(tiendaKey(v.getCodPdv()));
+            v.setPdv(v.getCodPdv());
         }
-
-        ventaRepository.flush();
-        entityManager.clear();
+        VentaBatchWriter.Existentes existentes = ventaBatchWriter.existentes(clienteId, lote);
+        DiccionarioClaves claves = new DiccionarioClaves();
+        MapaVentaKey vistas = new MapaVentaKey(lote.size());
+        int ins = 0, upd = 0;
+        for (Venta v : lote) {
+            boolean existe = vistas.put(claves.clave(v), 0) != MapaVentaKey.AUSENTE || existentes.contiene(v)
+                    || (clavesVentas != null && clavesVentas.contiene(
+                            v.getAnio(), v.getMes(), v.getDia(), v.getCodBarra(), v.getCodPdv()));
+            if (existe) upd++; else ins++;
+        }
+        return new int[]{ins, upd};
     }
 
     // ========================= STOCK: solo stock y reglas de INSERT =========================
@@ -329,57 +303,31 @@ public class RMService {
     // - Mismo cod_barra + misma fecha + misma tienda => UPDATE solo stock
     // - Mismo cod_barra pero fecha diferente => INSERT (ventas=0)
     // - Mismo cod_barra pero tienda diferente => INSERT (ventas=0)
+    // Todo el bloque va en un MERGE (VentaMergeWriter), no un UPDATE por fila
+    /** @return {insertados, actualizados} */
     @Transactional
-    protected void upsertStockEnBloque(Long clienteId, List<Venta> loteStock) {
-        if (loteStock == null || loteStock.isEmpty()) return;
+    protected int[] upsertStockEnBloque(List<Venta> loteStock) {
+        return upsertStockEnBloque(loteStock, null);
+    }
 
-        final int BATCH = 2000;
-        int i = 0;
+    /** Igual, con la estrategia de la carga ({@code escritura} null = upsert). */
+    @Transactional
+    protected int[] upsertStockEnBloque(List<Venta> loteStock, EscritorVentas.Escritura escritura) {
+        if (loteStock == null || loteStock.isEmpty()) return new int[]{0, 0};
 
         for (Venta v : loteStock) {
-
             String codBarra = v.getCodBarra() == null ? null : v.getCodBarra().trim();
             v.setCodBarra(codBarra);
 
             String codPdv = tiendaKey(v.getCodPdv());
             v.setCodPdv(codPdv);
             v.setPdv(codPdv);
-
-            String sqlUpd = """
-                UPDATE SELLOUT.dbo.venta
-                   SET stock_unidades = :su,
-                       stock_dolares  = :sd
-                 WHERE cliente_id = :cli
-                   AND anio = :anio AND mes = :mes AND dia = :dia
-                   AND cod_barra = :cb
-                   AND cod_pdv   = :cp
-            """;
-
-            int updated = entityManager.createNativeQuery(sqlUpd)
-                    .setParameter("su", v.getStockUnidades())
-                    .setParameter("sd", v.getStockDolares())
-                    .setParameter("cli", clienteId)
-                    .setParameter("anio", v.getAnio())
-                    .setParameter("mes", v.getMes())
-                    .setParameter("dia", v.getDia())
-                    .setParameter("cb", v.getCodBarra())
-                    .setParameter("cp", v.getCodPdv())
-                    .executeUpdate();
-
-            // Si no existe exacta la misma fecha+tienda => INSERT nuevo registro
-            if (updated == 0) {
-                ventaRepository.save(v); // ventas=0, stock con valores
-            }
-
-            i++;
-            if (i % BATCH == 0) {
-                ventaRepository.flush();
-                entityManager.clear();
-            }
         }
 
-        ventaRepository.flush();
-        entityManager.clear();
+        VentaMergeWriter.Resultado r = escritura != null
+                ? escritura.escribir(loteStock, VentaMergeWriter.Modo.SOLO_STOCK)
+                : ventaMergeWriter.upsert(loteStock, VentaMergeWriter.Modo.SOLO_STOCK);
+        return new int[]{r.insertados(), r.actualizados()};
     }
 
     // ======= Cache SAP_Prod_cache para acelerar (evitar 1 query por fila) =======
@@ -446,8 +394,76 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
 
     
     // ========================= Carga Excel RM (VENTAS + STOCK) =========================
-   public Map<String, Object> cargarExcelRM(InputStream inputStream, String codCliente, String nombreArchivo) {
+    // Una sola pasada por hoja (SAX para .xlsx): cada fila se decodifica a un spool binario
+    // temporal mientras se juntan los códigos; luego se resuelven SAP_Prod_cache y PRODUCTO
+    // en lote y se re-lee el spool para los upserts. Así no se retiene el libro en memoria.
+
+    private static final int MAX_COLUMNAS_RM = 512;
+    private static final int MAX_FILA_ENCABEZADO = 30;
+    private static final byte REG_FILA = 1;
+    private static final byte REG_INCIDENCIA = 2;
+
+    public Map<String, Object> cargarExcelRM(InputStream inputStream, String codCliente, String nombreArchivo) {
+        return cargarExcelRM(inputStream, codCliente, nombreArchivo, ProgresoCarga.NINGUNO);
+    }
+
+    /**
+     * Igual que {@link #cargarExcelRM(InputStream, String, String)} informando avance (jobs asíncronos):
+     * primero filas leídas de ambas hojas, luego registros del spool guardados.
+     */
+    public Map<String, Object> cargarExcelRM(InputStream inputStream, String codCliente, String nombreArchivo,
+                                             ProgresoCarga progreso) {
+        return cargarExcelRM(inputStream, codCliente, nombreArchivo, progreso, false);
+    }
+
+    /**
+     * @param hojasEnParalelo guarda VENTAS y STOCK en hilos separados; el stock de claves
+     *                        (fecha, cod_barra, tienda) presentes en VENTAS se aplica al final,
+     *                        con las ventas ya guardadas, igual que en la carga secuencial
+     */
+    public Map<String, Object> cargarExcelRM(InputStream inputStream, String codCliente, String nombreArchivo,
+                                             ProgresoCarga progreso, boolean hojasEnParalelo) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile("rm-", ".upload");
+            Files.copy(inputStream, tmp, StandardCopyOption.REPLACE_EXISTING);
+            return cargarExcelRM(tmp, codCliente, nombreArchivo, progreso, hojasEnParalelo);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo guardar el archivo " + nombreArchivo, e);
+        } finally {
+            if (tmp != null) {
+                try { Files.deleteIfExists(tmp); } catch (Exception ignore) {}
+            }
+        }
+    }
+
+    /** Carga desde un archivo ya en disco (SpoolSubidas): las hojas se leen por ruta, sin copiar el archivo al heap. */
+    public Map<String, Object> cargarExcelRM(Path archivo, String codCliente, String nombreArchivo,
+                                             ProgresoCarga progreso, boolean hojasEnParalelo) {
+        return cargarExcelRM(archivo, codCliente, nombreArchivo, progreso, hojasEnParalelo, false);
+    }
+
+    /**
+     * @param simulacion valida sin guardar (ver SimulacionCarga): cada hoja se clasifica por bloques en paralelo;
+     *                   las hojas van en secuencia y el STOCK cuenta como existentes las claves que VENTAS insertaría
+     */
+    public Map<String, Object> cargarExcelRM(Path archivo, String codCliente, String nombreArchivo,
+                                             ProgresoCarga progreso, boolean hojasEnParalelo, boolean simulacion) {
+        return cargarExcelRM(archivo, codCliente, nombreArchivo, progreso, hojasEnParalelo, simulacion, EstrategiaCarga.UPSERT);
+    }
+
+    /**
+     * @param estrategia cómo se escriben las ventas (ver EscritorVentas; en simulación no aplica). Con
+     *                   REPLACE_PERIOD las hojas van en secuencia y los periodos se reemplazan al final, solo si
+     *                   la carga no tuvo errores generales
+     */
+    public Map<String, Object> cargarExcelRM(Path archivo, String codCliente, String nombreArchivo,
+                                             ProgresoCarga progreso, boolean hojasEnParalelo, boolean simulacion,
+                                             EstrategiaCarga estrategia) {
         long t0 = System.nanoTime();
+        EscritorVentas.Escritura escritura = escritorVentas.abrir(simulacion ? EstrategiaCarga.UPSERT : estrategia);
+        // REPLACE_PERIOD pasa el stock a las ventas retenidas: STOCK tiene que llegar después de VENTAS
+        boolean paralelo = hojasEnParalelo && escritura.estrategia() != EstrategiaCarga.REPLACE_PERIOD;
 
         Cliente cliente = getClienteOrThrow(codCliente);
         List<Incidencia> incidencias = new ArrayList<>();
@@ -455,334 +471,559 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
 
         int filasLeidasVentas = 0, filasProcesadasVentas = 0;
         int filasLeidasStock  = 0, filasProcesadasStock  = 0;
+        int insertados = 0, actualizados = 0;
+        Map<String, Object> rendimiento = new LinkedHashMap<>();
 
         final int BUFFER_SIZE = 5000; // OK para rendimiento (puedes probar 2000/5000/10000)
 
-        try (Workbook wb = WorkbookFactory.create(inputStream)) {
+        try (SpoolTemporal spoolVentas = SpoolTemporal.crear("rm-ventas-");
+             SpoolTemporal spoolStock  = SpoolTemporal.crear("rm-stock-")) {
 
             // ============================================================
-            // PRE-SCAN: recolectar códigos para resolver SAP_Prod_cache y PRODUCTO en lote
+            // PASADA ÚNICA: decodificar filas al spool y recolectar códigos
             // ============================================================
-
             Set<String> codigosParaBuscar = new HashSet<>();
+            HojaRM ventas = new HojaRM("VENTAS", Set.of("fecha_venta", "nombre_tienda", "ref_proveedor"), spoolVentas, codigosParaBuscar);
+            if (paralelo || simulacion) ventas.claves = new ClavesRM();
+            HojaRM stock  = new HojaRM("STOCK", Set.of("fecha_corte", "tienda", "ref_proveedor"), spoolStock, codigosParaBuscar);
+            progreso.fase("LEYENDO");
+            leerHojasRM(archivo.toFile(), nombreArchivo, ventas, stock, progreso);
 
-            // ------------------ PRE-SCAN VENTAS ------------------
-            Sheet shVentas = wb.getSheet("VENTAS");
-            if (shVentas == null) shVentas = wb.getSheetAt(0);
+            filasLeidasVentas = ventas.filasLeidas;
+            filasLeidasStock  = stock.filasLeidas;
 
-            Integer headerVentas = findHeaderRow(shVentas, Set.of("fecha_venta", "nombre_tienda", "ref_proveedor"), 30);
-            Map<String, Integer> hV = (headerVentas == null) ? Map.of() : buildHeaderIndex(shVentas, headerVentas);
-
-            Integer cFechaV  = (headerVentas == null) ? null : pick(hV, "fecha_venta");
-            Integer cTiendaV = (headerVentas == null) ? null : pick(hV, "nombre_tienda", "tienda");
-            Integer cRefV    = (headerVentas == null) ? null : pick(hV, "ref_proveedor");
-            Integer cUsdV    = (headerVentas == null) ? null : pick(hV, "ventas_en_usd_sin_iva");
-            Integer cUdsV    = (headerVentas == null) ? null : pick(hV, "ventas_en_udd");
-
-            if (headerVentas != null) {
-                for (int r = headerVentas + 1; r <= shVentas.getLastRowNum(); r++) {
-                    Row row = shVentas.getRow(r);
-                    if (row == null) continue;
+            // ============================================================
+            // Cargar SAP_Prod_cache y PRODUCTO IDs en memoria (1 sola vez)
+            // ============================================================
+            progreso.fase("RESOLVIENDO_PRODUCTOS");
+            Map<String, SapCacheRow> sapMap = findSapCacheByCodBarraBatch(codigosParaBuscar);
+            Map<String, Long> productoIdMap = findProductoIdsBatchByCodBarraSap(codigosParaBuscar);
 
+            progreso.filasTotales(spoolVentas.getRegistros() + spoolStock.getRegistros());
+            AtomicInteger replay = new AtomicInteger();
+
+            if (paralelo && !simulacion && ventas.header != null && stock.existe && stock.header != null) {
+                // ============================================================
+                // VENTAS y STOCK en paralelo; el stock de claves que también vienen en VENTAS
+                // se difiere y se aplica cuando las ventas ya están guardadas (reconciliación)
+                // ============================================================
+                progreso.fase("GUARDANDO_VENTAS_Y_STOCK");
+                ReplayHoja rVentas = null, rStock = null;
+                Future<ReplayHoja> fStock = ejecutorHojas.submit(() ->
+                        replayHoja("STOCK", spoolStock, cliente, sapMap, productoIdMap, BUFFER_SIZE, ventas.claves, progreso, replay, false, escritura));
+                try {
+                    // se esperan ambas hojas antes de propagar un error (los spools se cierran al salir)
+                    Exception errorHoja = null;
                     try {
-                        Date fecha = getDate(row, cFechaV);
-                        if (fecha == null) continue;
-
-                        Double ventaUsd = getDouble(row, cUsdV);
-                        Double ventaUds = getDouble(row, cUdsV);
-
-                        boolean tieneVentaPositiva =
-                                (ventaUsd != null && ventaUsd > 0) ||
-                                (ventaUds != null && ventaUds > 0);
-                        if (!tieneVentaPositiva) continue;
-
-                        String codBarraSap = getString(row, cRefV);
-                        if (codBarraSap == null || codBarraSap.isBlank()) continue;
+                        rVentas = replayHoja("VENTAS", spoolVentas, cliente, sapMap, productoIdMap, BUFFER_SIZE, null, progreso, replay, false, escritura);
+                    } catch (Exception e) { errorHoja = e; }
+                    try { rStock = esperar(fStock); } catch (Exception e) { if (errorHoja == null) errorHoja = e; }
+                    if (errorHoja != null) throw errorHoja;
+                } finally {
+                    fStock.cancel(true); // sin efecto si ya terminó; si no (hilo interrumpido), no sigue sobre el spool cerrado
+                }
+                // incidencias en el mismo orden que la carga secuencial: VENTAS y luego STOCK
+                filasProcesadasVentas = consolidarReplay(rVentas, incidencias, codigosNoEncontrados, rendimiento);
+                filasProcesadasStock = consolidarReplay(rStock, incidencias, codigosNoEncontrados, rendimiento);
+
+                progreso.fase("RECONCILIANDO_STOCK");
+                long tr = System.currentTimeMillis();
+                int[] conciliadas = reconciliarStock(spoolStock, rStock.diferidas, cliente, sapMap, productoIdMap,
+                        BUFFER_SIZE, escritura);
+                insertados += rVentas.insertados + rStock.insertados + conciliadas[0];
+                actualizados += rVentas.actualizados + rStock.actualizados + conciliadas[1];
+                Map<String, Object> reconciliacion = new LinkedHashMap<>();
+                reconciliacion.put("registros", rStock.diferidas.cardinality());
+                reconciliacion.put("insertados", conciliadas[0]);
+                reconciliacion.put("actualizados", conciliadas[1]);
+                reconciliacion.put("ms", System.currentTimeMillis() - tr);
+                rendimiento.put("reconciliacionStock", reconciliacion);
+            } else {
+                // ============================================================
+                // PROCESO VENTAS (replay del spool)
+                // ============================================================
+                if (ventas.header == null) {
+                    incidencias.add(new Incidencia("GENERAL",
+                            "No se encontró encabezado de VENTAS (requiere fecha_venta, Nombre_Tienda, REF_Proveedor).",
+                            -1, "VENTAS"));
+                } else {
+                    progreso.fase(simulacion ? "VALIDANDO_VENTAS" : "GUARDANDO_VENTAS");
+                    ReplayHoja r = replayHoja("VENTAS", spoolVentas, cliente, sapMap, productoIdMap, BUFFER_SIZE, null, progreso, replay, simulacion, escritura);
+                    filasProcesadasVentas = consolidarReplay(r, incidencias, codigosNoEncontrados, rendimiento);
+                    insertados += r.insertados;
+                    actualizados += r.actualizados;
+                }
 
-                        codigosParaBuscar.add(codBarraSap.trim());
-                    } catch (Exception ignore) {
-                        // pre-scan nunca corta
+                // ============================================================
+                // PROCESO STOCK (replay del spool; actualiza filas de VENTAS, por eso va después)
+                // ============================================================
+                if (stock.existe) {
+                    if (stock.header == null) {
+                        incidencias.add(new Incidencia("GENERAL",
+                                "No se encontró encabezado de STOCK (requiere fecha_corte, Tienda, REF_Proveedor).",
+                                -1, "STOCK"));
+                    } else {
+                        progreso.fase(simulacion ? "VALIDANDO_STOCK" : "GUARDANDO_STOCK");
+                        ReplayHoja r = replayHoja("STOCK", spoolStock, cliente, sapMap, productoIdMap, BUFFER_SIZE,
+                                simulacion ? ventas.claves : null, progreso, replay, simulacion, escritura);
+                        filasProcesadasStock = consolidarReplay(r, incidencias, codigosNoEncontrados, rendimiento);
+                        insertados += r.insertados;
+                        actualizados += r.actualizados;
                     }
                 }
             }
 
-            // ------------------ PRE-SCAN STOCK ------------------
-            Sheet shStock = wb.getSheet("STOCK");
-            Integer headerStock = null;
-            Map<String, Integer> hS = Map.of();
-            Integer cFechaS = null, cTiendaS = null, cRefS = null, cUnS = null, cDolS = null;
-
-            if (shStock != null) {
-                headerStock = findHeaderRow(shStock, Set.of("fecha_corte", "tienda", "ref_proveedor"), 30);
-                if (headerStock != null) {
-                    hS = buildHeaderIndex(shStock, headerStock);
-                    cFechaS  = pick(hS, "fecha_corte");
-                    cTiendaS = pick(hS, "tienda", "nombre_tienda");
-                    cRefS    = pick(hS, "ref_proveedor");
-                    cUnS     = pick(hS, "cantidad_unidades");
-                    cDolS    = pick(hS, "cantidad_dolares");
-
-                    for (int r = headerStock + 1; r <= shStock.getLastRowNum(); r++) {
-                        Row row = shStock.getRow(r);
-                        if (row == null) continue;
-
-                        try {
-                            Date fecha = getDate(row, cFechaS);
-                            if (fecha == null) continue;
-
-                            Double su = getDouble(row, cUnS);
-                            Double sd = getDouble(row, cDolS);
-
-                            boolean tieneStock =
-                                    (su != null && su > 0) ||
-                                    (sd != null && sd > 0);
-                            if (!tieneStock) continue;
-
-                            String codBarraSap = getString(row, cRefS);
-                            if (codBarraSap == null || codBarraSap.isBlank()) continue;
-
-                            codigosParaBuscar.add(codBarraSap.trim());
-                        } catch (Exception ignore) {
-                            // pre-scan nunca corta
-                        }
-                    }
-                }
+            if (!simulacion && incidencias.stream().noneMatch(i -> "GENERAL".equals(i.codigo))) {
+                progreso.fase("APLICANDO_" + escritura.estrategia().name());
+                VentaMergeWriter.Resultado alTerminar = escritura.terminar();
+                insertados += alTerminar.insertados();
+                actualizados += alTerminar.actualizados();
             }
+            rendimiento.put("escritura", escritura.rendimiento());
 
-            // ============================================================
-            // Cargar SAP_Prod_cache en memoria (1 sola vez)
-            // ============================================================
-            Map<String, SapCacheRow> sapMap = findSapCacheByCodBarraBatch(codigosParaBuscar);
+        } catch (Exception e) {
+            // ✅ Nunca cortar sin devolver resultado: lo registramos
+            incidencias.add(new Incidencia("GENERAL", "ERROR FATAL: " + e.getMessage(), -1, "GENERAL"));
+        }
 
-            // ============================================================
-            // Cargar PRODUCTO IDs en memoria (1 sola vez)  ✅ MEJORA CLAVE
-            // ============================================================
-            Map<String, Long> productoIdMap = findProductoIdsBatchByCodBarraSap(codigosParaBuscar);
+        long t1 = System.nanoTime();
+        double segundos = (t1 - t0) / 1_000_000_000.0;
 
-            // ============================================================
-            // PROCESO VENTAS
-            // ============================================================
-            if (headerVentas == null) {
-                incidencias.add(new Incidencia("GENERAL",
-                        "No se encontró encabezado de VENTAS (requiere fecha_venta, Nombre_Tienda, REF_Proveedor).",
-                        -1, "VENTAS"));
-            } else {
-                List<Venta> buffer = new ArrayList<>(BUFFER_SIZE);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("ok", incidencias.stream().noneMatch(i -> "GENERAL".equals(i.codigo)));
+        out.put("archivo", nombreArchivo);
+        out.put("codCliente", codCliente);
 
-                for (int r = headerVentas + 1; r <= shVentas.getLastRowNum(); r++) {
-                    Row row = shVentas.getRow(r);
-                    if (row == null) continue;
+        out.put("filasLeidasVentas", filasLeidasVentas);
+        out.put("filasProcesadasVentas", filasProcesadasVentas);
 
-                    filasLeidasVentas++;
+        out.put("filasLeidasStock", filasLeidasStock);
+        out.put("filasProcesadasStock", filasProcesadasStock);
 
-                    try {
-                        Date fecha = getDate(row, cFechaV);
-                        if (fecha == null) continue;
-
-                        String tienda = tiendaKey(getString(row, cTiendaV));
-                        String codBarraSap = getString(row, cRefV);
-
-                        Double ventaUsd = getDouble(row, cUsdV);
-                        Double ventaUds = getDouble(row, cUdsV);
-
-                        boolean tieneVentaPositiva =
-                                (ventaUsd != null && ventaUsd > 0) ||
-                                (ventaUds != null && ventaUds > 0);
-                        if (!tieneVentaPositiva) continue;
-
-                        if (codBarraSap == null || codBarraSap.isBlank()) {
-                            incidencias.add(new Incidencia("CODBARRA_VACIO", "REF_Proveedor vacío.", r + 1, "VENTAS"));
-                            codigosNoEncontrados.add("CODBARRA_VACIO");
-                            continue;
-                        }
-
-                        String cb = codBarraSap.trim();
-
-                        SapCacheRow sap = sapMap.get(cb);
-                        if (sap == null) {
-                            incidencias.add(new Incidencia(cb, "No existe en SAP_Prod_cache (cod_barra).", r + 1, "VENTAS"));
-                            codigosNoEncontrados.add(cb);
-                            continue;
-                        }
-
-                        // ✅ productoId en memoria (NO query por fila)
-                        Long productoId = productoIdMap.get(cb);
-                        if (productoId == null) {
-                            incidencias.add(new Incidencia(cb, "No existe en tabla PRODUCTO (codBarraSap).", r + 1, "VENTAS"));
-                            codigosNoEncontrados.add(cb);
-                            continue;
-                        }
-
-                        var zdt = fecha.toInstant().atZone(ZONE);
-
-                        Venta v = new Venta();
-                        v.setCliente(cliente);
-
-                        v.setAnio(zdt.getYear());
-                        v.setMes(zdt.getMonthValue());
-                        v.setDia(zdt.getDayOfMonth());
-
-                        v.setCodBarra(cb);
-                        v.setCodPdv(tienda);
-                        v.setPdv(tienda);
-
-                        v.setVentaDolares(ventaUsd != null ? ventaUsd : 0);
-                        v.setVentaUnidad(ventaUds != null ? ventaUds : 0);
-
-                        aplicarDatosSapCache(v, sap);
-
-                        v.setStockDolares(0);
-                        v.setStockUnidades(0);
-                        v.setUnidadesDiarias("0");
-
-                        // ✅ asignar producto (stub por id)
-                        Producto p = new Producto();
-                        p.setId(productoId);
-                        v.setProducto(p);
-
-                        buffer.add(v);
-                        filasProcesadasVentas++;
-
-                        if (buffer.size() >= BUFFER_SIZE) {
-                            upsertVentasEnBloque(buffer);
-                            buffer.clear();
-                        }
-
-                    } catch (Exception exFila) {
-                        // ✅ nunca cortar: registrar incidencia y continuar
-                        incidencias.add(new Incidencia("ERROR_FILA",
-                                "Error procesando fila: " + exFila.getMessage(),
-                                r + 1, "VENTAS"));
-                    }
+        out.put("codigosNoEncontrados", codigosNoEncontrados.stream().sorted().collect(Collectors.toList()));
+        out.put("incidencias", incidencias);
+        out.put("tiempoSegundos", segundos);
+        out.put("hojasEnParalelo", paralelo && !simulacion);
+        out.put(EstrategiaCarga.CAMPO, escritura.estrategia().name());
+        out.put("rendimiento", rendimiento);
+        out.put("insertados", insertados);
+        out.put("actualizados", actualizados);
+        if (simulacion) SimulacionCarga.marcar(out);
+        return out;
+    }
+
+    /** Replay de una hoja: contadores, incidencias propias (se consolidan en orden) y tiempos. */
+    private static final class ReplayHoja {
+        final String hoja;
+        final List<Incidencia> incidencias = new ArrayList<>();
+        final Set<String> codigosNoEncontrados = new HashSet<>();
+        // números de registro del spool (no las ventas): un bit por fila, se releen al reconciliar
+        final BitSet diferidas = new BitSet();
+        int registros, procesadas, insertados, actualizados;
+        long ms;
+        Map<String, Object> pipeline;
+
+        ReplayHoja(String hoja) {
+            this.hoja = hoja;
+        }
+
+        Map<String, Object> rendimiento() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("registros", registros);
+            m.put("procesadas", procesadas);
+            m.put("insertados", insertados);
+            m.put("actualizados", actualizados);
+            m.put("diferidasAReconciliacion", diferidas.cardinality());
+            m.put("ms", ms);
+            m.put("filasPorSegundo", ms > 0 ? Math.round(registros * 1000.0 / ms) : registros);
+            m.put("pipeline", pipeline);
+            return m;
+        }
+    }
+
+    /** Pasa incidencias y rendimiento de la hoja al resultado; devuelve las filas procesadas. */
+    private static int consolidarReplay(ReplayHoja r, List<Incidencia> incidencias,
+                                        Set<String> codigosNoEncontrados, Map<String, Object> rendimiento) {
+        incidencias.addAll(r.incidencias);
+        codigosNoEncontrados.addAll(r.codigosNoEncontrados);
+        rendimiento.put(r.hoja, r.rendimiento());
+        return r.procesadas;
+    }
+
+    /**
+     * Re-lee el spool de una hoja y guarda por bloques (VENTAS: upsert; STOCK: update/insert de stock).
+     * Con {@code diferir} != null, las filas de STOCK cuya clave está en ese set no se escriben: su número
+     * de registro queda en {@link ReplayHoja#diferidas} y {@link #reconciliarStock} las aplica después de VENTAS.
+     * En simulación los bloques solo se clasifican ({@link #simularBloque}), en paralelo; {@code diferir}
+     * son entonces las claves de VENTAS que el STOCK encontraría ya guardadas.
+     */
+    private ReplayHoja replayHoja(String hoja, SpoolTemporal spool, Cliente cliente,
+                                  Map<String, SapCacheRow> sapMap, Map<String, Long> productoIdMap,
+                                  int tamanoBloque, ClavesRM diferir,
+                                  ProgresoCarga progreso, AtomicInteger replay, boolean simulacion,
+                                  EscritorVentas.Escritura escritura) throws IOException {
+        long t0 = System.currentTimeMillis();
+        ReplayHoja r = new ReplayHoja(hoja);
+        boolean esVentas = "VENTAS".equals(hoja);
+        DataInputStream in = spool.lector();
+        int escritores = simulacion ? SimulacionCarga.hilos() : ESCRITORES;
+
+        // el replay del spool se solapa con el guardado del bloque anterior
+        try (PipelineCarga<Venta, int[]> pipeline = new PipelineCarga<>(
+                "rm-" + hoja.toLowerCase(Locale.ROOT) + (simulacion ? "-validacion" : ""),
+                tamanoBloque, Math.max(COLA_BLOQUES, escritores), escritores, simulacion ? txSimulacion : txTemplate,
+                (bloque, nro) -> {
+                    if (simulacion) return simularBloque(cliente.getId(), bloque, diferir);
+                    return esVentas ? upsertVentasEnBloque(bloque, escritura) : upsertStockEnBloque(bloque, escritura);
+                },
+                (nro, res) -> {
+                    if (res == null) return;
+                    r.insertados += res[0];
+                    r.actualizados += res[1];
+                })) {
+
+            for (int n = 0; n < spool.getRegistros(); n++) {
+                progreso.filasProcesadas(replay.incrementAndGet());
+                r.registros++;
+                Venta v = leerRegistro(in, cliente, hoja, sapMap, productoIdMap, r.incidencias, r.codigosNoEncontrados);
+                if (v == null) continue;
+
+                r.procesadas++;
+                if (!simulacion && diferir != null && diferir.contiene(v.getAnio(), v.getMes(), v.getDia(), v.getCodBarra(), v.getCodPdv())) {
+                    r.diferidas.set(n);
+                } else {
+                    pipeline.agregar(v);
                 }
+            }
+            r.pipeline = pipeline.terminar();
+        }
+        r.ms = System.currentTimeMillis() - t0;
+        log.info("RM replay " + hoja + ": " + r.rendimiento());
+        return r;
+    }
 
-                if (!buffer.isEmpty()) upsertVentasEnBloque(buffer);
+    /**
+     * Relee el spool de STOCK y aplica por bloques solo los registros diferidos, ya con las ventas guardadas. En
+     * memoria quedan el bit por registro y un bloque, no todas las diferidas. Las incidencias de la relectura ya
+     * se contaron en el replay y se descartan.
+     */
+    private int[] reconciliarStock(SpoolTemporal spool, BitSet diferidas, Cliente cliente,
+                                   Map<String, SapCacheRow> sapMap, Map<String, Long> productoIdMap,
+                                   int tamanoBloque, EscritorVentas.Escritura escritura) throws IOException {
+        int[] total = new int[2];
+        if (diferidas.isEmpty()) return total;
+        DataInputStream in = spool.lector();
+        List<Incidencia> repetidas = new ArrayList<>();
+        Set<String> noEncontrados = new HashSet<>();
+        List<Venta> bloque = new ArrayList<>(tamanoBloque);
+        for (int n = 0, ultimo = diferidas.length() - 1; n <= ultimo; n++) {
+            Venta v = leerRegistro(in, cliente, "STOCK", sapMap, productoIdMap, repetidas, noEncontrados);
+            repetidas.clear();
+            noEncontrados.clear();
+            if (v == null || !diferidas.get(n)) continue;
+            bloque.add(v);
+            if (bloque.size() == tamanoBloque) {
+                aplicarStock(bloque, escritura, total);
+                bloque = new ArrayList<>(tamanoBloque);
             }
+        }
+        if (!bloque.isEmpty()) aplicarStock(bloque, escritura, total);
+        return total;
+    }
 
-            // ============================================================
-            // PROCESO STOCK
-            // ============================================================
-            if (shStock != null) {
-                if (headerStock == null) {
-                    incidencias.add(new Incidencia("GENERAL",
-                            "No se encontró encabezado de STOCK (requiere fecha_corte, Tienda, REF_Proveedor).",
-                            -1, "STOCK"));
-                } else {
-                    List<Venta> bufferStock = new ArrayList<>(BUFFER_SIZE);
+    private void aplicarStock(List<Venta> bloque, EscritorVentas.Escritura escritura, int[] total) {
+        int[] res = txTemplate.execute(st -> upsertStockEnBloque(bloque, escritura));
+        total[0] += res[0];
+        total[1] += res[1];
+    }
+
+    /**
+     * Claves naturales de RM (cliente implícito): fecha + cod_barra + tienda, sin distinguir mayúsculas.
+     * Se llena en el hilo lector y después solo se consulta (desde varios hilos).
+     */
+    private static final class ClavesRM {
+        private final DiccionarioClaves textos = new DiccionarioClaves();
+        private final MapaVentaKey mapa = new MapaVentaKey(1024);
+
+        void agregar(int anio, int mes, int dia, String codBarra, String tienda) {
+            mapa.put(textos.clave(null, anio, mes, dia, codBarra, tiendaKey(tienda)), 0);
+        }
+
+        boolean contiene(int anio, int mes, int dia, String codBarra, String tienda) {
+            VentaKey k = textos.claveSiExiste(null, anio, mes, dia, codBarra, tiendaKey(tienda));
+            return k != null && mapa.containsKey(k);
+        }
+    }
 
-                    for (int r = headerStock + 1; r <= shStock.getLastRowNum(); r++) {
-                        Row row = shStock.getRow(r);
-                        if (row == null) continue;
+    private static <T> T esperar(Future<T> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception ex) throw ex;
+            throw e;
+        }
+    }
 
-                        filasLeidasStock++;
+    /** Lee VENTAS (o la primera hoja) y STOCK una sola vez cada una: SAX para .xlsx, DOM para .xls. */
+    private void leerHojasRM(File archivo, String nombreArchivo, HojaRM ventas, HojaRM stock,
+                             ProgresoCarga progreso) throws Exception {
+        ExcelStreamingReader.FilaHandler hVentas = fila -> {
+            boolean seguir = ventas.procesar(fila);
+            progreso.filasProcesadas(ventas.filasLeidas);
+            return seguir;
+        };
+        ExcelStreamingReader.FilaHandler hStock = fila -> {
+            boolean seguir = stock.procesar(fila);
+            progreso.filasProcesadas(ventas.filasLeidas + stock.filasLeidas);
+            return seguir;
+        };
 
-                        try {
-                            Date fecha = getDate(row, cFechaS);
-                            if (fecha == null) continue;
+        // CSV/TSV = libro de una sola hoja: se lee como VENTAS (igual que un Excel sin hoja VENTAS) y sin STOCK
+        if (CsvStreamingReader.esTextoDelimitado(archivo, nombreArchivo)) {
+            progreso.filasTotales(CsvStreamingReader.filasEstimadas(archivo));
+            ventas.existe = true;
+            CsvStreamingReader.leer(archivo, MAX_COLUMNAS_RM, hVentas);
+            stock.existe = false;
+            return;
+        }
 
-                            String tienda = tiendaKey(getString(row, cTiendaS));
-                            String codBarraSap = getString(row, cRefS);
+        if (ExcelStreamingReader.esOoxml(archivo)) {
+            List<String> hojas = ExcelStreamingReader.nombresHojas(archivo);
+            int idxVentas = indiceHoja(hojas, ventas.nombre);
+            int idxStock  = indiceHoja(hojas, stock.nombre);
+            if (idxVentas < 0 && !hojas.isEmpty()) idxVentas = 0;
 
-                            if (codBarraSap == null || codBarraSap.isBlank()) {
-                                incidencias.add(new Incidencia("CODBARRA_VACIO", "REF_Proveedor vacío.", r + 1, "STOCK"));
-                                codigosNoEncontrados.add("CODBARRA_VACIO");
-                                continue;
-                            }
+            int declaradas = (idxVentas >= 0 ? Math.max(0, ExcelStreamingReader.filasDeclaradas(archivo, idxVentas)) : 0)
+                    + (idxStock >= 0 ? Math.max(0, ExcelStreamingReader.filasDeclaradas(archivo, idxStock)) : 0);
+            progreso.filasTotales(declaradas > 0 ? declaradas : -1);
 
-                            Double su = getDouble(row, cUnS);
-                            Double sd = getDouble(row, cDolS);
+            ventas.existe = !hojas.isEmpty();
+            if (ventas.existe) {
+                ExcelStreamingReader.leerHoja(archivo, idxVentas, MAX_COLUMNAS_RM, hVentas);
+            }
+            stock.existe = idxStock >= 0;
+            if (stock.existe) {
+                ExcelStreamingReader.leerHoja(archivo, idxStock, MAX_COLUMNAS_RM, hStock);
+            }
+            return;
+        }
 
-                            boolean tieneStock =
-                                    (su != null && su > 0) ||
-                                    (sd != null && sd > 0);
-                            if (!tieneStock) continue;
+        try (Workbook wb = WorkbookFactory.create(archivo, null, true)) {
+            Sheet shVentas = wb.getSheet(ventas.nombre);
+            if (shVentas == null) shVentas = wb.getSheetAt(0);
+            Sheet shStock = wb.getSheet(stock.nombre);
+            progreso.filasTotales(shVentas.getLastRowNum() + 1 + (shStock != null ? shStock.getLastRowNum() + 1 : 0));
 
-                            String cb = codBarraSap.trim();
+            ventas.existe = true;
+            ExcelStreamingReader.recorrerHoja(shVentas, MAX_COLUMNAS_RM, hVentas);
 
-                            SapCacheRow sap = sapMap.get(cb);
-                            if (sap == null) {
-                                incidencias.add(new Incidencia(cb, "No existe en SAP_Prod_cache (cod_barra).", r + 1, "STOCK"));
-                                codigosNoEncontrados.add(cb);
-                                continue;
-                            }
+            stock.existe = shStock != null;
+            if (shStock != null) ExcelStreamingReader.recorrerHoja(shStock, MAX_COLUMNAS_RM, hStock);
+        }
+    }
 
-                            // ✅ productoId en memoria (NO query por fila)
-                            Long productoId = productoIdMap.get(cb);
-                            if (productoId == null) {
-                                incidencias.add(new Incidencia(cb, "No existe en tabla PRODUCTO (codBarraSap).", r + 1, "STOCK"));
-                                codigosNoEncontrados.add(cb);
-                                continue;
-                            }
+    /** Mismo criterio que Workbook.getSheet(nombre): sin distinguir mayúsculas. */
+    private static int indiceHoja(List<String> hojas, String nombre) {
+        for (int i = 0; i < hojas.size(); i++) {
+            if (nombre.equalsIgnoreCase(hojas.get(i))) return i;
+        }
+        return -1;
+    }
 
-                            var zdt = fecha.toInstant().atZone(ZONE);
+    /**
+     * Lee el siguiente registro del spool. Las incidencias se agregan en el mismo orden de la hoja.
+     * Devuelve la Venta lista para upsert, o null si la fila quedó como incidencia.
+     */
+    private Venta leerRegistro(DataInputStream in, Cliente cliente, String hoja,
+                               Map<String, SapCacheRow> sapMap, Map<String, Long> productoIdMap,
+                               List<Incidencia> incidencias, Set<String> codigosNoEncontrados) throws IOException {
+        byte tipo = in.readByte();
+        int fila = in.readInt();
+
+        if (tipo == REG_INCIDENCIA) {
+            String codigo = SpoolTemporal.leerTexto(in);
+            String motivo = SpoolTemporal.leerTexto(in);
+            boolean noEncontrado = in.readBoolean();
+            incidencias.add(new Incidencia(codigo, motivo, fila, hoja));
+            if (noEncontrado) codigosNoEncontrados.add(codigo);
+            return null;
+        }
 
-                            Venta v = new Venta();
-                            v.setCliente(cliente);
+        int anio = in.readInt();
+        int mes  = in.readByte();
+        int dia  = in.readByte();
+        String tienda = SpoolTemporal.leerTexto(in);
+        String cb     = SpoolTemporal.leerTexto(in);
+        Double valor1 = SpoolTemporal.leerDouble(in);
+        Double valor2 = SpoolTemporal.leerDouble(in);
 
-                            v.setAnio(zdt.getYear());
-                            v.setMes(zdt.getMonthValue());
-                            v.setDia(zdt.getDayOfMonth());
+        try {
+            SapCacheRow sap = sapMap.get(cb);
+            if (sap == null) {
+                incidencias.add(new Incidencia(cb, "No existe en SAP_Prod_cache (cod_barra).", fila, hoja));
+                codigosNoEncontrados.add(cb);
+                return null;
+            }
 
-                            v.setCodBarra(cb);
-                            v.setCodPdv(tienda);
-                            v.setPdv(tienda);
+            // ✅ productoId en memoria (NO query por fila)
+            Long productoId = productoIdMap.get(cb);
+            if (productoId == null) {
+                incidencias.add(new Incidencia(cb, "No existe en tabla PRODUCTO (codBarraSap).", fila, hoja));
+                codigosNoEncontrados.add(cb);
+                return null;
+            }
 
-                            v.setVentaDolares(0);
-                            v.setVentaUnidad(0);
+            Venta v = new Venta();
+            v.setCliente(cliente);
 
-                            v.setStockUnidades(su != null ? su : 0);
-                            v.setStockDolares(sd != null ? sd : 0);
+            v.setAnio(anio);
+            v.setMes(mes);
+            v.setDia(dia);
 
-                            aplicarDatosSapCache(v, sap);
-                            v.setUnidadesDiarias("0");
+            v.setCodBarra(cb);
+            v.setCodPdv(tienda);
+            v.setPdv(tienda);
 
-                            // ✅ asignar producto (stub por id)
-                            Producto p = new Producto();
-                            p.setId(productoId);
-                            v.setProducto(p);
+            if ("VENTAS".equals(hoja)) {
+                v.setVentaDolares(valor1 != null ? valor1 : 0);
+                v.setVentaUnidad(valor2 != null ? valor2 : 0);
 
-                            bufferStock.add(v);
-                            filasProcesadasStock++;
+                aplicarDatosSapCache(v, sap);
 
-                            if (bufferStock.size() >= BUFFER_SIZE) {
-                                upsertStockEnBloque(cliente.getId(), bufferStock);
-                                bufferStock.clear();
-                            }
+                v.setStockDolares(0);
+                v.setStockUnidades(0);
+            } else {
+                v.setVentaDolares(0);
+                v.setVentaUnidad(0);
 
-                        } catch (Exception exFila) {
-                            incidencias.add(new Incidencia("ERROR_FILA",
-                                    "Error procesando fila: " + exFila.getMessage(),
-                                    r + 1, "STOCK"));
-                        }
-                    }
+                v.setStockUnidades(valor1 != null ? valor1 : 0);
+                v.setStockDolares(valor2 != null ? valor2 : 0);
 
-                    if (!bufferStock.isEmpty()) upsertStockEnBloque(cliente.getId(), bufferStock);
-                }
+                aplicarDatosSapCache(v, sap);
             }
+            v.setUnidadesDiarias("0");
 
-        } catch (Exception e) {
-            // ✅ Nunca cortar sin devolver resultado: lo registramos
-            incidencias.add(new Incidencia("GENERAL", "ERROR FATAL: " + e.getMessage(), -1, "GENERAL"));
+            // ✅ asignar producto (stub por id)
+            Producto p = new Producto();
+            p.setId(productoId);
+            v.setProducto(p);
+            return v;
+
+        } catch (Exception exFila) {
+            incidencias.add(new Incidencia("ERROR_FILA", "Error procesando fila: " + exFila.getMessage(), fila, hoja));
+            return null;
         }
+    }
 
-        long t1 = System.nanoTime();
-        double segundos = (t1 - t0) / 1_000_000_000.0;
+    /**
+     * Estado de lectura de una hoja RM: busca el encabezado (primeras 30 filas), valida cada fila
+     * y la escribe en el spool como registro de fila o de incidencia.
+     * VENTAS: valores = (ventas_en_usd_sin_iva, ventas_en_udd); STOCK: (cantidad_unidades, cantidad_dolares).
+     */
+    private final class HojaRM {
+        final String nombre;
+        final boolean esVentas;
+        final Set<String> requeridos;
+        final SpoolTemporal spool;
+        final Set<String> codigos;
+
+        ClavesRM claves; // claves de filas válidas (solo VENTAS en carga paralela)
+
+        boolean existe;
+        Integer header;
+        Integer cFecha, cTienda, cRef, cValor1, cValor2;
+        int filasLeidas;
+
+        HojaRM(String nombre, Set<String> requeridos, SpoolTemporal spool, Set<String> codigos) {
+            this.nombre = nombre;
+            this.esVentas = "VENTAS".equals(nombre);
+            this.requeridos = requeridos;
+            this.spool = spool;
+            this.codigos = codigos;
+        }
 
-        Map<String, Object> out = new LinkedHashMap<>();
-        out.put("ok", incidencias.stream().noneMatch(i -> "GENERAL".equals(i.codigo)));
-        out.put("archivo", nombreArchivo);
-        out.put("codCliente", codCliente);
+        boolean procesar(ExcelStreamingReader.Fila fila) {
+            int r = fila.getIndice();
+            if (header == null) {
+                if (r <= MAX_FILA_ENCABEZADO && esFilaEncabezado(fila, requeridos)) {
+                    header = r;
+                    Map<String, Integer> h = buildHeaderIndex(fila);
+                    cFecha = pick(h, esVentas ? "fecha_venta" : "fecha_corte");
+                    cTienda = esVentas ? pick(h, "nombre_tienda", "tienda") : pick(h, "tienda", "nombre_tienda");
+                    cRef = pick(h, "ref_proveedor");
+                    cValor1 = esVentas ? pick(h, "ventas_en_usd_sin_iva") : pick(h, "cantidad_unidades");
+                    cValor2 = esVentas ? pick(h, "ventas_en_udd") : pick(h, "cantidad_dolares");
+                }
+                // sin encabezado en las primeras filas ya no hay nada que leer
+                return header != null || r < MAX_FILA_ENCABEZADO;
+            }
 
-        out.put("filasLeidasVentas", filasLeidasVentas);
-        out.put("filasProcesadasVentas", filasProcesadasVentas);
+            filasLeidas++;
+
+            int fecha;
+            String tienda, codBarraSap;
+            Double valor1, valor2;
+            try {
+                fecha = getDate(fila, cFecha);
+                if (fecha == DecodificadorCeldas.SIN_FECHA) return true;
+
+                tienda = tiendaKey(getString(fila, cTienda));
+                codBarraSap = getString(fila, cRef);
+                valor1 = getDouble(fila, cValor1);
+                valor2 = getDouble(fila, cValor2);
+            } catch (Exception exFila) {
+                escribirIncidencia(r + 1, "ERROR_FILA", "Error procesando fila: " + exFila.getMessage(), false);
+                return true;
+            }
 
-        out.put("filasLeidasStock", filasLeidasStock);
-        out.put("filasProcesadasStock", filasProcesadasStock);
+            boolean positivo = (valor1 != null && valor1 > 0) || (valor2 != null && valor2 > 0);
+            boolean sinCodigo = codBarraSap == null || codBarraSap.isBlank();
 
-        out.put("codigosNoEncontrados", codigosNoEncontrados.stream().sorted().collect(Collectors.toList()));
-        out.put("incidencias", incidencias);
-        out.put("tiempoSegundos", segundos);
-        return out;
+            // VENTAS filtra primero por venta positiva; STOCK valida primero el código
+            if (esVentas && !positivo) return true;
+            if (sinCodigo) {
+                escribirIncidencia(r + 1, "CODBARRA_VACIO", "REF_Proveedor vacío.", true);
+                return true;
+            }
+            if (!positivo) return true;
+
+            String cb = codBarraSap.trim();
+            int anio = DecodificadorCeldas.anio(fecha), mes = DecodificadorCeldas.mes(fecha), dia = DecodificadorCeldas.dia(fecha);
+            try {
+                DataOutputStream out = spool.escritor();
+                out.writeByte(REG_FILA);
+                out.writeInt(r + 1);
+                out.writeInt(anio);
+                out.writeByte(mes);
+                out.writeByte(dia);
+                SpoolTemporal.escribirTexto(out, tienda);
+                SpoolTemporal.escribirTexto(out, cb);
+                SpoolTemporal.escribirDouble(out, valor1);
+                SpoolTemporal.escribirDouble(out, valor2);
+                spool.registroEscrito();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            codigos.add(cb);
+            if (claves != null) {
+                claves.agregar(anio, mes, dia, cb, tienda);
+            }
+            return true;
+        }
+
+        private void escribirIncidencia(int fila, String codigo, String motivo, boolean noEncontrado) {
+            try {
+                DataOutputStream out = spool.escritor();
+                out.writeByte(REG_INCIDENCIA);
+                out.writeInt(fila);
+                SpoolTemporal.escribirTexto(out, codigo);
+                SpoolTemporal.escribirTexto(out, motivo);
+                out.writeBoolean(noEncontrado);
+                spool.registroEscrito();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
     public Map<String, Object> cargarExcelRM(InputStream inputStream, String nombreArchivo) {
@@ -793,14 +1034,18 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
     private Map<String, Long> findProductoIdsBatchByCodBarraSap(Collection<String> cods) {
         if (cods == null || cods.isEmpty()) return Map.of();
 
-        List<Object[]> rows = productoRepository.findIdsByCodBarraSapIn(cods);
+        List<String> list = new ArrayList<>(cods);
+        Map<String, Long> out = new HashMap<>(list.size() * 2);
 
-        Map<String, Long> out = new HashMap<>(rows.size() * 2);
-        for (Object[] r : rows) {
-            String cod = (String) r[0];
-            Long id = (Long) r[1];
-            if (cod != null && id != null) {
-                out.put(cod.trim(), id);
+        int CHUNK = 900; // mismo límite que SAP_Prod_cache (parámetros de SQL Server)
+        for (int i = 0; i < list.size(); i += CHUNK) {
+            List<Object[]> rows = productoRepository.findIdsByCodBarraSapIn(list.subList(i, Math.min(i + CHUNK, list.size())));
+            for (Object[] r : rows) {
+                String cod = (String) r[0];
+                Long id = (Long) r[1];
+                if (cod != null && id != null) {
+                    out.put(cod.trim(), id);
+                }
             }
         }
         return out;
@@ -811,10 +1056,25 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
     public ResponseEntity<Resource> generarIncidenciasTxt(String nombreArchivoOrigen,
                                                          Map<String, Object> resultado) {
 
-        @SuppressWarnings("unchecked")
-        List<Incidencia> incidencias = (List<Incidencia>) resultado.getOrDefault("incidencias", List.of());
-        @SuppressWarnings("unchecked")
-        List<String> cods = (List<String>) resultado.getOrDefault("codigosNoEncontrados", List.of());
+        byte[] bytes = construirIncidenciasTxt(nombreArchivoOrigen, resultado).getBytes(StandardCharsets.UTF_8);
+        InputStreamResource resource = new InputStreamResource(new ByteArrayInputStream(bytes));
+
+        String filename = "incidencias_RM_" +
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .contentType(MediaType.TEXT_PLAIN)
+                .contentLength(bytes.length)
+                .body(resource);
+    }
+
+    /** Contenido del TXT de incidencias de una carga RM (también lo usa el job asíncrono). */
+    public String construirIncidenciasTxt(String nombreArchivoOrigen, Map<String, Object> resultado) {
+
+        // un resultado reutilizado por huella viene de JSON: las incidencias llegan como Map
+        List<?> incidencias = (List<?>) resultado.getOrDefault("incidencias", List.of());
+        List<?> cods = (List<?>) resultado.getOrDefault("codigosNoEncontrados", List.of());
 
         String ts = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
 
@@ -837,7 +1097,11 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
         if (incidencias == null || incidencias.isEmpty()) {
             sb.append("Sin incidencias.\n");
         } else {
-            for (Incidencia i : incidencias) {
+            for (Object o : incidencias) {
+                Incidencia i = (o instanceof Map<?, ?> m)
+                        ? new Incidencia(Objects.toString(m.get("codigo"), null), Objects.toString(m.get("motivo"), null),
+                                         (m.get("fila") instanceof Number n) ? n.intValue() : 0, Objects.toString(m.get("hoja"), null))
+                        : (Incidencia) o;
                 sb.append(Objects.toString(i.hoja, ""))
                   .append('\t')
                   .append(i.fila)
@@ -848,24 +1112,14 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
                   .append('\n');
             }
         }
-
-        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
-        InputStreamResource resource = new InputStreamResource(new ByteArrayInputStream(bytes));
-
-        String filename = "incidencias_RM_" +
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".txt";
-
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-                .contentType(MediaType.TEXT_PLAIN)
-                .contentLength(bytes.length)
-                .body(resource);
+        return sb.toString();
     }
 
     // =====================================================================================
     // ===================================== CRUD RM =======================================
     // =====================================================================================
 
+    @LecturaReplica
     public List<Map<String, Object>> obtenerVentasResumen(
             Integer anio,
             Integer mes,
@@ -876,6 +1130,7 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
         return obtenerVentasResumenPorCodCliente(DEFAULT_COD_CLIENTE, anio, mes, marca, limit, offset);
     }
 
+    @LecturaReplica
     public List<Map<String, Object>> obtenerVentasResumenPorCodCliente(
             String codCliente,
             Integer anio,
@@ -897,6 +1152,7 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
 
         if (anio != null) sql.append("AND v.anio = :anio ");
         if (mes != null) sql.append("AND v.mes = :mes ");
+        sql.append(ParticionVentaService.filtroPeriodo("v", anio, mes));
         if (marca != null && !marca.isBlank()) sql.append("AND v.marca = :marca ");
 
         sql.append("ORDER BY v.anio DESC, v.mes DESC, v.dia DESC, v.id DESC ")
@@ -938,6 +1194,7 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
         return out;
     }
 
+    @LecturaReplica
     public List<Map<String, Object>> obtenerVentasTodasPorCodCliente(
             String codCliente,
             Integer anio,
@@ -954,6 +1211,7 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
 
         if (anio != null) sql.append("AND v.anio = :anio ");
         if (mes != null) sql.append("AND v.mes = :mes ");
+        sql.append(ParticionVentaService.filtroPeriodo("v", anio, mes));
         if (marca != null && !marca.isBlank()) sql.append("AND v.marca = :marca ");
 
         sql.append("ORDER BY v.anio DESC, v.mes DESC, v.dia DESC, v.id DESC");
@@ -1069,30 +1327,19 @@ private Optional<SapCacheRow> findSapCacheMemo(String codBarraSap) {
 
         Cliente cliente = getClienteOrThrow(DEFAULT_COD_CLIENTE);
 
-        // Traer solo las ventas que pertenezcan a RM
-        List<Venta> ventas = ventaRepository.findAllById(ids);
-        List<Venta> filtradas = ventas.stream()
-                .filter(v -> v != null
-                        && v.getCliente() != null
-                        && v.getCliente().getId() != null
-                        && Objects.equals(v.getCliente().getId(), cliente.getId()))
-                .collect(Collectors.toList());
-
-        int solicitados = ids.size();
-        int aEliminar = filtradas.size();
-
+        // El filtro de cliente RM va en el mismo DELETE: los ids de otros clientes quedan como omitidos
         try {
-            ventaRepository.deleteAll(filtradas);
-            ventaRepository.flush();
+            EliminacionVentaService.Resultado r = eliminacionVentaService.eliminarPorIds(ids, cliente.getId());
             out.put("ok", true);
-            out.put("solicitados", solicitados);
-            out.put("deletedCount", aEliminar);
-            out.put("omitidos", solicitados - aEliminar);
+            out.put("solicitados", r.solicitados());
+            out.put("deletedCount", r.eliminados());
+            out.put("omitidos", r.omitidos());
+            out.put("ms", r.ms());
             out.put("mensaje", "Eliminación masiva completada (solo cliente RM).");
             return out;
         } catch (Exception e) {
             out.put("ok", false);
-            out.put("solicitados", solicitados);
+            out.put("solicitados", ids.size());
             out.put("deletedCount", 0);
             out.put("mensaje", "Error eliminando ventas en lote: " + e.getMessage());
             return out;
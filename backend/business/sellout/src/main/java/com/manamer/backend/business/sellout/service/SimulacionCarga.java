@@ -0,0 +1,51 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+/**
+ * Validación previa de una carga ({@code ?dryRun=true}): se decodifica el archivo y se resuelven
+ * SAP/productos/clientes en lote igual que en la carga real, pero cada bloque solo se clasifica
+ * (insertaría / actualizaría / sin cambios / omitida) y no se escribe nada.
+ *
+ * Como los bloques no escriben, no dependen entre sí y se validan en paralelo: un hilo por núcleo
+ * en el {@link PipelineCarga}, cada bloque en una transacción de solo lectura marcada para rollback.
+ * Una clave repetida en dos bloques distintos se cuenta en cada uno contra lo que hay en la base
+ * (en la carga real el segundo bloque la vería ya insertada).
+ */
+public final class SimulacionCarga {
+
+    /** Marca del resultado de una validación sin escritura. */
+    public static final String CAMPO = "dryRun";
+
+    private SimulacionCarga() {}
+
+    /** Hilos validadores del pipeline: uno por núcleo disponible. */
+    public static int hilos() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Transacción por bloque de la simulación: solo lectura y siempre en rollback. */
+    public static TransactionTemplate transaccion(PlatformTransactionManager ptm) {
+        TransactionTemplate tx = new TransactionTemplate(ptm) {
+            @Override
+            public <T> T execute(TransactionCallback<T> action) {
+                return super.execute(st -> {
+                    st.setRollbackOnly();
+                    return action.doInTransaction(st);
+                });
+            }
+        };
+        tx.setReadOnly(true);
+        return tx;
+    }
+
+    /** Marca el resultado como simulación. */
+    public static Map<String, Object> marcar(Map<String, Object> resultado) {
+        resultado.put(CAMPO, true);
+        return resultado;
+    }
+}
@@ -0,0 +1,129 @@
+package com.manamer.backend.business.sellout.service;
+
+import jakarta.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Carpeta local para los archivos subidos: el multipart se mueve a disco con {@code transferTo}
+ * (un rename si Tomcat ya lo tenía en la misma carpeta, ver spring.servlet.multipart.location)
+ * y los parsers lo abren por ruta: .xlsx con ZipFile y .xls con POIFS en modo archivo
+ * (FileChannel mapeado), sin copiar los bytes del archivo al heap.
+ * Los archivos se borran al cerrar {@link ArchivoSubido}; los huérfanos (caída a mitad de carga)
+ * se eliminan pasado {@code sellout.uploads.retencion-horas}.
+ */
+@Component
+public class SpoolSubidas {
+
+    private static final Logger log = Logger.getLogger(SpoolSubidas.class.getName());
+
+    private static final String PREFIJO = "carga-";
+    private static final String SUFIJO = ".upload";
+    private static final Duration INTERVALO_LIMPIEZA = Duration.ofMinutes(10);
+
+    /** Archivo subido en disco; {@link #close()} lo borra. */
+    public static final class ArchivoSubido implements Closeable {
+        private final Path ruta;
+        private final String nombreOriginal;
+
+        ArchivoSubido(Path ruta, String nombreOriginal) {
+            this.ruta = ruta;
+            this.nombreOriginal = nombreOriginal;
+        }
+
+        public Path getRuta() { return ruta; }
+        public String getNombreOriginal() { return nombreOriginal; }
+
+        public long getBytes() {
+            try { return Files.size(ruta); } catch (IOException e) { return -1; }
+        }
+
+        @Override
+        public void close() {
+            try { Files.deleteIfExists(ruta); } catch (IOException ignore) {}
+        }
+    }
+
+    private final Path carpeta;
+    private final Duration retencion;
+    private volatile Instant ultimaLimpieza = Instant.EPOCH;
+
+    public SpoolSubidas(@Value("${sellout.uploads.dir:}") String dir,
+                        @Value("${sellout.uploads.retencion-horas:6}") long retencionHoras) {
+        this.carpeta = (dir == null || dir.isBlank())
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "sellout-uploads")
+                : Paths.get(dir);
+        this.retencion = Duration.ofHours(Math.max(1, retencionHoras));
+    }
+
+    @PostConstruct
+    void inicializar() throws IOException {
+        Files.createDirectories(carpeta);
+        limpiarHuerfanos();
+    }
+
+    public Path getCarpeta() { return carpeta; }
+
+    /** Mueve el multipart a la carpeta de cargas. */
+    public ArchivoSubido guardar(MultipartFile file) throws IOException {
+        Path destino = nuevoArchivo();
+        try {
+            file.transferTo(destino);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(destino);
+            throw e;
+        }
+        return new ArchivoSubido(destino, file.getOriginalFilename());
+    }
+
+    /** Copia un stream a la carpeta de cargas (para llamadas que solo tienen InputStream). */
+    public ArchivoSubido guardar(InputStream in, String nombreOriginal) throws IOException {
+        Path destino = nuevoArchivo();
+        try {
+            Files.copy(in, destino, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(destino);
+            throw e;
+        }
+        return new ArchivoSubido(destino, nombreOriginal);
+    }
+
+    private Path nuevoArchivo() throws IOException {
+        if (Instant.now().isAfter(ultimaLimpieza.plus(INTERVALO_LIMPIEZA))) limpiarHuerfanos();
+        Files.createDirectories(carpeta);
+        return carpeta.resolve(PREFIJO + UUID.randomUUID() + SUFIJO);
+    }
+
+    /** Borra archivos de carga más viejos que la retención (quedaron por una caída o un error no controlado). */
+    void limpiarHuerfanos() {
+        ultimaLimpieza = Instant.now();
+        if (!Files.isDirectory(carpeta)) return;
+        FileTime limite = FileTime.from(Instant.now().minus(retencion));
+        int borrados = 0;
+        try (Stream<Path> archivos = Files.list(carpeta)) {
+            for (Path p : (Iterable<Path>) archivos::iterator) {
+                String n = p.getFileName().toString();
+                if (!n.startsWith(PREFIJO) || !n.endsWith(SUFIJO)) continue;
+                try {
+                    if (Files.getLastModifiedTime(p).compareTo(limite) < 0 && Files.deleteIfExists(p)) borrados++;
+                } catch (IOException ignore) {}
+            }
+        } catch (IOException e) {
+            log.warning("SpoolSubidas: no se pudo limpiar " + carpeta + ": " + e.getMessage());
+        }
+        if (borrados > 0) log.info("SpoolSubidas: huérfanos borrados=" + borrados + " en " + carpeta);
+    }
+}
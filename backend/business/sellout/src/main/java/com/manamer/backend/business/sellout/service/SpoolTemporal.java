@@ -0,0 +1,90 @@
+package com.manamer.backend.business.sellout.service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Archivo temporal binario de registros (escritura secuencial y luego relectura).
+ * Se usa para guardar filas ya decodificadas de un Excel sin retenerlas en el heap
+ * mientras se resuelven datos en lote. El archivo se borra en {@link #close()}.
+ */
+public final class SpoolTemporal implements Closeable {
+
+    private static final int BUFFER = 256 * 1024;
+
+    private final Path archivo;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private int registros;
+
+    private SpoolTemporal(Path archivo) throws IOException {
+        this.archivo = archivo;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archivo), BUFFER));
+    }
+
+    public static SpoolTemporal crear(String prefijo) throws IOException {
+        return new SpoolTemporal(Files.createTempFile(prefijo, ".spool"));
+    }
+
+    /** Stream para escribir el siguiente registro; llamar a {@link #registroEscrito()} al terminarlo. */
+    public DataOutputStream escritor() {
+        if (out == null) throw new IllegalStateException("Spool ya cerrado para escritura");
+        return out;
+    }
+
+    public void registroEscrito() { registros++; }
+
+    public int getRegistros() { return registros; }
+
+    public long getBytes() throws IOException {
+        if (out != null) out.flush();
+        return Files.size(archivo);
+    }
+
+    /** Cierra la escritura y abre la relectura desde el inicio. */
+    public DataInputStream lector() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        if (in != null) in.close();
+        in = new DataInputStream(new BufferedInputStream(Files.newInputStream(archivo), BUFFER));
+        return in;
+    }
+
+    // ===== helpers de codificación (String con null, sin el límite de 64K de writeUTF) =====
+
+    public static void escribirTexto(DataOutput out, String s) throws IOException {
+        if (s == null) { out.writeInt(-1); return; }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    public static String leerTexto(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) return null;
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Double nullable (null se guarda como NaN). */
+    public static void escribirDouble(DataOutput out, Double d) throws IOException {
+        out.writeDouble(d == null ? Double.NaN : d);
+    }
+
+    public static Double leerDouble(DataInput in) throws IOException {
+        double d = in.readDouble();
+        return Double.isNaN(d) ? null : d;
+    }
+
+    @Override
+    public void close() {
+        try { if (out != null) out.close(); } catch (IOException ignore) {}
+        try { if (in != null) in.close(); } catch (IOException ignore) {}
+        try { Files.deleteIfExists(archivo); } catch (IOException ignore) {}
+    }
+}
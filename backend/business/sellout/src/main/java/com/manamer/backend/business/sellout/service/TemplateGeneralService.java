@@ -1,21 +1,29 @@
 package com.manamer.backend.business.sellout.service;
 
 import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.models.HashFilaVenta;
 import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.repositories.VentaRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.util.IOUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.Normalizer;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 @Service
@@ -26,18 +34,13 @@ public class TemplateGeneralService {
     private static final int CHUNK_SIZE  = 10_000; // filas del Excel por chunk
     private static final int BATCH_SIZE  = 1_000;  // flush/clear cada N upserts
     private static final int IN_LIMIT    = 1_000;  // tamaño máximo de IN (...) por consulta nativa
-
-    // === Límites para borrado masivo ===
-    private static final int DELETE_UI_BATCH       = 5_000; // objetivo por acción del usuario
-    private static final int SQLSERVER_PARAM_LIMIT = 2_100; // límite duro SQL Server
-    private static final int PARAMS_POR_FILA       = 4;     // anio, mes, codBarra, codPdv
-    private static final int FILAS_POR_SENTENCIA   = 500;   // 500*4 = 2000 < 2100 (seguro)
+    // Pipeline lectura/escritura: 1 escritor (procesarChunk puede crear clientes; dos chunks en paralelo
+    // podrían duplicarlos) y hasta 2 chunks decodificados esperando mientras se guarda el actual
+    private static final int ESCRITORES  = 1;
+    private static final int COLA_CHUNKS = 2;
 
     private static final String HOJA = "Base";
-    private static final int FILA_ENCAB = 3; // 0-based => fila 4
-    private static final int FILA_DATOS = 4; // 0-based => fila 5
-    private static final int COL_INI = 1;    // B
-    private static final int COL_FIN = 13;   // N
+    // filas de encabezado/datos y columnas B..N: plantilla TEMPLATE_GENERAL (ver PlantillaService)
 
     private static final List<String> HEADERS = List.of(
             "CODCLIENTE","CLIENTE","DIA","MES","CODBARRA","DESCRIPCION",
@@ -58,16 +61,6 @@ public class TemplateGeneralService {
     private static final int IDX_VTA_UNIDADES  = 11; // M
     private static final int IDX_VTA_DOLARES   = 12; // N
 
-    private static final List<java.time.format.DateTimeFormatter> DATE_FORMATS = List.of(
-            java.time.format.DateTimeFormatter.ofPattern("dd/MM/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d/M/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("dd-MM-uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d-M-uuuu"),
-            java.time.format.DateTimeFormatter.ISO_LOCAL_DATE,
-            java.time.format.DateTimeFormatter.ofPattern("MM/dd/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("M/d/uuuu")
-    );
-
     // ✅ CAMBIO: placeholder para que tienda vacía/no venga no se mezcle
     private static final String PDV_PLACEHOLDER = "SIN_TIENDA";
 
@@ -75,189 +68,409 @@ public class TemplateGeneralService {
     private final ClienteService clienteService; // compatibilidad
     private final EntityManager em;
     private final TransactionTemplate txTemplate;
-
-    static {
-        // Permitir Excels grandes
-        IOUtils.setByteArrayMaxOverride(200 * 1024 * 1024);
-    }
+    private final TransactionTemplate txSimulacion;
+    private final PlantillaService plantillaService;
+    private final EscritorVentas escritorVentas;
+    private final EliminacionJobService eliminacionJobService;
 
     public TemplateGeneralService(
             VentaRepository ventaRepository,
             EntityManager entityManager,
             ClienteService clienteService,
-            PlatformTransactionManager ptm
+            PlatformTransactionManager ptm,
+            PlantillaService plantillaService,
+            EscritorVentas escritorVentas,
+            EliminacionJobService eliminacionJobService
     ) {
         this.ventaRepository = ventaRepository;
         this.em = entityManager;
         this.clienteService = clienteService;
         this.txTemplate = new TransactionTemplate(ptm);
+        this.txSimulacion = SimulacionCarga.transaccion(ptm);
+        this.plantillaService = plantillaService;
+        this.escritorVentas = escritorVentas;
+        this.eliminacionJobService = eliminacionJobService;
     }
 
     // =========================
     //       CARGA EXCEL
     // =========================
     public Map<String, Object> cargarTemplateGeneral(InputStream excelStream, String nombreArchivo) {
-        int insertados = 0, actualizados = 0, omitidos = 0;
-        int filasLeidas = 0, filasConCodCliente = 0;
-
-        List<String> incidencias = new ArrayList<>();
-        List<Map<String, Object>> codigosNoEncontrados = new ArrayList<>();
-        List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
-        List<Map<String, Object>> detalleInsertados = new ArrayList<>();
-        List<Map<String, Object>> detalleActualizados = new ArrayList<>();
-        Set<String> codigosAfectados = new TreeSet<>();
-
-        try (Workbook wb = WorkbookFactory.create(excelStream)) {
-            Sheet sheet = getHojaBase(wb).orElseThrow(() ->
-                    new IllegalArgumentException("Falta la hoja 'Base'."));
+        return cargarTemplateGeneral(excelStream, nombreArchivo, ProgresoCarga.NINGUNO);
+    }
 
-            List<String> headers = leerEncabezados(sheet);
-            if (!headers.equals(HEADERS)) {
-                String msg = "Encabezados en B4:N4 no coinciden (se normaliza a MAYÚSCULAS, sin tildes, espacios colapsados).";
-                incidencias.add(msg);
-                codigosNoEncontrados.add(Map.of("codigo", "ENCABEZADOS", "motivo", msg));
+    /** Igual que {@link #cargarTemplateGeneral(InputStream, String)} informando avance (jobs asíncronos). */
+    public Map<String, Object> cargarTemplateGeneral(InputStream excelStream, String nombreArchivo, ProgresoCarga progreso) {
+        Path tmp = null;
+        try {
+            // Se baja a disco para leer el .xlsx en streaming (sin materializar el libro en el heap)
+            tmp = Files.createTempFile("template-general-", ".upload");
+            Files.copy(excelStream, tmp, StandardCopyOption.REPLACE_EXISTING);
+            return cargarTemplateGeneral(tmp, nombreArchivo, progreso);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("No se pudo guardar el archivo " + nombreArchivo, ex);
+        } finally {
+            if (tmp != null) {
+                try { Files.deleteIfExists(tmp); } catch (Exception ignore) {}
             }
+        }
+    }
 
-            List<RegistroFila> buffer = new ArrayList<>(CHUNK_SIZE);
-            int vaciosConsecutivos = 0;
-
-            for (int r = FILA_DATOS; r <= sheet.getLastRowNum(); r++) {
-                Row row = sheet.getRow(r);
-                filasLeidas++;
-
-                String codClienteRaw    = getCellText(row, COL_INI + IDX_CODCLIENTE);
-                String nombreClienteRaw = getCellText(row, COL_INI + IDX_CLIENTE);
-
-                String codCliente    = safeTrim(codClienteRaw);
-                String nombreCliente = safeTrim(nombreClienteRaw);
-
-                if (isBlank(codCliente) && isBlank(nombreCliente)) {
-                    vaciosConsecutivos++;
-                    if (vaciosConsecutivos >= 2) break;
-                    else continue;
-                } else {
-                    vaciosConsecutivos = 0;
-                    filasConCodCliente++;
-                }
+    /** Carga desde un archivo ya en disco (SpoolSubidas): se lee por ruta, sin copiarlo al heap. */
+    public Map<String, Object> cargarTemplateGeneral(Path archivo, String nombreArchivo, ProgresoCarga progreso) {
+        return cargarTemplateGeneral(archivo, nombreArchivo, progreso, false);
+    }
 
-                int excelFila = r + 1;
-
-                LocalDate fecha    = getCellDate(row, COL_INI + IDX_MES);
-                String codBarra    = safeTrim(getCellText(row, COL_INI + IDX_COD_BARRA));
-                String descripcion = safeTrim(getCellText(row, COL_INI + IDX_DESCRIPCION));
-                String marca       = safeTrim(getCellText(row, COL_INI + IDX_MARCA));
-                Integer codLocal   = getCellInteger(row, COL_INI + IDX_COD_LOCAL);
-                String codPdv      = codLocal == null ? null : String.valueOf(codLocal).trim();
-                String ciudad      = safeTrim(getCellText(row, COL_INI + IDX_CIUDAD));
-                String pdv         = safeTrim(getCellText(row, COL_INI + IDX_NOMBRE_LOCAL));
-
-                Integer ventaUnidades = getCellInteger(row, COL_INI + IDX_VTA_UNIDADES);
-                Double  ventaUSD      = getCellDouble(row,  COL_INI + IDX_VTA_DOLARES);
-                Integer stockUnidades = getCellInteger(row, COL_INI + IDX_STOCK_PDV);
-
-                if (fecha == null) {
-                    omitidos++;
-                    detalleOmitidos.add(Map.of(
-                            "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
-                            "codPdv", Objects.toString(codPdv, ""),
-                            "motivo", "Columna MES inválida (esperado dd/MM/yyyy o fecha Excel)."
-                    ));
-                    codigosNoEncontrados.add(Map.of(
-                            "codigo", Objects.toString(codBarra, "SIN_COD_BARRA"),
-                            "motivo", "Fecha (MES) inválida. Fila: " + excelFila
-                    ));
-                    continue;
-                }
-                if (isBlank(codBarra)) {
-                    omitidos++;
-                    detalleOmitidos.add(Map.of(
-                            "fila", excelFila, "codBarra", "", "codPdv", Objects.toString(codPdv, ""),
-                            "motivo", "CODBARRA vacío."
-                    ));
-                    codigosNoEncontrados.add(Map.of("codigo", "CODBARRA_VACIO", "motivo", "CODBARRA vacío. Fila: " + excelFila));
-                    continue;
-                }
-                if (isBlank(pdv) && isBlank(codPdv)) {
-                    omitidos++;
-                    detalleOmitidos.add(Map.of(
-                            "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
-                            "codPdv", "", "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL)."
-                    ));
-                    codigosNoEncontrados.add(Map.of(
-                            "codigo", codBarra,
-                            "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL). Fila: " + excelFila
-                    ));
-                    continue;
-                }
+    /**
+     * @param simulacion valida sin guardar (ver SimulacionCarga): los clientes faltantes no se crean
+     *                   (se listan en clientesNuevos y sus filas cuentan como inserciones) y los chunks
+     *                   se validan en paralelo
+     */
+    public Map<String, Object> cargarTemplateGeneral(Path archivo, String nombreArchivo, ProgresoCarga progreso,
+                                                     boolean simulacion) {
+        return cargarTemplateGeneral(archivo, nombreArchivo, progreso, simulacion, EstrategiaCarga.UPSERT);
+    }
 
-                // ✅ CAMBIO ÚNICO: si codPdv viene vacío/null, usar placeholder para no mezclar tiendas
-                if (isBlank(codPdv)) codPdv = PDV_PLACEHOLDER;
-
-                RegistroFila rf = new RegistroFila(
-                        excelFila, codCliente, nombreCliente, fecha,
-                        codBarra, descripcion, marca, codPdv, ciudad, pdv,
-                        ventaUnidades, ventaUSD, stockUnidades
-                );
-                buffer.add(rf);
-
-                if (buffer.size() >= CHUNK_SIZE) {
-                    int[] res = txTemplate.execute(status ->
-                            procesarChunk(buffer, detalleInsertados, detalleActualizados,
-                                    detalleOmitidos, codigosAfectados, codigosNoEncontrados)
-                    );
-                    insertados += res[0];
-                    actualizados += res[1];
-                    omitidos += res[2];
-                    buffer.clear();
-                }
+    /**
+     * @param estrategia cómo se escriben las ventas (ver EscritorVentas; en simulación no aplica). Fuera de UPSERT
+     *                   no se buscan las existentes: todas las filas válidas cuentan como insertadas. Con
+     *                   REPLACE_PERIOD los periodos de cada cliente se reemplazan al final, si la carga no falló
+     */
+    public Map<String, Object> cargarTemplateGeneral(Path archivo, String nombreArchivo, ProgresoCarga progreso,
+                                                     boolean simulacion, EstrategiaCarga estrategia) {
+        EscritorVentas.Escritura escritura = escritorVentas.abrir(simulacion ? EstrategiaCarga.UPSERT : estrategia);
+        CargaTemplate carga = new CargaTemplate(plantillaService.plan(PlantillaService.TEMPLATE_GENERAL), progreso,
+                simulacion, escritura);
+        try {
+            if (CsvStreamingReader.esTextoDelimitado(archivo.toFile(), nombreArchivo)) {
+                leerCsv(archivo.toFile(), carga);
+            } else if (ExcelStreamingReader.esOoxml(archivo.toFile())) {
+                leerStreaming(archivo.toFile(), carga);
+            } else {
+                leerWorkbook(archivo.toFile(), carga);
             }
-
-            if (!buffer.isEmpty()) {
-                int[] res = txTemplate.execute(status ->
-                        procesarChunk(buffer, detalleInsertados, detalleActualizados,
-                                detalleOmitidos, codigosAfectados, codigosNoEncontrados)
-                );
-                insertados += res[0];
-                actualizados += res[1];
-                omitidos += res[2];
-                buffer.clear();
+            carga.cerrar();
+            if (!simulacion) {
+                progreso.fase("APLICANDO_" + escritura.estrategia().name());
+                carga.insertados += escritura.terminar().insertados();
             }
 
         } catch (Exception ex) {
             log.severe("Error al procesar CU4: " + ex.getMessage());
-            incidencias.add("ERROR FATAL: " + ex.getMessage());
-            codigosNoEncontrados.add(Map.of(
+            carga.abortar();
+            carga.incidencias.add("ERROR FATAL: " + ex.getMessage());
+            carga.codigosNoEncontrados.add(Map.of(
                     "codigo", "GENERAL",
                     "motivo", "ERROR FATAL: " + String.valueOf(ex.getMessage())
             ));
         }
 
+        List<String> incidencias = carga.incidencias;
         Map<String, Object> out = new LinkedHashMap<>();
         out.put("ok", incidencias.stream().noneMatch(s -> s.startsWith("ERROR")));
         out.put("archivo", nombreArchivo);
-        out.put("filasLeidas", filasLeidas);
-        out.put("filasConCodCliente", filasConCodCliente);
-        out.put("insertados", insertados);
-        out.put("actualizados", actualizados);
-        out.put("omitidos", omitidos);
+        out.put("filasLeidas", carga.filasLeidas);
+        out.put("filasConCodCliente", carga.filasConCodCliente);
+        out.put("insertados", carga.insertados);
+        out.put("actualizados", carga.actualizados);
+        out.put("sinCambios", carga.sinCambios);
+        out.put("omitidos", carga.omitidos);
         out.put("errores", (int) incidencias.stream().filter(s -> s.startsWith("Error") || s.startsWith("ERROR")).count());
         if (!incidencias.isEmpty()) out.put("incidencias", incidencias);
-        out.put("codigosNoEncontrados", codigosNoEncontrados);
-        out.put("detalleOmitidos", detalleOmitidos);
-        out.put("detalleInsertados", detalleInsertados);
-        out.put("detalleActualizados", detalleActualizados);
-        out.put("codigosAfectados", new ArrayList<>(codigosAfectados));
+        out.put("codigosNoEncontrados", carga.codigosNoEncontrados);
+        out.put("detalleOmitidos", carga.detalleOmitidos);
+        out.put("detalleInsertados", carga.detalleInsertados);
+        out.put("detalleActualizados", carga.detalleActualizados);
+        out.put("codigosAfectados", new ArrayList<>(carga.codigosAfectados));
+        out.put("escritura", escritura.rendimiento());
+        if (simulacion) {
+            out.put("clientesNuevos", new ArrayList<>(carga.clientesNuevos));
+            SimulacionCarga.marcar(out);
+        }
         return out;
     }
 
-    /** Procesa un chunk con validación de existencia en SAP por CODBARRA y asigna el cliente_id correcto. */
+    /** .xlsx: lectura SAX de la hoja Base; las filas ausentes en el XML cuentan como vacías (igual que el DOM). */
+    private void leerStreaming(File archivo, CargaTemplate carga) throws Exception {
+        List<String> hojas = ExcelStreamingReader.nombresHojas(archivo);
+        int idxHoja = indiceHojaBase(hojas);
+        if (idxHoja < 0) throw new IllegalArgumentException("Falta la hoja 'Base'.");
+        int declaradas = ExcelStreamingReader.filasDeclaradas(archivo, idxHoja);
+        carga.progreso.filasTotales(declaradas < 0 ? -1 : Math.max(0, declaradas - carga.plan.getFilaDatos()));
+
+        boolean[] encabezadosLeidos = {false};
+        ExcelStreamingReader.leerHoja(archivo, idxHoja, carga.plan.getColFin() + 1, manejadorFilas(carga, encabezadosLeidos));
+        if (!encabezadosLeidos[0]) carga.validarEncabezados(leerEncabezados(carga.plan, c -> null));
+    }
+
+    /** CSV/TSV con el contenido de la hoja 'Base' (mismas filas y columnas que en el Excel). */
+    private void leerCsv(File archivo, CargaTemplate carga) throws Exception {
+        int estimadas = CsvStreamingReader.filasEstimadas(archivo);
+        carga.progreso.filasTotales(estimadas < 0 ? -1 : Math.max(0, estimadas - carga.plan.getFilaDatos()));
+
+        boolean[] encabezadosLeidos = {false};
+        CsvStreamingReader.leer(archivo, carga.plan.getColFin() + 1, manejadorFilas(carga, encabezadosLeidos));
+        if (!encabezadosLeidos[0]) carga.validarEncabezados(leerEncabezados(carga.plan, c -> null));
+    }
+
+    /** Filas del lector en streaming (xlsx o CSV): encabezados y datos en las filas del plan de la plantilla. */
+    private ExcelStreamingReader.FilaHandler manejadorFilas(CargaTemplate carga, boolean[] encabezadosLeidos) {
+        PlanExtraccion plan = carga.plan;
+        int columnas = plan.getColFin() - plan.getColInicio() + 1;
+        int[] siguiente = {plan.getFilaDatos()};
+        return fila -> {
+            int r = fila.getIndice();
+            if (!encabezadosLeidos[0] && r >= plan.getFilaEncabezado()) {
+                carga.validarEncabezados(r == plan.getFilaEncabezado()
+                        ? leerEncabezados(plan, fila::valorCelda) : leerEncabezados(plan, c -> null));
+                encabezadosLeidos[0] = true;
+            }
+            if (r < plan.getFilaDatos()) return true;
+
+            // filas que no vienen en el XML (huecos) = filas nulas en el DOM
+            for (; siguiente[0] < r; siguiente[0]++) {
+                if (!carga.procesarFila(siguiente[0], new Object[columnas])) return false;
+            }
+            siguiente[0] = r + 1;
+
+            Object[] celdas = new Object[columnas];
+            for (int i = 0; i < celdas.length; i++) celdas[i] = valorCelda(fila, plan.getColInicio() + i);
+            return carga.procesarFila(r, celdas);
+        };
+    }
+
+    /** .xls (u otros formatos no OOXML): lectura DOM clásica. */
+    private void leerWorkbook(File archivo, CargaTemplate carga) throws Exception {
+        try (Workbook wb = WorkbookFactory.create(archivo, null, true)) {
+            Sheet sheet = getHojaBase(wb).orElseThrow(() ->
+                    new IllegalArgumentException("Falta la hoja 'Base'."));
+
+            PlanExtraccion plan = carga.plan;
+            Row encab = sheet.getRow(plan.getFilaEncabezado());
+            carga.validarEncabezados(leerEncabezados(plan, c -> getCellRaw(encab, c)));
+            carga.progreso.filasTotales(Math.max(0, sheet.getLastRowNum() + 1 - plan.getFilaDatos()));
+
+            for (int r = plan.getFilaDatos(); r <= sheet.getLastRowNum(); r++) {
+                Row row = sheet.getRow(r);
+                Object[] celdas = new Object[plan.getColFin() - plan.getColInicio() + 1];
+                for (int i = 0; i < celdas.length; i++) celdas[i] = getCellRaw(row, plan.getColInicio() + i);
+                if (!carga.procesarFila(r, celdas)) break;
+            }
+        }
+    }
+
+    /**
+     * Estado de una carga: validación fila a fila en el hilo lector y envío de {@link RegistroFila}
+     * por chunks a un {@link PipelineCarga}; el escritor corre {@link #procesarChunk} (una transacción
+     * por chunk) mientras se sigue decodificando el Excel.
+     * Las omisiones de lectura se guardan por chunk y se consolidan junto con el resultado del chunk,
+     * en orden, para que los detalles salgan igual que en la carga secuencial.
+     * En simulación hay un escritor por núcleo (los chunks no crean clientes ni escriben).
+     */
+    private final class CargaTemplate {
+        int insertados = 0, actualizados = 0, omitidos = 0, sinCambios = 0;
+        int filasLeidas = 0, filasConCodCliente = 0;
+        final List<String> incidencias = new ArrayList<>();
+        final List<Map<String, Object>> codigosNoEncontrados = new ArrayList<>();
+        final List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
+        final List<Map<String, Object>> detalleInsertados = new ArrayList<>();
+        final List<Map<String, Object>> detalleActualizados = new ArrayList<>();
+        final Set<String> codigosAfectados = new TreeSet<>();
+        final Set<String> clientesNuevos = new TreeSet<>();
+
+        // omisiones de lectura por número de chunk (el lector escribe solo en el chunk que está llenando)
+        private final Map<Integer, ResultadoChunk> lecturas = new ConcurrentHashMap<>();
+        private final PipelineCarga<RegistroFila, ResultadoChunk> pipeline;
+        private int vaciosConsecutivos = 0;
+        final PlanExtraccion plan;
+        final ProgresoCarga progreso;
+
+        CargaTemplate(PlanExtraccion plan, ProgresoCarga progreso, boolean simulacion, EscritorVentas.Escritura escritura) {
+            if (plan.getColInicio() < 0 || plan.getColFin() - plan.getColInicio() + 1 < HEADERS.size()) {
+                throw new IllegalStateException("Plantilla " + plan.getNombre() + ": se esperan "
+                        + HEADERS.size() + " columnas entre colInicio y colFin.");
+            }
+            this.plan = plan;
+            this.progreso = progreso;
+            progreso.fase("LEYENDO");
+            int escritores = simulacion ? SimulacionCarga.hilos() : ESCRITORES;
+            this.pipeline = new PipelineCarga<>(simulacion ? "template-general-validacion" : "template-general",
+                    CHUNK_SIZE, Math.max(COLA_CHUNKS, escritores), escritores, simulacion ? txSimulacion : txTemplate,
+                    (chunk, nro) -> {
+                        ResultadoChunk rc = new ResultadoChunk();
+                        int[] res = procesarChunk(chunk, rc.detalleInsertados, rc.detalleActualizados,
+                                rc.detalleOmitidos, rc.codigosAfectados, rc.codigosNoEncontrados,
+                                simulacion, rc.clientesNuevos, escritura);
+                        rc.insertados = res[0];
+                        rc.actualizados = res[1];
+                        rc.omitidos = res[2];
+                        rc.sinCambios = res[3];
+                        return rc;
+                    },
+                    (nro, rc) -> {
+                        ResultadoChunk l = lecturas.remove(nro);
+                        if (l != null) fusionar(l);
+                        fusionar(rc);
+                    });
+        }
+
+        private ResultadoChunk lectura() {
+            return lecturas.computeIfAbsent(pipeline.bloqueActual(), k -> new ResultadoChunk());
+        }
+
+        private void fusionar(ResultadoChunk rc) {
+            insertados += rc.insertados;
+            actualizados += rc.actualizados;
+            omitidos += rc.omitidos;
+            sinCambios += rc.sinCambios;
+            codigosNoEncontrados.addAll(rc.codigosNoEncontrados);
+            detalleOmitidos.addAll(rc.detalleOmitidos);
+            detalleInsertados.addAll(rc.detalleInsertados);
+            detalleActualizados.addAll(rc.detalleActualizados);
+            codigosAfectados.addAll(rc.codigosAfectados);
+            clientesNuevos.addAll(rc.clientesNuevos);
+        }
+
+        void validarEncabezados(List<String> headers) {
+            if (!headers.equals(HEADERS)) {
+                String msg = "Encabezados en B4:N4 no coinciden (se normaliza a MAYÚSCULAS, sin tildes, espacios colapsados).";
+                incidencias.add(msg);
+                lectura().codigosNoEncontrados.add(Map.of("codigo", "ENCABEZADOS", "motivo", msg));
+            }
+        }
+
+        /**
+         * @param r      índice 0-based de la fila
+         * @param celdas valores crudos de B..N (índices IDX_*)
+         * @return false cuando se encuentran 2 filas vacías consecutivas (fin de datos)
+         */
+        boolean procesarFila(int r, Object[] celdas) {
+            filasLeidas++;
+            progreso.filasProcesadas(filasLeidas);
+
+            String codClienteRaw    = getCellText(celdas[IDX_CODCLIENTE]);
+            String nombreClienteRaw = getCellText(celdas[IDX_CLIENTE]);
+
+            String codCliente    = safeTrim(codClienteRaw);
+            String nombreCliente = safeTrim(nombreClienteRaw);
+
+            if (isBlank(codCliente) && isBlank(nombreCliente)) {
+                vaciosConsecutivos++;
+                return vaciosConsecutivos < 2;
+            } else {
+                vaciosConsecutivos = 0;
+                filasConCodCliente++;
+            }
+
+            int excelFila = r + 1;
+
+            int fecha          = getCellDate(celdas[IDX_MES]);
+            String codBarra    = safeTrim(getCellText(celdas[IDX_COD_BARRA]));
+            String descripcion = safeTrim(getCellText(celdas[IDX_DESCRIPCION]));
+            String marca       = safeTrim(getCellText(celdas[IDX_MARCA]));
+            Integer codLocal   = getCellInteger(celdas[IDX_COD_LOCAL]);
+            String codPdv      = codLocal == null ? null : String.valueOf(codLocal).trim();
+            String ciudad      = safeTrim(getCellText(celdas[IDX_CIUDAD]));
+            String pdv         = safeTrim(getCellText(celdas[IDX_NOMBRE_LOCAL]));
+
+            Integer ventaUnidades = getCellInteger(celdas[IDX_VTA_UNIDADES]);
+            Double  ventaUSD      = getCellDouble(celdas[IDX_VTA_DOLARES]);
+            Integer stockUnidades = getCellInteger(celdas[IDX_STOCK_PDV]);
+
+            if (fecha == DecodificadorCeldas.SIN_FECHA) {
+                ResultadoChunk l = lectura();
+                l.omitidos++;
+                l.detalleOmitidos.add(Map.of(
+                        "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
+                        "codPdv", Objects.toString(codPdv, ""),
+                        "motivo", "Columna MES inválida (esperado dd/MM/yyyy o fecha Excel)."
+                ));
+                l.codigosNoEncontrados.add(Map.of(
+                        "codigo", Objects.toString(codBarra, "SIN_COD_BARRA"),
+                        "motivo", "Fecha (MES) inválida. Fila: " + excelFila
+                ));
+                return true;
+            }
+            if (isBlank(codBarra)) {
+                ResultadoChunk l = lectura();
+                l.omitidos++;
+                l.detalleOmitidos.add(Map.of(
+                        "fila", excelFila, "codBarra", "", "codPdv", Objects.toString(codPdv, ""),
+                        "motivo", "CODBARRA vacío."
+                ));
+                l.codigosNoEncontrados.add(Map.of("codigo", "CODBARRA_VACIO", "motivo", "CODBARRA vacío. Fila: " + excelFila));
+                return true;
+            }
+            if (isBlank(pdv) && isBlank(codPdv)) {
+                ResultadoChunk l = lectura();
+                l.omitidos++;
+                l.detalleOmitidos.add(Map.of(
+                        "fila", excelFila, "codBarra", Objects.toString(codBarra, ""),
+                        "codPdv", "", "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL)."
+                ));
+                l.codigosNoEncontrados.add(Map.of(
+                        "codigo", codBarra,
+                        "motivo", "Faltan datos de PDV (NOMBRE LOCAL y COD LOCAL). Fila: " + excelFila
+                ));
+                return true;
+            }
+
+            // ✅ CAMBIO ÚNICO: si codPdv viene vacío/null, usar placeholder para no mezclar tiendas
+            if (isBlank(codPdv)) codPdv = PDV_PLACEHOLDER;
+
+            pipeline.agregar(new RegistroFila(
+                    excelFila, codCliente, nombreCliente, fecha,
+                    codBarra, descripcion, marca, codPdv, ciudad, pdv,
+                    ventaUnidades, ventaUSD, stockUnidades
+            ));
+            return true;
+        }
+
+        /** Espera a que se guarden los chunks pendientes; relanza el error de escritura si lo hubo. */
+        void cerrar() {
+            progreso.fase("GUARDANDO");
+            Map<String, Object> stats = pipeline.terminar();
+            new TreeMap<>(lecturas).values().forEach(this::fusionar); // omisiones después del último chunk
+            lecturas.clear();
+            log.info("CU4 pipeline: " + stats);
+        }
+
+        /** Si la carga no llegó a {@link #cerrar()}, corta los escritores y conserva lo ya consolidado. */
+        void abortar() {
+            pipeline.close();
+            new TreeMap<>(lecturas).values().forEach(this::fusionar);
+            lecturas.clear();
+        }
+    }
+
+    /** Resultado parcial de un chunk (omisiones de lectura o resultado de procesarChunk). */
+    private static final class ResultadoChunk {
+        int insertados, actualizados, omitidos, sinCambios;
+        final List<Map<String, Object>> codigosNoEncontrados = new ArrayList<>();
+        final List<Map<String, Object>> detalleOmitidos = new ArrayList<>();
+        final List<Map<String, Object>> detalleInsertados = new ArrayList<>();
+        final List<Map<String, Object>> detalleActualizados = new ArrayList<>();
+        final Set<String> codigosAfectados = new TreeSet<>();
+        final Set<String> clientesNuevos = new TreeSet<>();
+    }
+
+    /**
+     * Procesa un chunk con validación de existencia en SAP por CODBARRA y asigna el cliente_id correcto.
+     * Las ventas existentes cuyo hash_fila coincide con la fila entrante se cuentan como sinCambios y no se escriben.
+     * Con {@code simulacion} solo se clasifica: no se crean clientes (van a {@code clientesNuevos}) ni se escriben ventas.
+     * Las ventas se escriben con {@code escritura}; fuera de UPSERT no se consultan las existentes.
+     * @return {insertados, actualizados, omitidos, sinCambios}
+     */
     private int[] procesarChunk(
             List<RegistroFila> chunk,
             List<Map<String, Object>> detalleInsertados,
             List<Map<String, Object>> detalleActualizados,
             List<Map<String, Object>> detalleOmitidos,
             Set<String> codigosAfectados,
-            List<Map<String, Object>> codigosNoEncontrados
+            List<Map<String, Object>> codigosNoEncontrados,
+            boolean simulacion,
+            Set<String> clientesNuevos,
+            EscritorVentas.Escritura escritura
     ) {
         // 1) Recolectar dominios y map (codCliente -> nombre) para precrear/obtener ID
         Set<String> codBarras   = new HashSet<>();
@@ -278,9 +491,9 @@ public class TemplateGeneralService {
             }
             if (rf.codBarra != null) codBarras.add(rf.codBarra);
             if (rf.codPdv != null)   codPdvs.add(rf.codPdv);
-            anios.add(rf.fecha.getYear());
-            meses.add(rf.fecha.getMonthValue());
-            dias.add(rf.fecha.getDayOfMonth());
+            anios.add(DecodificadorCeldas.anio(rf.fecha));
+            meses.add(DecodificadorCeldas.mes(rf.fecha));
+            dias.add(DecodificadorCeldas.dia(rf.fecha));
 
         }
 
@@ -288,7 +501,7 @@ public class TemplateGeneralService {
         Map<String, String> sapByCb = prefetchSapByCodBarra(codBarras);
 
         // 3) Resolver/crear clientes y obtener sus IDs
-        Map<String, Cliente> clientes = prefetchClientes(codClienteToNombre, codigosNoEncontrados);
+        Map<String, Cliente> clientes = prefetchClientes(codClienteToNombre, codigosNoEncontrados, simulacion, clientesNuevos);
         Map<String, Cliente> clientesPorCodigo = new HashMap<>();
         for (Cliente c : clientes.values()) {
             clientesPorCodigo.putIfAbsent(soloCod(c.getCodCliente()), c);
@@ -299,16 +512,22 @@ public class TemplateGeneralService {
             }
         }
 
-        // 4) Prefetch de ventas EXISTENTES por clienteId
+        // 4) Prefetch de ventas EXISTENTES por clienteId (solo id + hash, sin cargar entidades)
         Set<Long> clienteIds = new HashSet<>();
         for (Cliente c : clientesPorCodigo.values()) if (c.getId() != null) clienteIds.add(c.getId());
-        Map<String, Venta> ventasExistentes =
-                prefetchVentas(anios, meses, dias, codBarras, codPdvs, clienteIds);
+        // codBarra/codPdv → id para las claves del chunk (lote y existentes con el mismo diccionario)
+        DiccionarioClaves claves = new DiccionarioClaves();
+        VentasExistentes ventasExistentes = escritura.estrategia() == EstrategiaCarga.UPSERT
+                ? prefetchVentas(anios, meses, dias, codBarras, codPdvs, clienteIds, claves)
+                : new VentasExistentes();
 
-        int insertados = 0, actualizados = 0, omitidos = 0, i = 0;
+        int insertados = 0, actualizados = 0, omitidos = 0, sinCambios = 0;
 
+        // 5) Validar filas y armar la venta tal como quedaría; las existentes con el mismo hash no se tocan
+        List<FilaValida> validas = new ArrayList<>(chunk.size());
+        MapaVentaKey clavesVistas = new MapaVentaKey(chunk.size());
         for (RegistroFila rf : chunk) {
-            // 4.1 Resolver cliente para la fila (ID real)
+            // 5.1 Resolver cliente para la fila (ID real)
             Cliente clienteFila = resolverClienteParaFila(rf, clientes, clientesPorCodigo);
 
             if (clienteFila == null || clienteFila.getId() == null) {
@@ -326,7 +545,7 @@ public class TemplateGeneralService {
                 continue;
             }
 
-            // 4.2 Validar que el codBarra exista en SAP
+            // 5.2 Validar que el codBarra exista en SAP
             String sap = sapByCb.get(rf.codBarra);
             if (sap == null) {
                 omitidos++;
@@ -350,47 +569,48 @@ public class TemplateGeneralService {
                 continue;
             }
 
-            // 4.3 Upsert *por cliente_id* + (anio, mes, codBarra, codPdv)
-            String key = buildKey(
-                    rf.fecha.getYear(),
-                    rf.fecha.getMonthValue(),
-                    rf.fecha.getDayOfMonth(),
+            // 5.3 Upsert *por cliente_id* + (anio, mes, codBarra, codPdv)
+            VentaKey key = claves.clave(
+                    clienteFila.getId(),
+                    DecodificadorCeldas.anio(rf.fecha),
+                    DecodificadorCeldas.mes(rf.fecha),
+                    DecodificadorCeldas.dia(rf.fecha),
                     rf.codBarra,
-                    rf.codPdv,
-                    clienteFila.getId()
+                    rf.codPdv
             );
 
-            Venta v = ventasExistentes.get(key);
-            boolean esNuevo = false;
-
-            if (v == null) {
-                v = new Venta();
-                v.setAnio(rf.fecha.getYear());
-                v.setMes(rf.fecha.getMonthValue());
-                v.setCodBarra(rf.codBarra);
-                v.setCodPdv(rf.codPdv);
-                v.setCliente(clienteFila);
-                esNuevo = true;
-            } else {
-                v.setCliente(clienteFila);
+            Venta nueva = new Venta();
+            nueva.setAnio(DecodificadorCeldas.anio(rf.fecha));
+            nueva.setMes(DecodificadorCeldas.mes(rf.fecha));
+            nueva.setCodBarra(rf.codBarra);
+            nueva.setCodPdv(rf.codPdv);
+            nueva.setCliente(clienteFila);
+            aplicarFila(nueva, rf, sap);
+
+            VentaExistente ex = ventasExistentes.get(key);
+            // la primera aparición de la clave se compara con lo guardado; las repetidas en el chunk siempre actualizan
+            boolean primera = clavesVistas.put(key, 0) == MapaVentaKey.AUSENTE;
+            if (ex != null && primera && ex.sinCambios(nueva)) {
+                sinCambios++;
+                continue;
             }
+            validas.add(new FilaValida(rf, key, nueva));
+        }
 
-            v.setDia(rf.fecha.getDayOfMonth());
-            v.setMarca(rf.marca);
-            v.setNombreProducto(rf.descripcion);
-            v.setDescripcion(rf.descripcion);
-            v.setPdv(rf.pdv);
-            v.setCiudad(rf.ciudad);
-            v.setVentaUnidad(rf.ventaUnidades != null ? rf.ventaUnidades : 0);
-            v.setVentaDolares(rf.ventaUSD != null ? rf.ventaUSD : 0.0);
-            v.setStockUnidades(rf.stockUnidades != null ? rf.stockUnidades : 0);
-            v.setStockDolares(0);
-            v.setUnidadesDiarias("0");
-            v.setCodigoSap(sap);
+        // 6) Escribir (en simulación solo se cuentan): la última fila de cada clave va al MERGE de VentaMergeWriter,
+        //    que conserva el producto de la existente; el hash se calcula con ese producto
+        MapaVentaKey posicionEscrita = new MapaVentaKey(validas.size());
+        List<Venta> escritas = new ArrayList<>(validas.size());
+        for (FilaValida f : validas) {
+            RegistroFila rf = f.rf;
+            VentaExistente ex = ventasExistentes.get(f.key);
+            int previa = posicionEscrita.putIfAbsent(f.key, escritas.size());
+            boolean esNuevo = ex == null && previa == MapaVentaKey.AUSENTE;
+            Venta v = f.nueva;
+            v.setHashFila(ex == null ? HashFilaVenta.de(v) : HashFilaVenta.de(v, ex.productoId));
+            if (previa == MapaVentaKey.AUSENTE) escritas.add(v); else escritas.set(previa, v);
 
             if (esNuevo) {
-                em.persist(v);
-                ventasExistentes.put(key, v);
                 insertados++;
                 detalleInsertados.add(Map.of(
                         "fila", rf.excelFila,
@@ -411,26 +631,77 @@ public class TemplateGeneralService {
             }
 
             codigosAfectados.add(rf.codBarra);
-
-            if (++i % BATCH_SIZE == 0) {
-                em.flush();
-                em.clear();
-            }
         }
 
-        em.flush();
+        if (!simulacion && !escritas.isEmpty()) {
+            em.flush(); // clientes creados en el paso 3 antes del MERGE por JDBC
+            escritura.escribir(escritas, VentaMergeWriter.Modo.CONSERVA_PRODUCTO);
+        }
         em.clear();
 
-        return new int[]{insertados, actualizados, omitidos};
+        return new int[]{insertados, actualizados, omitidos, sinCambios};
+    }
+
+    /** Campos que la carga escribe sobre la venta (nueva o existente). */
+    private static void aplicarFila(Venta v, RegistroFila rf, String sap) {
+        v.setDia(DecodificadorCeldas.dia(rf.fecha));
+        v.setMarca(rf.marca);
+        v.setNombreProducto(rf.descripcion);
+        v.setDescripcion(rf.descripcion);
+        v.setPdv(rf.pdv);
+        v.setCiudad(rf.ciudad);
+        v.setVentaUnidad(rf.ventaUnidades != null ? rf.ventaUnidades : 0);
+        v.setVentaDolares(rf.ventaUSD != null ? rf.ventaUSD : 0.0);
+        v.setStockUnidades(rf.stockUnidades != null ? rf.stockUnidades : 0);
+        v.setStockDolares(0);
+        v.setUnidadesDiarias("0");
+        v.setCodigoSap(sap);
+    }
+
+    /** Fila del chunk que pasó las validaciones y se va a insertar o actualizar. */
+    private record FilaValida(RegistroFila rf, VentaKey key, Venta nueva) {}
+
+    /** Venta ya guardada para una clave del chunk. */
+    private static final class VentaExistente {
+        final long id;
+        final Long productoId;
+        final Long hashFila;
+
+        VentaExistente(long id, Long productoId, Long hashFila) {
+            this.id = id;
+            this.productoId = productoId;
+            this.hashFila = hashFila;
+        }
+
+        /** true si aplicar la fila deja la venta igual (la carga no cambia el producto de la existente). */
+        boolean sinCambios(Venta nueva) {
+            return hashFila != null && hashFila == HashFilaVenta.de(nueva, productoId);
+        }
+    }
+
+    /** Ventas ya guardadas del chunk por {@link VentaKey}; ante claves repetidas en la tabla queda la última leída. */
+    private static final class VentasExistentes {
+        final MapaVentaKey indice = new MapaVentaKey(64);
+        final List<VentaExistente> filas = new ArrayList<>();
+
+        void put(VentaKey k, VentaExistente ex) {
+            int i = indice.putIfAbsent(k, filas.size());
+            if (i == MapaVentaKey.AUSENTE) filas.add(ex); else filas.set(i, ex);
+        }
+
+        VentaExistente get(VentaKey k) {
+            int i = indice.get(k);
+            return i == MapaVentaKey.AUSENTE ? null : filas.get(i);
+        }
     }
 
     // ==== Prefetch helpers (ahora con cliente_id en la clave) ====
 
-    @SuppressWarnings("unchecked")
-    private Map<String, Venta> prefetchVentas(Set<Integer> anios, Set<Integer> meses, Set<Integer> dias,
-                                             Set<String> codBarras, Set<String> codPdvs, Set<Long> clienteIds)
+    private VentasExistentes prefetchVentas(Set<Integer> anios, Set<Integer> meses, Set<Integer> dias,
+                                            Set<String> codBarras, Set<String> codPdvs, Set<Long> clienteIds,
+                                            DiccionarioClaves claves)
     {
-        Map<String, Venta> out = new HashMap<>();
+        VentasExistentes out = new VentasExistentes();
         if (anios.isEmpty() || meses.isEmpty() || codBarras.isEmpty() || clienteIds.isEmpty()) return out;
 
         List<Integer> aniosL = new ArrayList<>(anios);
@@ -444,7 +715,8 @@ public class TemplateGeneralService {
             for (List<String> pdvSub : partitions(pdvsChunk, IN_LIMIT)) {
                 for (List<Long> clientesSub : partitions(clientesL, IN_LIMIT)) {
                     String jpql =
-                            "SELECT v FROM Venta v " +
+                            "SELECT v.id, v.anio, v.mes, v.dia, v.codBarra, v.codPdv, v.cliente.id, p.id, v.hashFila " +
+                            "FROM Venta v LEFT JOIN v.producto p " +
                             "WHERE v.anio IN :anios AND v.mes IN :meses AND v.dia IN :dias " +
                             "AND v.codBarra IN :barras " +
                             (codPdvs.isEmpty()
@@ -452,7 +724,7 @@ public class TemplateGeneralService {
                                     : "AND (v.codPdv IN :pdvs OR v.codPdv IS NULL) ") +
                             "AND v.cliente.id IN :clientes";
 
-                    var q = em.createQuery(jpql, Venta.class)
+                    var q = em.createQuery(jpql, Object[].class)
                             .setParameter("anios", aniosL)
                             .setParameter("meses", mesesL)
                             .setParameter("dias", new ArrayList<>(dias))
@@ -461,37 +733,24 @@ public class TemplateGeneralService {
 
                     if (!codPdvs.isEmpty()) q.setParameter("pdvs", pdvSub);
 
-                    List<Venta> res = q.getResultList();
-                    for (Venta v : res) {
-                        String k = buildKey(
-                                v.getAnio(),
-                                v.getMes(),
-                                v.getDia(),
-                                v.getCodBarra(),
-                                v.getCodPdv(),
-                                (v.getCliente() != null ? v.getCliente().getId() : null)
+                    for (Object[] r : q.getResultList()) {
+                        VentaKey k = claves.clave(
+                                (Long) r[6],
+                                (Integer) r[1],
+                                (Integer) r[2],
+                                r[3] == null ? 0 : (Integer) r[3],
+                                (String) r[4],
+                                (String) r[5]
                         );
 
-                        out.put(k, v);
+                        out.put(k, new VentaExistente((Long) r[0], (Long) r[7], (Long) r[8]));
                     }
-                    em.clear();
                 }
             }
         }
         return out;
     }
 
-    private static String buildKey(Integer anio, Integer mes, Integer dia,
-                                   String codBarra, String codPdv, Long clienteId) {
-
-        return (anio == null ? "" : anio) + "|" +
-                (mes == null ? "" : mes) + "|" +
-                (dia == null ? "" : dia) + "|" +
-                (codBarra == null ? "" : codBarra.trim()) + "|" +
-                (codPdv == null ? "" : codPdv.trim()) + "|" +
-                (clienteId == null ? "" : clienteId);
-    }
-
     private static String soloCod(String codCliente) {
         return codCliente == null ? null : codCliente.trim().toUpperCase(Locale.ROOT);
     }
@@ -544,10 +803,14 @@ public class TemplateGeneralService {
      * - No actualiza clientes existentes.
      * - Permite múltiples filas con MISMO codCliente pero distinto nombreCliente (según tu regla).
      * - Usa verificación *batch* con VALUES para eficiencia en SQL Server.
+     * - En simulación no crea: el faltante queda con id provisional negativo (no coincide con ventas
+     *   guardadas, sus filas cuentan como inserciones) y se anota en {@code clientesNuevos}.
      */
     private Map<String, Cliente> prefetchClientes(
             Map<String, String> codClienteToNombre,
-            List<Map<String, Object>> codigosNoEncontrados
+            List<Map<String, Object>> codigosNoEncontrados,
+            boolean simulacion,
+            Set<String> clientesNuevos
     ) {
         Map<String, Cliente> out = new HashMap<>();
         if (codClienteToNombre == null || codClienteToNombre.isEmpty()) return out;
@@ -618,6 +881,16 @@ public class TemplateGeneralService {
             String codUpper = par.substring(0, sep);
             String nombreTrimOriginal = paresNorm.get(par);
 
+            if (simulacion) {
+                Cliente provisional = new Cliente();
+                provisional.setId(-(long) (out.size() + 1));
+                provisional.setCodCliente(codUpper);
+                provisional.setNombreCliente(nombreTrimOriginal);
+                out.put(par, provisional);
+                clientesNuevos.add(codUpper + " | " + nombreTrimOriginal);
+                continue;
+            }
+
             try {
                 Cliente nuevo = new Cliente();
                 nuevo.setCodCliente(codUpper);
@@ -660,7 +933,8 @@ public class TemplateGeneralService {
             }
         }
 
-        em.flush(); em.clear();
+        if (!simulacion) em.flush();
+        em.clear();
         return out;
     }
 
@@ -691,24 +965,32 @@ public class TemplateGeneralService {
         return Optional.ofNullable(wb.getSheet(HOJA));
     }
 
-    private List<String> leerEncabezados(Sheet sheet) {
-        Row row = sheet.getRow(FILA_ENCAB);
+    /** Mismo criterio que {@link #getHojaBase(Workbook)} sobre los nombres de hoja del .xlsx. */
+    private static int indiceHojaBase(List<String> nombres) {
+        for (int i = 0; i < nombres.size(); i++) {
+            if ("BASE".equals(normalizar(nombres.get(i)))) return i;
+        }
+        for (int i = 0; i < nombres.size(); i++) {
+            if (HOJA.equalsIgnoreCase(nombres.get(i))) return i;
+        }
+        return -1;
+    }
+
+    private List<String> leerEncabezados(PlanExtraccion plan, java.util.function.IntFunction<Object> celda) {
         List<String> headers = new ArrayList<>();
-        for (int c = COL_INI; c <= COL_FIN; c++) {
-            headers.add(normalizar(getCellText(row, c)));
+        for (int c = plan.getColInicio(); c <= plan.getColFin(); c++) {
+            headers.add(normalizar(getCellText(celda.apply(c))));
         }
         return headers;
     }
 
-    private String getCellText(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
+    private String getCellText(Object raw) {
         if (raw == null) return null;
         String s = String.valueOf(raw).trim();
         return s.isEmpty() ? null : s;
     }
 
-    private Integer getCellInteger(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
+    private Integer getCellInteger(Object raw) {
         if (raw == null) return null;
         try {
             if (raw instanceof Number) return ((Number) raw).intValue();
@@ -720,18 +1002,19 @@ public class TemplateGeneralService {
         }
     }
 
-    private Double getCellDouble(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
-        if (raw == null) return null;
-        try {
-            if (raw instanceof Number) return ((Number) raw).doubleValue();
-            String s = String.valueOf(raw).trim();
-            if (s.isEmpty()) return null;
-            s = s.replace(",", ".");
-            return Double.valueOf(s);
-        } catch (Exception e) {
-            return null;
-        }
+    private Double getCellDouble(Object raw) {
+        if (raw instanceof Number n) return n.doubleValue();
+        double v = raw instanceof String s ? DecodificadorCeldas.numero(s) : Double.NaN;
+        return Double.isNaN(v) ? null : v;
+    }
+
+    /** Celda del lector en streaming; las fechas como LocalDate, igual que en {@link #getCellRaw}. */
+    private static Object valorCelda(ExcelStreamingReader.Fila fila, int col) {
+        return fila.esFecha(col) ? DecodificadorCeldas.aLocalDate(DecodificadorCeldas.fecha(fila, col)) : fila.valor(col);
+    }
+
+    private static LocalDate fechaCelda(Cell cell) {
+        return DecodificadorCeldas.aLocalDate(DecodificadorCeldas.fecha(cell, true));
     }
 
     private Object getCellRaw(Row row, int colIndex) {
@@ -740,12 +1023,12 @@ public class TemplateGeneralService {
         if (cell == null) return null;
         switch (cell.getCellType()) {
             case STRING:  return cell.getStringCellValue();
-            case NUMERIC: return DateUtil.isCellDateFormatted(cell) ? cell.getDateCellValue() : cell.getNumericCellValue();
+            case NUMERIC: return DateUtil.isCellDateFormatted(cell) ? fechaCelda(cell) : cell.getNumericCellValue();
             case BOOLEAN: return cell.getBooleanCellValue();
             case FORMULA:
                 try {
                     if (cell.getCachedFormulaResultType() == CellType.NUMERIC) {
-                        return DateUtil.isCellDateFormatted(cell) ? cell.getDateCellValue() : cell.getNumericCellValue();
+                        return DateUtil.isCellDateFormatted(cell) ? fechaCelda(cell) : cell.getNumericCellValue();
                     } else if (cell.getCachedFormulaResultType() == CellType.STRING) {
                         return cell.getStringCellValue();
                     }
@@ -755,34 +1038,9 @@ public class TemplateGeneralService {
         }
     }
 
-    private LocalDate getCellDate(Row row, int colIndex) {
-        Object raw = getCellRaw(row, colIndex);
-        if (raw == null) return null;
-        try {
-            if (raw instanceof Date) {
-                return ((Date) raw).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-            }
-            if (raw instanceof Number) {
-                Date d = DateUtil.getJavaDate(((Number) raw).doubleValue());
-                return d.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-            }
-            String s = String.valueOf(raw).trim();
-            if (s.isEmpty()) return null;
-            int spaceIdx = s.indexOf(' ');
-            if (spaceIdx > 0) s = s.substring(0, spaceIdx);
-            int tIdx = s.indexOf('T');
-            if (tIdx > 0) s = s.substring(0, tIdx);
-            return tryParseLocalDate(s);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private LocalDate tryParseLocalDate(String s) {
-        for (var f : DATE_FORMATS) {
-            try { return LocalDate.parse(s, f); } catch (Exception ignore) {}
-        }
-        return null;
+    /** Fecha yyyyMMdd (DecodificadorCeldas.SIN_FECHA si no es fecha): LocalDate, serial de Excel o texto. */
+    private int getCellDate(Object raw) {
+        return DecodificadorCeldas.fecha(raw);
     }
 
     private static String normalizar(String s) {
@@ -805,10 +1063,123 @@ public class TemplateGeneralService {
     }
 
     // =========================
-    //   BORRADO MASIVO 5000
+    //   TXT DE INCIDENCIAS
     // =========================
 
-    /** Elimina HASTA 5000 ventas según una selección explícita del front (claves). */
+    /** TXT de incidencias de una carga (resumen + detalle omitidos/insertados/actualizados). */
+    public String generarIncidenciasTxt(Map<String, Object> res, String nombreArchivo) {
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder();
+
+        // Portada
+        sb.append("INCIDENCIAS DETECTADAS - TEMPLATE GENERAL (CU4)").append(nl);
+        sb.append("Archivo: ").append(nombreArchivo).append(nl);
+        sb.append("Generado: ")
+        .append(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+        .append(nl);
+        sb.append("----").append(nl);
+
+        // Resumen
+        sb.append("[RESUMEN]").append(nl);
+        sb.append("ok=").append(res.getOrDefault("ok", false)).append(nl);
+        sb.append("filasLeidas=").append(res.getOrDefault("filasLeidas", 0)).append(nl);
+        sb.append("filasConCodCliente=").append(res.getOrDefault("filasConCodCliente", 0)).append(nl);
+        sb.append("insertados=").append(res.getOrDefault("insertados", 0)).append(nl);
+        sb.append("actualizados=").append(res.getOrDefault("actualizados", 0)).append(nl);
+        sb.append("sinCambios=").append(res.getOrDefault("sinCambios", 0)).append(nl);
+        sb.append("omitidos=").append(res.getOrDefault("omitidos", 0)).append(nl);
+        sb.append("errores=").append(res.getOrDefault("errores", 0)).append(nl);
+        sb.append("----").append(nl).append(nl);
+
+        // Errores/advertencias generales
+        sb.append("[INCIDENCIAS GENERALES]").append(nl);
+        Object inc = res.get("incidencias");
+        if (inc instanceof List<?> lst && !lst.isEmpty()) {
+            for (Object it : lst) sb.append("- ").append(String.valueOf(it)).append(nl);
+        } else {
+            sb.append("Sin incidencias.").append(nl);
+        }
+        sb.append(nl);
+
+        // Detalle: Omitidos
+        sb.append("[DETALLE DE FILAS OMITIDAS]").append(nl);
+        List<?> omitidos = (List<?>) res.getOrDefault("detalleOmitidos", List.of());
+        if (omitidos.isEmpty()) {
+            sb.append("Sin filas omitidas.").append(nl);
+        } else {
+            sb.append("Fila\tCODBARRA\tCOD_PDV\tMotivo").append(nl);
+            for (Object o : omitidos) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append(Objects.toString(m.get("fila"), ""))
+                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
+                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
+                    .append('\t').append(Objects.toString(m.get("motivo"), ""))
+                    .append(nl);
+                }
+            }
+        }
+        sb.append(nl);
+
+        // Detalle: Insertados
+        sb.append("[DETALLE DE FILAS INSERTADAS]").append(nl);
+        List<?> insertados = (List<?>) res.getOrDefault("detalleInsertados", List.of());
+        if (insertados.isEmpty()) {
+            sb.append("Sin filas insertadas.").append(nl);
+        } else {
+            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
+            for (Object o : insertados) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append(Objects.toString(m.get("fila"), ""))
+                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
+                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
+                    .append(nl);
+                }
+            }
+        }
+        sb.append(nl);
+
+        // Detalle: Actualizados
+        sb.append("[DETALLE DE FILAS ACTUALIZADAS]").append(nl);
+        List<?> actualizados = (List<?>) res.getOrDefault("detalleActualizados", List.of());
+        if (actualizados.isEmpty()) {
+            sb.append("Sin filas actualizadas.").append(nl);
+        } else {
+            sb.append("Fila\tCODBARRA\tCOD_PDV\tVentaUnd\tVentaUSD").append(nl);
+            for (Object o : actualizados) {
+                if (o instanceof Map<?, ?> m) {
+                    sb.append(Objects.toString(m.get("fila"), ""))
+                    .append('\t').append(Objects.toString(m.get("codBarra"), ""))
+                    .append('\t').append(Objects.toString(m.get("codPdv"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUnidades"), ""))
+                    .append('\t').append(Objects.toString(m.get("ventaUSD"), ""))
+                    .append(nl);
+                }
+            }
+        }
+        sb.append(nl);
+
+        // Listado de códigos afectados
+        sb.append("[CÓDIGOS AFECTADOS EN ESTA CARGA (CODBARRA)]").append(nl);
+        List<?> codigos = (List<?>) res.getOrDefault("codigosAfectados", List.of());
+        if (codigos.isEmpty()) {
+            sb.append("Ninguno.").append(nl);
+        } else {
+            for (Object c : codigos) sb.append("- ").append(String.valueOf(c)).append(nl);
+        }
+
+        return sb.toString();
+    }
+
+    // =========================
+    //   BORRADO MASIVO
+    // =========================
+
+    /**
+     * Encola la eliminación de todas las ventas de la selección (claves del front, sin tope); devuelve el job
+     * (EliminacionJobService) para seguir su avance.
+     */
     public Map<String, Object> eliminarVentasSeleccionadas(List<KeyVenta> seleccion) {
         Map<String, Object> out = new LinkedHashMap<>();
         if (seleccion == null || seleccion.isEmpty()) {
@@ -817,106 +1188,22 @@ public class TemplateGeneralService {
             out.put("mensaje", "No hay registros seleccionados.");
             return out;
         }
-        int objetivo = Math.min(seleccion.size(), DELETE_UI_BATCH);
-
-        int[] totalEliminados = new int[]{0};
-        txTemplate.execute(status -> {
-            List<KeyVenta> ventana = seleccion.subList(0, objetivo);
-            for (List<KeyVenta> chunk : partitions(ventana, FILAS_POR_SENTENCIA)) {
-                totalEliminados[0] += deleteChunkByValues(chunk);
-                if (totalEliminados[0] >= objetivo) break;
-            }
-            return null;
-        });
-
         out.put("ok", true);
-        out.put("solicitados", seleccion.size());
-        out.put("procesadosMaximo", objetivo);
-        out.put("eliminados", totalEliminados[0]);
-        out.put("mensaje", "Eliminación masiva por selección realizada en tandas internas (máx. 5000).");
+        out.putAll(eliminacionJobService.encolarSeleccion(seleccion));
+        out.put("mensaje", "Eliminación de " + seleccion.size() + " registros encolada.");
         return out;
     }
 
-    /** Borra un sublote usando tabla derivada VALUES y JOIN (sin cliente para mantener compatibilidad actual). */
-    private int deleteChunkByValues(List<KeyVenta> chunk) {
-        if (chunk == null || chunk.isEmpty()) return 0;
-
-        int maxFilasSeguras = Math.min(chunk.size(), SQLSERVER_PARAM_LIMIT / PARAMS_POR_FILA);
-        List<KeyVenta> safe = chunk.subList(0, maxFilasSeguras);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("DELETE v ")
-          .append("FROM Venta v ")
-          .append("JOIN (VALUES ");
-
-        for (int i = 0; i < safe.size(); i++) {
-            if (i > 0) sb.append(",");
-            sb.append("(?, ?, ?, ?)");
-        }
-        sb.append(") AS T(anio, mes, codBarra, codPdv) ")
-          .append("ON v.anio = T.anio ")
-          .append("AND v.mes = T.mes ")
-          .append("AND v.codBarra = T.codBarra ")
-          .append("AND ( (v.codPdv = T.codPdv) OR (v.codPdv IS NULL AND T.codPdv IS NULL) )");
-
-        Query q = em.createNativeQuery(sb.toString());
-
-        int idx = 1;
-        for (KeyVenta k : safe) {
-            q.setParameter(idx++, k.anio);
-            q.setParameter(idx++, k.mes);
-            q.setParameter(idx++, k.codBarra);
-            if (k.codPdv == null || k.codPdv.trim().isEmpty()) {
-                q.setParameter(idx++, null);
-            } else {
-                q.setParameter(idx++, k.codPdv);
-            }
-        }
-        int afectadas = q.executeUpdate();
-        em.clear();
-        return afectadas;
-    }
-
-    /** Elimina por filtros (año/mes/marca/pdv) en tandas de TOP (5000). */
+    /** Encola la eliminación por filtros (año/mes/marca/pdv, hasta maxTotal si viene); devuelve el job. */
     public Map<String, Object> eliminarPorFiltros(
             Integer anio, Integer mes, String marca, String codPdv,
             Integer maxTotal
     ) {
         Map<String, Object> out = new LinkedHashMap<>();
-        int total = 0;
-        boolean seguir = true;
-
-        while (seguir) {
-            StringBuilder where = new StringBuilder(" WHERE 1=1 ");
-            List<Object> params = new ArrayList<>();
-
-            if (anio != null) { where.append(" AND v.anio = ? "); params.add(anio); }
-            if (mes  != null)  { where.append(" AND v.mes  = ? "); params.add(mes); }
-            if (marca != null && !marca.isBlank()) {
-                where.append(" AND v.marca = ? "); params.add(marca.trim());
-            }
-            if (codPdv != null && !codPdv.isBlank()) {
-                where.append(" AND v.codPdv = ? "); params.add(codPdv.trim());
-            }
-
-            String sql = "DELETE TOP (" + DELETE_UI_BATCH + ") FROM Venta v " + where;
-            Query q = em.createNativeQuery(sql);
-            for (int i = 0; i < params.size(); i++) q.setParameter(i + 1, params.get(i));
-
-            int afectadas = txTemplate.execute(status -> {
-                int n = q.executeUpdate();
-                em.clear();
-                return n;
-            });
-
-            total += afectadas;
-            boolean alcanzadoTope = (maxTotal != null && total >= maxTotal);
-            seguir = (afectadas == DELETE_UI_BATCH) && !alcanzadoTope;
-        }
-
         out.put("ok", true);
-        out.put("eliminados", total);
-        out.put("mensaje", "Eliminación por filtros completada en tandas de 5000.");
+        out.putAll(eliminacionJobService.encolarFiltro(anio, mes, marca, codPdv,
+                maxTotal == null ? null : maxTotal.longValue()));
+        out.put("mensaje", "Eliminación por filtros encolada.");
         return out;
     }
 
@@ -924,39 +1211,14 @@ public class TemplateGeneralService {
     //   Tipos auxiliares
     // =========================
 
-    public static final class KeyVenta {
-        final int anio;
-        final int mes;
-        final String codBarra;
-        final String codPdv;
-
-        public KeyVenta(int anio, int mes, String codBarra, String codPdv) {
-            this.anio = anio;
-            this.mes = mes;
-            this.codBarra = codBarra;
-            this.codPdv = codPdv;
-        }
-
-        @Override public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof KeyVenta)) return false;
-            KeyVenta k = (KeyVenta) o;
-            return anio == k.anio &&
-                    mes == k.mes &&
-                    Objects.equals(codBarra, k.codBarra) &&
-                    Objects.equals(codPdv, k.codPdv);
-        }
-
-        @Override public int hashCode() {
-            return Objects.hash(anio, mes, codBarra, codPdv);
-        }
-    }
+    /** Clave de una venta seleccionada en el front (sin cliente ni día: cubre todas las que coincidan). */
+    public record KeyVenta(int anio, int mes, String codBarra, String codPdv) {}
 
     private static final class RegistroFila {
         final int excelFila;
         final String codCliente;
         final String nombreCliente;
-        final LocalDate fecha;
+        final int fecha; // yyyyMMdd
         final String codBarra;
         final String descripcion;
         final String marca;
@@ -967,7 +1229,7 @@ public class TemplateGeneralService {
         final Double  ventaUSD;
         final Integer stockUnidades;
 
-        RegistroFila(int excelFila, String codCliente, String nombreCliente, LocalDate fecha,
+        RegistroFila(int excelFila, String codCliente, String nombreCliente, int fecha,
                      String codBarra, String descripcion, String marca, String codPdv,
                      String ciudad, String pdv, Integer ventaUnidades, Double ventaUSD,
                      Integer stockUnidades) {
@@ -0,0 +1,265 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.HashFilaVenta;
+import com.manamer.backend.business.sellout.models.Venta;
+
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Escritura de ventas por JDBC batch (sin pasar por el contexto de persistencia).
+ * Debe llamarse dentro de una transacción (TransactionTemplate / @Transactional): JdbcTemplate
+ * usa la misma conexión que la transacción JPA en curso.
+ */
+@Component
+public class VentaBatchWriter {
+
+    // barras por consulta: + anios + meses + cliente queda lejos de los 2100 parámetros de SQL Server
+    private static final int IN_CHUNK = 900;
+
+    private static final String SQL_INSERT = """
+        INSERT INTO SELLOUT.dbo.venta
+            (anio, mes, dia, ciudad, marca, venta_dolares, venta_unidad, nombre_producto, codigo_sap,
+             cod_barra, cod_pdv, descripcion, pdv, stock_dolares, stock_unidades,
+             cliente_id, producto_id, unidades_diarias, hash_fila)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    // mismo INSERT con el id reservado de venta_seq (SQL Server)
+    private static final String SQL_INSERT_CON_ID = """
+        INSERT INTO SELLOUT.dbo.venta
+            (anio, mes, dia, ciudad, marca, venta_dolares, venta_unidad, nombre_producto, codigo_sap,
+             cod_barra, cod_pdv, descripcion, pdv, stock_dolares, stock_unidades,
+             cliente_id, producto_id, unidades_diarias, hash_fila, id)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    private static final String SQL_RESERVAR_IDS = """
+        SET NOCOUNT ON;
+        DECLARE @primero SQL_VARIANT;
+        EXEC sys.sp_sequence_get_range @sequence_name = N'dbo.venta_seq', @range_size = ?,
+             @range_first_value = @primero OUTPUT;
+        SELECT CAST(@primero AS BIGINT);
+    """;
+
+    // mismos campos que actualiza guardarOActualizarVenta sobre el registro existente
+    private static final String SQL_UPDATE = """
+        UPDATE SELLOUT.dbo.venta SET
+            venta_dolares = ?, venta_unidad = ?, stock_dolares = ?, stock_unidades = ?,
+            pdv = ?, ciudad = ?, marca = ?, nombre_producto = ?, codigo_sap = ?, descripcion = ?,
+            producto_id = ?, cliente_id = ?, cod_pdv = ?, hash_fila = ?
+        WHERE id = ?
+    """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbc;
+
+    @Autowired
+    public VentaBatchWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbc = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Ventas ya guardadas de un lote: id y hash de contenido por {@link VentaKey}, en arreglos primitivos.
+     * Tiene su propio {@link DiccionarioClaves} (cargado con las filas de la base); una vez armado solo se lee,
+     * así que puede consultarse desde varios hilos.
+     */
+    public static final class Existentes {
+        private final DiccionarioClaves claves = new DiccionarioClaves();
+        private final MapaVentaKey indice = new MapaVentaKey(64);
+        private long[] ids = new long[64];
+        private long[] hashes = new long[64];
+        private final BitSet sinHash = new BitSet();
+
+        private Existentes() {}
+
+        private void agregar(VentaKey k, long id, Long hashFila) {
+            int i = indice.size();
+            if (indice.putIfAbsent(k, i) != MapaVentaKey.AUSENTE) return;
+            if (i == ids.length) {
+                ids = Arrays.copyOf(ids, i * 2);
+                hashes = Arrays.copyOf(hashes, i * 2);
+            }
+            ids[i] = id;
+            if (hashFila == null) sinHash.set(i); else hashes[i] = hashFila;
+        }
+
+        /** Posición de la venta guardada con la misma clave o {@link MapaVentaKey#AUSENTE}. */
+        public int buscar(Venta v) {
+            VentaKey k = claves.claveSiExiste(v.getCliente() != null ? v.getCliente().getId() : null,
+                    v.getAnio(), v.getMes(), v.getDia(), v.getCodBarra(), v.getCodPdv());
+            return k == null ? MapaVentaKey.AUSENTE : indice.get(k);
+        }
+
+        public boolean contiene(Venta v) {
+            return buscar(v) != MapaVentaKey.AUSENTE;
+        }
+
+        public long id(int i) {
+            return ids[i];
+        }
+
+        /** true si la venta entrante (con ese hash) deja la fila {@code i} igual que está. */
+        public boolean sinCambios(int i, long hash) {
+            return !sinHash.get(i) && hashes[i] == hash;
+        }
+
+        public int size() {
+            return indice.size();
+        }
+    }
+
+    /**
+     * Ventas existentes por clave para las del lote (todas del mismo cliente).
+     * Si hay duplicados en la tabla se toma el id menor.
+     */
+    public Existentes existentes(Long clienteId, Collection<Venta> ventas) {
+        Existentes out = new Existentes();
+        if (clienteId == null || ventas == null || ventas.isEmpty()) return out;
+
+        Set<Integer> anios = new HashSet<>();
+        Set<Integer> meses = new HashSet<>();
+        Set<String> barras = new LinkedHashSet<>();
+        for (Venta v : ventas) {
+            if (v.getAnio() != null) anios.add(v.getAnio());
+            if (v.getMes() != null) meses.add(v.getMes());
+            if (v.getCodBarra() != null) barras.add(v.getCodBarra().trim());
+        }
+        if (anios.isEmpty() || meses.isEmpty() || barras.isEmpty()) return out;
+
+        String sql = """
+            SELECT id, anio, mes, dia, cod_barra, cod_pdv, hash_fila
+            FROM SELLOUT.dbo.venta
+            WHERE cliente_id = :clienteId
+              AND anio IN (:anios)
+              AND mes  IN (:meses)
+              AND cod_barra IN (:barras)
+            ORDER BY id
+        """;
+        List<String> lista = new ArrayList<>(barras);
+        for (int i = 0; i < lista.size(); i += IN_CHUNK) {
+            MapSqlParameterSource p = new MapSqlParameterSource()
+                    .addValue("clienteId", clienteId)
+                    .addValue("anios", anios)
+                    .addValue("meses", meses)
+                    .addValue("barras", lista.subList(i, Math.min(i + IN_CHUNK, lista.size())));
+            namedJdbc.query(sql, p, rs -> {
+                VentaKey k = out.claves.clave(clienteId, rs.getInt(2), rs.getInt(3), rs.getInt(4), rs.getString(5), rs.getString(6));
+                long hash = rs.getLong(7);
+                out.agregar(k, rs.getLong(1), rs.wasNull() ? null : hash);
+            });
+        }
+        return out;
+    }
+
+    /**
+     * Reserva {@code filas} ids seguidos de venta_seq y devuelve el primero. Cada valor de la secuencia es el
+     * último id de un bloque de {@link Venta#IDS_POR_BLOQUE}, igual que lo interpreta el optimizer pooled de
+     * Hibernate: k valores cubren k bloques contiguos y no chocan con los ids que asigna JPA.
+     * Devuelve -1 si la base no es SQL Server (el id queda a cargo de la tabla).
+     */
+    static long reservarIds(Connection con, int filas) throws SQLException {
+        if (filas <= 0 || !con.isWrapperFor(SQLServerConnection.class)) return -1;
+        int valores = (filas + Venta.IDS_POR_BLOQUE - 1) / Venta.IDS_POR_BLOQUE;
+        try (PreparedStatement ps = con.prepareStatement(SQL_RESERVAR_IDS)) {
+            ps.setInt(1, valores);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1) - (Venta.IDS_POR_BLOQUE - 1);
+            }
+        }
+    }
+
+    /** INSERT en batch (en SQL Server con ids reservados de venta_seq); devuelve filas insertadas. */
+    public int insertar(List<Venta> ventas) {
+        if (ventas == null || ventas.isEmpty()) return 0;
+        long primerId = jdbcTemplate.execute((ConnectionCallback<Long>) con -> reservarIds(con, ventas.size()));
+        boolean conId = primerId > 0;
+        jdbcTemplate.batchUpdate(conId ? SQL_INSERT_CON_ID : SQL_INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Venta v = ventas.get(i);
+                setInt(ps, 1, v.getAnio());
+                setInt(ps, 2, v.getMes());
+                ps.setInt(3, v.getDia());
+                ps.setString(4, v.getCiudad());
+                ps.setString(5, v.getMarca());
+                ps.setDouble(6, v.getVentaDolares());
+                ps.setDouble(7, v.getVentaUnidad());
+                ps.setString(8, v.getNombreProducto());
+                ps.setString(9, v.getCodigoSap());
+                ps.setString(10, v.getCodBarra());
+                ps.setString(11, v.getCodPdv());
+                ps.setString(12, v.getDescripcion());
+                ps.setString(13, v.getPdv());
+                ps.setDouble(14, v.getStockDolares());
+                ps.setDouble(15, v.getStockUnidades());
+                setLong(ps, 16, v.getCliente() != null ? v.getCliente().getId() : null);
+                setLong(ps, 17, v.getProducto() != null ? v.getProducto().getId() : null);
+                ps.setString(18, v.getUnidadesDiarias());
+                ps.setLong(19, HashFilaVenta.de(v));
+                if (conId) {
+                    v.setId(primerId + i);
+                    ps.setLong(20, v.getId());
+                }
+            }
+
+            @Override
+            public int getBatchSize() { return ventas.size(); }
+        });
+        return ventas.size();
+    }
+
+    /** UPDATE por id en batch (las ventas deben traer id); devuelve filas actualizadas. */
+    public int actualizar(List<Venta> ventas) {
+        if (ventas == null || ventas.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(SQL_UPDATE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Venta v = ventas.get(i);
+                ps.setDouble(1, v.getVentaDolares());
+                ps.setDouble(2, v.getVentaUnidad());
+                ps.setDouble(3, v.getStockDolares());
+                ps.setDouble(4, v.getStockUnidades());
+                ps.setString(5, v.getPdv());
+                ps.setString(6, v.getCiudad());
+                ps.setString(7, v.getMarca());
+                ps.setString(8, v.getNombreProducto());
+                ps.setString(9, v.getCodigoSap());
+                ps.setString(10, v.getDescripcion());
+                setLong(ps, 11, v.getProducto() != null ? v.getProducto().getId() : null);
+                setLong(ps, 12, v.getCliente() != null ? v.getCliente().getId() : null);
+                ps.setString(13, v.getCodPdv());
+                ps.setLong(14, HashFilaVenta.de(v));
+                ps.setLong(15, v.getId());
+            }
+
+            @Override
+            public int getBatchSize() { return ventas.size(); }
+        });
+        return ventas.size();
+    }
+
+    private static void setInt(PreparedStatement ps, int idx, Integer v) throws SQLException {
+        if (v == null) ps.setNull(idx, Types.INTEGER); else ps.setInt(idx, v);
+    }
+
+    private static void setLong(PreparedStatement ps, int idx, Long v) throws SQLException {
+        if (v == null) ps.setNull(idx, Types.BIGINT); else ps.setLong(idx, v);
+    }
+}
@@ -0,0 +1,31 @@
+package com.manamer.backend.business.sellout.service;
+
+/**
+ * Clave natural de una venta (cliente, anio, mes, dia, codBarra, codPdv) en dos {@code long}, sin armar
+ * un String por fila. codBarra y codPdv entran como ids de un {@link DiccionarioClaves} (trim + mayúsculas,
+ * igual que la collation CI de la base), así que dos claves solo son comparables si salen del mismo diccionario.
+ *
+ * {@code fechaCliente}: clienteId (32 bits; los provisionales de la simulación son negativos) | anio (16)
+ * | mes (8) | dia (8), cada campo en complemento a dos; null cuenta como 0.
+ * {@code textos}: id de codBarra (32) | id de codPdv (32).
+ */
+public record VentaKey(long fechaCliente, long textos) {
+
+    public static long fechaCliente(Long clienteId, Integer anio, Integer mes, int dia) {
+        long cli = clienteId == null ? 0 : clienteId;
+        int a = anio == null ? 0 : anio;
+        int m = mes == null ? 0 : mes;
+        if ((int) cli != cli || (short) a != a || (byte) m != m || (byte) dia != dia) {
+            throw new IllegalArgumentException("Clave de venta fuera de rango: cliente=" + clienteId
+                    + " anio=" + anio + " mes=" + mes + " dia=" + dia);
+        }
+        return cli << 32
+                | (a & 0xFFFFL) << 16
+                | (m & 0xFFL) << 8
+                | (dia & 0xFFL);
+    }
+
+    public static long textos(int codBarra, int codPdv) {
+        return (long) codBarra << 32 | (codPdv & 0xFFFFFFFFL);
+    }
+}
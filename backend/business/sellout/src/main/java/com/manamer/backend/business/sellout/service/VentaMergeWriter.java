@@ -0,0 +1,486 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.HashFilaVenta;
+import com.manamer.backend.business.sellout.models.Venta;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Upsert de ventas por la clave natural (cliente_id, anio, mes, dia, cod_barra, cod_pdv) sin pasar por JPA:
+ * las cargas grandes escriben aquí en vez de consultar y guardar entidad por entidad. Los ids de las filas
+ * nuevas se reservan de venta_seq ({@link VentaBatchWriter#reservarIds}).
+ *
+ * En SQL Server cada tramo de {@code filasPorMerge} ventas se copia con {@link SQLServerBulkCopy} a la tabla
+ * temporal de sesión {@code #venta_staging} y se aplica con un único MERGE que devuelve cuántas filas insertó
+ * y cuántas actualizó. Con otra base (H2 en los tests) o con {@code sellout.ventas.merge.bulk-copy=false} se
+ * usa JDBC batch: existentes por clave ({@link VentaBatchWriter#existentes}) + INSERT/UPDATE agrupados.
+ *
+ * Igual que VentaBatchWriter debe llamarse dentro de una transacción: usa la conexión de la transacción en curso.
+ */
+@Component
+public class VentaMergeWriter {
+
+    private static final Logger log = Logger.getLogger(VentaMergeWriter.class.getName());
+
+    private static final String STAGING = "#venta_staging";
+
+    /** Qué columnas de la venta existente reescribe el upsert. */
+    public enum Modo {
+        /** Toda la fila; las existentes con el mismo hash_fila no se tocan (sinCambios). */
+        COMPLETO(List.of("ciudad", "marca", "venta_dolares", "venta_unidad", "nombre_producto", "codigo_sap",
+                "descripcion", "pdv", "stock_dolares", "stock_unidades", "producto_id", "unidades_diarias", "hash_fila"),
+                true, false),
+        /**
+         * Toda la fila salvo el producto de la existente (TemplateGeneral): el hash_fila de la venta debe venir
+         * calculado con ese producto ({@link HashFilaVenta#de(Venta, Long)}).
+         */
+        CONSERVA_PRODUCTO(List.of("ciudad", "marca", "venta_dolares", "venta_unidad", "nombre_producto", "codigo_sap",
+                "descripcion", "pdv", "stock_dolares", "stock_unidades", "unidades_diarias", "hash_fila"),
+                true, false),
+        /**
+         * Solo los campos de venta (hoja VENTAS de RM): stock, producto y cliente de la existente se conservan,
+         * así que el hash guardado deja de valer y queda en NULL. Siempre actualiza.
+         */
+        SOLO_VENTA(List.of("venta_dolares", "venta_unidad", "marca", "nombre_producto", "descripcion", "codigo_sap",
+                "pdv", "ciudad"),
+                false, true),
+        /**
+         * Solo el stock (hoja STOCK de RM): la existente con la misma fecha y tienda recibe stock_unidades y
+         * stock_dolares; las que no existen se insertan completas (ventas en 0). Siempre actualiza.
+         */
+        SOLO_STOCK(List.of("stock_unidades", "stock_dolares"),
+                false, true);
+
+        final List<String> actualiza;
+        final boolean comparaHash;
+        final boolean anulaHash;
+
+        Modo(List<String> actualiza, boolean comparaHash, boolean anulaHash) {
+            this.actualiza = actualiza;
+            this.comparaHash = comparaHash;
+            this.anulaHash = anulaHash;
+        }
+    }
+
+    /** Claves distintas insertadas / actualizadas / iguales a las guardadas. */
+    public record Resultado(int insertados, int actualizados, int sinCambios) {
+        static final Resultado VACIO = new Resultado(0, 0, 0);
+
+        Resultado mas(Resultado o) {
+            return new Resultado(insertados + o.insertados, actualizados + o.actualizados, sinCambios + o.sinCambios);
+        }
+    }
+
+    /** Columna de venta (todas salvo id) y cómo se lee de la entidad. */
+    private record Columna(String nombre, int tipoJdbc, Function<Venta, Object> valor) {}
+
+    private static final List<Columna> COLUMNAS = List.of(
+            new Columna("anio", Types.INTEGER, Venta::getAnio),
+            new Columna("mes", Types.INTEGER, Venta::getMes),
+            new Columna("dia", Types.INTEGER, Venta::getDia),
+            new Columna("ciudad", Types.VARCHAR, Venta::getCiudad),
+            new Columna("marca", Types.VARCHAR, Venta::getMarca),
+            new Columna("venta_dolares", Types.DOUBLE, Venta::getVentaDolares),
+            new Columna("venta_unidad", Types.DOUBLE, Venta::getVentaUnidad),
+            new Columna("nombre_producto", Types.VARCHAR, Venta::getNombreProducto),
+            new Columna("codigo_sap", Types.VARCHAR, Venta::getCodigoSap),
+            new Columna("cod_barra", Types.VARCHAR, Venta::getCodBarra),
+            new Columna("cod_pdv", Types.VARCHAR, Venta::getCodPdv),
+            new Columna("descripcion", Types.VARCHAR, Venta::getDescripcion),
+            new Columna("pdv", Types.VARCHAR, Venta::getPdv),
+            new Columna("stock_dolares", Types.DOUBLE, Venta::getStockDolares),
+            new Columna("stock_unidades", Types.DOUBLE, Venta::getStockUnidades),
+            new Columna("cliente_id", Types.BIGINT, v -> v.getCliente() != null ? v.getCliente().getId() : null),
+            new Columna("producto_id", Types.BIGINT, v -> v.getProducto() != null ? v.getProducto().getId() : null),
+            new Columna("unidades_diarias", Types.VARCHAR, Venta::getUnidadesDiarias),
+            new Columna("hash_fila", Types.BIGINT, Venta::getHashFila)
+    );
+
+    /** Nombres de {@link #COLUMNAS}, en orden. */
+    static final List<String> NOMBRES_COLUMNAS = COLUMNAS.stream().map(Columna::nombre).toList();
+
+    static final String LISTA_COLUMNAS = String.join(", ", NOMBRES_COLUMNAS);
+
+    /** Ventas de las cargas REPLACE_PERIOD en curso (V9__venta_reemplazo.sql). */
+    static final String TABLA_REEMPLAZO = "SELLOUT.dbo.venta_reemplazo";
+
+    /** Un (cliente, anio, mes) con ventas retenidas por una carga. */
+    public record PeriodoRetenido(long clienteId, int anio, int mes) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VentaBatchWriter ventaBatchWriter;
+    private final int filasPorMerge;
+    private final boolean bulkCopy;
+
+    @Autowired
+    public VentaMergeWriter(JdbcTemplate jdbcTemplate, VentaBatchWriter ventaBatchWriter,
+                            @Value("${sellout.ventas.merge.filas:20000}") int filasPorMerge,
+                            @Value("${sellout.ventas.merge.bulk-copy:true}") boolean bulkCopy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ventaBatchWriter = ventaBatchWriter;
+        this.filasPorMerge = Math.max(1, filasPorMerge);
+        this.bulkCopy = bulkCopy;
+    }
+
+    /**
+     * Upsert de las ventas (de uno o varios clientes; deben traer Cliente con id). Una clave repetida en la
+     * lista se escribe una vez, con la última aparición. El hash_fila que se guarda es el de la venta si ya
+     * viene calculado y si no {@link HashFilaVenta#de(Venta)}.
+     */
+    public Resultado upsert(List<Venta> ventas, Modo modo) {
+        if (ventas == null || ventas.isEmpty()) return Resultado.VACIO;
+        List<Venta> unicas = unicas(ventas);
+
+        return jdbcTemplate.execute((ConnectionCallback<Resultado>) con -> {
+            boolean conBulk = bulkCopy && con.isWrapperFor(SQLServerConnection.class);
+            Resultado total = Resultado.VACIO;
+            for (int i = 0; i < unicas.size(); i += filasPorMerge) {
+                List<Venta> tramo = unicas.subList(i, Math.min(i + filasPorMerge, unicas.size()));
+                total = total.mas(conBulk ? merge(con.unwrap(SQLServerConnection.class), tramo, modo) : batch(con, tramo, modo));
+            }
+            return total;
+        });
+    }
+
+    /**
+     * Solo INSERT, sin buscar existentes (carga APPEND_ONLY): en SQL Server bulk copy directo a dbo.venta (con
+     * FK verificadas y sin TABLOCK, la tabla sigue en uso), si no {@link VentaBatchWriter#insertar}. Una clave
+     * ya guardada hace fallar ux_venta_clave; una repetida en la lista se escribe una vez, con la última aparición.
+     */
+    public int insertar(List<Venta> ventas) {
+        if (ventas == null || ventas.isEmpty()) return 0;
+        List<Venta> unicas = unicas(ventas);
+
+        boolean conBulk = bulkCopy && Boolean.TRUE.equals(jdbcTemplate.execute(
+                (ConnectionCallback<Boolean>) con -> con.isWrapperFor(SQLServerConnection.class)));
+        if (!conBulk) return ventaBatchWriter.insertar(unicas);
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            for (int i = 0; i < unicas.size(); i += filasPorMerge) {
+                copiar(con.unwrap(SQLServerConnection.class), "SELLOUT.dbo.venta",
+                        unicas.subList(i, Math.min(i + filasPorMerge, unicas.size())), true, false);
+            }
+            return null;
+        });
+        return unicas.size();
+    }
+
+    /**
+     * Copia un bloque de una carga REPLACE_PERIOD a dbo.venta_reemplazo tal como llega, sin deduplicar, con el
+     * modo del bloque y la clave de texto normalizada ({@link DiccionarioClaves#textoClave}); la deduplicación la
+     * hace {@link ParticionVentaService#reemplazarPeriodo(String, long, int, int)} al terminar. En SQL Server por
+     * bulk copy, con el id que la fila tendrá en venta; si no, JDBC batch.
+     */
+    public void retener(String cargaId, List<Venta> bloque, Modo modo) {
+        if (bloque == null || bloque.isEmpty()) return;
+        for (Venta v : bloque) if (v.getHashFila() == null) v.setHashFila(HashFilaVenta.de(v));
+        List<Columna> columnas = new ArrayList<>(COLUMNAS);
+        columnas.add(new Columna("carga_id", Types.VARCHAR, v -> cargaId));
+        columnas.add(new Columna("modo", Types.VARCHAR, v -> modo.name()));
+        columnas.add(new Columna("clave_barra", Types.VARCHAR, v -> DiccionarioClaves.textoClave(v.getCodBarra())));
+        columnas.add(new Columna("clave_pdv", Types.VARCHAR, v -> DiccionarioClaves.textoClave(v.getCodPdv())));
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            if (bulkCopy && con.isWrapperFor(SQLServerConnection.class)) {
+                for (int i = 0; i < bloque.size(); i += filasPorMerge) {
+                    copiar(con.unwrap(SQLServerConnection.class), TABLA_REEMPLAZO,
+                            bloque.subList(i, Math.min(i + filasPorMerge, bloque.size())), columnas, false, false);
+                }
+            } else {
+                insertarFilas(con, TABLA_REEMPLAZO, bloque, columnas);
+            }
+            return null;
+        });
+    }
+
+    /** Clientes y meses que retuvo la carga, en el orden en que aparecieron. */
+    public List<PeriodoRetenido> periodosRetenidos(String cargaId) {
+        return jdbcTemplate.query("SELECT cliente_id, anio, mes FROM " + TABLA_REEMPLAZO + " WHERE carga_id = ?"
+                        + " GROUP BY cliente_id, anio, mes ORDER BY MIN(orden)",
+                (rs, i) -> new PeriodoRetenido(rs.getLong(1), rs.getInt(2), rs.getInt(3)), cargaId);
+    }
+
+    /** Borra lo retenido por la carga; devuelve filas borradas. */
+    public int descartarRetenidas(String cargaId) {
+        return jdbcTemplate.update("DELETE FROM " + TABLA_REEMPLAZO + " WHERE carga_id = ?", cargaId);
+    }
+
+    /** Borra lo retenido por cargas que empezaron antes de {@code antesDe} (cayeron sin terminar). */
+    public int descartarRetenidasAntiguas(LocalDateTime antesDe) {
+        return jdbcTemplate.update("DELETE FROM " + TABLA_REEMPLAZO + " WHERE creado < ?", Timestamp.valueOf(antesDe));
+    }
+
+    // última aparición gana ante claves repetidas; hash_fila calculado si no viene
+    private static List<Venta> unicas(List<Venta> ventas) {
+        DiccionarioClaves claves = new DiccionarioClaves();
+        MapaVentaKey posicion = new MapaVentaKey(ventas.size());
+        List<Venta> unicas = new ArrayList<>(ventas.size());
+        for (Venta v : ventas) {
+            if (v.getHashFila() == null) v.setHashFila(HashFilaVenta.de(v));
+            int previa = posicion.putIfAbsent(claves.clave(v), unicas.size());
+            if (previa == MapaVentaKey.AUSENTE) unicas.add(v); else unicas.set(previa, v);
+        }
+        return unicas;
+    }
+
+    // ===== SQL Server: bulk copy a #venta_staging + MERGE =====
+
+    private Resultado merge(SQLServerConnection con, List<Venta> tramo, Modo modo) throws SQLException {
+        long t0 = System.nanoTime();
+        try (Statement st = con.createStatement()) {
+            // misma definición (tipos, collation, nulabilidad) que dbo.venta; el id sin IDENTITY (CAST)
+            st.execute("IF OBJECT_ID('tempdb.." + STAGING + "') IS NOT NULL DROP TABLE " + STAGING + "; "
+                    + "SELECT TOP 0 CAST(id AS BIGINT) AS id, " + LISTA_COLUMNAS + " INTO " + STAGING + " FROM SELLOUT.dbo.venta");
+        }
+        try {
+            // un id por fila del tramo (las que terminan en UPDATE dejan su id sin usar)
+            copiar(con, STAGING, tramo, false, true);
+            long tCopia = System.nanoTime();
+
+            int[] conteo = new int[2];
+            try (Statement st = con.createStatement();
+                 ResultSet rs = st.executeQuery(sqlMerge(modo))) {
+                if (rs.next()) {
+                    conteo[0] = rs.getInt(1);
+                    conteo[1] = rs.getInt(2);
+                }
+            }
+            int sinCambios = Math.max(0, tramo.size() - conteo[0] - conteo[1]);
+            log.fine(() -> String.format("MERGE venta %d filas: copia %d ms, merge %d ms", tramo.size(),
+                    (tCopia - t0) / 1_000_000, (System.nanoTime() - tCopia) / 1_000_000));
+            return new Resultado(conteo[0], conteo[1], sinCambios);
+        } finally {
+            try (Statement st = con.createStatement()) {
+                st.execute("DROP TABLE " + STAGING);
+            } catch (SQLException e) {
+                // la transacción ya abortada la descarta; si no, se reemplaza en el próximo tramo
+                log.fine("No se pudo eliminar " + STAGING + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copia las ventas a {@code tabla} con SQLServerBulkCopy: id reservado de venta_seq + COLUMNAS, mapeadas
+     * por nombre (el orden de columnas de la tabla no importa y las calculadas quedan fuera). Con
+     * {@code verificarRestricciones} el servidor valida FK/CHECK al copiar y la tabla las conserva confiables,
+     * como exige el SWITCH de {@link ParticionVentaService}. {@code bloquearTabla} (TABLOCK) solo para tablas
+     * que nadie más lee durante la copia.
+     */
+    static void copiar(SQLServerConnection con, String tabla, List<Venta> ventas, boolean verificarRestricciones,
+                       boolean bloquearTabla) throws SQLException {
+        copiar(con, tabla, ventas, COLUMNAS, verificarRestricciones, bloquearTabla);
+    }
+
+    private static void copiar(SQLServerConnection con, String tabla, List<Venta> ventas, List<Columna> columnas,
+                               boolean verificarRestricciones, boolean bloquearTabla) throws SQLException {
+        long primerId = VentaBatchWriter.reservarIds(con, ventas.size());
+        FilasStaging filas;
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, " + nombres(columnas) + " FROM " + tabla + " WHERE 1 = 0")) {
+            filas = new FilasStaging(ventas, columnas, primerId, rs.getMetaData());
+        }
+        SQLServerBulkCopyOptions opciones = new SQLServerBulkCopyOptions();
+        opciones.setTableLock(bloquearTabla);
+        opciones.setBatchSize(0);
+        opciones.setBulkCopyTimeout(0);
+        opciones.setCheckConstraints(verificarRestricciones);
+        try (SQLServerBulkCopy bulk = new SQLServerBulkCopy(con)) {
+            bulk.setBulkCopyOptions(opciones);
+            bulk.setDestinationTableName(tabla);
+            for (int c = 1; c <= columnas.size() + 1; c++) bulk.addColumnMapping(c, filas.getColumnName(c));
+            bulk.writeToServer(filas);
+        }
+    }
+
+    /** MERGE de #venta_staging sobre dbo.venta; devuelve una fila {insertadas, actualizadas}. */
+    static String sqlMerge(Modo modo) {
+        String set = modo.actualiza.stream().map(c -> "t." + c + " = s." + c).collect(Collectors.joining(", "))
+                + (modo.anulaHash ? ", t.hash_fila = NULL" : "");
+        String cuandoCambia = modo.comparaHash ? " AND (t.hash_fila IS NULL OR t.hash_fila <> s.hash_fila)" : "";
+        return """
+            SET NOCOUNT ON;
+            DECLARE @acciones TABLE (accion NVARCHAR(10));
+            MERGE SELLOUT.dbo.venta WITH (HOLDLOCK) AS t
+            USING %s AS s
+               ON t.cliente_id = s.cliente_id
+              AND t.anio = s.anio AND t.mes = s.mes AND t.dia = s.dia
+              AND t.cod_barra = s.cod_barra
+              AND (t.cod_pdv = s.cod_pdv OR (t.cod_pdv IS NULL AND s.cod_pdv IS NULL))
+            WHEN MATCHED%s THEN
+                UPDATE SET %s
+            WHEN NOT MATCHED BY TARGET THEN
+                INSERT (id, %s) VALUES (s.id, %s)
+            OUTPUT $action INTO @acciones;
+            SELECT COALESCE(SUM(CASE WHEN accion = 'INSERT' THEN 1 ELSE 0 END), 0),
+                   COALESCE(SUM(CASE WHEN accion = 'UPDATE' THEN 1 ELSE 0 END), 0)
+            FROM @acciones;
+        """.formatted(STAGING, cuandoCambia, set, LISTA_COLUMNAS,
+                COLUMNAS.stream().map(c -> "s." + c.nombre()).collect(Collectors.joining(", ")));
+    }
+
+    private static String nombres(List<Columna> columnas) {
+        return columnas.stream().map(Columna::nombre).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Filas del tramo para SQLServerBulkCopy (id reservado + columnas), con los tipos que SQL Server
+     * reporta para la tabla destino (#venta_staging, venta_carga, venta o venta_reemplazo).
+     */
+    private static final class FilasStaging implements ISQLServerBulkData {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Venta> filas;
+        private final transient List<Columna> columnas;
+        private final long primerId;
+        private final int[] tipos, precisiones, escalas;
+        private int pos = -1;
+
+        FilasStaging(List<Venta> filas, List<Columna> columnas, long primerId, ResultSetMetaData md) throws SQLException {
+            this.filas = filas;
+            this.columnas = columnas;
+            this.primerId = primerId;
+            int n = columnas.size() + 1;
+            tipos = new int[n];
+            precisiones = new int[n];
+            escalas = new int[n];
+            for (int i = 0; i < n; i++) {
+                tipos[i] = md.getColumnType(i + 1);
+                precisiones[i] = md.getPrecision(i + 1);
+                escalas[i] = md.getScale(i + 1);
+            }
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            Set<Integer> ordinales = new LinkedHashSet<>();
+            for (int i = 1; i <= columnas.size() + 1; i++) ordinales.add(i);
+            return ordinales;
+        }
+
+        @Override public String getColumnName(int columna) { return columna == 1 ? "id" : columnas.get(columna - 2).nombre(); }
+        @Override public int getColumnType(int columna) { return tipos[columna - 1]; }
+        @Override public int getPrecision(int columna) { return precisiones[columna - 1]; }
+        @Override public int getScale(int columna) { return escalas[columna - 1]; }
+
+        @Override
+        public boolean next() {
+            return ++pos < filas.size();
+        }
+
+        @Override
+        public Object[] getRowData() {
+            Venta v = filas.get(pos);
+            Object[] fila = new Object[columnas.size() + 1];
+            fila[0] = primerId + pos;
+            for (int i = 1; i < fila.length; i++) fila[i] = columnas.get(i - 1).valor().apply(v);
+            return fila;
+        }
+    }
+
+    // ===== Respaldo JDBC batch (otras bases / bulk copy deshabilitado) =====
+
+    private Resultado batch(Connection con, List<Venta> tramo, Modo modo) throws SQLException {
+        Map<Long, List<Venta>> porCliente = new LinkedHashMap<>();
+        for (Venta v : tramo) {
+            Long clienteId = v.getCliente() != null ? v.getCliente().getId() : null;
+            porCliente.computeIfAbsent(clienteId, k -> new ArrayList<>()).add(v);
+        }
+
+        List<Venta> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        int sinCambios = 0;
+        for (Map.Entry<Long, List<Venta>> e : porCliente.entrySet()) {
+            VentaBatchWriter.Existentes existentes = ventaBatchWriter.existentes(e.getKey(), e.getValue());
+            for (Venta v : e.getValue()) {
+                int ex = existentes.buscar(v);
+                if (ex == MapaVentaKey.AUSENTE) {
+                    inserts.add(v);
+                } else if (modo.comparaHash && existentes.sinCambios(ex, v.getHashFila())) {
+                    sinCambios++;
+                } else {
+                    updates.add(valoresUpdate(v, modo, existentes.id(ex)));
+                }
+            }
+        }
+
+        if (!inserts.isEmpty()) insertarFilas(con, "SELLOUT.dbo.venta", inserts, COLUMNAS);
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(sqlUpdate(modo), updates, tiposUpdate(modo));
+        }
+        return new Resultado(inserts.size(), updates.size(), sinCambios);
+    }
+
+    // INSERT en batch; en SQL Server con el id reservado de venta_seq (bulk copy deshabilitado)
+    private void insertarFilas(Connection con, String tabla, List<Venta> ventas, List<Columna> columnas) throws SQLException {
+        long primerId = VentaBatchWriter.reservarIds(con, ventas.size());
+        String sql = "INSERT INTO " + tabla + " (" + nombres(columnas) + (primerId > 0 ? ", id" : "") + ") VALUES ("
+                + columnas.stream().map(c -> "?").collect(Collectors.joining(", ")) + (primerId > 0 ? ", ?" : "") + ")";
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Venta v = ventas.get(i);
+                for (int c = 0; c < columnas.size(); c++) {
+                    Columna col = columnas.get(c);
+                    set(ps, c + 1, col.valor().apply(v), col.tipoJdbc());
+                }
+                if (primerId > 0) ps.setLong(columnas.size() + 1, primerId + i);
+            }
+
+            @Override
+            public int getBatchSize() { return ventas.size(); }
+        });
+    }
+
+    private static String sqlUpdate(Modo modo) {
+        return "UPDATE SELLOUT.dbo.venta SET "
+                + modo.actualiza.stream().map(c -> c + " = ?").collect(Collectors.joining(", "))
+                + (modo.anulaHash ? ", hash_fila = NULL" : "")
+                + " WHERE id = ?";
+    }
+
+    private static Object[] valoresUpdate(Venta v, Modo modo, long id) {
+        Object[] valores = new Object[modo.actualiza.size() + 1];
+        for (int i = 0; i < modo.actualiza.size(); i++) valores[i] = columna(modo.actualiza.get(i)).valor().apply(v);
+        valores[valores.length - 1] = id;
+        return valores;
+    }
+
+    private static int[] tiposUpdate(Modo modo) {
+        int[] tipos = new int[modo.actualiza.size() + 1];
+        for (int i = 0; i < modo.actualiza.size(); i++) tipos[i] = columna(modo.actualiza.get(i)).tipoJdbc();
+        tipos[tipos.length - 1] = Types.BIGINT;
+        return tipos;
+    }
+
+    private static Columna columna(String nombre) {
+        for (Columna c : COLUMNAS) if (c.nombre().equals(nombre)) return c;
+        throw new IllegalArgumentException("Columna de venta desconocida: " + nombre);
+    }
+
+    private static void set(PreparedStatement ps, int idx, Object valor, int tipo) throws SQLException {
+        if (valor == null) ps.setNull(idx, tipo); else ps.setObject(idx, valor, tipo);
+    }
+}
@@ -1,6 +1,8 @@
 package com.manamer.backend.business.sellout.service;
 
+import com.manamer.backend.business.sellout.config.LecturaReplica;
 import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.models.HashFilaVenta;
 import com.manamer.backend.business.sellout.models.Producto;
 import com.manamer.backend.business.sellout.models.Venta;
 import com.manamer.backend.business.sellout.repositories.VentaRepository;
@@ -16,21 +18,24 @@ import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.StandardOpenOption;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import org.springframework.http.HttpHeaders;
@@ -43,7 +48,6 @@ import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 
@@ -52,8 +56,12 @@ public class VentaService {
 
     private final VentaRepository ventaRepository;
     private final EntityManager entityManager;
+    private final TransactionTemplate txTemplate;
+    private final TransactionTemplate txSimulacion;
+    private final VentaMergeWriter ventaMergeWriter;
+    private final EscritorVentas escritorVentas;
+    private final EliminacionVentaService eliminacionVentaService;
     private static final Logger log = Logger.getLogger(VentaService.class.getName());
-    private static final ZoneId ZONE = ZoneId.systemDefault();
 
     // ===== NUEVO: estructura de incidencias para el TXT/JS =====
     public static final class Incidencia {
@@ -66,9 +74,16 @@ public class VentaService {
     }
 
     @Autowired
-    public VentaService(VentaRepository ventaRepository, EntityManager entityManager) {
+    public VentaService(VentaRepository ventaRepository, EntityManager entityManager,
+                        PlatformTransactionManager transactionManager, VentaMergeWriter ventaMergeWriter,
+                        EscritorVentas escritorVentas, EliminacionVentaService eliminacionVentaService) {
         this.ventaRepository = ventaRepository;
         this.entityManager = entityManager;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.txSimulacion = SimulacionCarga.transaccion(transactionManager);
+        this.ventaMergeWriter = ventaMergeWriter;
+        this.escritorVentas = escritorVentas;
+        this.eliminacionVentaService = eliminacionVentaService;
     }
 
     // ============================================================
@@ -77,19 +92,42 @@ public class VentaService {
 
     private static String safe(String s) { return (s == null ? "" : s.trim()); }
 
-    private static String key(int anio, int mes, Integer dia, String codBarra, String codPdv, Long clienteId) {
-        return anio + "|" + mes + "|" + (dia == null ? "" : dia) + "|" +
-               safe(codBarra) + "|" + safe(codPdv) + "|" + (clienteId == null ? "" : clienteId);
-    }
-
-    private static class Counts { int inserts; int updates; }
+    private static class Counts { int inserts; int updates; int sinCambios; }
 
+    /** Upsert del bloque con VentaMergeWriter (bulk copy + MERGE en SQL Server); fila completa, sinCambios por hash_fila. */
     @Transactional
     protected Counts guardarVentasEnBloque(List<Venta> lote) {
+        if (lote == null || lote.isEmpty()) return new Counts();
+        return contar(ventaMergeWriter.upsert(lote, VentaMergeWriter.Modo.COMPLETO));
+    }
+
+    /** Igual, con la estrategia de la carga (lo que REPLACE_PERIOD retiene se cuenta al terminar). */
+    @Transactional
+    protected Counts guardarVentasEnBloque(List<Venta> lote, EscritorVentas.Escritura escritura) {
+        if (lote == null || lote.isEmpty()) return new Counts();
+        return contar(escritura.escribir(lote, VentaMergeWriter.Modo.COMPLETO));
+    }
+
+    private static Counts contar(VentaMergeWriter.Resultado r) {
+        Counts counts = new Counts();
+        counts.inserts = r.insertados();
+        counts.updates = r.actualizados();
+        counts.sinCambios = r.sinCambios();
+        return counts;
+    }
+
+    /**
+     * Separa el lote en inserciones y actualizaciones contra las ventas ya guardadas (una consulta por bloque);
+     * las existentes con el mismo hash_fila solo se cuentan como sinCambios. No escribe.
+     */
+    private Counts clasificarBloque(List<Venta> lote, List<Venta> inserts, List<Venta> updates) {
         Counts counts = new Counts();
         if (lote == null || lote.isEmpty()) return counts;
 
-        Map<String, Venta> porClave = new LinkedHashMap<>();
+        // última aparición gana ante claves repetidas en el lote
+        DiccionarioClaves claves = new DiccionarioClaves();
+        MapaVentaKey posicion = new MapaVentaKey(lote.size());
+        List<Venta> unicas = new ArrayList<>(lote.size());
         Set<Integer> anios = new HashSet<>();
         Set<Integer> meses = new HashSet<>();
         Set<Integer> dias = new HashSet<>();
@@ -99,9 +137,8 @@ public class VentaService {
 
         for (Venta v : lote) {
             Long clienteId = (v.getCliente() != null ? v.getCliente().getId() : null);
-            Integer diaKey = (v.getDia() > 0 ? Integer.valueOf(v.getDia()) : null);
-            String k = key(v.getAnio(), v.getMes(), diaKey, v.getCodBarra(), v.getCodPdv(), clienteId);
-            porClave.put(k, v);
+            int previa = posicion.putIfAbsent(claves.clave(v), unicas.size());
+            if (previa == MapaVentaKey.AUSENTE) unicas.add(v); else unicas.set(previa, v);
 
             if (v.getAnio() != null) anios.add(v.getAnio());
             if (v.getMes() != null) meses.add(v.getMes());
@@ -115,7 +152,7 @@ public class VentaService {
         List<Object[]> existentesRaw = new ArrayList<>();
         if (!anios.isEmpty() && !meses.isEmpty() && !barras.isEmpty()) {
             String sql = """
-                SELECT id, anio, mes, dia, cod_barra, cod_pdv, cliente_id
+                SELECT id, anio, mes, dia, cod_barra, cod_pdv, cliente_id, hash_fila
                 FROM [SELLOUT].[dbo].[venta]
                 WHERE anio IN (:anios)
                   AND mes  IN (:meses)
@@ -139,58 +176,105 @@ public class VentaService {
             existentesRaw = res;
         }
 
-        Map<String, Long> claveAId = new LinkedHashMap<>();
-        for (Object[] r : existentesRaw) {
-            Long id   = ((Number) r[0]).longValue();
-            Integer an = (Integer) r[1];
-            Integer me = (Integer) r[2];
+        // existentes por clave (mismo diccionario que el lote): posición en ids/hashes
+        MapaVentaKey existentes = new MapaVentaKey(existentesRaw.size());
+        long[] ids = new long[existentesRaw.size()];
+        Long[] hashes = new Long[existentesRaw.size()];
+        for (int i = 0; i < existentesRaw.size(); i++) {
+            Object[] r = existentesRaw.get(i);
+            ids[i] = ((Number) r[0]).longValue();
+            hashes[i] = (r[7] == null ? null : ((Number) r[7]).longValue());
             Integer di = (r[3] == null ? null : ((Number) r[3]).intValue());
-            String cb  = (String)  r[4];
-            String cp  = (String)  r[5];
             Long cliId = (r[6] == null ? null : ((Number) r[6]).longValue());
-            String k = key(an, me, di, cb, cp, cliId);
-            claveAId.put(k, id);
+            existentes.put(claves.clave(cliId, (Integer) r[1], (Integer) r[2], di == null ? 0 : di,
+                    (String) r[4], (String) r[5]), i);
         }
 
-        List<Venta> inserts = new ArrayList<>();
-        List<Venta> updates = new ArrayList<>();
-        for (Venta v : porClave.values()) {
-            Long clienteId = (v.getCliente() != null ? v.getCliente().getId() : null);
-            Integer diaKey = (v.getDia() > 0 ? Integer.valueOf(v.getDia()) : null);
-            String k = key(v.getAnio(), v.getMes(), diaKey, v.getCodBarra(), v.getCodPdv(), clienteId);
-            Long id = claveAId.get(k);
-            if (id != null) {
-                v.setId(id);
+        for (Venta v : unicas) {
+            int ex = existentes.get(claves.clave(v));
+            long hash = HashFilaVenta.de(v);
+            if (ex != MapaVentaKey.AUSENTE && Objects.equals(hashes[ex], hash)) {
+                // misma fila que la carga anterior: no se reescribe
+                counts.sinCambios++;
+            } else if (ex != MapaVentaKey.AUSENTE) {
+                v.setId(ids[ex]);
+                v.setHashFila(hash);
                 updates.add(v);
             } else {
+                v.setHashFila(hash);
                 inserts.add(v);
             }
         }
 
         counts.inserts = inserts.size();
         counts.updates = updates.size();
-
-        final int BATCH = 1_000;
-        batchSave(inserts, BATCH);
-        batchSave(updates, BATCH);
-
         return counts;
     }
 
-    private void batchSave(List<Venta> list, int batch) {
-        for (int i = 0; i < list.size(); i++) {
-            ventaRepository.save(list.get(i));
-            if ((i + 1) % batch == 0) {
-                ventaRepository.flush();
-                entityManager.clear();
-            }
+    /** Resultado del upsert masivo (claves distintas insertadas/actualizadas/iguales a las guardadas). */
+    public static final class ResultadoUpsert {
+        public final int insertados;
+        public final int actualizados;
+        public final int sinCambios;
+        public ResultadoUpsert(int insertados, int actualizados) {
+            this(insertados, actualizados, 0);
         }
-        if (!list.isEmpty()) {
-            ventaRepository.flush();
-            entityManager.clear();
+        public ResultadoUpsert(int insertados, int actualizados, int sinCambios) {
+            this.insertados = insertados; this.actualizados = actualizados; this.sinCambios = sinCambios;
         }
     }
 
+    // Con 900 ventas por bloque las listas IN de clasificarBloque quedan bajo 2100 parámetros
+    private static final int UPSERT_CHUNK = 900;
+
+    /**
+     * Upsert de toda la lista en una sola transacción por la clave (anio, mes, dia, codBarra, codPdv, cliente):
+     * VentaMergeWriter la escribe por tramos con un MERGE cada uno (sin límite de parámetros).
+     * Las existentes cuyo hash_fila coincide con el de la venta entrante no se escriben (sinCambios).
+     * Las ventas deben traer Cliente con id.
+     */
+    @Transactional
+    public ResultadoUpsert upsertVentasMasivo(List<Venta> ventas) {
+        if (ventas == null || ventas.isEmpty()) return new ResultadoUpsert(0, 0, 0);
+        Counts c = guardarVentasEnBloque(ventas);
+        return new ResultadoUpsert(c.inserts, c.updates, c.sinCambios);
+    }
+
+    /**
+     * Igual, escribiendo con {@code estrategia} (ver EscritorVentas): la lista va en una transacción y lo que
+     * REPLACE_PERIOD retuvo se aplica después, con lo escrito ahí sumado a los insertados.
+     */
+    public ResultadoUpsert upsertVentasMasivo(List<Venta> ventas, EstrategiaCarga estrategia) {
+        EscritorVentas.Escritura escritura = escritorVentas.abrir(estrategia);
+        Counts c = ventas == null || ventas.isEmpty()
+                ? new Counts()
+                : txTemplate.execute(st -> guardarVentasEnBloque(ventas, escritura));
+        VentaMergeWriter.Resultado alTerminar = escritura.terminar();
+        return new ResultadoUpsert(c.inserts + alTerminar.insertados(), c.updates + alTerminar.actualizados(),
+                c.sinCambios + alTerminar.sinCambios());
+    }
+
+    /**
+     * Mismos conteos que {@link #upsertVentasMasivo} sin escribir (ver SimulacionCarga): los bloques
+     * de {@value #UPSERT_CHUNK} se clasifican en paralelo, cada uno en una transacción de solo lectura.
+     */
+    public ResultadoUpsert simularUpsertMasivo(List<Venta> ventas) {
+        int[] total = new int[3];
+        if (ventas == null || ventas.isEmpty()) return new ResultadoUpsert(0, 0, 0);
+        try (PipelineCarga<Venta, Counts> pipeline = new PipelineCarga<>("simulacion-upsert", UPSERT_CHUNK,
+                     SimulacionCarga.hilos(), SimulacionCarga.hilos(), txSimulacion,
+                     (bloque, nro) -> clasificarBloque(bloque, new ArrayList<>(), new ArrayList<>()),
+                     (nro, c) -> {
+                         total[0] += c.inserts;
+                         total[1] += c.updates;
+                         total[2] += c.sinCambios;
+                     })) {
+            ventas.forEach(pipeline::agregar);
+            log.info("Simulación upsert: " + pipeline.terminar());
+        }
+        return new ResultadoUpsert(total[0], total[1], total[2]);
+    }
+
     // ============================================================
     // ===================== LÓGICA EXISTENTE =====================
     // ============================================================
@@ -315,7 +399,7 @@ public class VentaService {
             writer.write(Objects.toString(codItem, "NULL"));
             writer.newLine();
         } catch (IOException e) {
-            System.err.println("Error al guardar código no encontrado: " + e.getMessage());
+            log.warning("Error al guardar código no encontrado: " + e.getMessage());
         }
     }
 
@@ -389,24 +473,43 @@ public class VentaService {
                 .body(resource);
     }
 
-    // ===== NUEVO: validación de existencia en SAP por codBarra =====
-    private boolean codBarraExisteEnSap(String codBarra) {
-        if (codBarra == null || codBarra.trim().isEmpty()) return false;
+    // ===== validación de existencia en SAP por codBarra =====
+    // Por consulta IN: SQL Server admite máx. 2100 parámetros
+    private static final int SAP_IN_CHUNK = 900;
 
-        // Opción A: usa el repositorio si agregaste existsSapByCodBarra
-        try {
-            return ventaRepository.codBarraExisteEnSap(codBarra.trim());
-        } catch (Throwable ignore) {
-            // Opción B: fallback con EntityManager
-            String sql = "SELECT TOP 1 1 FROM SELLOUT.dbo.SAP_Prod_cache WHERE cod_barra = :cb";
-            try {
-                Object r = entityManager.createNativeQuery(sql)
-                        .setParameter("cb", codBarra.trim())
-                        .getSingleResult();
-                return r != null;
-            } catch (Exception e) {
-                return false;
+    private static String claveSap(String codBarra) {
+        return codBarra == null ? "" : codBarra.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Una consulta IN por cada {@value #SAP_IN_CHUNK} códigos (no una por código).
+     * Devuelve las claves (trim + mayúsculas, como compara la collation CI) que existen en SAP_Prod_cache.
+     */
+    private Set<String> codBarrasExistentesEnSap(Collection<String> codigos) {
+        List<String> lista = new ArrayList<>();
+        for (String c : codigos) {
+            if (c != null && !c.trim().isEmpty()) lista.add(c.trim());
+        }
+        Set<String> existentes = new HashSet<>();
+        for (int i = 0; i < lista.size(); i += SAP_IN_CHUNK) {
+            List<String> sub = lista.subList(i, Math.min(i + SAP_IN_CHUNK, lista.size()));
+            for (String cb : ventaRepository.findSapCodBarrasIn(sub)) existentes.add(claveSap(cb));
+        }
+        return existentes;
+    }
+
+    /** Igual que guardarCodigoNoEncontrado pero abriendo el archivo una sola vez. */
+    private void guardarCodigosNoEncontrados(List<String> codigos) {
+        if (codigos == null || codigos.isEmpty()) return;
+        String downloadPath = Paths.get(CARPETA_CODIGOS, "codigos_no_encontrados.txt").toString();
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(downloadPath),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (String c : codigos) {
+                writer.write(Objects.toString(c, "NULL"));
+                writer.newLine();
             }
+        } catch (IOException e) {
+            log.warning("Error al guardar códigos no encontrados: " + e.getMessage());
         }
     }
 
@@ -421,8 +524,7 @@ public class VentaService {
             case STRING: return celda.getStringCellValue().trim();
             case NUMERIC:
                 if (DateUtil.isCellDateFormatted(celda)) {
-                    LocalDate d = celda.getDateCellValue().toInstant().atZone(ZONE).toLocalDate();
-                    return d.toString();
+                    return DecodificadorCeldas.iso(DecodificadorCeldas.fecha(celda, true));
                 }
                 return String.valueOf((long) celda.getNumericCellValue());
             case BOOLEAN: return String.valueOf(celda.getBooleanCellValue());
@@ -434,72 +536,95 @@ public class VentaService {
     private Double obtenerValorCeldaComoDouble(Row fila, Integer columnaIndex) {
         if (columnaIndex == null) return null;
         Cell celda = fila.getCell(columnaIndex);
-        if (celda == null) return null;
-
-        if (celda.getCellType() == CellType.NUMERIC) {
-            return celda.getNumericCellValue();
-        } else if (celda.getCellType() == CellType.STRING) {
-            try {
-                String s = celda.getStringCellValue();
-                if (s == null) return null;
-                s = s.trim().replace(",", ".");
-                if (s.isEmpty()) return null;
-                return Double.parseDouble(s);
-            } catch (NumberFormatException e) {
-                return null;
-            }
-        }
-        return null;
+        return celda == null ? null : valorONull(DecodificadorCeldas.numero(celda));
     }
 
-    private Date obtenerFechaCelda(Row fila, Integer columnaIndex) {
-        if (columnaIndex == null) return null;
+    /** Fecha yyyyMMdd (DecodificadorCeldas.SIN_FECHA si la celda no tiene una). */
+    private int obtenerFechaCelda(Row fila, Integer columnaIndex) {
+        if (columnaIndex == null) return DecodificadorCeldas.SIN_FECHA;
         Cell celda = fila.getCell(columnaIndex);
-        if (celda == null) return null;
-        try {
-            if (celda.getCellType() == CellType.NUMERIC && DateUtil.isCellDateFormatted(celda)) {
-                return celda.getDateCellValue();
-            } else if (celda.getCellType() == CellType.NUMERIC) {
-                return DateUtil.getJavaDate(celda.getNumericCellValue());
-            } else if (celda.getCellType() == CellType.STRING) {
-                String s = celda.getStringCellValue();
-                if (s == null) return null;
-                s = s.trim();
-                if (s.isEmpty()) return null;
-
-                int spaceIdx = s.indexOf(' ');
-                if (spaceIdx > 0) s = s.substring(0, spaceIdx);
-                int tIdx = s.indexOf('T');
-                if (tIdx > 0) s = s.substring(0, tIdx);
-
-                LocalDate ld = tryParseLocalDate(s);
-                if (ld != null) {
-                    return Date.from(ld.atStartOfDay(ZONE).toInstant());
+        return DecodificadorCeldas.fecha(celda, true);
+    }
+
+    // Mismas reglas sobre una fila del lector CSV (String, Double con/sin formato de fecha o Boolean)
+
+    private String obtenerValorCeldaComoString(ExcelStreamingReader.Fila fila, Integer columnaIndex) {
+        return columnaIndex == null ? null : DecodificadorCeldas.texto(fila, columnaIndex);
+    }
+
+    private Double obtenerValorCeldaComoDouble(ExcelStreamingReader.Fila fila, Integer columnaIndex) {
+        return columnaIndex == null ? null : valorONull(DecodificadorCeldas.numero(fila, columnaIndex));
+    }
+
+    private int obtenerFechaCelda(ExcelStreamingReader.Fila fila, Integer columnaIndex) {
+        return columnaIndex == null ? DecodificadorCeldas.SIN_FECHA : DecodificadorCeldas.fecha(fila, columnaIndex);
+    }
+
+    private static Double valorONull(double v) {
+        return Double.isNaN(v) ? null : v;
+    }
+
+    // ======= MÉTODO DE CARGA DESDE EXCEL con validación SAP (firma original + overload) =======
+
+    // Filas candidatas por consulta de existencia en SAP
+    private static final int VALIDACION_CHUNK = 5_000;
+    // Ventas validadas por bloque de upsert; el escritor guarda un bloque mientras se lee el siguiente
+    private static final int UPSERT_BLOQUE = 10_000;
+    private static final int COLA_BLOQUES = 2;
+
+    /** Celdas de una fila del archivo, sea una Row del libro o una fila del CSV. */
+    private interface CeldasFila {
+        String texto(Integer columna);
+        Double numero(Integer columna);
+        int fecha(Integer columna);
+    }
+
+    @FunctionalInterface
+    private interface ConsumidorFila {
+        void aceptar(int filaIndex, CeldasFila celdas);
+    }
+
+    /** Recorre las filas con datos desde filaInicio, en orden. */
+    @FunctionalInterface
+    private interface FuenteFilas {
+        void recorrer(int filaInicio, ConsumidorFila consumidor) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface AperturaLibro {
+        Workbook abrir() throws Exception;
+    }
+
+    private FuenteFilas filasDeLibro(AperturaLibro apertura) {
+        return (filaInicio, consumidor) -> {
+            try (Workbook workbook = apertura.abrir()) {
+                Sheet hoja = workbook.getSheetAt(0);
+                for (int filaIndex = filaInicio; filaIndex <= hoja.getLastRowNum(); filaIndex++) {
+                    Row fila = hoja.getRow(filaIndex);
+                    if (fila == null) continue;
+                    consumidor.aceptar(filaIndex, new CeldasFila() {
+                        @Override public String texto(Integer c) { return obtenerValorCeldaComoString(fila, c); }
+                        @Override public Double numero(Integer c) { return obtenerValorCeldaComoDouble(fila, c); }
+                        @Override public int fecha(Integer c) { return obtenerFechaCelda(fila, c); }
+                    });
                 }
             }
-        } catch (Exception ignore) {}
-        return null;
-    }
-
-    private static final List<java.time.format.DateTimeFormatter> DATE_FORMATS = List.of(
-            java.time.format.DateTimeFormatter.ofPattern("dd/MM/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d/M/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("dd-MM-uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("d-M-uuuu"),
-            java.time.format.DateTimeFormatter.ISO_LOCAL_DATE,
-            java.time.format.DateTimeFormatter.ofPattern("MM/dd/uuuu"),
-            java.time.format.DateTimeFormatter.ofPattern("M/d/uuuu")
-    );
-
-    private LocalDate tryParseLocalDate(String s) {
-        for (var f : DATE_FORMATS) {
-            try { return LocalDate.parse(s, f); }
-            catch (Exception ignore) {}
-        }
-        return null;
+        };
     }
 
-    // ======= MÉTODO DE CARGA DESDE EXCEL con validación SAP (firma original + overload) =======
+    /** CSV/TSV: las líneas vacías son filas ausentes, igual que en el libro. */
+    private FuenteFilas filasDeCsv(Path archivo, Map<String, Integer> mapeoColumnas) {
+        int maxColumnas = mapeoColumnas.values().stream().filter(Objects::nonNull).mapToInt(Integer::intValue).max().orElse(0) + 1;
+        return (filaInicio, consumidor) -> CsvStreamingReader.leer(archivo.toFile(), maxColumnas, fila -> {
+            if (fila.getIndice() < filaInicio) return true;
+            consumidor.aceptar(fila.getIndice(), new CeldasFila() {
+                @Override public String texto(Integer c) { return obtenerValorCeldaComoString(fila, c); }
+                @Override public Double numero(Integer c) { return obtenerValorCeldaComoDouble(fila, c); }
+                @Override public int fecha(Integer c) { return obtenerFechaCelda(fila, c); }
+            });
+            return true;
+        });
+    }
 
     // Overload recomendado: devuelve también incidencias y métricas
     public Map<String, Object> cargarVentasDesdeExcel(
@@ -507,55 +632,101 @@ public class VentaService {
             Map<String, Integer> mapeoColumnas,
             int filaInicio,
             String nombreArchivo) {
+        return cargarVentas(filasDeLibro(() -> WorkbookFactory.create(inputStream)), mapeoColumnas, filaInicio, nombreArchivo,
+                EstrategiaCarga.UPSERT);
+    }
 
-        long t0 = System.nanoTime();
-        List<Incidencia> incidencias = new ArrayList<>();
-
-        int filasLeidas = 0;
-        int filasProcesadas = 0;
-
-        try (Workbook workbook = WorkbookFactory.create(inputStream)) {
-            Sheet hoja = workbook.getSheetAt(0);
-            List<Venta> buffer = new ArrayList<>(5_000);
+    /**
+     * Igual, con el archivo ya en disco (SpoolSubidas): POI lo abre por ruta en solo lectura, sin copiarlo al heap.
+     * Un .csv/.tsv/.txt se lee con {@link CsvStreamingReader} con las mismas columnas, filas e incidencias.
+     */
+    public Map<String, Object> cargarVentasDesdeExcel(
+            Path archivo,
+            Map<String, Integer> mapeoColumnas,
+            int filaInicio,
+            String nombreArchivo) {
+        return cargarVentasDesdeExcel(archivo, mapeoColumnas, filaInicio, nombreArchivo, EstrategiaCarga.UPSERT);
+    }
 
-            for (int filaIndex = filaInicio; filaIndex <= hoja.getLastRowNum(); filaIndex++) {
-                Row fila = hoja.getRow(filaIndex);
-                if (fila == null) continue;
-                filasLeidas++;
+    /** Igual, escribiendo con {@code estrategia} (ver EscritorVentas); REPLACE_PERIOD requiere el cliente en las ventas. */
+    public Map<String, Object> cargarVentasDesdeExcel(
+            Path archivo,
+            Map<String, Integer> mapeoColumnas,
+            int filaInicio,
+            String nombreArchivo,
+            EstrategiaCarga estrategia) {
+        FuenteFilas fuente;
+        try {
+            fuente = CsvStreamingReader.esTextoDelimitado(archivo.toFile(), nombreArchivo)
+                    ? filasDeCsv(archivo, mapeoColumnas)
+                    : filasDeLibro(() -> WorkbookFactory.create(archivo.toFile(), null, true));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return cargarVentas(fuente, mapeoColumnas, filaInicio, nombreArchivo, estrategia);
+    }
 
-                String codBarra = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaCodBarra"));
-                String marca = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaMarca"));
-                String nombreProducto = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaProducto"));
-                String descripcion = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaDescripcion"));
-                String codPdv = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaCodPdv"));
-                String pdv = obtenerValorCeldaComoString(fila, mapeoColumnas.get("columnaPdv"));
+    private Map<String, Object> cargarVentas(
+            FuenteFilas fuente,
+            Map<String, Integer> mapeoColumnas,
+            int filaInicio,
+            String nombreArchivo,
+            EstrategiaCarga estrategia) {
 
-                Double ventaUnidades = obtenerValorCeldaComoDouble(fila, mapeoColumnas.get("columnaUnidades"));
-                Double ventaUSD = obtenerValorCeldaComoDouble(fila, mapeoColumnas.get("columnaDolares"));
-                Date fecha = obtenerFechaCelda(fila, mapeoColumnas.get("columnaFecha"));
+        long t0 = System.nanoTime();
+        EscritorVentas.Escritura escritura = escritorVentas.abrir(estrategia);
+        List<Incidencia> incidencias = new ArrayList<>();
+        List<String> noEncontrados = new ArrayList<>();
+
+        int[] filasLeidas = {0};
+        int[] filasProcesadas = {0};
+        int[] consultasSap = {0};
+
+        int[] insertados = {0};
+        int[] actualizados = {0};
+        int[] sinCambios = {0};
+        Map<String, Object> pipelineStats = null;
+
+        // 1 escritor: la misma clave puede venir en bloques distintos
+        try (PipelineCarga<Venta, ResultadoUpsert> pipeline = new PipelineCarga<>("carga-excel", UPSERT_BLOQUE,
+                     COLA_BLOQUES, 1, txTemplate,
+                     (bloque, nro) -> {
+                         Counts c = guardarVentasEnBloque(bloque, escritura);
+                         return new ResultadoUpsert(c.inserts, c.updates, c.sinCambios);
+                     },
+                     (nro, r) -> {
+                         insertados[0] += r.insertados;
+                         actualizados[0] += r.actualizados;
+                         sinCambios[0] += r.sinCambios;
+                     })) {
+            // candidatas pendientes de validar contra SAP (en orden de fila)
+            List<Venta> pendientes = new ArrayList<>(VALIDACION_CHUNK);
+            List<Integer> filasPendientes = new ArrayList<>(VALIDACION_CHUNK);
+
+            fuente.recorrer(filaInicio, (filaIndex, fila) -> {
+                filasLeidas[0]++;
+
+                String codBarra = fila.texto(mapeoColumnas.get("columnaCodBarra"));
+                String marca = fila.texto(mapeoColumnas.get("columnaMarca"));
+                String nombreProducto = fila.texto(mapeoColumnas.get("columnaProducto"));
+                String descripcion = fila.texto(mapeoColumnas.get("columnaDescripcion"));
+                String codPdv = fila.texto(mapeoColumnas.get("columnaCodPdv"));
+                String pdv = fila.texto(mapeoColumnas.get("columnaPdv"));
+
+                Double ventaUnidades = fila.numero(mapeoColumnas.get("columnaUnidades"));
+                Double ventaUSD = fila.numero(mapeoColumnas.get("columnaDolares"));
+                int fecha = fila.fecha(mapeoColumnas.get("columnaFecha"));
 
                 boolean tieneVentaPositiva =
                         (ventaUnidades != null && ventaUnidades > 0) ||
                         (ventaUSD != null && ventaUSD > 0);
 
-                if (!tieneVentaPositiva || fecha == null) continue;
-
-                // ===== NUEVO: Validar existencia del CODBARRA en SAP antes de crear la venta =====
-                if (!codBarraExisteEnSap(codBarra)) {
-                    incidencias.add(new Incidencia(
-                            (codBarra == null || codBarra.isBlank()) ? "CODBARRA_VACIO" : codBarra.trim(),
-                            "CODBARRA no existe en SAP (cache).",
-                            (filaIndex + 1)
-                    ));
-                    guardarCodigoNoEncontrado(codBarra == null ? "CODBARRA_VACIO" : codBarra.trim());
-                    continue; // omitimos la fila
-                }
+                if (!tieneVentaPositiva || fecha == DecodificadorCeldas.SIN_FECHA) return;
 
-                var zdt = fecha.toInstant().atZone(ZONE);
                 Venta venta = new Venta();
-                venta.setAnio(zdt.getYear());
-                venta.setMes(zdt.getMonthValue());
-                venta.setDia(zdt.getDayOfMonth());
+                venta.setAnio(DecodificadorCeldas.anio(fecha));
+                venta.setMes(DecodificadorCeldas.mes(fecha));
+                venta.setDia(DecodificadorCeldas.dia(fecha));
                 venta.setMarca(marca);
                 venta.setNombreProducto(nombreProducto);
                 venta.setCodBarra(codBarra);
@@ -568,19 +739,21 @@ public class VentaService {
                 venta.setStockUnidades(0);
                 venta.setUnidadesDiarias("0");
 
-                buffer.add(venta);
-                filasProcesadas++;
-
-                if (buffer.size() >= 10_000) {
-                    guardarVentasEnBloque(buffer);
-                    buffer.clear();
+                pendientes.add(venta);
+                filasPendientes.add(filaIndex);
+                if (pendientes.size() >= VALIDACION_CHUNK) {
+                    validarContraSap(pendientes, filasPendientes, pipeline::agregar, incidencias, noEncontrados, filasProcesadas, consultasSap);
                 }
-            }
-            if (!buffer.isEmpty()) {
-                guardarVentasEnBloque(buffer);
-            }
+            });
+            validarContraSap(pendientes, filasPendientes, pipeline::agregar, incidencias, noEncontrados, filasProcesadas, consultasSap);
+            pipelineStats = pipeline.terminar();
+            VentaMergeWriter.Resultado alTerminar = escritura.terminar();
+            insertados[0] += alTerminar.insertados();
+            actualizados[0] += alTerminar.actualizados();
         } catch (Exception e) {
             incidencias.add(new Incidencia("GENERAL", "ERROR FATAL: " + e.getMessage(), -1));
+        } finally {
+            guardarCodigosNoEncontrados(noEncontrados);
         }
 
         long t1 = System.nanoTime();
@@ -589,13 +762,63 @@ public class VentaService {
         Map<String, Object> out = new LinkedHashMap<>();
         out.put("ok", incidencias.stream().noneMatch(i -> i.codigo.equals("GENERAL")));
         out.put("archivo", nombreArchivo);
-        out.put("filasLeidas", filasLeidas);
-        out.put("filasProcesadas", filasProcesadas);
+        out.put("filasLeidas", filasLeidas[0]);
+        out.put("filasProcesadas", filasProcesadas[0]);
         out.put("incidencias", incidencias);
         out.put("tiempoSegundos", segundos);
+        out.put("filasPorSegundo", segundos > 0 ? Math.round(filasLeidas[0] / segundos) : filasLeidas[0]);
+        out.put("consultasSap", consultasSap[0]);
+        out.put("insertados", insertados[0]);
+        out.put("actualizados", actualizados[0]);
+        out.put("sinCambios", sinCambios[0]);
+        out.put("escritura", escritura.rendimiento());
+        log.info("cargarVentasDesdeExcel: archivo=" + nombreArchivo + " filasLeidas=" + filasLeidas[0]
+                + " procesadas=" + filasProcesadas[0] + " consultasSap=" + consultasSap[0]
+                + " insertados=" + insertados[0] + " actualizados=" + actualizados[0] + " sinCambios=" + sinCambios[0]
+                + " seg=" + segundos + " filas/s=" + out.get("filasPorSegundo") + " pipeline=" + pipelineStats
+                + " escritura=" + out.get("escritura"));
         return out;
     }
 
+    /**
+     * Valida el bloque de candidatas con una consulta IN por los codBarra distintos (no una por fila).
+     * Las que no existen en SAP generan la misma Incidencia que antes, en orden de fila; las válidas
+     * pasan a {@code validas} (el pipeline de guardado). Vacía las listas de pendientes.
+     * Package-private para ValidacionSapBenchmark.
+     */
+    void validarContraSap(List<Venta> pendientes, List<Integer> filasPendientes,
+                          Consumer<Venta> validas,
+                          List<Incidencia> incidencias, List<String> noEncontrados,
+                          int[] filasProcesadas, int[] consultasSap) {
+        if (pendientes.isEmpty()) return;
+
+        Set<String> distintos = new LinkedHashSet<>();
+        for (Venta v : pendientes) {
+            if (v.getCodBarra() != null && !v.getCodBarra().trim().isEmpty()) distintos.add(v.getCodBarra().trim());
+        }
+        Set<String> existentes = codBarrasExistentesEnSap(distintos);
+        consultasSap[0] += (distintos.size() + SAP_IN_CHUNK - 1) / SAP_IN_CHUNK;
+
+        for (int k = 0; k < pendientes.size(); k++) {
+            Venta venta = pendientes.get(k);
+            String codBarra = venta.getCodBarra();
+            boolean existe = codBarra != null && !codBarra.trim().isEmpty() && existentes.contains(claveSap(codBarra));
+            if (!existe) {
+                incidencias.add(new Incidencia(
+                        (codBarra == null || codBarra.isBlank()) ? "CODBARRA_VACIO" : codBarra.trim(),
+                        "CODBARRA no existe en SAP (cache).",
+                        (filasPendientes.get(k) + 1)
+                ));
+                noEncontrados.add(codBarra == null ? "CODBARRA_VACIO" : codBarra.trim());
+                continue; // omitimos la fila
+            }
+            validas.accept(venta);
+            filasProcesadas[0]++;
+        }
+        pendientes.clear();
+        filasPendientes.clear();
+    }
+
     // Firma vieja (compatibilidad): retorna solo boolean; internamente llama al overload
     public boolean cargarVentasDesdeExcel(InputStream inputStream, Map<String, Integer> mapeoColumnas, int filaInicio) {
         Map<String, Object> res = cargarVentasDesdeExcel(inputStream, mapeoColumnas, filaInicio, null);
@@ -678,14 +901,14 @@ public class VentaService {
 
     public boolean eliminarVentas(List<Long> ids) {
         try {
-            List<Venta> ventas = ventaRepository.findAllById(ids);
-            ventaRepository.deleteAll(ventas);
+            eliminacionVentaService.eliminarPorIds(ids, null);
             return true;
         } catch (Exception e) {
             return false;
         }
     }
 
+    @LecturaReplica
     public List<String> obtenerMarcasDisponibles() {
         String queryStr = "SELECT DISTINCT v.marca FROM Venta v WHERE v.marca IS NOT NULL";
         Query query = entityManager.createQuery(queryStr);
@@ -694,7 +917,7 @@ public class VentaService {
         return res;
     }
 
-    @Transactional
+    @LecturaReplica
     public List<Object[]> obtenerReporteVentas() {
         try {
             String sql = """
@@ -733,6 +956,7 @@ public class VentaService {
     }
 
     /** Listado rápido resumido y paginado; opcionalmente filtra por cliente, año, mes y marca */
+    @LecturaReplica
     public List<Map<String, Object>> obtenerVentasResumen(
             String codCliente,
             Integer anio,
@@ -751,6 +975,7 @@ public class VentaService {
         if (codCliente != null && !codCliente.trim().isEmpty()) sql.append("AND c.cod_Cliente = :cod ");
         if (anio != null) sql.append("AND v.anio = :anio ");
         if (mes != null) sql.append("AND v.mes = :mes ");
+        sql.append(ParticionVentaService.filtroPeriodo("v", anio, mes));
         if (marca != null && !marca.isBlank()) sql.append("AND v.marca = :marca ");
         sql.append("ORDER BY v.anio DESC, v.mes DESC, v.id DESC ")
            .append("OFFSET :offset ROWS FETCH NEXT :limit ROWS ONLY");
@@ -831,6 +1056,7 @@ public class VentaService {
     }
 
    /** Años disponibles (distintos) en Venta, opcionalmente filtrado por clienteId. */
+@LecturaReplica
 public List<Integer> obtenerAniosDisponibles(Long clienteId) {
     String jpql = "SELECT DISTINCT v.anio FROM Venta v " +
                   (clienteId != null ? "WHERE v.cliente.id = :clienteId " : "") +
@@ -841,6 +1067,7 @@ public List<Integer> obtenerAniosDisponibles(Long clienteId) {
 }
 
     /** Meses disponibles (distintos) en Venta, opcionalmente filtrado por año y clienteId. */
+    @LecturaReplica
     public List<Integer> obtenerMesesDisponibles(Integer anio, Long clienteId) {
         StringBuilder jpql = new StringBuilder("SELECT DISTINCT v.mes FROM Venta v WHERE 1=1 ");
         if (anio != null)      jpql.append("AND v.anio = :anio ");
@@ -0,0 +1,93 @@
+-- Ids por SEQUENCE (optimizer pooled, bloques de 500) para cliente, producto, tipo_mueble y venta:
+-- con IDENTITY Hibernate no puede agrupar los INSERT (hibernate.jdbc.batch_size).
+-- Cada secuencia arranca en max(id) + 500: el optimizer pooled toma cada valor como el último id de su
+-- bloque, así que el primero que entrega es max(id) + 1. INCREMENT BY = allocationSize de la entidad.
+-- La columna id deja de ser IDENTITY (se reescribe con los mismos valores) y queda con
+-- DEFAULT NEXT VALUE FOR para los INSERT que no la envían. Las FK que apuntan a la tabla se recrean.
+-- En venta reescribe toda la tabla: correr en ventana de mantenimiento.
+-- Llegó antes que Flyway y se aplicaba a mano: una tabla cuya secuencia ya existe se salta.
+
+CREATE OR ALTER PROCEDURE dbo.tmp_id_a_secuencia @tabla SYSNAME, @secuencia SYSNAME AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    DECLARE @obj INT = OBJECT_ID(N'dbo.' + QUOTENAME(@tabla));
+    DECLARE @t NVARCHAR(300) = N'dbo.' + QUOTENAME(@tabla);
+    DECLARE @sql NVARCHAR(MAX), @inicio BIGINT, @tipo SYSNAME, @pk SYSNAME, @pkTipo NVARCHAR(20);
+
+    IF OBJECT_ID(N'dbo.' + QUOTENAME(@secuencia), N'SO') IS NOT NULL RETURN;
+
+    SELECT @tipo = TYPE_NAME(system_type_id) FROM sys.columns WHERE object_id = @obj AND name = N'id';
+
+    -- 1) secuencia desde el máximo actual
+    SET @sql = N'SELECT @inicio = ISNULL(MAX(id), 0) + 500 FROM ' + @t;
+    EXEC sp_executesql @sql, N'@inicio BIGINT OUTPUT', @inicio OUTPUT;
+    SET @sql = N'CREATE SEQUENCE dbo.' + QUOTENAME(@secuencia) + N' AS ' + @tipo
+             + N' START WITH ' + CAST(@inicio AS NVARCHAR(20)) + N' INCREMENT BY 500';
+    EXEC sp_executesql @sql;
+
+    -- 2) FK que apuntan a la tabla (se recrean al final)
+    DECLARE @fks TABLE (nombre SYSNAME, tabla SYSNAME, columna SYSNAME, columna_ref SYSNAME);
+    INSERT INTO @fks
+    SELECT fk.name, OBJECT_NAME(fk.parent_object_id),
+           COL_NAME(fkc.parent_object_id, fkc.parent_column_id),
+           COL_NAME(fkc.referenced_object_id, fkc.referenced_column_id)
+    FROM sys.foreign_keys fk
+    JOIN sys.foreign_key_columns fkc ON fkc.constraint_object_id = fk.object_id
+    WHERE fk.referenced_object_id = @obj;
+
+    SET @sql = NULL;
+    SELECT @sql = STRING_AGG(CAST(N'ALTER TABLE dbo.' + QUOTENAME(tabla) + N' DROP CONSTRAINT ' + QUOTENAME(nombre) AS NVARCHAR(MAX)), N'; ')
+    FROM @fks;
+    IF @sql IS NOT NULL EXEC sp_executesql @sql;
+
+    -- 3) PK (se recrea igual, clustered o no)
+    SELECT @pk = kc.name, @pkTipo = i.type_desc
+    FROM sys.key_constraints kc
+    JOIN sys.indexes i ON i.object_id = kc.parent_object_id AND i.index_id = kc.unique_index_id
+    WHERE kc.parent_object_id = @obj AND kc.type = 'PK';
+    IF @pk IS NOT NULL
+    BEGIN
+        SET @sql = N'ALTER TABLE ' + @t + N' DROP CONSTRAINT ' + QUOTENAME(@pk);
+        EXEC sp_executesql @sql;
+    END
+
+    -- 4) id sin IDENTITY con los mismos valores
+    SET @sql = N'ALTER TABLE ' + @t + N' ADD id_secuencia ' + @tipo + N' NULL';
+    EXEC sp_executesql @sql;
+    SET @sql = N'UPDATE ' + @t + N' SET id_secuencia = id';
+    EXEC sp_executesql @sql;
+    SET @sql = N'ALTER TABLE ' + @t + N' ALTER COLUMN id_secuencia ' + @tipo + N' NOT NULL';
+    EXEC sp_executesql @sql;
+    SET @sql = N'ALTER TABLE ' + @t + N' DROP COLUMN id';
+    EXEC sp_executesql @sql;
+    SET @sql = @t + N'.id_secuencia';
+    EXEC sp_rename @sql, N'id', N'COLUMN';
+
+    SET @sql = N'ALTER TABLE ' + @t + N' ADD CONSTRAINT ' + QUOTENAME(ISNULL(@pk, N'PK_' + @tabla))
+             + N' PRIMARY KEY ' + CASE WHEN @pkTipo = N'NONCLUSTERED' THEN N'NONCLUSTERED' ELSE N'CLUSTERED' END + N' (id); '
+             + N'ALTER TABLE ' + @t + N' ADD CONSTRAINT ' + QUOTENAME(N'DF_' + @tabla + N'_id')
+             + N' DEFAULT (NEXT VALUE FOR dbo.' + QUOTENAME(@secuencia) + N') FOR id';
+    EXEC sp_executesql @sql;
+
+    -- 5) FK de vuelta
+    SET @sql = NULL;
+    SELECT @sql = STRING_AGG(CAST(N'ALTER TABLE dbo.' + QUOTENAME(tabla) + N' WITH CHECK ADD CONSTRAINT ' + QUOTENAME(nombre)
+                  + N' FOREIGN KEY (' + QUOTENAME(columna) + N') REFERENCES ' + @t + N' (' + QUOTENAME(columna_ref) + N')'
+                  AS NVARCHAR(MAX)), N'; ')
+    FROM @fks;
+    IF @sql IS NOT NULL EXEC sp_executesql @sql;
+END
+GO
+
+BEGIN TRANSACTION;
+EXEC dbo.tmp_id_a_secuencia N'cliente', N'cliente_seq';
+EXEC dbo.tmp_id_a_secuencia N'producto', N'producto_seq';
+EXEC dbo.tmp_id_a_secuencia N'tipo_mueble', N'tipo_mueble_seq';
+EXEC dbo.tmp_id_a_secuencia N'venta', N'venta_seq';
+COMMIT;
+GO
+
+DROP PROCEDURE dbo.tmp_id_a_secuencia;
+GO
@@ -0,0 +1,50 @@
+-- Índices de las búsquedas calientes: clave natural de venta (upserts, existentes, MERGE), listado resumen
+-- por cliente y resolución de productos por código (SAP_Prod_cache.cod_barra, producto.cod_barra_sap/cod_item).
+-- En venta construye índices sobre toda la tabla: correr en ventana de mantenimiento.
+
+-- 1) Duplicados por clave natural: queda el de id menor, el mismo que ya tomaban los upserts
+--    (VentaBatchWriter.existentes). Misma collation que el índice, así que agrupa igual que él.
+--    Las que se borran quedan antes, completas, en dbo.venta_duplicada (para revisarlas o devolverlas a
+--    venta; se puede borrar cuando ya no haga falta).
+WITH duplicadas AS (
+    SELECT id,
+           ROW_NUMBER() OVER (PARTITION BY cliente_id, anio, mes, dia, cod_barra, cod_pdv ORDER BY id) AS n
+    FROM dbo.venta
+)
+SELECT v.*, SYSDATETIME() AS fecha_auditoria
+INTO dbo.venta_duplicada
+FROM dbo.venta v
+JOIN duplicadas d ON d.id = v.id
+WHERE d.n > 1;
+
+DELETE v FROM dbo.venta v WHERE EXISTS (SELECT 1 FROM dbo.venta_duplicada d WHERE d.id = v.id);
+
+-- 2) Clave natural única; incluye lo que leen los upserts para decidir inserción / actualización / sin cambios
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID(N'dbo.venta') AND name = N'ux_venta_clave')
+    CREATE UNIQUE NONCLUSTERED INDEX ux_venta_clave
+        ON dbo.venta (cliente_id, anio, mes, dia, cod_barra, cod_pdv)
+        INCLUDE (hash_fila, producto_id);
+
+-- 3) Listado resumen: ORDER BY anio DESC, mes DESC, id DESC por cliente, con OFFSET/FETCH
+--    (las filas de la página se completan por id; marca se filtra sin ir a la tabla)
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID(N'dbo.venta') AND name = N'ix_venta_cliente_periodo')
+    CREATE NONCLUSTERED INDEX ix_venta_cliente_periodo
+        ON dbo.venta (cliente_id, anio DESC, mes DESC, id DESC)
+        INCLUDE (marca);
+
+-- 4) Resolución de productos (ProductoSapService, RM, Deprati, Template General)
+IF OBJECTPROPERTY(OBJECT_ID(N'dbo.SAP_Prod_cache'), 'IsUserTable') = 1
+   AND NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID(N'dbo.SAP_Prod_cache') AND name = N'ix_sap_prod_cache_cod_barra')
+    CREATE NONCLUSTERED INDEX ix_sap_prod_cache_cod_barra
+        ON dbo.SAP_Prod_cache (cod_barra)
+        INCLUDE (codigo_sap, descripcion, marca);
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID(N'dbo.producto') AND name = N'ix_producto_cod_barra_sap')
+    CREATE NONCLUSTERED INDEX ix_producto_cod_barra_sap
+        ON dbo.producto (cod_barra_sap)
+        INCLUDE (cod_item);
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID(N'dbo.producto') AND name = N'ix_producto_cod_item')
+    CREATE NONCLUSTERED INDEX ix_producto_cod_item
+        ON dbo.producto (cod_item)
+        INCLUDE (cod_barra_sap);
@@ -0,0 +1,208 @@
+-- dbo.venta particionada por periodo (anio * 100 + mes, un mes por partición): un mes se vacía con SWITCH de
+-- partición (solo metadatos) en lugar de DELETE fila a fila, y los filtros por año/mes leen solo sus
+-- particiones (ver ParticionVentaService). Reemplazar el mes de un cliente no es solo metadatos: copia a
+-- venta_carga las ventas del mes de todos los demás clientes antes del SWITCH.
+--
+-- venta_carga (entrada del SWITCH) y venta_salida (salida) tienen la misma estructura, índices y esquema de
+-- partición que venta. Toda migración que cambie columnas, índices o FK de venta debe aplicar lo mismo a
+-- ellas; si no, el SWITCH falla.
+-- Reescribe toda la tabla venta: correr en ventana de mantenimiento.
+
+-- 1) Función y esquema: un límite por mes desde el primer periodo con datos hasta diciembre de dentro de 2 años
+--    (dbo.venta_asegurar_periodo agrega los que falten después). Años anteriores a 2000 (datos erróneos)
+--    quedan en la primera partición: no se generan miles de límites por ellos.
+DECLARE @desde INT = (SELECT ISNULL(MIN(anio * 100 + mes), 201501) FROM dbo.venta WHERE anio >= 2000 AND mes BETWEEN 1 AND 12);
+DECLARE @hasta INT = (YEAR(SYSDATETIME()) + 2) * 100 + 12;
+DECLARE @limites NVARCHAR(MAX) = N'', @p INT = @desde;
+WHILE @p <= @hasta
+BEGIN
+    SET @limites += CASE WHEN @limites = N'' THEN N'' ELSE N', ' END + CAST(@p AS NVARCHAR(10));
+    SET @p = CASE WHEN @p % 100 >= 12 THEN (@p / 100 + 1) * 100 + 1 ELSE @p + 1 END;
+END
+DECLARE @sql NVARCHAR(MAX) = N'CREATE PARTITION FUNCTION pf_venta_periodo (INT) AS RANGE RIGHT FOR VALUES (' + @limites + N')';
+EXEC sp_executesql @sql;
+GO
+
+CREATE PARTITION SCHEME ps_venta_periodo AS PARTITION pf_venta_periodo ALL TO ([PRIMARY]);
+GO
+
+-- 2) Columna de partición (anio o mes NULL quedan en el periodo 0, la primera partición)
+ALTER TABLE dbo.venta ADD periodo AS ISNULL(anio * 100 + mes, 0) PERSISTED;
+GO
+
+-- 3) venta sobre el esquema: PK clustered (periodo, id) e índices alineados; los únicos llevan periodo en la
+--    clave (requisito de SQL Server para alinearlos; periodo sale de anio y mes, así que no cambia la unicidad)
+DROP INDEX ux_venta_clave ON dbo.venta;
+DROP INDEX ix_venta_cliente_periodo ON dbo.venta;
+
+DECLARE @pk SYSNAME = (SELECT name FROM sys.key_constraints WHERE parent_object_id = OBJECT_ID(N'dbo.venta') AND type = 'PK');
+DECLARE @sql NVARCHAR(MAX) = N'ALTER TABLE dbo.venta DROP CONSTRAINT ' + QUOTENAME(@pk);
+IF @pk IS NOT NULL EXEC sp_executesql @sql;
+GO
+
+ALTER TABLE dbo.venta ADD CONSTRAINT pk_venta PRIMARY KEY CLUSTERED (periodo, id) ON ps_venta_periodo (periodo);
+-- Búsquedas por id (findById, deleteById, DELETE ... WHERE id IN de EliminacionVentaService). Alineado y no
+-- único: sin periodo en la consulta SQL Server busca el id en cada partición (una búsqueda por mes con datos,
+-- ~12 por año guardado), no en una. id deja de ser único por sí solo (la PK es periodo + id) y un índice único
+-- sobre id no se puede alinear, así que impediría el SWITCH. La unicidad la dan venta_seq (DEFAULT de id y
+-- rangos de VentaBatchWriter.reservarIds; ningún INSERT trae ids propios) y venta_aplicar_carga, que rechaza
+-- una carga con ids que ya están en otro mes.
+CREATE NONCLUSTERED INDEX ix_venta_id ON dbo.venta (id) ON ps_venta_periodo (periodo);
+CREATE UNIQUE NONCLUSTERED INDEX ux_venta_clave
+    ON dbo.venta (cliente_id, anio, mes, dia, cod_barra, cod_pdv, periodo)
+    INCLUDE (hash_fila, producto_id)
+    ON ps_venta_periodo (periodo);
+CREATE NONCLUSTERED INDEX ix_venta_cliente_periodo
+    ON dbo.venta (cliente_id, anio DESC, mes DESC, id DESC)
+    INCLUDE (marca, periodo)
+    ON ps_venta_periodo (periodo);
+-- los bloqueos que escalan lo hacen a la partición (el mes), no a toda la tabla (ver venta_preparar_carga)
+ALTER TABLE dbo.venta SET (LOCK_ESCALATION = AUTO);
+GO
+
+-- 4) venta_carga / venta_salida: columnas de venta en el mismo orden (SELECT INTO), periodo calculado, mismos
+--    índices; venta_carga además con las FK de venta (confiables), que el SWITCH hacia venta exige
+CREATE OR ALTER PROCEDURE dbo.tmp_clonar_venta @tabla SYSNAME, @conFk BIT AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    DECLARE @t NVARCHAR(300) = N'dbo.' + QUOTENAME(@tabla);
+    DECLARE @cols NVARCHAR(MAX), @sql NVARCHAR(MAX);
+
+    SELECT @cols = STRING_AGG(CAST(QUOTENAME(name) AS NVARCHAR(MAX)), N', ') WITHIN GROUP (ORDER BY column_id)
+    FROM sys.columns WHERE object_id = OBJECT_ID(N'dbo.venta') AND is_computed = 0;
+
+    SET @sql = N'SELECT TOP 0 ' + @cols + N' INTO ' + @t + N' FROM dbo.venta; '
+             + N'ALTER TABLE ' + @t + N' ADD periodo AS ISNULL(anio * 100 + mes, 0) PERSISTED;';
+    EXEC sp_executesql @sql;
+
+    SET @sql = N'ALTER TABLE ' + @t + N' ADD CONSTRAINT ' + QUOTENAME(N'pk_' + @tabla)
+             + N' PRIMARY KEY CLUSTERED (periodo, id) ON ps_venta_periodo (periodo); '
+             + N'CREATE NONCLUSTERED INDEX ix_venta_id ON ' + @t + N' (id) ON ps_venta_periodo (periodo); '
+             + N'CREATE UNIQUE NONCLUSTERED INDEX ux_venta_clave ON ' + @t
+             + N' (cliente_id, anio, mes, dia, cod_barra, cod_pdv, periodo) INCLUDE (hash_fila, producto_id) ON ps_venta_periodo (periodo); '
+             + N'CREATE NONCLUSTERED INDEX ix_venta_cliente_periodo ON ' + @t
+             + N' (cliente_id, anio DESC, mes DESC, id DESC) INCLUDE (marca, periodo) ON ps_venta_periodo (periodo);';
+    EXEC sp_executesql @sql;
+
+    IF @conFk = 1
+    BEGIN
+        SET @sql = NULL;
+        SELECT @sql = STRING_AGG(CAST(N'ALTER TABLE ' + @t + N' WITH CHECK ADD CONSTRAINT '
+                      + QUOTENAME(N'fk_' + @tabla + N'_' + COL_NAME(fkc.parent_object_id, fkc.parent_column_id))
+                      + N' FOREIGN KEY (' + QUOTENAME(COL_NAME(fkc.parent_object_id, fkc.parent_column_id)) + N') REFERENCES dbo.'
+                      + QUOTENAME(OBJECT_NAME(fkc.referenced_object_id))
+                      + N' (' + QUOTENAME(COL_NAME(fkc.referenced_object_id, fkc.referenced_column_id)) + N')'
+                      AS NVARCHAR(MAX)), N'; ')
+        FROM sys.foreign_keys fk
+        JOIN sys.foreign_key_columns fkc ON fkc.constraint_object_id = fk.object_id
+        WHERE fk.parent_object_id = OBJECT_ID(N'dbo.venta');
+        IF @sql IS NOT NULL EXEC sp_executesql @sql;
+    END
+END
+GO
+
+EXEC dbo.tmp_clonar_venta N'venta_carga', 1;
+EXEC dbo.tmp_clonar_venta N'venta_salida', 0;
+DROP PROCEDURE dbo.tmp_clonar_venta;
+GO
+
+-- 5) Mantenimiento y SWITCH. Los que tocan venta_carga / venta_salida toman el applock 'venta_particion' de la
+--    transacción (dos reemplazos no comparten esas tablas a la vez); se llaman dentro de una transacción.
+--    Las demás escrituras de venta (MERGE, inserts, borrados) no toman el applock: lo que las aísla del
+--    reemplazo son los bloqueos de fila / partición de venta_preparar_carga.
+
+-- Deja @periodo solo en su partición: límites en @periodo y en el mes siguiente (parte la que los contenga)
+CREATE OR ALTER PROCEDURE dbo.venta_asegurar_periodo @periodo INT AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    DECLARE @siguiente INT = CASE WHEN @periodo % 100 >= 12 THEN (@periodo / 100 + 1) * 100 + 1 ELSE @periodo + 1 END;
+    DECLARE @limite INT = @periodo;
+    WHILE @limite IS NOT NULL
+    BEGIN
+        IF NOT EXISTS (SELECT 1
+                       FROM sys.partition_range_values rv
+                       JOIN sys.partition_functions pf ON pf.function_id = rv.function_id
+                       WHERE pf.name = N'pf_venta_periodo' AND CAST(rv.value AS INT) = @limite)
+        BEGIN
+            ALTER PARTITION SCHEME ps_venta_periodo NEXT USED [PRIMARY];
+            ALTER PARTITION FUNCTION pf_venta_periodo () SPLIT RANGE (@limite);
+        END
+        SET @limite = CASE WHEN @limite = @periodo THEN @siguiente END;
+    END
+END
+GO
+
+-- Vacía el periodo (todos los clientes): SWITCH a venta_salida y TRUNCATE
+CREATE OR ALTER PROCEDURE dbo.venta_vaciar_periodo @periodo INT, @filas BIGINT OUTPUT AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    EXEC sp_getapplock @Resource = N'venta_particion', @LockMode = N'Exclusive', @LockOwner = N'Transaction';
+    EXEC dbo.venta_asegurar_periodo @periodo;
+
+    DECLARE @n NVARCHAR(10) = CAST($PARTITION.pf_venta_periodo(@periodo) AS NVARCHAR(10));
+    DECLARE @sql NVARCHAR(400) = N'ALTER TABLE dbo.venta SWITCH PARTITION ' + @n + N' TO dbo.venta_salida PARTITION ' + @n;
+    TRUNCATE TABLE dbo.venta_salida;
+    EXEC sp_executesql @sql;
+    SELECT @filas = COUNT_BIG(*) FROM dbo.venta_salida;
+    TRUNCATE TABLE dbo.venta_salida;
+END
+GO
+
+-- Reemplazo del periodo de un cliente, paso 1: venta_carga con las ventas del periodo de los demás clientes
+-- (después se le copian las del cliente con bulk copy). Copia el mes entero de todos los demás clientes, así
+-- que cuesta lo que el mes, no lo que el cliente. Lee el periodo con HOLDLOCK: hasta el commit nadie
+-- inserta, actualiza ni borra ventas de ese mes (esperan; sin esto, lo que escribieran entre la copia y el
+-- SWITCH se perdería con la partición saliente). Las lecturas siguen; los demás meses no se bloquean.
+CREATE OR ALTER PROCEDURE dbo.venta_preparar_carga @periodo INT, @cliente_id BIGINT AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    EXEC sp_getapplock @Resource = N'venta_particion', @LockMode = N'Exclusive', @LockOwner = N'Transaction';
+    EXEC dbo.venta_asegurar_periodo @periodo;
+
+    DECLARE @cols NVARCHAR(MAX), @sql NVARCHAR(MAX);
+    SELECT @cols = STRING_AGG(CAST(QUOTENAME(name) AS NVARCHAR(MAX)), N', ') WITHIN GROUP (ORDER BY column_id)
+    FROM sys.columns WHERE object_id = OBJECT_ID(N'dbo.venta') AND is_computed = 0;
+
+    TRUNCATE TABLE dbo.venta_carga;
+    SET @sql = N'INSERT INTO dbo.venta_carga WITH (TABLOCK) (' + @cols + N') SELECT ' + @cols
+             + N' FROM dbo.venta WITH (HOLDLOCK)'
+             + N' WHERE periodo = @periodo AND (cliente_id <> @cliente_id OR cliente_id IS NULL)';
+    EXEC sp_executesql @sql, N'@periodo INT, @cliente_id BIGINT', @periodo, @cliente_id;
+END
+GO
+
+-- Reemplazo, paso 2: la partición actual sale a venta_salida y venta_carga entra en su lugar
+CREATE OR ALTER PROCEDURE dbo.venta_aplicar_carga @periodo INT, @cliente_id BIGINT, @borradas BIGINT OUTPUT AS
+BEGIN
+    SET NOCOUNT ON;
+    SET XACT_ABORT ON;
+
+    DECLARE @n NVARCHAR(10) = CAST($PARTITION.pf_venta_periodo(@periodo) AS NVARCHAR(10));
+    DECLARE @salida NVARCHAR(400) = N'ALTER TABLE dbo.venta SWITCH PARTITION ' + @n + N' TO dbo.venta_salida PARTITION ' + @n;
+    DECLARE @entrada NVARCHAR(400) = N'ALTER TABLE dbo.venta_carga SWITCH PARTITION ' + @n + N' TO dbo.venta PARTITION ' + @n;
+
+    -- ids nuevos (las filas del cliente) que ya usa otro mes: id dejaría de ser único. Son un rango reservado
+    -- de venta_seq, así que es una búsqueda por rango en ix_venta_id por partición que no encuentra nada.
+    DECLARE @min BIGINT, @max BIGINT;
+    SELECT @min = MIN(id), @max = MAX(id) FROM dbo.venta_carga WHERE cliente_id = @cliente_id;
+    IF EXISTS (SELECT 1 FROM dbo.venta v
+               WHERE v.id BETWEEN @min AND @max AND v.periodo <> @periodo
+                 AND EXISTS (SELECT 1 FROM dbo.venta_carga c WHERE c.id = v.id AND c.cliente_id = @cliente_id))
+        THROW 51000, N'venta_carga trae ids que ya usan ventas de otro periodo (ids fuera de venta_seq)', 1;
+
+    TRUNCATE TABLE dbo.venta_salida;
+    EXEC sp_executesql @salida;
+    SELECT @borradas = COUNT_BIG(*) FROM dbo.venta_salida WHERE cliente_id = @cliente_id;
+    EXEC sp_executesql @entrada;
+    TRUNCATE TABLE dbo.venta_salida;
+    TRUNCATE TABLE dbo.venta_carga;
+END
+GO
@@ -0,0 +1,14 @@
+-- Huellas SHA-256 de archivos importados (idempotencia de cargas, ver HuellaCargaService).
+-- Llegó antes que Flyway y se aplicaba a mano: si la tabla ya existe no hace nada.
+IF OBJECT_ID('carga_huella') IS NULL
+    CREATE TABLE carga_huella (
+        id             BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+        endpoint       VARCHAR(40)   NOT NULL,
+        cod_cliente    VARCHAR(40)   NOT NULL,
+        sha256         CHAR(64)      NOT NULL,
+        nombre_archivo NVARCHAR(255) NULL,
+        bytes          BIGINT        NULL,
+        fecha_carga    DATETIME2     NOT NULL,
+        resultado      NVARCHAR(MAX) NULL,
+        CONSTRAINT uq_carga_huella UNIQUE (endpoint, cod_cliente, sha256)
+    );
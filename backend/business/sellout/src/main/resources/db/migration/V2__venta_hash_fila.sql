@@ -0,0 +1,4 @@
+-- Hash de contenido por fila (XXH64, ver HashFilaVenta): NULL = desconocido, la próxima carga la reescribe
+-- Llegó antes que Flyway y se aplicaba a mano: si la columna ya existe no hace nada.
+IF COL_LENGTH('SELLOUT.dbo.venta', 'hash_fila') IS NULL
+    ALTER TABLE SELLOUT.dbo.venta ADD hash_fila BIGINT NULL;
@@ -0,0 +1,38 @@
+-- Plantillas de archivo por cliente (ver PlantillaService / PlanExtraccion). Llegó antes que Flyway y se
+-- aplicaba a mano: cada paso se salta si ya está hecho.
+IF OBJECT_ID('template_config') IS NULL
+    CREATE TABLE template_config (
+        id                  BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+        template_name       VARCHAR(60) NOT NULL,
+        row_cod_pdv         INT NOT NULL,
+        row_pdv             INT NOT NULL,
+        row_data_start      INT NOT NULL,
+        col_marca           INT NOT NULL,
+        col_nombre_producto INT NOT NULL,
+        col_cod_barra       INT NOT NULL,
+        col_fecha           INT NOT NULL,
+        col_start_pdv       INT NOT NULL,
+        col_step_pdv        INT NOT NULL,
+        row_encabezado      INT NULL,
+        col_end_pdv         INT NULL,
+        col_inicio          INT NULL,
+        col_fin             INT NULL
+    );
+ELSE IF COL_LENGTH('template_config', 'row_encabezado') IS NULL
+    ALTER TABLE template_config ADD
+        row_encabezado INT NULL,
+        col_end_pdv    INT NULL,
+        col_inicio     INT NULL,
+        col_fin        INT NULL;
+
+-- Alias de encabezado por campo (se comparan normalizados: minúsculas, sin tildes ni puntuación)
+IF OBJECT_ID('template_alias') IS NULL
+BEGIN
+    CREATE TABLE template_alias (
+        id            BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+        template_name VARCHAR(60)   NOT NULL,
+        campo         VARCHAR(40)   NOT NULL,
+        alias         NVARCHAR(120) NOT NULL
+    );
+    CREATE INDEX ix_template_alias_template ON template_alias (template_name);
+END
@@ -0,0 +1,37 @@
+-- Plantillas actuales (las mismas que PlantillaService usa por defecto); separadas de V3 porque
+-- SQL Server no admite usar en el mismo lote las columnas que el lote agrega
+DELETE FROM template_config WHERE template_name IN ('FYBECA', 'DEPRATI_FLEXIBLE', 'DEPRATI', 'TEMPLATE_GENERAL');
+
+INSERT INTO template_config (template_name, row_cod_pdv, row_pdv, row_data_start, col_marca, col_nombre_producto,
+                             col_cod_barra, col_fecha, col_start_pdv, col_step_pdv,
+                             row_encabezado, col_end_pdv, col_inicio, col_fin)
+VALUES ('FYBECA',           -1, -1,  1, -1, -1, -1, -1, -1, 0,    0, NULL, NULL, NULL),
+       ('DEPRATI_FLEXIBLE', 25, 26, 29, -1, -1, -1, -1, 12, 2,   27,   44, NULL, NULL),
+       ('DEPRATI',          -1, -1, 29, -1, -1, 10, 11, -1, 0, NULL, NULL, NULL, NULL),
+       ('TEMPLATE_GENERAL', -1, -1,  4, -1, -1, -1, -1, -1, 0,    3, NULL,    1,   13);
+
+DELETE FROM template_alias WHERE template_name IN ('FYBECA', 'DEPRATI_FLEXIBLE');
+
+INSERT INTO template_alias (template_name, campo, alias) VALUES
+    ('FYBECA', 'anio', N'año'), ('FYBECA', 'anio', 'anio'),
+    ('FYBECA', 'mes', 'mes'),
+    ('FYBECA', 'codBarra', 'codigo barra'), ('FYBECA', 'codBarra', 'cod_barra'), ('FYBECA', 'codBarra', 'codigobarra'),
+    ('FYBECA', 'codBarra', 'COD ITEM'), ('FYBECA', 'codBarra', 'cod barra'), ('FYBECA', 'codBarra', 'codbarra'),
+    ('FYBECA', 'codPdv', 'codigo pdv'), ('FYBECA', 'codPdv', 'cod_pdv'), ('FYBECA', 'codPdv', 'COD LOCAL'), ('FYBECA', 'codPdv', 'cod pdv'),
+    ('FYBECA', 'pdv', 'pdv'), ('FYBECA', 'pdv', 'NOMBRE LOCAL'), ('FYBECA', 'pdv', 'nombre pdv'),
+    ('FYBECA', 'ventaDolares', 'venta_dolares'), ('FYBECA', 'ventaDolares', 'venta $'), ('FYBECA', 'ventaDolares', 'venta dolares'),
+    ('FYBECA', 'ventaDolares', 'venta usd'),
+    ('FYBECA', 'ventaUnidad', 'venta_unidades'), ('FYBECA', 'ventaUnidad', 'venta unidades'),
+    ('FYBECA', 'stockDolares', 'stock_dolares'), ('FYBECA', 'stockDolares', 'stock usd'), ('FYBECA', 'stockDolares', 'stock dolares'),
+    ('FYBECA', 'stockUnidades', 'stock_unidades'), ('FYBECA', 'stockUnidades', 'stock unidades'),
+    ('FYBECA', 'stockUnidades', 'Stock en Unidades'),
+    ('FYBECA', 'marca', 'marca'),
+    ('FYBECA', 'nombreProducto', 'producto'), ('FYBECA', 'nombreProducto', 'nombre producto'),
+    ('FYBECA', 'descripcion', 'descripcion'),
+    ('DEPRATI_FLEXIBLE', 'marca', 'Marca'), ('DEPRATI_FLEXIBLE', 'marca', 'brand'), ('DEPRATI_FLEXIBLE', 'marca', 'Marcas'),
+    ('DEPRATI_FLEXIBLE', 'nombreProducto', 'nombre producto'), ('DEPRATI_FLEXIBLE', 'nombreProducto', 'producto'),
+    ('DEPRATI_FLEXIBLE', 'nombreProducto', 'Descripcion'), ('DEPRATI_FLEXIBLE', 'nombreProducto', 'descripciones'),
+    ('DEPRATI_FLEXIBLE', 'codBarra', 'codigo de barras'), ('DEPRATI_FLEXIBLE', 'codBarra', 'cod_barra'),
+    ('DEPRATI_FLEXIBLE', 'codBarra', 'No. Mat. Proveedor'),
+    ('DEPRATI_FLEXIBLE', 'fecha', N'Día natural'), ('DEPRATI_FLEXIBLE', 'fecha', 'fecha'),
+    ('DEPRATI_FLEXIBLE', 'fecha', 'fecha venta'), ('DEPRATI_FLEXIBLE', 'fecha', 'date');
@@ -0,0 +1,37 @@
+-- Eliminaciones de ventas en segundo plano (ver EliminacionJobService). Una fila por job con su estado y
+-- avance; las claves de una eliminación por selección esperan en venta_eliminacion_clave y cada lote borra
+-- sus ventas y sus claves en la misma transacción: lo que queda en la tabla es lo pendiente.
+CREATE TABLE dbo.venta_eliminacion (
+    id                VARCHAR(36)    NOT NULL PRIMARY KEY,
+    tipo              VARCHAR(20)    NOT NULL,   -- SELECCION | FILTRO
+    estado            VARCHAR(20)    NOT NULL,   -- EN_COLA | PROCESANDO | COMPLETADO | ERROR
+    anio              INT            NULL,
+    mes               INT            NULL,
+    marca             NVARCHAR(255)  NULL,
+    cod_pdv           NVARCHAR(255)  NULL,
+    max_total         BIGINT         NULL,
+    claves_totales    BIGINT         NOT NULL DEFAULT 0,
+    claves_procesadas BIGINT         NOT NULL DEFAULT 0,
+    eliminados        BIGINT         NOT NULL DEFAULT 0,
+    lotes             INT            NOT NULL DEFAULT 0,
+    creado            DATETIME2      NOT NULL,
+    iniciado          DATETIME2      NULL,
+    terminado         DATETIME2      NULL,
+    actualizado       DATETIME2      NOT NULL,
+    error             NVARCHAR(1000) NULL
+);
+
+CREATE INDEX ix_venta_eliminacion_estado ON dbo.venta_eliminacion (estado, creado);
+
+CREATE TABLE dbo.venta_eliminacion_clave (
+    id        BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+    job_id    VARCHAR(36)  NOT NULL,
+    anio      INT          NOT NULL,
+    mes       INT          NOT NULL,
+    cod_barra VARCHAR(255) NOT NULL,
+    cod_pdv   VARCHAR(255) NULL
+);
+
+-- lotes: TOP (n) claves del job en orden de id
+CREATE INDEX ix_venta_eliminacion_clave_job ON dbo.venta_eliminacion_clave (job_id, id)
+    INCLUDE (anio, mes, cod_barra, cod_pdv);
@@ -0,0 +1,29 @@
+-- Ventas de las cargas REPLACE_PERIOD en curso (ver EscritorVentas): cada bloque se copia aquí tal como llega,
+-- en la transacción del bloque, y al terminar la carga ParticionVentaService deduplica y reemplaza cada mes
+-- desde esta tabla, así el archivo no queda entero en memoria. Lo de una carga que cayó sin terminar se
+-- borra al abrir otra pasado un día (creado).
+--
+-- Columnas de venta por SELECT INTO (mismos tipos y collation); id sin IDENTITY y nulable: en SQL Server trae
+-- el id reservado de venta_seq con el que la fila entra a venta. orden es el de llegada (la última aparición
+-- de una clave gana); clave_barra / clave_pdv son cod_barra / cod_pdv como los compara DiccionarioClaves.
+IF OBJECT_ID(N'dbo.venta_reemplazo', N'U') IS NULL
+BEGIN
+    SELECT TOP 0 CAST(id AS BIGINT) AS id, anio, mes, dia, ciudad, marca, venta_dolares, venta_unidad,
+           nombre_producto, codigo_sap, cod_barra, cod_pdv, descripcion, pdv, stock_dolares, stock_unidades,
+           cliente_id, producto_id, unidades_diarias, hash_fila
+    INTO dbo.venta_reemplazo
+    FROM dbo.venta;
+
+    ALTER TABLE dbo.venta_reemplazo ALTER COLUMN id BIGINT NULL;
+    ALTER TABLE dbo.venta_reemplazo ADD
+        orden       BIGINT IDENTITY(1, 1) NOT NULL,
+        carga_id    VARCHAR(36)   NOT NULL,
+        modo        VARCHAR(20)   NOT NULL,   -- VentaMergeWriter.Modo del bloque
+        clave_barra NVARCHAR(255) NOT NULL,
+        clave_pdv   NVARCHAR(255) NOT NULL,
+        creado      DATETIME2     NOT NULL CONSTRAINT df_venta_reemplazo_creado DEFAULT SYSDATETIME(),
+        CONSTRAINT pk_venta_reemplazo PRIMARY KEY (carga_id, orden);
+
+    -- al terminar: un INSERT ... SELECT por (cliente, anio, mes) de la carga
+    CREATE INDEX ix_venta_reemplazo_periodo ON dbo.venta_reemplazo (carga_id, cliente_id, anio, mes);
+END
@@ -0,0 +1,32 @@
+package com.manamer.backend.business.sellout;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+/**
+ * Base SELLOUT en H2 (modo SQL Server) de los tests de escritura de ventas: dbo.venta y sus tablas de trabajo
+ * de src/test/resources/db/h2/esquema.sql, las mismas columnas que dejan las migraciones. Las consultas con
+ * {@code SELLOUT.dbo.venta} funcionan porque la base se llama SELLOUT.
+ */
+public final class BaseH2 {
+
+    public static final String URL = "jdbc:h2:mem:SELLOUT;MODE=MSSQLServer;DATABASE_TO_UPPER=FALSE;DB_CLOSE_DELAY=-1";
+
+    private BaseH2() {}
+
+    /** Base vacía con el esquema recién creado (lo que haya dejado otro test se descarta). */
+    public static DriverManagerDataSource crear() {
+        DriverManagerDataSource ds = new DriverManagerDataSource(URL);
+        borrar(ds);
+        new ResourceDatabasePopulator(new ClassPathResource("db/h2/esquema.sql")).execute(ds);
+        return ds;
+    }
+
+    public static void borrar(DataSource ds) {
+        new JdbcTemplate(ds).execute("DROP ALL OBJECTS");
+    }
+}
@@ -0,0 +1,87 @@
+package com.manamer.backend.business.sellout;
+
+import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.models.Producto;
+import com.manamer.backend.business.sellout.models.Venta;
+
+/**
+ * Ventas de los tests: cliente (o ninguno), 2024/3 día 1, código 7861, tienda T1, 1 unidad y el resto en cero,
+ * salvo lo que se cambie. {@code codPdv} también es el nombre de la tienda.
+ */
+public final class VentaPrueba {
+
+    private final Venta venta = new Venta();
+
+    private VentaPrueba(Long clienteId) {
+        if (clienteId != null) {
+            Cliente c = new Cliente();
+            c.setId(clienteId);
+            venta.setCliente(c);
+        }
+        venta.setAnio(2024);
+        venta.setMes(3);
+        venta.setDia(1);
+        venta.setCodBarra("7861");
+        codPdv("T1");
+        venta.setVentaUnidad(1);
+    }
+
+    /** {@code clienteId} null = venta sin cliente. */
+    public static VentaPrueba delCliente(Long clienteId) {
+        return new VentaPrueba(clienteId);
+    }
+
+    public VentaPrueba periodo(int anio, int mes) {
+        venta.setAnio(anio);
+        venta.setMes(mes);
+        return this;
+    }
+
+    public VentaPrueba mes(int mes) {
+        venta.setMes(mes);
+        return this;
+    }
+
+    public VentaPrueba dia(int dia) {
+        venta.setDia(dia);
+        return this;
+    }
+
+    public VentaPrueba codBarra(String codBarra) {
+        venta.setCodBarra(codBarra);
+        return this;
+    }
+
+    public VentaPrueba codPdv(String codPdv) {
+        venta.setCodPdv(codPdv);
+        venta.setPdv(codPdv);
+        return this;
+    }
+
+    public VentaPrueba marca(String marca) {
+        venta.setMarca(marca);
+        return this;
+    }
+
+    public VentaPrueba dolares(double dolares) {
+        venta.setVentaDolares(dolares);
+        return this;
+    }
+
+    public VentaPrueba stock(double unidades, double dolares) {
+        venta.setStockUnidades(unidades);
+        venta.setStockDolares(dolares);
+        return this;
+    }
+
+    public VentaPrueba producto(long productoId) {
+        Producto p = new Producto();
+        p.setId(productoId);
+        venta.setProducto(p);
+        return this;
+    }
+
+    public Venta crear() {
+        return venta;
+    }
+}
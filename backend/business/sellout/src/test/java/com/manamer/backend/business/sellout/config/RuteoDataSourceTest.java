@@ -0,0 +1,113 @@
+package com.manamer.backend.business.sellout.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Ruteo entre dos H2 en memoria: cada una tiene una tabla origen con su nombre. */
+class RuteoDataSourceTest {
+
+    private HikariDataSource primario;
+    private HikariDataSource replica;
+
+    @BeforeEach
+    void crearBases() {
+        primario = pool("sellout-primario", "jdbc:h2:mem:ruteo_primario;DB_CLOSE_DELAY=-1");
+        replica = pool("sellout-replica", "jdbc:h2:mem:ruteo_replica;DB_CLOSE_DELAY=-1");
+        for (HikariDataSource ds : new HikariDataSource[]{primario, replica}) {
+            JdbcTemplate jdbc = new JdbcTemplate(ds);
+            jdbc.execute("CREATE TABLE origen (nombre VARCHAR(20))");
+            jdbc.update("INSERT INTO origen VALUES (?)", ds == primario ? "primario" : "replica");
+        }
+    }
+
+    @AfterEach
+    void cerrar() {
+        for (HikariDataSource ds : new HikariDataSource[]{primario, replica}) {
+            new JdbcTemplate(ds).execute("DROP TABLE origen");
+            ds.close();
+        }
+    }
+
+    @Test
+    void soloLasLecturasDeReplicaVanALaReplica() {
+        RuteoDataSource ruteo = new RuteoDataSource(primario, replica, true);
+        DataSource ds = RuteoDataSource.crear(ruteo);
+        JdbcTemplate jdbc = new JdbcTemplate(ds);
+
+        assertEquals("replica", lectura(ds).execute(st -> origen(jdbc)));
+        // readOnly del gestor del primario (lookups de una carga, dryRun), escrituras y sin transacción
+        assertEquals("primario", tx(ds, true).execute(st -> origen(jdbc)));
+        assertEquals("primario", tx(ds, false).execute(st -> origen(jdbc)));
+        assertEquals("primario", origen(jdbc));
+        // una lectura de réplica llamada desde una escritura se une a su transacción
+        assertEquals("primario", tx(ds, false).execute(st -> lectura(ds).execute(st2 -> origen(jdbc))));
+        assertFalse(GestorLecturaReplica.enCurso());
+
+        Map<String, Object> m = ruteo.metricas();
+        assertEquals(1L, ((Map<?, ?>) m.get("replica")).get("conexionesEntregadas"));
+        assertEquals("sellout-replica", ((Map<?, ?>) m.get("replica")).get("pool"));
+        assertEquals(0L, m.get("fallbacks"));
+    }
+
+    @Test
+    void sinReplicaTodoVaAlPrimario() {
+        RuteoDataSource ruteo = new RuteoDataSource(primario, null, true);
+        DataSource ds = RuteoDataSource.crear(ruteo);
+
+        assertEquals("primario", lectura(ds).execute(st -> origen(new JdbcTemplate(ds))));
+        assertNull(ruteo.metricas().get("replica"));
+    }
+
+    @Test
+    void replicaCaidaVaAlPrimarioSoloConFallback() {
+        HikariDataSource caida = pool("sellout-replica", "jdbc:h2:tcp://localhost:1/ruteo_no_existe");
+        caida.setInitializationFailTimeout(-1);
+        caida.setConnectionTimeout(250);
+        try (caida) {
+            RuteoDataSource conFallback = new RuteoDataSource(primario, caida, true);
+            DataSource ds = RuteoDataSource.crear(conFallback);
+            assertEquals("primario", lectura(ds).execute(st -> origen(new JdbcTemplate(ds))));
+            assertEquals(1L, conFallback.metricas().get("fallbacks"));
+            assertEquals(1L, ((Map<?, ?>) conFallback.metricas().get("replica")).get("errores"));
+
+            DataSource sinFallback = RuteoDataSource.crear(new RuteoDataSource(primario, caida, false));
+            assertThrows(DataAccessException.class,
+                    () -> lectura(sinFallback).execute(st -> origen(new JdbcTemplate(sinFallback))));
+        }
+    }
+
+    private static String origen(JdbcTemplate jdbc) {
+        return jdbc.queryForObject("SELECT nombre FROM origen", String.class);
+    }
+
+    private static TransactionTemplate tx(DataSource ds, boolean readOnly) {
+        TransactionTemplate t = new TransactionTemplate(new DataSourceTransactionManager(ds));
+        t.setReadOnly(readOnly);
+        return t;
+    }
+
+    private static TransactionTemplate lectura(DataSource ds) {
+        TransactionTemplate t = new TransactionTemplate(new GestorLecturaReplica(new DataSourceTransactionManager(ds)));
+        t.setReadOnly(true);
+        return t;
+    }
+
+    private static HikariDataSource pool(String nombre, String url) {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName(nombre);
+        ds.setJdbcUrl(url);
+        ds.setMaximumPoolSize(2);
+        return ds;
+    }
+}
@@ -0,0 +1,83 @@
+package com.manamer.backend.business.sellout.models;
+
+import com.manamer.backend.business.sellout.VentaPrueba;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El hash se guarda en {@code hash_fila}: si cambia entre versiones o JVMs, toda recarga sale como modificada.
+ * Los valores fijos de acá no deben tocarse salvo que se invaliden a propósito los hashes guardados.
+ */
+class HashFilaVentaTest {
+
+    @Test
+    void xxh64ConLosVectoresDeReferencia() {
+        assertEquals(0xEF46DB3751D8E999L, xxh64(""));
+        assertEquals(0xD24EC4F1A98C6E5BL, xxh64("a"));
+        assertEquals(0x44BC2CF5AD770999L, xxh64("abc"));
+        // 39 bytes: bloques de 32, uno de 4 y 3 sueltos
+        assertEquals(0xFBCEA83C8A378BF1L, xxh64("Nobody inspects the spammish repetition"));
+
+        byte[] conPrefijo = "__abc".getBytes(StandardCharsets.UTF_8);
+        assertEquals(0x44BC2CF5AD770999L, HashFilaVenta.xxh64(conPrefijo, 2, 3, 0L));
+    }
+
+    @Test
+    void hashDeUnaVentaFijo() {
+        assertEquals(0x31714ED641ABB5DFL, HashFilaVenta.de(ventaBase().crear()));
+    }
+
+    @Test
+    void soloCuentaElContenido() {
+        Venta v = ventaBase().crear();
+        long h = HashFilaVenta.de(v);
+
+        // id y el propio hash no entran
+        v.setId(99L);
+        v.setHashFila(123L);
+        assertEquals(h, HashFilaVenta.de(v));
+
+        // -0.0 y 0.0 son el mismo valor guardado
+        assertEquals(HashFilaVenta.de(VentaPrueba.delCliente(1L).dolares(0.0).crear()),
+                HashFilaVenta.de(VentaPrueba.delCliente(1L).dolares(-0.0).crear()));
+
+        // el producto explícito reemplaza al de la venta
+        assertEquals(h, HashFilaVenta.de(ventaBase().producto(8L).crear(), 7L));
+        assertNotEquals(h, HashFilaVenta.de(v, 8L));
+    }
+
+    @Test
+    void camposVecinosYNulosNoSeConfunden() {
+        assertNotEquals(HashFilaVenta.de(VentaPrueba.delCliente(1L).codBarra("786").codPdv("1T1").crear()),
+                HashFilaVenta.de(VentaPrueba.delCliente(1L).codBarra("7861").codPdv("T1").crear()));
+        assertNotEquals(HashFilaVenta.de(VentaPrueba.delCliente(1L).marca(null).crear()),
+                HashFilaVenta.de(VentaPrueba.delCliente(1L).marca("").crear()));
+        assertNotEquals(HashFilaVenta.de(VentaPrueba.delCliente(null).crear()),
+                HashFilaVenta.de(VentaPrueba.delCliente(0L).crear()));
+        assertNotEquals(HashFilaVenta.de(VentaPrueba.delCliente(1L).stock(1, 0).crear()),
+                HashFilaVenta.de(VentaPrueba.delCliente(1L).stock(0, 1).crear()));
+    }
+
+    @Test
+    void elBufferDelHiloNoArrastraLaFilaAnterior() throws Exception {
+        long h = HashFilaVenta.de(ventaBase().crear());
+
+        // una fila larga agranda el buffer del hilo; la siguiente, corta, da lo mismo que en un hilo nuevo
+        HashFilaVenta.de(VentaPrueba.delCliente(1L).marca("x".repeat(10_000)).crear());
+        assertEquals(h, HashFilaVenta.de(ventaBase().crear()));
+        assertEquals(h, CompletableFuture.supplyAsync(() -> HashFilaVenta.de(ventaBase().crear())).get());
+    }
+
+    private static VentaPrueba ventaBase() {
+        return VentaPrueba.delCliente(1L).producto(7L).dolares(2.5).stock(4, 9.75).marca("Ñandú");
+    }
+
+    private static long xxh64(String texto) {
+        byte[] b = texto.getBytes(StandardCharsets.UTF_8);
+        return HashFilaVenta.xxh64(b, 0, b.length, 0L);
+    }
+}
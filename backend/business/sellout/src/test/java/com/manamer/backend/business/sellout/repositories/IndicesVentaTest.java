@@ -0,0 +1,290 @@
+package com.manamer.backend.business.sellout.repositories;
+
+import com.manamer.backend.business.sellout.VentaPrueba;
+import com.manamer.backend.business.sellout.config.EsquemaMantenimiento;
+import com.manamer.backend.business.sellout.models.Venta;
+import com.manamer.backend.business.sellout.service.ParticionVentaService;
+import com.manamer.backend.business.sellout.service.VentaBatchWriter;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MSSQLServerContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Migraciones V1..Vn (db/migration y db/mantenimiento) sobre un SQL Server real (esquema previo en
+ * src/test/resources/db/base): índices de venta/producto/SAP_Prod_cache, limpieza de duplicados, que las
+ * búsquedas calientes los usen y el SWITCH de partición de ParticionVentaService. Se salta si no hay Docker.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class IndicesVentaTest {
+
+    @Container
+    static final MSSQLServerContainer<?> SQL_SERVER =
+            new MSSQLServerContainer<>("mcr.microsoft.com/mssql/server:2022-latest").acceptLicense();
+
+    private static JdbcTemplate jdbc;
+    private static TransactionTemplate tx;
+    private static ParticionVentaService particiones;
+    // id de cliente_seq (V5), no 2
+    private static long otroCliente;
+
+    @BeforeAll
+    static void migrar() throws Exception {
+        try (Connection c = DriverManager.getConnection(SQL_SERVER.getJdbcUrl(), SQL_SERVER.getUsername(), SQL_SERVER.getPassword());
+             Statement st = c.createStatement()) {
+            st.execute("CREATE DATABASE SELLOUT");
+        }
+        SingleConnectionDataSource ds = new SingleConnectionDataSource(
+                SQL_SERVER.getJdbcUrl() + ";databaseName=SELLOUT", SQL_SERVER.getUsername(), SQL_SERVER.getPassword(), true);
+        Flyway.configure()
+                .dataSource(ds)
+                .locations("classpath:db/base", "classpath:db/migration", "classpath:db/mantenimiento")
+                .load()
+                .migrate();
+        jdbc = new JdbcTemplate(ds);
+        tx = new TransactionTemplate(new DataSourceTransactionManager(ds));
+        particiones = new ParticionVentaService(jdbc, new VentaBatchWriter(jdbc));
+        jdbc.update("INSERT INTO dbo.cliente (cod_cliente, nombre_cliente) VALUES ('MZCL-000008', 'RM')");
+        otroCliente = jdbc.queryForObject("SELECT id FROM dbo.cliente WHERE cod_cliente = 'MZCL-000008'", Long.class);
+    }
+
+    @Test
+    void creaLosIndicesConSusColumnas() {
+        assertIndice("venta", "ux_venta_clave", true,
+                List.of("cliente_id", "anio", "mes", "dia", "cod_barra", "cod_pdv", "periodo"), List.of("hash_fila", "producto_id"));
+        assertIndice("venta", "ix_venta_cliente_periodo", false,
+                List.of("cliente_id", "anio DESC", "mes DESC", "id DESC"), List.of("marca", "periodo"));
+        assertIndice("venta", "pk_venta", true, List.of("periodo", "id"), List.of());
+        assertIndice("venta", "ix_venta_id", false, List.of("id"), List.of());
+        assertIndice("SAP_Prod_cache", "ix_sap_prod_cache_cod_barra", false,
+                List.of("cod_barra"), List.of("codigo_sap", "descripcion", "marca"));
+        assertIndice("producto", "ix_producto_cod_barra_sap", false, List.of("cod_barra_sap"), List.of("cod_item"));
+        assertIndice("producto", "ix_producto_cod_item", false, List.of("cod_item"), List.of("cod_barra_sap"));
+    }
+
+    @Test
+    void sinLasSecuenciasNoArranca() {
+        assertDoesNotThrow(() -> EsquemaMantenimiento.verificar(jdbc));
+
+        jdbc.execute("EXEC sp_rename N'dbo.venta_seq', N'venta_seq_aparte'");
+        try {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> EsquemaMantenimiento.verificar(jdbc));
+            assertTrue(e.getMessage().contains("dbo.venta_seq (V5__secuencias_ids)"), e.getMessage());
+            assertFalse(e.getMessage().contains("cliente_seq"), e.getMessage());
+            assertTrue(e.getMessage().contains("--spring.profiles.active=mantenimiento"), e.getMessage());
+        } finally {
+            jdbc.execute("EXEC sp_rename N'dbo.venta_seq_aparte', N'venta_seq'");
+        }
+    }
+
+    @Test
+    void dejaLaVentaDeIdMenorPorClave() {
+        List<Map<String, Object>> filas = jdbc.queryForList(
+                "SELECT dia, venta_dolares FROM dbo.venta WHERE cliente_id = 1 ORDER BY dia");
+        assertEquals(2, filas.size());
+        assertEquals(10.0, ((Number) filas.get(0).get("venta_dolares")).doubleValue());
+        assertEquals(40.0, ((Number) filas.get(1).get("venta_dolares")).doubleValue());
+        // las borradas quedan en la tabla de auditoría
+        assertEquals(List.of(20.0, 30.0), jdbc.queryForList(
+                "SELECT venta_dolares FROM dbo.venta_duplicada ORDER BY id", Double.class));
+    }
+
+    @Test
+    void rechazaOtraVentaConLaMismaClave() {
+        assertThrows(DataIntegrityViolationException.class, () -> jdbc.update("""
+            INSERT INTO dbo.venta (anio, mes, dia, venta_dolares, venta_unidad, cod_barra, cod_pdv,
+                                   stock_dolares, stock_unidades, cliente_id)
+            VALUES (2024, 1, 15, 1, 1, '7861 ', 'Tienda 1', 0, 0, 1)
+        """));
+    }
+
+    @Test
+    void lasBusquedasCalientesUsanLosIndices() {
+        assertUsaIndice("ux_venta_clave", """
+            SELECT id, hash_fila FROM dbo.venta
+            WHERE cliente_id = 1 AND anio = 2024 AND mes = 1 AND dia = 15 AND cod_barra = '7861' AND cod_pdv = 'TIENDA 1'
+        """);
+        assertUsaIndice("ix_venta_cliente_periodo", """
+            SELECT id FROM dbo.venta WHERE cliente_id = 1
+            ORDER BY anio DESC, mes DESC, id DESC OFFSET 0 ROWS FETCH NEXT 50 ROWS ONLY
+        """);
+    }
+
+    @Test
+    void ventaYSusTablasDeSwitchQuedanParticionadasPorMes() {
+        assertTrue(particiones.particionada());
+        for (String tabla : List.of("venta", "venta_carga", "venta_salida")) {
+            assertEquals(4, jdbc.queryForObject("""
+                SELECT COUNT(*) FROM sys.indexes i
+                JOIN sys.partition_schemes ps ON ps.data_space_id = i.data_space_id
+                WHERE i.object_id = OBJECT_ID(?) AND ps.name = N'ps_venta_periodo'
+            """, Integer.class, "dbo." + tabla), tabla);
+        }
+        // enero 2024 (las ventas de la base) tiene su propia partición
+        assertEquals(2, jdbc.queryForObject("""
+            SELECT p.rows FROM sys.partitions p
+            WHERE p.object_id = OBJECT_ID(N'dbo.venta') AND p.index_id = 1
+              AND p.partition_number = $PARTITION.pf_venta_periodo(202401)
+        """, Integer.class));
+    }
+
+    @Test
+    void reemplazarPeriodoPorSwitchSoloCambiaLasDelCliente() {
+        // marzo 2023 es anterior al primer límite: el procedimiento parte la partición
+        tx.executeWithoutResult(s -> particiones.reemplazarPeriodo(1L, 2023, 3,
+                List.of(venta(1L, 2023, 3, 1, 10), venta(1L, 2023, 3, 2, 20))));
+        tx.executeWithoutResult(s -> particiones.reemplazarPeriodo(otroCliente, 2023, 3,
+                List.of(venta(otroCliente, 2023, 3, 1, 30))));
+
+        ParticionVentaService.Resultado r = tx.execute(s -> particiones.reemplazarPeriodo(1L, 2023, 3,
+                List.of(venta(1L, 2023, 3, 5, 50))));
+        assertTrue(r.porParticion());
+        assertEquals(2, r.borradas());
+        assertEquals(1, r.insertadas());
+
+        assertEquals(List.of(30.0, 50.0), jdbc.queryForList(
+                "SELECT venta_dolares FROM dbo.venta WHERE periodo = 202303 ORDER BY venta_dolares", Double.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_carga", Integer.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_salida", Integer.class));
+        // las FK de venta siguen confiables después del SWITCH
+        assertEquals(0, jdbc.queryForObject(
+                "SELECT COUNT(*) FROM sys.foreign_keys WHERE parent_object_id = OBJECT_ID(N'dbo.venta') AND is_not_trusted = 1",
+                Integer.class));
+    }
+
+    @Test
+    void elReemplazoBloqueaLasEscriturasDelMesHastaElCommit() throws Exception {
+        tx.executeWithoutResult(s -> particiones.reemplazarPeriodo(otroCliente, 2023, 5, List.of(venta(otroCliente, 2023, 5, 1, 30))));
+        tx.executeWithoutResult(s -> particiones.reemplazarPeriodo(1L, 2023, 5, List.of(venta(1L, 2023, 5, 1, 10))));
+        String insertOtro = "INSERT INTO dbo.venta (anio, mes, dia, venta_dolares, venta_unidad, cod_barra, cod_pdv,"
+                + " stock_dolares, stock_unidades, cliente_id) VALUES (2023, %d, 2, 5, 1, '7861', 'TIENDA 1', 0, 0, "
+                + otroCliente + ")";
+        String updateOtro = "UPDATE dbo.venta SET venta_dolares = 31 WHERE cliente_id = " + otroCliente + " AND periodo = 202305";
+
+        // otra sesión (autocommit) escribe mientras el reemplazo del cliente 1 está entre la copia y el SWITCH
+        try (Connection otra = DriverManager.getConnection(SQL_SERVER.getJdbcUrl() + ";databaseName=SELLOUT",
+                SQL_SERVER.getUsername(), SQL_SERVER.getPassword());
+             Statement st = otra.createStatement()) {
+            st.execute("SET LOCK_TIMEOUT 500");
+            tx.executeWithoutResult(s -> {
+                jdbc.update("EXEC dbo.venta_preparar_carga ?, ?", 202305, 1L);
+                assertEquals(1222, errorAlEscribir(st, updateOtro), "el UPDATE del otro cliente debe esperar");
+                assertEquals(1222, errorAlEscribir(st, insertOtro.formatted(5)), "el INSERT en el mes debe esperar");
+                assertEquals(0, errorAlEscribir(st, insertOtro.formatted(6)), "otro mes no se bloquea");
+                jdbc.execute((ConnectionCallback<Long>) con -> {
+                    try (CallableStatement cs = con.prepareCall("{call dbo.venta_aplicar_carga(?, ?, ?)}")) {
+                        cs.setInt(1, 202305);
+                        cs.setLong(2, 1L);
+                        cs.registerOutParameter(3, Types.BIGINT);
+                        cs.execute();
+                        return cs.getLong(3);
+                    }
+                });
+            });
+            // con el reemplazo confirmado la escritura pasa y nada del otro cliente se perdió
+            assertEquals(0, errorAlEscribir(st, updateOtro));
+            assertEquals(0, errorAlEscribir(st, insertOtro.formatted(5)));
+        }
+        assertEquals(List.of(5.0, 31.0), jdbc.queryForList(
+                "SELECT venta_dolares FROM dbo.venta WHERE periodo = 202305 AND cliente_id = ? ORDER BY dia", Double.class, otroCliente));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta WHERE periodo = 202305 AND cliente_id = 1", Integer.class));
+    }
+
+    @Test
+    void aplicarRechazaIdsQueYaUsaOtroMes() {
+        long usado = jdbc.queryForObject("SELECT MIN(id) FROM dbo.venta WHERE periodo = 202401", Long.class);
+        assertThrows(DataAccessException.class, () -> tx.executeWithoutResult(s -> {
+            jdbc.update("EXEC dbo.venta_preparar_carga ?, ?", 202309, 1L);
+            jdbc.update("""
+                INSERT INTO dbo.venta_carga (id, anio, mes, dia, venta_dolares, venta_unidad, cod_barra, cod_pdv,
+                                             stock_dolares, stock_unidades, cliente_id)
+                VALUES (?, 2023, 9, 1, 1, 1, '7861', 'TIENDA 1', 0, 0, 1)
+            """, usado);
+            jdbc.update("DECLARE @b BIGINT; EXEC dbo.venta_aplicar_carga ?, ?, @b OUTPUT", 202309, 1L);
+        }));
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta WHERE id = ?", Integer.class, usado));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta WHERE periodo = 202309", Integer.class));
+    }
+
+    @Test
+    void purgarPeriodoPorSwitchVaciaSoloEseMes() {
+        tx.executeWithoutResult(s -> particiones.reemplazarPeriodo(1L, 2023, 7,
+                List.of(venta(1L, 2023, 7, 1, 10), venta(1L, 2023, 7, 2, 20))));
+        tx.executeWithoutResult(s -> particiones.reemplazarPeriodo(1L, 2023, 8, List.of(venta(1L, 2023, 8, 1, 30))));
+
+        ParticionVentaService.Resultado r = tx.execute(s -> particiones.purgarPeriodo(2023, 7));
+        assertTrue(r.porParticion());
+        assertEquals(2, r.borradas());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta WHERE periodo = 202307", Integer.class));
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta WHERE periodo = 202308", Integer.class));
+    }
+
+    private static Venta venta(long clienteId, int anio, int mes, int dia, double dolares) {
+        return VentaPrueba.delCliente(clienteId).periodo(anio, mes).dia(dia).codPdv("TIENDA 1").dolares(dolares).crear();
+    }
+
+    // código de error de SQL Server (1222: venció LOCK_TIMEOUT esperando un bloqueo), 0 si la escritura pasó
+    private static int errorAlEscribir(Statement st, String sql) {
+        try {
+            st.executeUpdate(sql);
+            return 0;
+        } catch (SQLException e) {
+            return e.getErrorCode();
+        }
+    }
+
+    private static void assertIndice(String tabla, String indice, boolean unico, List<String> clave, List<String> incluidas) {
+        List<Map<String, Object>> cols = jdbc.queryForList("""
+            SELECT i.is_unique, c.name AS columna, ic.is_descending_key, ic.is_included_column
+            FROM sys.indexes i
+            JOIN sys.index_columns ic ON ic.object_id = i.object_id AND ic.index_id = i.index_id
+            JOIN sys.columns c ON c.object_id = ic.object_id AND c.column_id = ic.column_id
+            WHERE i.object_id = OBJECT_ID(?) AND i.name = ?
+            ORDER BY ic.is_included_column, ic.key_ordinal, c.name
+        """, "dbo." + tabla, indice);
+        assertFalse(cols.isEmpty(), "falta el índice " + indice);
+        assertEquals(unico, cols.get(0).get("is_unique"), indice);
+        List<String> claveReal = cols.stream().filter(c -> !(Boolean) c.get("is_included_column"))
+                .map(c -> c.get("columna") + ((Boolean) c.get("is_descending_key") ? " DESC" : "")).toList();
+        List<String> incluidasReal = cols.stream().filter(c -> (Boolean) c.get("is_included_column"))
+                .map(c -> (String) c.get("columna")).toList();
+        assertEquals(clave, claveReal, indice);
+        assertEquals(incluidas, incluidasReal, indice);
+    }
+
+    private static void assertUsaIndice(String indice, String sql) {
+        String plan = jdbc.execute((ConnectionCallback<String>) con -> {
+            try (Statement st = con.createStatement()) {
+                st.execute("SET SHOWPLAN_XML ON");
+                try (ResultSet rs = st.executeQuery(sql)) {
+                    rs.next();
+                    return rs.getString(1);
+                } finally {
+                    st.execute("SET SHOWPLAN_XML OFF");
+                }
+            }
+        });
+        assertTrue(plan.contains("Index=\"[" + indice + "]\""), "el plan no usa " + indice + ": " + plan);
+    }
+}
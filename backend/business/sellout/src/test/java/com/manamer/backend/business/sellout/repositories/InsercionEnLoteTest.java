@@ -0,0 +1,87 @@
+package com.manamer.backend.business.sellout.repositories;
+
+import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.models.Producto;
+import com.manamer.backend.business.sellout.models.Venta;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Con SEQUENCE pooled los INSERT de JPA salen en batch (con IDENTITY serían una sentencia por fila). */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.flyway.enabled=false"
+})
+class InsercionEnLoteTest {
+
+    private static final int FILAS = 1_200;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Test
+    void ventasNuevasSalenEnBatchConIdsDeLaSecuencia() {
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        Cliente cliente = new Cliente();
+        cliente.setCodCliente("MZCL-000999");
+        em.persist(cliente);
+        em.flush();
+        stats.clear();
+
+        List<Venta> ventas = new ArrayList<>(FILAS);
+        for (int i = 0; i < FILAS; i++) {
+            Venta v = new Venta();
+            v.setCliente(cliente);
+            v.setAnio(2024);
+            v.setMes(1 + i % 12);
+            v.setDia(1 + i % 28);
+            v.setCodBarra("786" + i);
+            v.setCodPdv("SIN_TIENDA");
+            v.setVentaUnidad(i);
+            em.persist(v);
+            ventas.add(v);
+        }
+        em.flush();
+
+        assertEquals(FILAS, stats.getEntityInsertCount());
+        // 3 llamadas a venta_seq (bloques de 500) + 2 batches de 1000 (hibernate.jdbc.batch_size)
+        assertTrue(stats.getPrepareStatementCount() <= 5,
+                "sentencias preparadas: " + stats.getPrepareStatementCount());
+
+        long primero = ventas.get(0).getId();
+        for (int i = 0; i < FILAS; i++) assertEquals(primero + i, ventas.get(i).getId());
+    }
+
+    @Test
+    void productosYClientesTambienUsanSecuencia() {
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        stats.clear();
+        for (int i = 0; i < 600; i++) {
+            Producto p = new Producto();
+            p.setCodItem("IT" + i);
+            em.persist(p);
+            Cliente c = new Cliente();
+            c.setCodCliente("MZCL-" + i);
+            em.persist(c);
+        }
+        em.flush();
+
+        assertEquals(1_200, stats.getEntityInsertCount());
+        // unas pocas llamadas a cada secuencia y un batch por tabla (order_inserts)
+        assertTrue(stats.getPrepareStatementCount() <= 10,
+                "sentencias preparadas: " + stats.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,95 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvStreamingReaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void comillasEscapadasYFinDeLineaCrlf() throws IOException {
+        List<Object[]> filas = leer("codigo;descripcion;valor\r\n"
+                + "\"0012\";\"Leche \"\"entera\"\"; 1L\";3,5\r\n"
+                + "\r\n"
+                + " 7861 ;\"dos\r\nlíneas\";12\r\n", StandardCharsets.UTF_8);
+
+        assertEquals(3, filas.size());
+        assertArrayEquals(new Object[]{0, "codigo", "descripcion", "valor"}, filas.get(0));
+        // entre comillas queda texto (ceros a la izquierda); ";" dentro de comillas no separa; coma decimal con ";"
+        assertArrayEquals(new Object[]{1, "0012", "Leche \"entera\"; 1L", 3.5}, filas.get(1));
+        // la línea vacía no es fila, pero cuenta para el índice; el salto dentro de comillas es del campo
+        assertArrayEquals(new Object[]{3, 7861.0, "dos\r\nlíneas", 12.0}, filas.get(2));
+    }
+
+    @Test
+    void campoEntreComillasQueCruzaElFinDeLaMuestra() throws IOException {
+        // la muestra con la que se detectan separador y codificación son los primeros 64 KB: el campo entre
+        // comillas la cruza y la ñ (2 bytes en UTF-8) queda partida justo en el límite
+        StringBuilder sb = new StringBuilder("id,texto,n\n");
+        int previas = 0;
+        while (sb.length() < 60_000) sb.append(++previas).append(",a,1\n");
+        sb.append("99,\"");
+        int inicioCampo = sb.length();
+        while (sb.length() < 64 * 1024 - 1) sb.append('x');
+        sb.append("ñ, con coma\nsalto\",7\n100,fin,8\n");
+        String campo = sb.substring(inicioCampo, sb.indexOf("\",7"));
+
+        List<Object[]> filas = leer(sb.toString(), StandardCharsets.UTF_8);
+
+        assertEquals(previas + 3, filas.size());
+        assertArrayEquals(new Object[]{1, 1.0, "a", 1.0}, filas.get(1));
+        assertArrayEquals(new Object[]{previas + 1, 99.0, campo, 7.0}, filas.get(previas + 1));
+        assertArrayEquals(new Object[]{previas + 2, 100.0, "fin", 8.0}, filas.get(previas + 2));
+    }
+
+    @Test
+    void sinUtf8ValidoLeeWindows1252() throws IOException {
+        List<Object[]> filas = leer("tienda\tmarca\nPeña\tAñejo\n", Charset.forName("windows-1252"));
+
+        assertArrayEquals(new Object[]{1, "Peña", "Añejo"}, filas.get(1));
+    }
+
+    @Test
+    void ultimaLineaSinSaltoDeLinea() throws IOException {
+        // separador como último byte: campo vacío al final, sin leer fuera del archivo
+        List<Object[]> filas = leer("codigo;tienda;nota\n7861;T1;", StandardCharsets.UTF_8);
+        assertEquals(2, filas.size());
+        assertArrayEquals(new Object[]{1, 7861.0, "T1"}, filas.get(1));
+
+        // comilla de cierre como último byte
+        filas = leer("codigo;tienda\n7861;\"T1\"", StandardCharsets.UTF_8);
+        assertEquals(2, filas.size());
+        assertArrayEquals(new Object[]{1, 7861.0, "T1"}, filas.get(1));
+
+        // solo separadores: la fila no tiene datos
+        assertEquals(1, leer("a;b\n;", StandardCharsets.UTF_8).size());
+    }
+
+    // índice de fila + valores hasta la última columna (la Fila se reutiliza: se copia en el handler)
+    private List<Object[]> leer(String contenido, Charset charset) throws IOException {
+        File archivo = dir.resolve("carga.csv").toFile();
+        Files.write(archivo.toPath(), contenido.getBytes(charset));
+        List<Object[]> filas = new ArrayList<>();
+        CsvStreamingReader.leer(archivo, 10, fila -> {
+            Object[] valores = new Object[fila.getUltimaColumna() + 2];
+            valores[0] = fila.getIndice();
+            for (int c = 0; c <= fila.getUltimaColumna(); c++) valores[c + 1] = fila.valor(c);
+            filas.add(valores);
+            return true;
+        });
+        return filas;
+    }
+}
@@ -0,0 +1,114 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo por celda del decodificador frente a la lectura anterior (DateTimeFormatter en bucle con
+ * excepciones, Date → Instant → ZonedDateTime y replace + parseDouble).
+ *
+ * mvn -B test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.manamer.backend.business.sellout.service.DecodificadorCeldasBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodificadorCeldasBenchmark {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("dd/MM/uuuu"),
+            DateTimeFormatter.ofPattern("d/M/uuuu"),
+            DateTimeFormatter.ofPattern("dd-MM-uuuu"),
+            DateTimeFormatter.ofPattern("d-M-uuuu"),
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("MM/dd/uuuu"),
+            DateTimeFormatter.ofPattern("M/d/uuuu")
+    );
+
+    // una muestra de lo que llega en la columna de fecha y en las de montos
+    private final String[] fechas = {"15/01/2024", "5/1/2024", "2024-01-15", "01/31/2024", "15-01-2024 00:00", "31/02/2024"};
+    private final String[] numeros = {"12,5", "1234.56", "-3", "7501234567890", "0,75", "abc"};
+    private final double[] seriales = {45306, 45307.5, 44927, 45000, 45291, 45657};
+
+    @Benchmark
+    public void fechaTextoAnterior(Blackhole bh) {
+        for (String s : fechas) {
+            LocalDate ld = parseAnterior(s);
+            if (ld != null) {
+                ZonedDateTime zdt = Date.from(ld.atStartOfDay(ZONE).toInstant()).toInstant().atZone(ZONE);
+                bh.consume(zdt.getYear() + zdt.getMonthValue() + zdt.getDayOfMonth());
+            }
+        }
+    }
+
+    @Benchmark
+    public void fechaTextoDecodificador(Blackhole bh) {
+        for (String s : fechas) {
+            int f = DecodificadorCeldas.fecha(s);
+            if (f != DecodificadorCeldas.SIN_FECHA) {
+                bh.consume(DecodificadorCeldas.anio(f) + DecodificadorCeldas.mes(f) + DecodificadorCeldas.dia(f));
+            }
+        }
+    }
+
+    @Benchmark
+    public void fechaSerialAnterior(Blackhole bh) {
+        for (double d : seriales) {
+            ZonedDateTime zdt = DateUtil.getJavaDate(d).toInstant().atZone(ZONE);
+            bh.consume(zdt.getYear() + zdt.getMonthValue() + zdt.getDayOfMonth());
+        }
+    }
+
+    @Benchmark
+    public void fechaSerialDecodificador(Blackhole bh) {
+        for (double d : seriales) {
+            int f = DecodificadorCeldas.fechaSerial(d, false);
+            bh.consume(DecodificadorCeldas.anio(f) + DecodificadorCeldas.mes(f) + DecodificadorCeldas.dia(f));
+        }
+    }
+
+    @Benchmark
+    public void numeroAnterior(Blackhole bh) {
+        for (String s : numeros) {
+            String x = s.trim().replace(",", ".");
+            try { bh.consume(Double.parseDouble(x)); } catch (NumberFormatException e) { bh.consume(e); }
+        }
+    }
+
+    @Benchmark
+    public void numeroDecodificador(Blackhole bh) {
+        for (String s : numeros) {
+            bh.consume(DecodificadorCeldas.numero(s));
+        }
+    }
+
+    private static LocalDate parseAnterior(String s) {
+        String x = s.trim();
+        int sp = x.indexOf(' '); if (sp > 0) x = x.substring(0, sp);
+        int t  = x.indexOf('T'); if (t > 0) x = x.substring(0, t);
+        for (DateTimeFormatter f : DATE_FORMATS) {
+            try { return LocalDate.parse(x, f); } catch (Exception ignore) {}
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(DecodificadorCeldasBenchmark.class.getSimpleName()).build()).run();
+    }
+}
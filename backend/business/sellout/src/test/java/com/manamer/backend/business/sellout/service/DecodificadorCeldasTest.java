@@ -0,0 +1,142 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static com.manamer.backend.business.sellout.service.DecodificadorCeldas.SIN_FECHA;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodificadorCeldasTest {
+
+    // formatos con los que las cargas leían fechas de texto antes del decodificador
+    private static final List<DateTimeFormatter> FORMATOS_ANTERIORES = List.of(
+            DateTimeFormatter.ofPattern("dd/MM/uuuu"),
+            DateTimeFormatter.ofPattern("d/M/uuuu"),
+            DateTimeFormatter.ofPattern("dd-MM-uuuu"),
+            DateTimeFormatter.ofPattern("d-M-uuuu"),
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("MM/dd/uuuu"),
+            DateTimeFormatter.ofPattern("M/d/uuuu"),
+            DateTimeFormatter.ofPattern("dd.MM.uuuu"),
+            DateTimeFormatter.ofPattern("uuuu/MM/dd"),
+            DateTimeFormatter.ofPattern("d-MMM-uuuu", Locale.US)
+    );
+
+    private static LocalDate fechaAnterior(String s) {
+        for (DateTimeFormatter f : FORMATOS_ANTERIORES) {
+            try { return LocalDate.parse(s, f); } catch (Exception ignore) {}
+        }
+        return null;
+    }
+
+    @Test
+    void fechasDeTextoIgualQueLosFormatosAnteriores() {
+        Random rnd = new Random(42);
+        for (int k = 0; k < 20_000; k++) {
+            LocalDate d = LocalDate.ofEpochDay(rnd.nextInt(365 * 60) - 365 * 20);
+            for (DateTimeFormatter f : FORMATOS_ANTERIORES) {
+                String s = d.format(f);
+                LocalDate esperada = fechaAnterior(s);
+                assertEquals(esperada, DecodificadorCeldas.aLocalDate(DecodificadorCeldas.fecha(s)), s);
+            }
+        }
+    }
+
+    @Test
+    void fechasDeTexto() {
+        assertEquals(20240115, DecodificadorCeldas.fecha("15/01/2024"));
+        assertEquals(20240105, DecodificadorCeldas.fecha("5/1/2024"));
+        assertEquals(20240115, DecodificadorCeldas.fecha(" 15-01-2024 "));
+        assertEquals(20240115, DecodificadorCeldas.fecha("15.01.2024"));
+        assertEquals(20240115, DecodificadorCeldas.fecha("2024-01-15"));
+        assertEquals(20240115, DecodificadorCeldas.fecha("2024/01/15"));
+        assertEquals(20240115, DecodificadorCeldas.fecha("2024-01-15T10:30:00"));
+        assertEquals(20240115, DecodificadorCeldas.fecha("15/01/2024 10:30"));
+        assertEquals(20240105, DecodificadorCeldas.fecha("5-Jan-2024"));
+        assertEquals(20241005, DecodificadorCeldas.fecha("05-OCT-2024"));
+        // mes primero solo si día primero no es válido
+        assertEquals(20240213, DecodificadorCeldas.fecha("02/13/2024"));
+        assertEquals(20240302, DecodificadorCeldas.fecha("02/03/2024"));
+        // serial de Excel como texto
+        assertEquals(20240115, DecodificadorCeldas.fecha("45306"));
+        assertEquals(20240115, DecodificadorCeldas.fecha("45306.75"));
+
+        for (String s : new String[]{null, "", "  ", "31/02/2024", "29/02/2023", "13/13/2024", "2024", "20240115",
+                "15/01/24", "15/01-2024", "2024-1-15x", "15-Foo-2024", "02-13-2024", "abc", "1.5", "15//2024"}) {
+            assertEquals(SIN_FECHA, DecodificadorCeldas.fecha(s), String.valueOf(s));
+        }
+        assertEquals(20240229, DecodificadorCeldas.fecha("29/02/2024"));
+    }
+
+    @Test
+    void serialIgualQuePoi() {
+        ZoneId zona = ZoneId.systemDefault();
+        for (int serial = 1; serial < 80_000; serial++) {
+            LocalDate poi = DateUtil.getJavaDate(serial).toInstant().atZone(zona).toLocalDate();
+            assertEquals(poi, DecodificadorCeldas.aLocalDate(DecodificadorCeldas.fechaSerial(serial + 0.25, false)), "serial " + serial);
+            LocalDate poi1904 = DateUtil.getJavaDate(serial, true).toInstant().atZone(zona).toLocalDate();
+            assertEquals(poi1904, DecodificadorCeldas.aLocalDate(DecodificadorCeldas.fechaSerial(serial, true)), "serial1904 " + serial);
+        }
+        assertEquals(SIN_FECHA, DecodificadorCeldas.fechaSerial(-1, false));
+        assertEquals(SIN_FECHA, DecodificadorCeldas.fechaSerial(Double.NaN, false));
+        assertEquals(45306.0, DecodificadorCeldas.serialExcel(20240115));
+    }
+
+    @Test
+    void diaEpochIgualQueLocalDate() {
+        for (long e = LocalDate.of(1, 1, 1).toEpochDay(); e <= LocalDate.of(9999, 12, 31).toEpochDay(); e += 7) {
+            LocalDate d = LocalDate.ofEpochDay(e);
+            int f = DecodificadorCeldas.deDiaEpoch(e);
+            assertEquals(d, DecodificadorCeldas.aLocalDate(f));
+            assertEquals(e, DecodificadorCeldas.diaEpoch(d.getYear(), d.getMonthValue(), d.getDayOfMonth()));
+        }
+        assertEquals("2024-01-05", DecodificadorCeldas.iso(20240105));
+    }
+
+    @Test
+    void numerosIgualQueParseDouble() {
+        Random rnd = new Random(7);
+        for (int k = 0; k < 200_000; k++) {
+            String s = switch (k % 5) {
+                case 0 -> Double.toString(rnd.nextDouble() * Math.pow(10, rnd.nextInt(12)));
+                case 1 -> Long.toString(rnd.nextLong() % 10_000_000_000L);
+                case 2 -> String.format(Locale.ROOT, "%.2f", rnd.nextGaussian() * 1e5);
+                case 3 -> Double.toString(Double.longBitsToDouble(rnd.nextLong() & 0x7FEFFFFFFFFFFFFFL));
+                default -> digitos(rnd, 1 + rnd.nextInt(22)) + "." + digitos(rnd, rnd.nextInt(22));
+            };
+            double esperado = Double.parseDouble(s);
+            assertEquals(esperado, DecodificadorCeldas.numero(s), s);
+            assertEquals(esperado, DecodificadorCeldas.numero(" " + s.replace('.', ',') + " "), s);
+        }
+    }
+
+    @Test
+    void numeros() {
+        assertEquals(12.5, DecodificadorCeldas.numero("12,5"));
+        assertEquals(-0.5, DecodificadorCeldas.numero("-.5"));
+        assertEquals(5.0, DecodificadorCeldas.numero("+5."));
+        assertEquals(1.5e12, DecodificadorCeldas.numero("1,5E+12"));
+        assertEquals(7501234567890.0, DecodificadorCeldas.numero("7501234567890"));
+        for (String s : new String[]{null, "", " ", "-", ".", "1.234,56", "12-5", "abc", "1e", "1e+", "$5", "1 000"}) {
+            assertTrue(Double.isNaN(DecodificadorCeldas.numero(s)), String.valueOf(s));
+        }
+        // con símbolos ignorados (montos con moneda o separadores de miles con espacio)
+        assertEquals(1234.5, DecodificadorCeldas.numero("$ 1 234,50", true));
+        assertEquals(-3.0, DecodificadorCeldas.numero("-3 u", true));
+        assertTrue(Double.isNaN(DecodificadorCeldas.numero("$", true)));
+        assertTrue(Double.isNaN(DecodificadorCeldas.numero("12-5", true)));
+    }
+
+    private static String digitos(Random rnd, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) sb.append((char) ('0' + rnd.nextInt(10)));
+        return sb.toString();
+    }
+}
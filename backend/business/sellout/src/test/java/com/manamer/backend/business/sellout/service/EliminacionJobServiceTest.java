@@ -0,0 +1,143 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.BaseH2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Lotes, avance y reanudación de EliminacionJobService contra H2 (sin partición: DELETE por lotes). */
+class EliminacionJobServiceTest {
+
+    // anio, mes, dia y dos columnas de texto; importes en cero
+    private static final String INSERT_VENTA = "INSERT INTO dbo.venta (anio, mes, dia, %s, venta_dolares, venta_unidad,"
+            + " stock_dolares, stock_unidades) VALUES (?, ?, ?, ?, ?, 0, 0, 0, 0)";
+
+    private DriverManagerDataSource ds;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void crearTablas() {
+        ds = BaseH2.crear();
+        jdbc = new JdbcTemplate(ds);
+    }
+
+    @AfterEach
+    void borrarTablas() {
+        BaseH2.borrar(ds);
+    }
+
+    @Test
+    void seleccionSinTopeSigueDesdeElUltimoLoteConfirmado() {
+        // 1200 códigos con dos días cada uno en 2024/3 (a borrar) y uno en 2024/4 (se queda)
+        List<Object[]> filas = new ArrayList<>();
+        List<TemplateGeneralService.KeyVenta> seleccion = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            String codPdv = i == 0 ? null : "T1";
+            filas.add(new Object[]{2024, 3, 1, "c" + i, codPdv});
+            filas.add(new Object[]{2024, 3, 2, "c" + i, codPdv});
+            filas.add(new Object[]{2024, 4, 1, "c" + i, codPdv});
+            seleccion.add(new TemplateGeneralService.KeyVenta(2024, 3, "c" + i, i == 0 ? " " : "T1"));
+        }
+        jdbc.batchUpdate(INSERT_VENTA.formatted("cod_barra, cod_pdv"), filas);
+        seleccion.add(seleccion.get(5));
+        seleccion.add(new TemplateGeneralService.KeyVenta(2024, 3, null, "T1"));
+
+        EliminacionJobService antes = servicio(500, 2000);
+        String id = antes.registrarSeleccion(seleccion);
+        assertTrue(antes.loteSeleccion(id));
+
+        Map<String, Object> parcial = antes.estado(id).orElseThrow();
+        assertEquals(1200L, parcial.get("clavesTotales"));
+        assertEquals(500L, parcial.get("clavesProcesadas"));
+        assertEquals(1000L, parcial.get("eliminados"));
+        assertEquals(700, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_eliminacion_clave", Integer.class));
+
+        // otra instancia (reinicio) retoma el mismo job
+        EliminacionJobService despues = servicio(500, 2000);
+        despues.procesar(id);
+
+        Map<String, Object> fin = despues.estado(id).orElseThrow();
+        assertEquals("COMPLETADO", fin.get("estado"));
+        assertEquals(2400L, fin.get("eliminados"));
+        assertEquals(100L, fin.get("porcentaje"));
+        assertEquals(3L, fin.get("lotes"));
+        assertEquals(1200, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta WHERE mes = 4", Integer.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta WHERE mes = 3", Integer.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_eliminacion_clave", Integer.class));
+    }
+
+    @Test
+    void filtroPorLotesHastaElTope() {
+        List<Object[]> filas = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) filas.add(new Object[]{2024, 3, 1 + i % 28, "M1", "c" + i});
+        for (int i = 0; i < 10; i++) filas.add(new Object[]{2024, 3, 1, "M2", "c" + i});
+        jdbc.batchUpdate(INSERT_VENTA.formatted("marca, cod_barra"), filas);
+
+        EliminacionJobService service = servicio(500, 2000);
+        String id = service.registrarFiltro(2024, 3, " M1 ", "", 4500L);
+        service.procesar(id);
+
+        Map<String, Object> fin = service.estado(id).orElseThrow();
+        assertEquals("COMPLETADO", fin.get("estado"));
+        assertEquals(4500L, fin.get("eliminados"));
+        assertEquals(3L, fin.get("lotes"));
+        assertEquals("M1", ((Map<?, ?>) fin.get("filtro")).get("marca"));
+        assertEquals(510, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+    }
+
+    @Test
+    void jobTerminadoNoSeVuelveAProcesar() {
+        EliminacionJobService service = servicio(500, 2000);
+        String id = service.registrarSeleccion(List.of());
+        service.procesar(id);
+        assertEquals("COMPLETADO", service.estado(id).orElseThrow().get("estado"));
+        assertEquals(0L, service.estado(id).orElseThrow().get("lotes"));
+
+        service.procesar(id);
+        assertEquals(0L, service.estado(id).orElseThrow().get("lotes"));
+        assertTrue(service.estado("no-existe").isEmpty());
+    }
+
+    @Test
+    void jobEnErrorSeReanudaHastaCompletar() throws Exception {
+        List<Object[]> filas = new ArrayList<>();
+        for (int i = 0; i < 700; i++) filas.add(new Object[]{2024, 3, 1, "M1", "c" + i});
+        jdbc.batchUpdate(INSERT_VENTA.formatted("marca, cod_barra"), filas);
+
+        EliminacionJobService service = servicio(500, 500);
+        String id = service.registrarFiltro(2024, 3, "M1", null, null);
+        // como lo deja procesar: un lote de 500 confirmado (ya no están esas ventas) y luego el fallo
+        jdbc.update("UPDATE dbo.venta_eliminacion SET estado = 'ERROR', eliminados = 500, lotes = 1, error = 'deadlock',"
+                + " terminado = CURRENT_TIMESTAMP WHERE id = ?", id);
+        assertEquals("ERROR", service.estado(id).orElseThrow().get("estado"));
+
+        Map<String, Object> reanudado = service.reanudar(id).orElseThrow();
+        assertNotEquals("ERROR", reanudado.get("estado"));
+        assertNull(reanudado.get("error"));
+
+        Map<String, Object> fin = reanudado;
+        for (int i = 0; i < 500 && !"COMPLETADO".equals(fin.get("estado")); i++) {
+            Thread.sleep(20);
+            fin = service.estado(id).orElseThrow();
+        }
+        assertEquals("COMPLETADO", fin.get("estado"));
+        assertEquals(1200L, fin.get("eliminados"));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+        assertTrue(service.reanudar("no-existe").isEmpty());
+        service.cerrar();
+    }
+
+    private EliminacionJobService servicio(int clavesPorLote, int filasPorLote) {
+        return new EliminacionJobService(jdbc, new DataSourceTransactionManager(ds),
+                new ParticionVentaService(jdbc, new VentaBatchWriter(jdbc)), 1, clavesPorLote, filasPorLote);
+    }
+}
@@ -0,0 +1,60 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.BaseH2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** DELETE por tramos de ids con el filtro de cliente en la sentencia (H2 en modo SQL Server). */
+class EliminacionVentaServiceTest {
+
+    private JdbcTemplate jdbc;
+    private EliminacionVentaService service;
+
+    @BeforeEach
+    void crearTabla() {
+        jdbc = new JdbcTemplate(BaseH2.crear());
+        List<Object[]> filas = new ArrayList<>();
+        for (long id = 1; id <= 4500; id++) filas.add(new Object[]{id, id % 2 == 0 ? 1L : 2L, (int) (id % 28) + 1});
+        jdbc.batchUpdate("INSERT INTO dbo.venta (id, cliente_id, anio, mes, dia, venta_dolares, venta_unidad,"
+                + " stock_dolares, stock_unidades) VALUES (?, ?, 2024, 3, ?, 0, 0, 0, 0)", filas);
+        service = new EliminacionVentaService(jdbc);
+    }
+
+    @AfterEach
+    void borrarTabla() {
+        BaseH2.borrar(jdbc.getDataSource());
+    }
+
+    @Test
+    void soloBorraLasDelClienteYCuentaLasOmitidas() {
+        EliminacionVentaService.Resultado r = service.eliminarPorIds(Arrays.asList(1L, 2L, 3L, 4L, 4L, null, 99_999L), 1L);
+        assertEquals(5, r.solicitados());
+        assertEquals(2, r.eliminados());
+        assertEquals(3, r.omitidos());
+        assertEquals(4498, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+    }
+
+    @Test
+    void variosTramosSinFiltroDeCliente() {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= 4500; id++) ids.add(id);
+        EliminacionVentaService.Resultado r = service.eliminarPorIds(ids, null);
+        assertEquals(4500, r.eliminados());
+        assertEquals(0, r.omitidos());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+    }
+
+    @Test
+    void listaVaciaNoEjecutaNada() {
+        assertEquals(0, service.eliminarPorIds(List.of(), 1L).solicitados());
+        assertEquals(0, service.eliminarPorIds(null, null).eliminados());
+    }
+}
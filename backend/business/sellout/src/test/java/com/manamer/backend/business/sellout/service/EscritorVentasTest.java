@@ -0,0 +1,158 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.BaseH2;
+import com.manamer.backend.business.sellout.VentaPrueba;
+import com.manamer.backend.business.sellout.models.Venta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Estrategias de EscritorVentas contra H2 (respaldo DELETE + INSERT de ParticionVentaService). */
+class EscritorVentasTest {
+
+    private JdbcTemplate jdbc;
+    private EscritorVentas escritor;
+    private VentaService ventaService;
+
+    @BeforeEach
+    void crearTabla() {
+        DriverManagerDataSource ds = BaseH2.crear();
+        jdbc = new JdbcTemplate(ds);
+        VentaBatchWriter batch = new VentaBatchWriter(jdbc);
+        VentaMergeWriter merge = new VentaMergeWriter(jdbc, batch, 1000, true);
+        escritor = new EscritorVentas(merge, new ParticionVentaService(jdbc, batch), new DataSourceTransactionManager(ds));
+        ventaService = new VentaService(null, null, new DataSourceTransactionManager(ds), merge, escritor, null);
+        batch.insertar(List.of(
+                venta(1L, 3, 1, "7861", 10),
+                venta(1L, 3, 2, "7862", 20),
+                venta(1L, 4, 1, "7861", 30),
+                venta(2L, 3, 1, "7861", 40)
+        ));
+    }
+
+    @AfterEach
+    void borrarTabla() {
+        BaseH2.borrar(jdbc.getDataSource());
+    }
+
+    @Test
+    void reemplazoRetieneHastaTerminarYSoloTocaLosPeriodosDelArchivo() {
+        EscritorVentas.Escritura e = escritor.abrir(EstrategiaCarga.REPLACE_PERIOD);
+        assertEquals(VentaMergeWriter.Resultado.VACIO, e.escribir(List.of(venta(1L, 3, 5, "7863", 50)), VentaMergeWriter.Modo.COMPLETO));
+        e.escribir(List.of(venta(1L, 3, 6, "7864", 60), venta(1L, 3, 6, "7864 ", 61)), VentaMergeWriter.Modo.COMPLETO);
+        assertEquals(4, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+        assertEquals(3, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_reemplazo", Integer.class));
+
+        assertEquals(new VentaMergeWriter.Resultado(2, 0, 0), e.terminar());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_reemplazo", Integer.class));
+        assertEquals(List.of(50.0, 61.0), jdbc.queryForList(
+                "SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 1 AND mes = 3 ORDER BY dia", Double.class));
+        assertEquals(30.0, jdbc.queryForObject("SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 1 AND mes = 4", Double.class));
+        assertEquals(40.0, jdbc.queryForObject("SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 2", Double.class));
+
+        Map<String, Object> m = e.rendimiento();
+        assertEquals("REPLACE_PERIOD", m.get(EstrategiaCarga.CAMPO));
+        assertEquals(List.of("1:2024/3"), m.get("periodos"));
+        assertEquals(2L, m.get("borradas"));
+        assertEquals(3L, m.get("filas"));
+    }
+
+    @Test
+    void reemplazoPasaElStockALaVentaRetenida() {
+        EscritorVentas.Escritura e = escritor.abrir(EstrategiaCarga.REPLACE_PERIOD);
+        e.escribir(List.of(venta(2L, 3, 1, "7861", 45)), VentaMergeWriter.Modo.SOLO_VENTA);
+        Venta stock = venta(2L, 3, 1, "7861", 0);
+        stock.setStockUnidades(7);
+        e.escribir(List.of(stock), VentaMergeWriter.Modo.SOLO_STOCK);
+        e.terminar();
+
+        Map<String, Object> fila = jdbc.queryForMap(
+                "SELECT venta_dolares, stock_unidades FROM dbo.venta WHERE cliente_id = 2 AND mes = 3");
+        assertEquals(45.0, fila.get("venta_dolares"));
+        assertEquals(7.0, fila.get("stock_unidades"));
+    }
+
+    @Test
+    void reemplazoSinVentaQuedaConLaPrimeraFilaYElUltimoStock() {
+        EscritorVentas.Escritura e = escritor.abrir(EstrategiaCarga.REPLACE_PERIOD);
+        e.escribir(List.of(VentaPrueba.delCliente(2L).codBarra("7861").marca("M1").stock(3, 30).crear()),
+                VentaMergeWriter.Modo.SOLO_STOCK);
+        e.escribir(List.of(VentaPrueba.delCliente(2L).codBarra("7861").marca("M2").stock(5, 50).crear()),
+                VentaMergeWriter.Modo.SOLO_STOCK);
+        e.terminar();
+
+        Map<String, Object> fila = jdbc.queryForMap(
+                "SELECT marca, stock_unidades, stock_dolares, hash_fila FROM dbo.venta WHERE cliente_id = 2 AND mes = 3");
+        assertEquals("M1", fila.get("marca"));
+        assertEquals(5.0, fila.get("stock_unidades"));
+        assertEquals(50.0, fila.get("stock_dolares"));
+        assertNull(fila.get("hash_fila"));
+    }
+
+    @Test
+    void reemplazoFallidoDescartaLoRetenido() {
+        EscritorVentas.Escritura e = escritor.abrir(EstrategiaCarga.REPLACE_PERIOD);
+        e.escribir(List.of(venta(1L, 3, 5, "7863", 50)), VentaMergeWriter.Modo.COMPLETO);
+        jdbc.execute("DROP TABLE dbo.venta");
+
+        assertThrows(RuntimeException.class, e::terminar);
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_reemplazo", Integer.class));
+    }
+
+    @Test
+    void reemplazoRechazaVentasSinCliente() {
+        EscritorVentas.Escritura e = escritor.abrir(EstrategiaCarga.REPLACE_PERIOD);
+        assertThrows(IllegalArgumentException.class,
+                () -> e.escribir(List.of(venta(null, 3, 1, "7861", 1)), VentaMergeWriter.Modo.COMPLETO));
+    }
+
+    @Test
+    void soloInsercionNoBuscaExistentes() {
+        EscritorVentas.Escritura e = escritor.abrir(EstrategiaCarga.APPEND_ONLY);
+        assertEquals(new VentaMergeWriter.Resultado(2, 0, 0), e.escribir(List.of(
+                venta(1L, 5, 1, "7861", 1), venta(1L, 5, 2, "7861", 2)), VentaMergeWriter.Modo.COMPLETO));
+        assertEquals(6, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+
+        // el stock completa la fila ya guardada (upsert), no agrega otra
+        Venta stock = venta(1L, 5, 1, "7861", 0);
+        stock.setStockUnidades(3);
+        assertEquals(new VentaMergeWriter.Resultado(0, 1, 0), e.escribir(List.of(stock), VentaMergeWriter.Modo.SOLO_STOCK));
+        assertEquals(6, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+    }
+
+    @Test
+    void upsertMasivoConEstrategia() {
+        // carga de una sola lista (Deprati): lo retenido por REPLACE_PERIOD se aplica y cuenta al final
+        VentaService.ResultadoUpsert r = ventaService.upsertVentasMasivo(List.of(
+                venta(1L, 3, 5, "7863", 50), venta(1L, 3, 6, "7864", 60)), EstrategiaCarga.REPLACE_PERIOD);
+        assertEquals(2, r.insertados);
+        assertEquals(List.of(50.0, 60.0), jdbc.queryForList(
+                "SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 1 AND mes = 3 ORDER BY dia", Double.class));
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta_reemplazo", Integer.class));
+
+        r = ventaService.upsertVentasMasivo(List.of(venta(1L, 4, 2, "7861", 1)), EstrategiaCarga.APPEND_ONLY);
+        assertEquals(1, r.insertados);
+        assertEquals(5, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+    }
+
+    @Test
+    void estrategiaPorParametro() {
+        assertEquals(EstrategiaCarga.UPSERT, EstrategiaCarga.de(null));
+        assertEquals(EstrategiaCarga.REPLACE_PERIOD, EstrategiaCarga.de(" replace_period "));
+        assertThrows(IllegalArgumentException.class, () -> EstrategiaCarga.de("BORRAR"));
+        assertEquals("RM", EstrategiaCarga.UPSERT.endpointHuella("RM"));
+        assertEquals("RM_APPEND_ONLY", EstrategiaCarga.APPEND_ONLY.endpointHuella("RM"));
+    }
+
+    private static Venta venta(Long clienteId, int mes, int dia, String codBarra, double dolares) {
+        return VentaPrueba.delCliente(clienteId).mes(mes).dia(dia).codBarra(codBarra).dolares(dolares).crear();
+    }
+}
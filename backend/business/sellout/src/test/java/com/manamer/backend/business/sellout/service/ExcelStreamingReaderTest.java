@@ -0,0 +1,119 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExcelStreamingReaderTest {
+
+    private static final Date FECHA = Date.from(LocalDate.of(2024, 3, 15).atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+    @TempDir
+    Path dir;
+
+    private File archivo;
+
+    @BeforeEach
+    void crearLibro() throws Exception {
+        archivo = dir.resolve("carga.xlsx").toFile();
+        try (XSSFWorkbook wb = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(archivo.toPath())) {
+            CellStyle estiloFecha = wb.createCellStyle();
+            estiloFecha.setDataFormat(wb.getCreationHelper().createDataFormat().getFormat("dd/mm/yyyy"));
+            CellStyle soloEstilo = wb.createCellStyle();
+            soloEstilo.setDataFormat(wb.getCreationHelper().createDataFormat().getFormat("0.00"));
+
+            Sheet ventas = wb.createSheet("VENTAS");
+            Row r0 = ventas.createRow(0);
+            r0.createCell(0).setCellValue("fecha");
+            r0.createCell(1).setCellValue("cod_barra");
+            r0.createCell(2).setCellValue("unidades");
+            Row r1 = ventas.createRow(1);
+            r1.createCell(0).setCellValue(FECHA);
+            r1.getCell(0).setCellStyle(estiloFecha);
+            r1.createCell(1).setCellValue("0007861");
+            r1.createCell(2).setCellValue(12.5);
+            r1.createCell(3).setCellValue(true);
+            r1.createCell(4).setCellStyle(soloEstilo); // en blanco, solo estilo
+            // fila 3 ausente; la 4 con una celda salteada y otra fuera de maxColumnas
+            Row r3 = ventas.createRow(3);
+            r3.createCell(2).setCellValue(3);
+            r3.createCell(9).setCellValue("fuera");
+            r3.createCell(1).setCellFormula("C4*2");
+
+            wb.createSheet("STOCK").createRow(0).createCell(0).setCellValue("corte");
+            wb.write(out);
+        }
+    }
+
+    @Test
+    void nombresYFilasDeclaradas() throws Exception {
+        assertTrue(ExcelStreamingReader.esOoxml(archivo));
+        assertEquals(List.of("VENTAS", "STOCK"), ExcelStreamingReader.nombresHojas(archivo));
+        assertEquals(4, ExcelStreamingReader.filasDeclaradas(archivo, 0));
+        assertEquals(-1, ExcelStreamingReader.filasDeclaradas(archivo, 5));
+    }
+
+    @Test
+    void filasComoLasDelDom() throws Exception {
+        List<List<Object>> sax = new ArrayList<>();
+        assertTrue(ExcelStreamingReader.leerHoja(archivo, 0, 5, fila -> sax.add(copiar(fila))));
+
+        assertEquals(3, sax.size());
+        assertEquals(List.of(0, "fecha", "cod_barra", "unidades"), sax.get(0));
+        assertEquals(List.of(1, FECHA, "0007861", 12.5, true), sax.get(1));
+        // índice de la fila en la hoja (la 2 no existe); la columna 9 queda fuera de maxColumnas
+        assertEquals(3, sax.get(2).get(0));
+        assertEquals(3.0, sax.get(2).get(3));
+
+        List<List<Object>> dom = new ArrayList<>();
+        try (XSSFWorkbook wb = new XSSFWorkbook(archivo)) {
+            ExcelStreamingReader.recorrerHoja(wb.getSheetAt(0), 5, fila -> dom.add(copiar(fila)));
+        }
+        assertEquals(dom.get(0), sax.get(0));
+        assertEquals(dom.get(1), sax.get(1));
+        assertEquals(dom.get(2).get(3), sax.get(2).get(3));
+    }
+
+    @Test
+    void elHandlerCortaLaLecturaYLaHojaInexistenteNoSeLee() throws Exception {
+        List<Integer> indices = new ArrayList<>();
+        assertTrue(ExcelStreamingReader.leerHoja(archivo, 0, 5, fila -> {
+            indices.add(fila.getIndice());
+            return indices.size() < 2;
+        }));
+        assertEquals(List.of(0, 1), indices);
+
+        assertFalse(ExcelStreamingReader.leerHoja(archivo, 2, 5, fila -> fail("no hay tercera hoja")));
+    }
+
+    @Test
+    void errorDelHandlerSePropagaTalCual() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> ExcelStreamingReader.leerHoja(archivo, 1, 5, fila -> { throw new IllegalStateException("corte"); }));
+        assertEquals("corte", e.getMessage());
+    }
+
+    // índice + valores de celda hasta maxColumnas (la Fila se reutiliza: se copia en el handler)
+    private static List<Object> copiar(ExcelStreamingReader.Fila fila) {
+        List<Object> valores = new ArrayList<>();
+        valores.add(fila.getIndice());
+        for (int c = 0; c <= fila.getUltimaColumna(); c++) valores.add(fila.valorCelda(c));
+        return valores;
+    }
+}
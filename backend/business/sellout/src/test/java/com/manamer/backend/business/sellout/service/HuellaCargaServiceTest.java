@@ -0,0 +1,159 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.manamer.backend.business.sellout.models.CargaHuella;
+import com.manamer.backend.business.sellout.repositories.CargaHuellaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/** Cargas idénticas simultáneas (una sola ejecución) y reutilización del resultado guardado. */
+@Timeout(20)
+class HuellaCargaServiceTest {
+
+    private static final int HILOS = 8;
+
+    @TempDir
+    Path dir;
+
+    private Path archivo;
+    private CargaHuellaRepository repository;
+    private HuellaCargaService service;
+
+    @BeforeEach
+    void crear() throws Exception {
+        archivo = Files.writeString(dir.resolve("ventas.csv"), "codigo;unidades\n7861;3\n");
+        repository = mock(CargaHuellaRepository.class);
+        when(repository.findByEndpointAndCodClienteAndSha256(any(), any(), any())).thenReturn(Optional.empty());
+        service = new HuellaCargaService(repository, new ObjectMapper(), 24);
+    }
+
+    @Test
+    void cargasIdenticasSimultaneasEjecutanUnaSola() throws Exception {
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch enCarga = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Callable<Map<String, Object>> carga = () -> {
+            ejecuciones.incrementAndGet();
+            enCarga.countDown();
+            liberar.await();
+            return Map.of("ok", true, "insertados", 1);
+        };
+
+        AtomicReferenceArray<Object> resultados = new AtomicReferenceArray<>(HILOS);
+        List<Thread> hilos = new ArrayList<>();
+        for (int i = 0; i < HILOS; i++) {
+            int n = i;
+            Thread t = new Thread(() -> resultados.set(n, ejecutar(carga)), "carga-" + i);
+            hilos.add(t);
+            t.start();
+        }
+
+        // una ejecuta la carga; las demás quedan esperando su resultado antes de liberarla
+        enCarga.await();
+        for (Thread t : hilos) {
+            while (t.getState() != Thread.State.WAITING) Thread.sleep(10);
+        }
+        liberar.countDown();
+        for (Thread t : hilos) t.join();
+
+        assertEquals(1, ejecuciones.get());
+        int compartidos = 0;
+        for (int i = 0; i < HILOS; i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> r = assertInstanceOf(Map.class, resultados.get(i));
+            assertEquals(1, r.get("insertados"));
+            if (Boolean.TRUE.equals(r.get("compartido"))) {
+                compartidos++;
+                assertEquals(HuellaCargaService.sha256(archivo), r.get("huella"));
+            }
+        }
+        assertEquals(HILOS - 1, compartidos);
+        verify(repository, times(1)).save(any());
+    }
+
+    @Test
+    void elErrorDeLaCargaCompartidaLlegaATodasYNoSeGuarda() throws Exception {
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch enCarga = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        Callable<Map<String, Object>> carga = () -> {
+            if (ejecuciones.incrementAndGet() == 1) {
+                enCarga.countDown();
+                liberar.await();
+                throw new IllegalArgumentException("hoja VENTAS no encontrada");
+            }
+            return Map.of("ok", true);
+        };
+
+        AtomicReferenceArray<Object> resultados = new AtomicReferenceArray<>(2);
+        Thread primera = new Thread(() -> resultados.set(0, ejecutar(carga)));
+        primera.start();
+        enCarga.await();
+        Thread segunda = new Thread(() -> resultados.set(1, ejecutar(carga)));
+        segunda.start();
+        while (segunda.getState() != Thread.State.WAITING) Thread.sleep(10);
+        liberar.countDown();
+        primera.join();
+        segunda.join();
+
+        for (int i = 0; i < 2; i++) {
+            IllegalArgumentException e = assertInstanceOf(IllegalArgumentException.class, resultados.get(i));
+            assertEquals("hoja VENTAS no encontrada", e.getMessage());
+        }
+        assertEquals(1, ejecuciones.get());
+        verify(repository, never()).save(any());
+
+        // un error no queda registrado: el reintento ejecuta la carga
+        assertEquals(Boolean.TRUE, service.ejecutar("excel", "C1", archivo, "ventas.csv", false, carga).get("ok"));
+        assertEquals(2, ejecuciones.get());
+    }
+
+    @Test
+    void archivoYaImportadoDevuelveElResultadoGuardado() throws Exception {
+        CargaHuella previa = new CargaHuella();
+        previa.setFechaCarga(LocalDateTime.now().minusHours(1));
+        previa.setResultado("{\"ok\":true,\"insertados\":5}");
+        when(repository.findByEndpointAndCodClienteAndSha256("excel", "C1", HuellaCargaService.sha256(archivo)))
+                .thenReturn(Optional.of(previa));
+
+        Map<String, Object> r = service.ejecutar("excel", "C1", archivo, "ventas.csv", false,
+                () -> fail("no debe volver a cargar"));
+        assertEquals(true, r.get("duplicado"));
+        assertEquals(5, r.get("insertados"));
+
+        // forzar ignora lo guardado; otro cliente no comparte huella
+        assertEquals(1, service.ejecutar("excel", "C1", archivo, "ventas.csv", true, () -> Map.of("insertados", 1)).get("insertados"));
+        assertEquals(2, service.ejecutar("excel", "C2", archivo, "ventas.csv", false, () -> Map.of("insertados", 2)).get("insertados"));
+
+        // vencida la vigencia se recarga
+        previa.setFechaCarga(LocalDateTime.now().minusHours(25));
+        assertEquals(3, service.ejecutar("excel", "C1", archivo, "ventas.csv", false, () -> Map.of("insertados", 3)).get("insertados"));
+    }
+
+    // resultado de la carga o la excepción que lanzó
+    private Object ejecutar(Callable<Map<String, Object>> carga) {
+        try {
+            return service.ejecutar("excel", "C1", archivo, "ventas.csv", false, carga);
+        } catch (Exception e) {
+            return e;
+        }
+    }
+}
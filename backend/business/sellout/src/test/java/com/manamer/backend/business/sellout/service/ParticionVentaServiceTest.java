@@ -0,0 +1,90 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.BaseH2;
+import com.manamer.backend.business.sellout.VentaPrueba;
+import com.manamer.backend.business.sellout.models.Venta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Respaldo DELETE + INSERT de ParticionVentaService contra H2 (el SWITCH de partición se prueba con SQL Server
+ * en IndicesVentaTest).
+ */
+class ParticionVentaServiceTest {
+
+    private JdbcTemplate jdbc;
+    private ParticionVentaService service;
+
+    @BeforeEach
+    void crearTabla() {
+        jdbc = new JdbcTemplate(BaseH2.crear());
+        VentaBatchWriter batch = new VentaBatchWriter(jdbc);
+        service = new ParticionVentaService(jdbc, batch);
+        batch.insertar(List.of(
+                venta(1L, 2024, 3, 1, "7861", 10),
+                venta(1L, 2024, 3, 2, "7862", 20),
+                venta(1L, 2024, 4, 1, "7861", 30),
+                venta(2L, 2024, 3, 1, "7861", 40)
+        ));
+    }
+
+    @AfterEach
+    void borrarTabla() {
+        BaseH2.borrar(jdbc.getDataSource());
+    }
+
+    @Test
+    void sinParticionUsaDelete() {
+        assertFalse(service.particionada());
+    }
+
+    @Test
+    void reemplazarSoloTocaElMesDelCliente() {
+        ParticionVentaService.Resultado r = service.reemplazarPeriodo(1L, 2024, 3, List.of(
+                venta(1L, 2024, 3, 5, "7863", 50),
+                venta(1L, 2024, 3, 6, "7864", 60),
+                venta(1L, 2024, 3, 6, "7864 ", 61)
+        ));
+        assertEquals(2, r.borradas());
+        assertEquals(2, r.insertadas());
+        assertFalse(r.porParticion());
+
+        assertEquals(List.of(50.0, 61.0), jdbc.queryForList(
+                "SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 1 AND mes = 3 ORDER BY dia", Double.class));
+        // otro mes del cliente y el mismo mes de otro cliente quedan igual
+        assertEquals(30.0, jdbc.queryForObject("SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 1 AND mes = 4", Double.class));
+        assertEquals(40.0, jdbc.queryForObject("SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 2", Double.class));
+    }
+
+    @Test
+    void rechazaVentasDeOtroClienteOPeriodo() {
+        assertThrows(IllegalArgumentException.class,
+                () -> service.reemplazarPeriodo(1L, 2024, 3, List.of(venta(2L, 2024, 3, 1, "7861", 1))));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.reemplazarPeriodo(1L, 2024, 3, List.of(venta(1L, 2024, 4, 1, "7861", 1))));
+        assertEquals(4, jdbc.queryForObject("SELECT COUNT(*) FROM dbo.venta", Integer.class));
+    }
+
+    @Test
+    void purgarVaciaElMesDeTodosLosClientes() {
+        assertEquals(3, service.purgarPeriodo(2024, 3).borradas());
+        assertEquals(List.of(4), jdbc.queryForList("SELECT mes FROM dbo.venta", Integer.class));
+    }
+
+    @Test
+    void filtroPeriodoCubreMesOAnio() {
+        assertEquals("", ParticionVentaService.filtroPeriodo("v", null, 3));
+        assertEquals("AND v.periodo = 202403 ", ParticionVentaService.filtroPeriodo("v", 2024, 3));
+        assertEquals("AND v.periodo BETWEEN 202401 AND 202412 ", ParticionVentaService.filtroPeriodo("v", 2024, null));
+    }
+
+    private static Venta venta(Long clienteId, int anio, int mes, int dia, String codBarra, double dolares) {
+        return VentaPrueba.delCliente(clienteId).periodo(anio, mes).dia(dia).codBarra(codBarra).dolares(dolares).crear();
+    }
+}
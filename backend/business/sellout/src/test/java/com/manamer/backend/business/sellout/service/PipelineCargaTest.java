@@ -0,0 +1,155 @@
+package com.manamer.backend.business.sellout.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Orden de consolidación, fallo del escritor, fallo de la lectura y cancelación de PipelineCarga (sin BD). */
+@Timeout(20)
+class PipelineCargaTest {
+
+    private final List<Integer> escritos = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> consolidados = new ArrayList<>();
+    private final Set<Thread> escritores = ConcurrentHashMap.newKeySet();
+
+    @Test
+    void consolidaEnOrdenAunqueLosBloquesTerminenDesordenados() {
+        List<Integer> sumas = new ArrayList<>();
+        Map<String, Object> stats;
+        try (PipelineCarga<Integer, Integer> pipeline = new PipelineCarga<>("prueba", 3, 2, 3, null,
+                (bloque, nro) -> {
+                    Thread.sleep(nro % 2 == 0 ? 30 : 0); // los pares terminan después que los impares
+                    return bloque.stream().mapToInt(Integer::intValue).sum();
+                },
+                (nro, suma) -> { consolidados.add(nro); sumas.add(suma); })) {
+            for (int i = 1; i <= 10; i++) pipeline.agregar(i);
+            assertEquals(3, pipeline.bloqueActual());
+            stats = pipeline.terminar();
+        }
+
+        assertEquals(List.of(0, 1, 2, 3), consolidados);
+        assertEquals(List.of(6, 15, 24, 10), sumas);
+        assertEquals(4, stats.get("bloques"));
+        assertEquals(10L, stats.get("registros"));
+    }
+
+    @Test
+    void elFalloDeUnEscritorSeRelanzaEnElLectorYDetieneAlResto() {
+        PipelineCarga.ErrorPipeline e;
+        try (PipelineCarga<Integer, Integer> pipeline = new PipelineCarga<>("prueba", 2, 2, 2, null,
+                (bloque, nro) -> {
+                    escritores.add(Thread.currentThread());
+                    escritos.add(nro);
+                    if (nro == 1) throw new Exception("clave duplicada");
+                    return nro;
+                },
+                (nro, r) -> consolidados.add(nro))) {
+            e = assertThrows(PipelineCarga.ErrorPipeline.class, () -> {
+                for (int i = 0; i < 10_000; i++) pipeline.agregar(i);
+                pipeline.terminar();
+            });
+        }
+
+        // la excepción checked del escritor llega envuelta, con la original como causa
+        assertEquals("clave duplicada", e.getCause().getMessage());
+        assertTrue(e.getMessage().contains("bloque 1"));
+        // nada posterior al bloque fallido se consolida, y los escritores no siguen hasta el final
+        assertFalse(consolidados.contains(1));
+        assertTrue(consolidados.stream().allMatch(n -> n < 1));
+        assertTrue(escritos.size() < 5000);
+        escritores.forEach(t -> assertFalse(t.isAlive(), t.getName()));
+    }
+
+    @Test
+    void lecturaFallidaDescartaLoEncoladoEInterrumpeAlEscritor() throws Exception {
+        CountDownLatch enCurso = new CountDownLatch(1);
+        CountDownLatch nunca = new CountDownLatch(1);
+        AtomicBoolean interrumpido = new AtomicBoolean();
+        PipelineCarga<Integer, Integer> pipeline = new PipelineCarga<>("prueba", 1, 1, 1, null,
+                (bloque, nro) -> {
+                    escritores.add(Thread.currentThread());
+                    escritos.add(nro);
+                    enCurso.countDown();
+                    try {
+                        nunca.await();
+                    } catch (InterruptedException ie) {
+                        interrumpido.set(true);
+                        throw ie;
+                    }
+                    return nro;
+                },
+                (nro, r) -> consolidados.add(nro));
+
+        IllegalStateException lectura = assertThrows(IllegalStateException.class, () -> {
+            try (pipeline) {
+                pipeline.agregar(0);
+                enCurso.await();
+                pipeline.agregar(1); // queda en la cola
+                throw new IllegalStateException("archivo corrupto");
+            }
+        });
+
+        assertEquals("archivo corrupto", lectura.getMessage());
+        assertTrue(interrumpido.get());
+        assertEquals(List.of(0), escritos);
+        assertTrue(consolidados.isEmpty());
+        escritores.forEach(t -> assertFalse(t.isAlive(), t.getName()));
+        // después de cerrar, el pipeline ya no acepta registros
+        PipelineCarga.ErrorPipeline e = assertThrows(PipelineCarga.ErrorPipeline.class, () -> pipeline.agregar(2));
+        assertTrue(e.getMessage().contains("carga abortada"));
+    }
+
+    @Test
+    void lectorInterrumpidoConLaColaLlenaCortaLaCarga() throws Exception {
+        CountDownLatch enCurso = new CountDownLatch(1);
+        CountDownLatch nunca = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicBoolean marcaInterrupcion = new AtomicBoolean();
+
+        Thread lector = new Thread(() -> {
+            try (PipelineCarga<Integer, Integer> pipeline = new PipelineCarga<>("prueba", 1, 1, 1, null,
+                    (bloque, nro) -> {
+                        escritores.add(Thread.currentThread());
+                        escritos.add(nro);
+                        enCurso.countDown();
+                        nunca.await();
+                        return nro;
+                    },
+                    (nro, r) -> consolidados.add(nro))) {
+                pipeline.agregar(0);
+                enCurso.await();
+                pipeline.agregar(1); // llena la cola
+                pipeline.agregar(2); // espera lugar en la cola
+                pipeline.terminar();
+            } catch (Throwable t) {
+                error.set(t);
+            }
+            marcaInterrupcion.set(Thread.currentThread().isInterrupted());
+        }, "prueba-lector");
+        lector.start();
+
+        while (lector.getState() != Thread.State.TIMED_WAITING) Thread.sleep(10);
+        lector.interrupt();
+        lector.join();
+
+        PipelineCarga.ErrorPipeline e = assertInstanceOf(PipelineCarga.ErrorPipeline.class, error.get());
+        assertTrue(e.getMessage().contains("lectura interrumpida"));
+        assertInstanceOf(InterruptedException.class, e.getCause());
+        // la interrupción no se pierde para quien llamó a la carga
+        assertTrue(marcaInterrupcion.get());
+        assertEquals(List.of(0), escritos);
+        assertTrue(consolidados.isEmpty());
+        escritores.forEach(t -> assertFalse(t.isAlive(), t.getName()));
+    }
+}
@@ -0,0 +1,131 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.TemplateAlias;
+import com.manamer.backend.business.sellout.models.TemplateConfig;
+import com.manamer.backend.business.sellout.repositories.TemplateAliasRepository;
+import com.manamer.backend.business.sellout.repositories.TemplateConfigRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/** Compilación de plantillas desde template_config/template_alias, con las tablas mockeadas. */
+class PlantillaServiceTest {
+
+    private static final String NOMBRE = PlantillaService.DEPRATI_FLEXIBLE;
+
+    private TemplateConfigRepository configRepository;
+    private TemplateAliasRepository aliasRepository;
+    private PlantillaService service;
+
+    @BeforeEach
+    void crear() {
+        configRepository = mock(TemplateConfigRepository.class);
+        aliasRepository = mock(TemplateAliasRepository.class);
+        service = new PlantillaService(configRepository, aliasRepository, 10);
+    }
+
+    @Test
+    void configDeLaBaseSeCompila() {
+        when(configRepository.findFirstByTemplateName(NOMBRE)).thenReturn(Optional.of(config()));
+        when(aliasRepository.findByTemplateNameOrderByIdAsc(NOMBRE)).thenReturn(List.of(
+                alias("marca", "Marca Comercial"), alias("codBarra", "Código EAN"), alias("nombreProducto", "MARCA COMERCIAL")));
+
+        PlanExtraccion plan = service.plan(NOMBRE);
+
+        assertEquals(2, plan.getFilaEncabezado());
+        assertEquals(4, plan.getFilaDatos());
+        assertArrayEquals(new int[]{10, 13, 16, 19}, plan.columnasPdv());
+        assertEquals(7, plan.columna("codBarra"));
+        assertEquals(-1, plan.columna("fecha"));
+        // alias normalizados; uno repetido queda en el primer campo que lo declaró
+        assertEquals("codBarra", plan.campo(" codigo ean "));
+        assertEquals("marca", plan.campo("marca comercial"));
+        assertNull(plan.campo("brand"));
+    }
+
+    @Test
+    void configIncoherenteUsaLaDefinicionPorDefecto() {
+        Map<String, Consumer<TemplateConfig>> errores = new LinkedHashMap<>();
+        errores.put("paso de PDV cero", c -> c.setColStepPdv(0));
+        errores.put("paso de PDV negativo", c -> c.setColStepPdv(-2));
+        errores.put("fin de PDV antes del inicio", c -> c.setColEndPdv(5));
+        errores.put("fin de PDV fuera de la hoja", c -> c.setColEndPdv(Integer.MAX_VALUE));
+        errores.put("datos en la fila del encabezado", c -> c.setRowDataStart(2));
+        errores.put("datos con fila negativa", c -> { c.setRowEncabezado(null); c.setRowDataStart(-1); });
+        errores.put("fila de código de PDV menor que -1", c -> c.setRowCodPdv(-5));
+        errores.put("columna fija negativa", c -> c.setColCodBarra(-3));
+        errores.put("rango de columnas invertido", c -> { c.setColInicio(9); c.setColFin(2); });
+        when(aliasRepository.findByTemplateNameOrderByIdAsc(NOMBRE)).thenReturn(List.of(alias("marca", "Marca Comercial")));
+
+        for (Map.Entry<String, Consumer<TemplateConfig>> e : errores.entrySet()) {
+            TemplateConfig c = config();
+            e.getValue().accept(c);
+            when(configRepository.findFirstByTemplateName(NOMBRE)).thenReturn(Optional.of(c));
+            service.invalidar();
+
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                    () -> new PlanExtraccion(c, Map.of()), e.getKey());
+            assertTrue(error.getMessage().startsWith("Plantilla " + NOMBRE + ": "), e.getKey());
+
+            PlanExtraccion plan = service.plan(NOMBRE);
+            assertEquals(29, plan.getFilaDatos(), e.getKey());
+            assertEquals(17, plan.columnasPdv().length, e.getKey());
+            // con la configuración por defecto van también sus alias, no los de la base
+            assertEquals("marca", plan.campo("brand"), e.getKey());
+            assertNull(plan.campo("marca comercial"), e.getKey());
+        }
+    }
+
+    @Test
+    void sinTablasUsaLaDefinicionPorDefectoYCachea() {
+        when(configRepository.findFirstByTemplateName(any())).thenThrow(new IllegalStateException("Invalid object name 'template_config'"));
+
+        PlanExtraccion plan = service.plan(PlantillaService.TEMPLATE_GENERAL);
+        assertSame(plan, service.plan(PlantillaService.TEMPLATE_GENERAL));
+        assertEquals(3, plan.getFilaEncabezado());
+        assertEquals(1, plan.getColInicio());
+        assertEquals(13, plan.getColFin());
+        verify(configRepository, times(1)).findFirstByTemplateName(PlantillaService.TEMPLATE_GENERAL);
+
+        service.invalidar();
+        assertNotSame(plan, service.plan(PlantillaService.TEMPLATE_GENERAL));
+        verify(configRepository, times(2)).findFirstByTemplateName(PlantillaService.TEMPLATE_GENERAL);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> service.plan("OTRO"));
+        assertEquals("Plantilla no configurada: OTRO", e.getMessage());
+    }
+
+    // válida: encabezado en la fila 2, datos desde la 4, PDV en 10, 13, 16 y 19, código de barras en la 7
+    private static TemplateConfig config() {
+        TemplateConfig c = new TemplateConfig();
+        c.setTemplateName(NOMBRE);
+        c.setRowCodPdv(0);
+        c.setRowPdv(1);
+        c.setRowEncabezado(2);
+        c.setRowDataStart(4);
+        c.setColMarca(-1);
+        c.setColNombreProducto(-1);
+        c.setColCodBarra(7);
+        c.setColFecha(-1);
+        c.setColStartPdv(10);
+        c.setColStepPdv(3);
+        c.setColEndPdv(19);
+        return c;
+    }
+
+    private static TemplateAlias alias(String campo, String alias) {
+        TemplateAlias a = new TemplateAlias();
+        a.setTemplateName(NOMBRE);
+        a.setCampo(campo);
+        a.setAlias(alias);
+        return a;
+    }
+}
@@ -0,0 +1,143 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.VentaPrueba;
+import com.manamer.backend.business.sellout.models.Venta;
+import com.manamer.backend.business.sellout.repositories.VentaRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Validación contra SAP_Prod_cache de un bloque de candidatas de cargarVentasDesdeExcel. porBloques corre
+ * VentaService.validarContraSap tal cual (una consulta IN por cada 900 códigos distintos); porFila es la
+ * validación de antes, una consulta por fila con VentaRepository.codBarraExisteEnSap, con las mismas
+ * incidencias. El repositorio es un mock que espera {@code latenciaMicros} por consulta para simular el viaje
+ * a la base; con 0 queda solo el costo en la JVM. Cada operación es el bloque completo; el contador
+ * "consultas" reporta las consultas por bloque.
+ *
+ * mvn -B test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.manamer.backend.business.sellout.service.ValidacionSapBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidacionSapBenchmark {
+
+    // filas candidatas por validación (VentaService.VALIDACION_CHUNK)
+    private static final int FILAS = 5_000;
+
+    @Param({"0", "200"})
+    public int latenciaMicros;
+
+    // códigos distintos del bloque: pocos productos en muchas tiendas o casi uno por fila
+    @Param({"300", "4000"})
+    public int distintos;
+
+    private final List<Venta> ventas = new ArrayList<>(FILAS);
+    private final List<Integer> filas = new ArrayList<>(FILAS);
+    private final AtomicLong consultas = new AtomicLong();
+    private VentaRepository repo;
+    private VentaService service;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Consultas {
+        public long consultas;
+    }
+
+    @Setup
+    public void preparar() {
+        Random rnd = new Random(7);
+        // 9 de cada 10 códigos existen en SAP; en el archivo llegan con espacios y en minúsculas a veces
+        Set<String> sap = new HashSet<>();
+        List<String> codigos = new ArrayList<>(distintos);
+        for (int i = 0; i < distintos; i++) {
+            String cb = "786" + (1_000_000 + i) + (i % 5 == 0 ? "a" : "");
+            codigos.add(cb);
+            if (i % 10 != 0) sap.add(clave(cb));
+        }
+        for (int i = 0; i < FILAS; i++) {
+            String cb = codigos.get(rnd.nextInt(distintos));
+            ventas.add(VentaPrueba.delCliente(1L).codBarra(i % 7 == 0 ? " " + cb.toUpperCase(Locale.ROOT) + " " : cb).crear());
+            filas.add(i);
+        }
+
+        repo = mock(VentaRepository.class);
+        when(repo.codBarraExisteEnSap(anyString())).thenAnswer(inv -> {
+            consulta();
+            return sap.contains(clave(inv.getArgument(0)));
+        });
+        when(repo.findSapCodBarrasIn(anyCollection())).thenAnswer(inv -> {
+            consulta();
+            List<String> encontrados = new ArrayList<>();
+            for (Object cb : inv.<Collection<?>>getArgument(0)) {
+                if (sap.contains(clave((String) cb))) encontrados.add((String) cb);
+            }
+            return encontrados;
+        });
+        service = new VentaService(repo, null, mock(PlatformTransactionManager.class), null, null, null);
+
+        Consultas c = new Consultas();
+        if (porFila(c) != porBloques(c)) throw new IllegalStateException("porFila y porBloques no validan lo mismo");
+    }
+
+    @Benchmark
+    public int porFila(Consultas c) {
+        long antes = consultas.get();
+        List<VentaService.Incidencia> incidencias = new ArrayList<>();
+        List<String> noEncontrados = new ArrayList<>();
+        int validas = 0;
+        for (int k = 0; k < ventas.size(); k++) {
+            String codBarra = ventas.get(k).getCodBarra();
+            boolean existe = codBarra != null && !codBarra.trim().isEmpty() && repo.codBarraExisteEnSap(codBarra.trim());
+            if (!existe) {
+                incidencias.add(new VentaService.Incidencia(
+                        (codBarra == null || codBarra.isBlank()) ? "CODBARRA_VACIO" : codBarra.trim(),
+                        "CODBARRA no existe en SAP (cache).", filas.get(k) + 1));
+                noEncontrados.add(codBarra == null ? "CODBARRA_VACIO" : codBarra.trim());
+                continue;
+            }
+            validas++;
+        }
+        c.consultas += consultas.get() - antes;
+        return validas;
+    }
+
+    @Benchmark
+    public int porBloques(Consultas c) {
+        long antes = consultas.get();
+        int[] validas = {0};
+        // validarContraSap vacía las listas de pendientes
+        service.validarContraSap(new ArrayList<>(ventas), new ArrayList<>(filas), v -> validas[0]++,
+                new ArrayList<>(), new ArrayList<>(), new int[1], new int[1]);
+        c.consultas += consultas.get() - antes;
+        return validas[0];
+    }
+
+    // como compara la collation CI de SAP_Prod_cache
+    private static String clave(String codBarra) {
+        return codBarra.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private void consulta() {
+        consultas.incrementAndGet();
+        if (latenciaMicros > 0) LockSupport.parkNanos(latenciaMicros * 1_000L);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ValidacionSapBenchmark.class.getSimpleName()).build()).run();
+    }
+}
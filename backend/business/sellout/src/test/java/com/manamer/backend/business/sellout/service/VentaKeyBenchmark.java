@@ -0,0 +1,119 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.models.Venta;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deduplicar 100k ventas de un bloque y cruzarlas con las existentes: clave String + LinkedHashMap/HashMap
+ * (como antes en VentaBatchWriter.clave, VentaService.key y TemplateGeneralService.buildKey) frente a
+ * {@link VentaKey} + {@link DiccionarioClaves} + {@link MapaVentaKey}. Cada operación es el bloque completo;
+ * el GCProfiler reporta gc.alloc.rate.norm (bytes asignados por bloque de 100k filas).
+ *
+ * mvn -B test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.manamer.backend.business.sellout.service.VentaKeyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VentaKeyBenchmark {
+
+    private static final int FILAS = 100_000;
+
+    private final List<Venta> ventas = new ArrayList<>(FILAS);
+    // filas ya guardadas: la mitad de las claves del bloque, como llegan de la consulta de existentes
+    private final List<Object[]> guardadas = new ArrayList<>();
+
+    @Setup
+    public void preparar() {
+        Random rnd = new Random(7);
+        Cliente cliente = new Cliente();
+        cliente.setId(14L);
+        for (int i = 0; i < FILAS; i++) {
+            Venta v = new Venta();
+            v.setCliente(cliente);
+            v.setAnio(2024);
+            v.setMes(1 + rnd.nextInt(12));
+            v.setDia(1 + rnd.nextInt(28));
+            // un String nuevo por celda, igual que al leer el Excel
+            v.setCodBarra(new String("786" + (1_000_000 + rnd.nextInt(5_000))));
+            v.setCodPdv(new String("TIENDA " + rnd.nextInt(200)));
+            ventas.add(v);
+            if (i % 2 == 0) {
+                guardadas.add(new Object[]{(long) i, v.getAnio(), v.getMes(), v.getDia(),
+                        new String(v.getCodBarra()), new String(v.getCodPdv())});
+            }
+        }
+    }
+
+    @Benchmark
+    public int claveString() {
+        Map<String, Long> existentes = new HashMap<>();
+        for (Object[] r : guardadas) {
+            existentes.putIfAbsent(claveAnterior(14L, (Integer) r[1], (Integer) r[2], (Integer) r[3],
+                    (String) r[4], (String) r[5]), (Long) r[0]);
+        }
+        Map<String, Venta> porClave = new LinkedHashMap<>();
+        for (Venta v : ventas) porClave.put(claveAnterior(v), v);
+
+        int actualizaciones = 0;
+        for (Map.Entry<String, Venta> e : porClave.entrySet()) {
+            if (existentes.get(e.getKey()) != null) actualizaciones++;
+        }
+        return actualizaciones;
+    }
+
+    @Benchmark
+    public int ventaKey() {
+        DiccionarioClaves claves = new DiccionarioClaves();
+        MapaVentaKey existentes = new MapaVentaKey(guardadas.size());
+        long[] ids = new long[guardadas.size()];
+        for (int i = 0; i < guardadas.size(); i++) {
+            Object[] r = guardadas.get(i);
+            ids[i] = (Long) r[0];
+            existentes.putIfAbsent(claves.clave(14L, (Integer) r[1], (Integer) r[2], (Integer) r[3],
+                    (String) r[4], (String) r[5]), i);
+        }
+        MapaVentaKey posicion = new MapaVentaKey(ventas.size());
+        List<Venta> unicas = new ArrayList<>(ventas.size());
+        for (Venta v : ventas) {
+            int previa = posicion.putIfAbsent(claves.clave(v), unicas.size());
+            if (previa == MapaVentaKey.AUSENTE) unicas.add(v); else unicas.set(previa, v);
+        }
+
+        int actualizaciones = 0;
+        for (Venta v : unicas) {
+            if (existentes.get(claves.clave(v)) != MapaVentaKey.AUSENTE) actualizaciones++;
+        }
+        return actualizaciones;
+    }
+
+    private static String claveAnterior(Venta v) {
+        return claveAnterior(v.getCliente().getId(), v.getAnio(), v.getMes(), v.getDia(), v.getCodBarra(), v.getCodPdv());
+    }
+
+    private static String claveAnterior(Long clienteId, Integer anio, Integer mes, int dia, String codBarra, String codPdv) {
+        return (clienteId == null ? "" : clienteId) + "|" + anio + "|" + mes + "|" + dia + "|"
+                + norm(codBarra) + "|" + norm(codPdv);
+    }
+
+    private static String norm(String s) {
+        return s == null ? "" : s.trim().toUpperCase(Locale.ROOT);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(VentaKeyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.models.Cliente;
+import com.manamer.backend.business.sellout.models.Venta;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VentaKeyTest {
+
+    @Test
+    void diccionarioIgnoraEspaciosYMayusculas() {
+        DiccionarioClaves d = new DiccionarioClaves();
+        int id = d.id("7861234 ");
+        assertEquals(id, d.id("7861234"));
+        assertEquals(d.id("tienda norte"), d.id(" TIENDA NORTE"));
+        assertEquals(0, d.id(null));
+        assertEquals(0, d.id("  "));
+        assertEquals(2, d.size());
+    }
+
+    @Test
+    void buscarNoAgregaTextos() {
+        DiccionarioClaves d = new DiccionarioClaves();
+        d.id("A");
+        assertEquals(DiccionarioClaves.DESCONOCIDO, d.buscar("B"));
+        assertNull(d.claveSiExiste(1L, 2024, 1, 1, "B", "A"));
+        assertEquals(1, d.size());
+        assertEquals(d.clave(1L, 2024, 1, 1, "a", null), d.claveSiExiste(1L, 2024, 1, 1, " A", ""));
+    }
+
+    @Test
+    void claveDistingueCadaCampo() {
+        DiccionarioClaves d = new DiccionarioClaves();
+        VentaKey base = d.clave(7L, 2024, 3, 15, "786", "P1");
+        assertEquals(base, d.clave(7L, 2024, 3, 15, "786", "p1"));
+        assertNotEquals(base, d.clave(8L, 2024, 3, 15, "786", "P1"));
+        assertNotEquals(base, d.clave(7L, 2025, 3, 15, "786", "P1"));
+        assertNotEquals(base, d.clave(7L, 2024, 4, 15, "786", "P1"));
+        assertNotEquals(base, d.clave(7L, 2024, 3, 16, "786", "P1"));
+        assertNotEquals(base, d.clave(7L, 2024, 3, 15, "787", "P1"));
+        assertNotEquals(base, d.clave(7L, 2024, 3, 15, "786", "P2"));
+        assertNotEquals(base, d.clave(7L, 2024, 3, 15, "P1", "786"));
+        // ids provisionales de la simulación
+        assertNotEquals(d.clave(-1L, 2024, 3, 15, "786", "P1"), d.clave(1L, 2024, 3, 15, "786", "P1"));
+        assertNotEquals(d.clave(null, 2024, 3, 0, "786", "P1"), d.clave(null, 2024, 3, -1, "786", "P1"));
+    }
+
+    @Test
+    void claveDeVentaUsaElCliente() {
+        Cliente c = new Cliente();
+        c.setId(14L);
+        Venta v = new Venta();
+        v.setCliente(c);
+        v.setAnio(2024);
+        v.setMes(6);
+        v.setDia(30);
+        v.setCodBarra("786");
+        v.setCodPdv("SIN_TIENDA");
+        DiccionarioClaves d = new DiccionarioClaves();
+        assertEquals(d.clave(14L, 2024, 6, 30, "786", "sin_tienda"), d.clave(v));
+    }
+
+    @Test
+    void fueraDeRangoFalla() {
+        assertThrows(IllegalArgumentException.class, () -> VentaKey.fechaCliente(1L << 40, 2024, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> VentaKey.fechaCliente(1L, 70_000, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> VentaKey.fechaCliente(1L, 2024, 1, 300));
+    }
+
+    @Test
+    void mapaIgualQueHashMap() {
+        Random rnd = new Random(42);
+        MapaVentaKey mapa = new MapaVentaKey(4);
+        Map<VentaKey, Integer> ref = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            VentaKey k = new VentaKey(rnd.nextInt(2_000), rnd.nextInt(20));
+            int valor = rnd.nextInt(1_000_000);
+            Integer anterior = ref.put(k, valor);
+            assertEquals(anterior == null ? MapaVentaKey.AUSENTE : anterior, mapa.put(k, valor));
+        }
+        assertEquals(ref.size(), mapa.size());
+        ref.forEach((k, v) -> assertEquals(v, mapa.get(k)));
+        assertEquals(MapaVentaKey.AUSENTE, mapa.get(new VentaKey(-5, -5)));
+    }
+
+    @Test
+    void putIfAbsentConservaElPrimero() {
+        MapaVentaKey mapa = new MapaVentaKey(8);
+        VentaKey k = new VentaKey(1, 2);
+        assertEquals(MapaVentaKey.AUSENTE, mapa.putIfAbsent(k, 3));
+        assertEquals(3, mapa.putIfAbsent(k, 9));
+        assertEquals(3, mapa.get(k));
+        assertThrows(IllegalArgumentException.class, () -> mapa.put(k, -1));
+    }
+}
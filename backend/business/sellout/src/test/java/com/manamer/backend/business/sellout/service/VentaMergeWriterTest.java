@@ -0,0 +1,139 @@
+package com.manamer.backend.business.sellout.service;
+
+import com.manamer.backend.business.sellout.BaseH2;
+import com.manamer.backend.business.sellout.VentaPrueba;
+import com.manamer.backend.business.sellout.models.HashFilaVenta;
+import com.manamer.backend.business.sellout.models.Venta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Respaldo JDBC batch de VentaMergeWriter contra H2 en modo SQL Server (el MERGE con bulk copy necesita SQL Server). */
+class VentaMergeWriterTest {
+
+    private JdbcTemplate jdbc;
+    private VentaMergeWriter writer;
+
+    @BeforeEach
+    void crearTabla() {
+        jdbc = new JdbcTemplate(BaseH2.crear());
+        // tramos de 2 filas: varias vueltas por upsert
+        writer = new VentaMergeWriter(jdbc, new VentaBatchWriter(jdbc), 2, true);
+    }
+
+    @AfterEach
+    void borrarTabla() {
+        BaseH2.borrar(jdbc.getDataSource());
+    }
+
+    @Test
+    void insertaActualizaYSaltaLasIguales() {
+        VentaMergeWriter.Resultado r = writer.upsert(List.of(
+                venta(1L, 1, "7861", "T1", 10),
+                venta(1L, 1, "7862", "T1", 20),
+                venta(1L, 2, "7861", "T1", 30),
+                venta(2L, 1, "7861", "T1", 40)
+        ), VentaMergeWriter.Modo.COMPLETO);
+        assertEquals(new VentaMergeWriter.Resultado(4, 0, 0), r);
+
+        // reenvío: dos iguales, una cambia, una nueva; la clave repetida se escribe una vez con la última
+        r = writer.upsert(List.of(
+                venta(1L, 1, "7861", "T1", 10),
+                venta(1L, 1, "7862", "T1", 99),
+                venta(1L, 2, "7861", "T1", 30),
+                venta(1L, 3, "7861", "T1", 5),
+                venta(1L, 3, "7861", "t1 ", 6)
+        ), VentaMergeWriter.Modo.COMPLETO);
+        assertEquals(new VentaMergeWriter.Resultado(1, 1, 2), r);
+
+        assertEquals(5, jdbc.queryForObject("SELECT COUNT(*) FROM SELLOUT.dbo.venta", Integer.class));
+        assertEquals(99.0, jdbc.queryForObject(
+                "SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 1 AND dia = 1 AND cod_barra = '7862'", Double.class));
+        assertEquals(6.0, jdbc.queryForObject(
+                "SELECT venta_dolares FROM dbo.venta WHERE cliente_id = 1 AND dia = 3", Double.class));
+
+        // el hash guardado es el de la fila: el mismo reenvío ya no escribe nada
+        Map<String, Object> fila = jdbc.queryForMap(
+                "SELECT hash_fila FROM dbo.venta WHERE cliente_id = 1 AND dia = 1 AND cod_barra = '7862'");
+        assertEquals(HashFilaVenta.de(venta(1L, 1, "7862", "T1", 99)), fila.get("hash_fila"));
+        assertEquals(new VentaMergeWriter.Resultado(0, 0, 1),
+                writer.upsert(List.of(venta(1L, 1, "7862", "T1", 99)), VentaMergeWriter.Modo.COMPLETO));
+    }
+
+    @Test
+    void soloVentaConservaStockYAnulaElHash() {
+        Venta conStock = venta(1L, 1, "7861", "T1", 10);
+        conStock.setStockUnidades(7);
+        writer.upsert(List.of(conStock), VentaMergeWriter.Modo.COMPLETO);
+
+        VentaMergeWriter.Resultado r = writer.upsert(List.of(venta(1L, 1, "7861", "T1", 10)), VentaMergeWriter.Modo.SOLO_VENTA);
+        assertEquals(new VentaMergeWriter.Resultado(0, 1, 0), r);
+
+        Map<String, Object> fila = jdbc.queryForMap("SELECT stock_unidades, hash_fila FROM dbo.venta");
+        assertEquals(7.0, fila.get("stock_unidades"));
+        assertNull(fila.get("hash_fila"));
+    }
+
+    @Test
+    void soloStockActualizaLaMismaFechaYTiendaEInsertaElResto() {
+        writer.upsert(List.of(venta(1L, 1, "7861", "T1", 10)), VentaMergeWriter.Modo.COMPLETO);
+
+        Venta mismaClave = venta(1L, 1, "7861", "T1", 0);
+        mismaClave.setStockUnidades(4);
+        mismaClave.setStockDolares(8);
+        Venta otraTienda = venta(1L, 1, "7861", "T2", 0);
+        otraTienda.setStockUnidades(3);
+        VentaMergeWriter.Resultado r = writer.upsert(List.of(mismaClave, otraTienda), VentaMergeWriter.Modo.SOLO_STOCK);
+        assertEquals(new VentaMergeWriter.Resultado(1, 1, 0), r);
+
+        Map<String, Object> fila = jdbc.queryForMap(
+                "SELECT venta_dolares, stock_unidades, stock_dolares, hash_fila FROM dbo.venta WHERE cod_pdv = 'T1'");
+        assertEquals(10.0, fila.get("venta_dolares"));
+        assertEquals(4.0, fila.get("stock_unidades"));
+        assertEquals(8.0, fila.get("stock_dolares"));
+        assertNull(fila.get("hash_fila"));
+        assertEquals(3.0, jdbc.queryForObject("SELECT stock_unidades FROM dbo.venta WHERE cod_pdv = 'T2'", Double.class));
+    }
+
+    @Test
+    void conservaProductoNoCambiaElDeLaExistente() {
+        Venta conProducto = VentaPrueba.delCliente(1L).dolares(10).producto(77L).crear();
+        writer.upsert(List.of(conProducto), VentaMergeWriter.Modo.COMPLETO);
+
+        Venta entrante = venta(1L, 1, "7861", "T1", 12);
+        entrante.setHashFila(HashFilaVenta.de(entrante, 77L));
+        assertEquals(new VentaMergeWriter.Resultado(0, 1, 0),
+                writer.upsert(List.of(entrante), VentaMergeWriter.Modo.CONSERVA_PRODUCTO));
+
+        Map<String, Object> fila = jdbc.queryForMap("SELECT producto_id, venta_dolares, hash_fila FROM dbo.venta");
+        assertEquals(77L, fila.get("producto_id"));
+        assertEquals(12.0, fila.get("venta_dolares"));
+        assertEquals(entrante.getHashFila(), fila.get("hash_fila"));
+    }
+
+    @Test
+    void mergeCuentaAccionesYSoloCompletoComparaHash() {
+        String completo = VentaMergeWriter.sqlMerge(VentaMergeWriter.Modo.COMPLETO);
+        assertTrue(completo.contains("OUTPUT $action INTO @acciones"));
+        assertTrue(completo.contains("t.hash_fila <> s.hash_fila"));
+        assertTrue(completo.contains("t.producto_id = s.producto_id"));
+        assertFalse(VentaMergeWriter.sqlMerge(VentaMergeWriter.Modo.CONSERVA_PRODUCTO).contains("t.producto_id ="));
+
+        String soloVenta = VentaMergeWriter.sqlMerge(VentaMergeWriter.Modo.SOLO_VENTA);
+        assertFalse(soloVenta.contains("t.hash_fila <> s.hash_fila"));
+        assertFalse(soloVenta.contains("t.stock_unidades ="));
+        assertTrue(soloVenta.contains("t.hash_fila = NULL"));
+        assertTrue(VentaMergeWriter.sqlMerge(VentaMergeWriter.Modo.SOLO_STOCK)
+                .contains("UPDATE SET t.stock_unidades = s.stock_unidades, t.stock_dolares = s.stock_dolares, t.hash_fila = NULL"));
+    }
+
+    private static Venta venta(Long clienteId, int dia, String codBarra, String codPdv, double dolares) {
+        return VentaPrueba.delCliente(clienteId).dia(dia).codBarra(codBarra).codPdv(codPdv).dolares(dolares).crear();
+    }
+}
@@ -0,0 +1,66 @@
+-- Esquema previo a las migraciones (el que ya tenía la base SELLOUT, ids IDENTITY) para probar V1..Vn
+-- contra un SQL Server vacío. Solo lo usan los tests; incluye ventas duplicadas por clave natural.
+
+CREATE TABLE dbo.cliente (
+    id               BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+    cod_cliente      VARCHAR(255) NULL,
+    nombre_cliente   VARCHAR(255) NULL,
+    ciudad           VARCHAR(255) NULL,
+    codigo_proveedor VARCHAR(255) NULL
+);
+
+CREATE TABLE dbo.producto (
+    id            BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+    cod_item      VARCHAR(255) NULL,
+    cod_barra_sap VARCHAR(255) NULL
+);
+
+CREATE TABLE dbo.tipo_mueble (
+    id                  BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+    cod_pdv             VARCHAR(255) NULL,
+    nombre_pdv          VARCHAR(255) NULL,
+    tipo_mueble_essence VARCHAR(255) NULL,
+    tipo_mueble_catrice VARCHAR(255) NULL,
+    cliente_id          BIGINT NULL CONSTRAINT fk_tipo_mueble_cliente REFERENCES dbo.cliente (id),
+    ciudad              VARCHAR(255) NULL,
+    marca               VARCHAR(255) NULL
+);
+
+CREATE TABLE dbo.venta (
+    id               BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+    anio             INT NULL,
+    mes              INT NULL,
+    dia              INT NOT NULL,
+    ciudad           VARCHAR(255) NULL,
+    marca            VARCHAR(255) NULL,
+    venta_dolares    FLOAT NOT NULL,
+    venta_unidad     FLOAT NOT NULL,
+    nombre_producto  VARCHAR(255) NULL,
+    codigo_sap       VARCHAR(255) NULL,
+    cod_barra        VARCHAR(255) NULL,
+    cod_pdv          VARCHAR(255) NULL,
+    descripcion      VARCHAR(255) NULL,
+    pdv              VARCHAR(255) NULL,
+    stock_dolares    FLOAT NOT NULL,
+    stock_unidades   FLOAT NOT NULL,
+    cliente_id       BIGINT NULL CONSTRAINT fk_venta_cliente REFERENCES dbo.cliente (id),
+    producto_id      BIGINT NULL CONSTRAINT fk_venta_producto REFERENCES dbo.producto (id),
+    unidades_diarias VARCHAR(255) NULL
+);
+
+CREATE TABLE dbo.SAP_Prod_cache (
+    codigo_sap  VARCHAR(255) NULL,
+    cod_barra   VARCHAR(255) NULL,
+    descripcion VARCHAR(255) NULL,
+    marca       VARCHAR(255) NULL
+);
+
+INSERT INTO dbo.cliente (cod_cliente, nombre_cliente) VALUES ('MZCL-000014', 'FYBECA');
+INSERT INTO dbo.producto (cod_item, cod_barra_sap) VALUES ('IT1', '7861');
+
+-- misma clave tres veces (cod_pdv solo cambia en mayúsculas) y una clave distinta
+INSERT INTO dbo.venta (anio, mes, dia, venta_dolares, venta_unidad, cod_barra, cod_pdv, stock_dolares, stock_unidades, cliente_id, producto_id)
+VALUES (2024, 1, 15, 10, 1, '7861', 'TIENDA 1', 0, 0, 1, 1),
+       (2024, 1, 15, 20, 2, '7861', 'tienda 1', 0, 0, 1, 1),
+       (2024, 1, 15, 30, 3, '7861', 'TIENDA 1', 0, 0, 1, 1),
+       (2024, 1, 16, 40, 4, '7861', 'TIENDA 1', 0, 0, 1, 1);
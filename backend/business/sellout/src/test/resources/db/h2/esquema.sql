@@ -0,0 +1,93 @@
+-- dbo.venta y las tablas de trabajo de venta tal como quedan después de las migraciones, en H2 (modo SQL Server)
+-- para los tests de escritura sin SQL Server (BaseH2). Lo que H2 no tiene o hace distinto queda fuera: la
+-- partición (periodo es solo la columna calculada), las FK y ux_venta_clave (H2 no trata NULL como igual ni
+-- compara sin mayúsculas; la clave natural la normaliza DiccionarioClaves).
+CREATE SCHEMA IF NOT EXISTS dbo;
+
+CREATE TABLE dbo.venta (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    anio             INT NULL,
+    mes              INT NULL,
+    dia              INT NOT NULL,
+    ciudad           VARCHAR(255) NULL,
+    marca            VARCHAR(255) NULL,
+    venta_dolares    FLOAT NOT NULL,
+    venta_unidad     FLOAT NOT NULL,
+    nombre_producto  VARCHAR(255) NULL,
+    codigo_sap       VARCHAR(255) NULL,
+    cod_barra        VARCHAR(255) NULL,
+    cod_pdv          VARCHAR(255) NULL,
+    descripcion      VARCHAR(255) NULL,
+    pdv              VARCHAR(255) NULL,
+    stock_dolares    FLOAT NOT NULL,
+    stock_unidades   FLOAT NOT NULL,
+    cliente_id       BIGINT NULL,
+    producto_id      BIGINT NULL,
+    unidades_diarias VARCHAR(255) NULL,
+    hash_fila        BIGINT NULL,
+    periodo          INT GENERATED ALWAYS AS (COALESCE(anio * 100 + mes, 0))
+);
+
+CREATE INDEX ix_venta_cliente_periodo ON dbo.venta (cliente_id, anio DESC, mes DESC, id DESC);
+
+CREATE TABLE dbo.venta_eliminacion (
+    id                VARCHAR(36)    NOT NULL PRIMARY KEY,
+    tipo              VARCHAR(20)    NOT NULL,
+    estado            VARCHAR(20)    NOT NULL,
+    anio              INT            NULL,
+    mes               INT            NULL,
+    marca             NVARCHAR(255)  NULL,
+    cod_pdv           NVARCHAR(255)  NULL,
+    max_total         BIGINT         NULL,
+    claves_totales    BIGINT         DEFAULT 0 NOT NULL,
+    claves_procesadas BIGINT         DEFAULT 0 NOT NULL,
+    eliminados        BIGINT         DEFAULT 0 NOT NULL,
+    lotes             INT            DEFAULT 0 NOT NULL,
+    creado            TIMESTAMP      NOT NULL,
+    iniciado          TIMESTAMP      NULL,
+    terminado         TIMESTAMP      NULL,
+    actualizado       TIMESTAMP      NOT NULL,
+    error             NVARCHAR(1000) NULL
+);
+
+CREATE TABLE dbo.venta_eliminacion_clave (
+    id        BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    job_id    VARCHAR(36)  NOT NULL,
+    anio      INT          NOT NULL,
+    mes       INT          NOT NULL,
+    cod_barra VARCHAR(255) NOT NULL,
+    cod_pdv   VARCHAR(255) NULL
+);
+
+CREATE INDEX ix_venta_eliminacion_clave_job ON dbo.venta_eliminacion_clave (job_id, id);
+
+CREATE TABLE dbo.venta_reemplazo (
+    orden            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    carga_id         VARCHAR(36)  NOT NULL,
+    modo             VARCHAR(20)  NOT NULL,
+    clave_barra      VARCHAR(255) NOT NULL,
+    clave_pdv        VARCHAR(255) NOT NULL,
+    creado           TIMESTAMP    DEFAULT CURRENT_TIMESTAMP NOT NULL,
+    id               BIGINT NULL,
+    anio             INT NULL,
+    mes              INT NULL,
+    dia              INT NOT NULL,
+    ciudad           VARCHAR(255) NULL,
+    marca            VARCHAR(255) NULL,
+    venta_dolares    FLOAT NOT NULL,
+    venta_unidad     FLOAT NOT NULL,
+    nombre_producto  VARCHAR(255) NULL,
+    codigo_sap       VARCHAR(255) NULL,
+    cod_barra        VARCHAR(255) NULL,
+    cod_pdv          VARCHAR(255) NULL,
+    descripcion      VARCHAR(255) NULL,
+    pdv              VARCHAR(255) NULL,
+    stock_dolares    FLOAT NOT NULL,
+    stock_unidades   FLOAT NOT NULL,
+    cliente_id       BIGINT NULL,
+    producto_id      BIGINT NULL,
+    unidades_diarias VARCHAR(255) NULL,
+    hash_fila        BIGINT NULL
+);
+
+CREATE INDEX ix_venta_reemplazo_periodo ON dbo.venta_reemplazo (carga_id, cliente_id, anio, mes);